@@ -0,0 +1,399 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass;
+
+import java.util.TimerTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sangupta.amass.domain.CrawlStatistics;
+
+/**
+ * A {@link TimerTask} that adapts the number of worker threads of an
+ * {@link Amass} instance to the conditions upstream, using an AIMD
+ * (additive-increase, multiplicative-decrease) controller.
+ * 
+ * On every run the controller samples the {@link CrawlStatistics} of the
+ * instance since the last run. If the error rate crossed the configured limit,
+ * or the average crawl latency grew well beyond the lowest latency of the
+ * recent samples, the number of workers is cut by a factor. Otherwise, if
+ * there is pending work, one more worker is added. The number of workers
+ * always stays between the given minimum and maximum.
+ * 
+ * The baseline latency is taken over a sliding window of samples, so that it
+ * follows a lasting change upstream rather than holding on to the best
+ * latency ever seen. After a cut, the workers are left alone for a few
+ * samples, so that the cut takes effect before it is judged.
+ * 
+ * The settings of the controller may be changed while it runs, as each run
+ * and each accessor holds the lock of the controller.
+ * 
+ * Schedule it with a {@link java.util.Timer} at a fixed rate, like every few
+ * seconds, so that each run sees enough crawls to be meaningful, or let
+ * {@link Amass} do so by setting
+ * {@link com.sangupta.amass.domain.AmassConfig#setMaxAdaptiveThreads(int)}.
+ * 
+ * @author sangupta
+ *
+ */
+public class AdaptiveConcurrencyController extends TimerTask {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveConcurrencyController.class);
+	
+	/**
+	 * Default number of samples the baseline latency is taken over
+	 */
+	public static final int DEFAULT_BASELINE_WINDOW = 30;
+	
+	/**
+	 * The instance whose workers are controlled
+	 */
+	private final Amass amass;
+	
+	/**
+	 * The minimum number of workers to keep
+	 */
+	private final int minThreads;
+	
+	/**
+	 * The maximum number of workers to run
+	 */
+	private final int maxThreads;
+	
+	/**
+	 * Number of workers added when conditions are good
+	 */
+	private int increment = 1;
+	
+	/**
+	 * Factor by which the workers are cut when conditions are bad
+	 */
+	private double decreaseFactor = 0.75d;
+	
+	/**
+	 * Error rate beyond which the workers are cut
+	 */
+	private double maxErrorRate = 0.1d;
+	
+	/**
+	 * How many times the lowest observed latency the average latency may grow
+	 * to before the workers are cut
+	 */
+	private double latencyTolerance = 2.0d;
+	
+	/**
+	 * The minimum number of crawls in a sample to act upon it
+	 */
+	private long minSampleSize = 10;
+	
+	/**
+	 * The number of samples after a cut during which the workers are left
+	 * alone
+	 */
+	private int cooldownSamples = 1;
+	
+	/**
+	 * The average latencies of the recent samples, the lowest of which is
+	 * the baseline latency
+	 */
+	private double[] recentLatencies = new double[DEFAULT_BASELINE_WINDOW];
+	
+	/**
+	 * The number of samples in {@link #recentLatencies}
+	 */
+	private int numLatencies;
+	
+	/**
+	 * The index in {@link #recentLatencies} the next sample goes to
+	 */
+	private int nextLatency;
+	
+	/**
+	 * The number of samples still to be skipped since the last cut
+	 */
+	private int cooldown;
+	
+	private long lastCrawls;
+	
+	private long lastErrors;
+	
+	private long lastCrawlTime;
+	
+	/**
+	 * Create a new controller.
+	 * 
+	 * @param amass
+	 *            the instance whose workers are controlled
+	 * 
+	 * @param minThreads
+	 *            the minimum number of workers to keep
+	 * 
+	 * @param maxThreads
+	 *            the maximum number of workers to run
+	 */
+	public AdaptiveConcurrencyController(Amass amass, int minThreads, int maxThreads) {
+		if(amass == null) {
+			throw new IllegalArgumentException("Amass instance cannot be null");
+		}
+		
+		if(minThreads <= 0) {
+			throw new IllegalArgumentException("Minimum number of threads cannot be less than one.");
+		}
+		
+		if(maxThreads < minThreads) {
+			throw new IllegalArgumentException("Maximum number of threads cannot be less than the minimum.");
+		}
+		
+		this.amass = amass;
+		this.minThreads = minThreads;
+		this.maxThreads = maxThreads;
+		
+		CrawlStatistics statistics = amass.getCrawlStatistics();
+		this.lastCrawls = statistics.getCrawls();
+		this.lastErrors = statistics.getErrors();
+		this.lastCrawlTime = statistics.getTotalCrawlTime();
+	}
+
+	/**
+	 * @see java.util.TimerTask#run()
+	 */
+	@Override
+	public synchronized void run() {
+		final CrawlStatistics statistics = this.amass.getCrawlStatistics();
+		final long crawls = statistics.getCrawls();
+		final long errors = statistics.getErrors();
+		final long crawlTime = statistics.getTotalCrawlTime();
+		
+		final long sampleCrawls = crawls - this.lastCrawls;
+		final int current = this.amass.getNumThreads();
+		
+		if(sampleCrawls < this.minSampleSize) {
+			// not enough data - grow only if work is waiting
+			if(sampleCrawls == 0 && this.amass.hasPendingWork()) {
+				resize(current, current + this.increment);
+			}
+			
+			return;
+		}
+		
+		final double errorRate = (double) (errors - this.lastErrors) / sampleCrawls;
+		final double latency = (double) (crawlTime - this.lastCrawlTime) / sampleCrawls;
+		
+		this.lastCrawls = crawls;
+		this.lastErrors = errors;
+		this.lastCrawlTime = crawlTime;
+		
+		final double baselineLatency = recordLatency(latency);
+		
+		if(this.cooldown > 0) {
+			// let the last cut take effect
+			this.cooldown--;
+			return;
+		}
+		
+		if(errorRate > this.maxErrorRate || latency > baselineLatency * this.latencyTolerance) {
+			LOGGER.debug("Backing off: error rate {}, average latency {}ms", errorRate, latency);
+			resize(current, (int) (current * this.decreaseFactor));
+			this.cooldown = this.cooldownSamples;
+			return;
+		}
+		
+		if(this.amass.hasPendingWork()) {
+			resize(current, current + this.increment);
+		}
+	}
+	
+	/**
+	 * Add the given average latency to the window of recent samples.
+	 * 
+	 * @param latency
+	 *            the average latency of the sample
+	 * 
+	 * @return the lowest latency of the window, the baseline
+	 */
+	private double recordLatency(double latency) {
+		this.recentLatencies[this.nextLatency] = latency;
+		this.nextLatency = (this.nextLatency + 1) % this.recentLatencies.length;
+		if(this.numLatencies < this.recentLatencies.length) {
+			this.numLatencies++;
+		}
+		
+		double lowest = latency;
+		for(int index = 0; index < this.numLatencies; index++) {
+			lowest = Math.min(lowest, this.recentLatencies[index]);
+		}
+		
+		return lowest;
+	}
+	
+	/**
+	 * Change the number of workers of the instance, bounded by the minimum and
+	 * maximum number of workers.
+	 * 
+	 * @param current
+	 *            the current number of workers
+	 * 
+	 * @param target
+	 *            the number of workers desired
+	 */
+	private void resize(int current, int target) {
+		target = Math.max(this.minThreads, Math.min(this.maxThreads, target));
+		if(target == current) {
+			return;
+		}
+		
+		try {
+			this.amass.setNumThreads(target);
+			LOGGER.debug("Number of workers changed from {} to {}", current, target);
+		} catch(IllegalStateException e) {
+			// amass has been closed
+			this.cancel();
+		}
+	}
+	
+	// Usual accessors follow
+
+	/**
+	 * @return the increment
+	 */
+	public synchronized int getIncrement() {
+		return increment;
+	}
+
+	/**
+	 * @param increment the increment to set
+	 */
+	public synchronized void setIncrement(int increment) {
+		if(increment < 1) {
+			throw new IllegalArgumentException("Increment cannot be less than one.");
+		}
+		
+		this.increment = increment;
+	}
+
+	/**
+	 * @return the decreaseFactor
+	 */
+	public synchronized double getDecreaseFactor() {
+		return decreaseFactor;
+	}
+
+	/**
+	 * @param decreaseFactor the decreaseFactor to set
+	 */
+	public synchronized void setDecreaseFactor(double decreaseFactor) {
+		if(decreaseFactor <= 0 || decreaseFactor >= 1) {
+			throw new IllegalArgumentException("Decrease factor must be between zero and one.");
+		}
+		
+		this.decreaseFactor = decreaseFactor;
+	}
+
+	/**
+	 * @return the maxErrorRate
+	 */
+	public synchronized double getMaxErrorRate() {
+		return maxErrorRate;
+	}
+
+	/**
+	 * @param maxErrorRate the maxErrorRate to set
+	 */
+	public synchronized void setMaxErrorRate(double maxErrorRate) {
+		this.maxErrorRate = maxErrorRate;
+	}
+
+	/**
+	 * @return the latencyTolerance
+	 */
+	public synchronized double getLatencyTolerance() {
+		return latencyTolerance;
+	}
+
+	/**
+	 * @param latencyTolerance the latencyTolerance to set
+	 */
+	public synchronized void setLatencyTolerance(double latencyTolerance) {
+		if(latencyTolerance < 1) {
+			throw new IllegalArgumentException("Latency tolerance cannot be less than one.");
+		}
+		
+		this.latencyTolerance = latencyTolerance;
+	}
+
+	/**
+	 * @return the minSampleSize
+	 */
+	public synchronized long getMinSampleSize() {
+		return minSampleSize;
+	}
+
+	/**
+	 * @param minSampleSize the minSampleSize to set
+	 */
+	public synchronized void setMinSampleSize(long minSampleSize) {
+		this.minSampleSize = minSampleSize;
+	}
+
+	/**
+	 * @return the cooldownSamples
+	 */
+	public synchronized int getCooldownSamples() {
+		return cooldownSamples;
+	}
+
+	/**
+	 * @param cooldownSamples the cooldownSamples to set
+	 */
+	public synchronized void setCooldownSamples(int cooldownSamples) {
+		if(cooldownSamples < 1) {
+			throw new IllegalArgumentException("Cooldown cannot be less than one sample.");
+		}
+		
+		this.cooldownSamples = cooldownSamples;
+	}
+
+	/**
+	 * @return the number of samples the baseline latency is taken over
+	 */
+	public synchronized int getBaselineWindow() {
+		return recentLatencies.length;
+	}
+
+	/**
+	 * Set the number of samples the baseline latency is taken over. The
+	 * samples taken so far are forgotten.
+	 * 
+	 * @param baselineWindow the number of samples to set
+	 */
+	public synchronized void setBaselineWindow(int baselineWindow) {
+		if(baselineWindow < 1) {
+			throw new IllegalArgumentException("Baseline window cannot be less than one sample.");
+		}
+		
+		this.recentLatencies = new double[baselineWindow];
+		this.numLatencies = 0;
+		this.nextLatency = 0;
+	}
+
+}
@@ -21,18 +21,47 @@
 
 package com.sangupta.amass;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Timer;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.sangupta.amass.core.AfterCrawlHandler;
+import com.sangupta.amass.core.AsyncCrawlHandler;
 import com.sangupta.amass.core.BeforeCrawlHandler;
 import com.sangupta.amass.core.CrawlHandler;
 import com.sangupta.amass.core.CrawlingHandler;
+import com.sangupta.amass.core.FetchPolicy;
 import com.sangupta.amass.core.QueueMessageConverter;
+import com.sangupta.amass.core.RetryAwareAfterCrawlHandler;
+import com.sangupta.amass.domain.AmassConfig;
+import com.sangupta.amass.domain.AmassConfig.WorkerThreadMode;
 import com.sangupta.amass.domain.AmassSignal;
+import com.sangupta.amass.domain.ClassifiedCrawlableURL;
+import com.sangupta.amass.domain.ConnectionPoolStatistics;
+import com.sangupta.amass.domain.CrawlStatistics;
 import com.sangupta.amass.domain.CrawlableURL;
+import com.sangupta.amass.domain.DefaultCrawlableURL;
+import com.sangupta.amass.domain.JobClassStatistics;
+import com.sangupta.amass.domain.SubmissionResult;
+import com.sangupta.amass.impl.CachingDnsResolver;
 import com.sangupta.amass.impl.CrawlingQueue;
 import com.sangupta.amass.impl.CrawlingWorker;
+import com.sangupta.amass.impl.DefaultCrawlHandler;
+import com.sangupta.amass.impl.NioCrawlHandler;
+import com.sangupta.amass.impl.ScheduledCrawl;
+import com.sangupta.amass.impl.ScheduledRetry;
+import com.sangupta.amass.impl.ValidatorStore;
+import com.sangupta.amass.impl.VirtualThreads;
 import com.sangupta.jerry.util.DateUtils;
 
 
@@ -51,6 +80,8 @@ import com.sangupta.jerry.util.DateUtils;
  */
 public class Amass {
 	
+	private static final Logger LOGGER = LoggerFactory.getLogger(Amass.class);
+	
 	/**
 	 * Helps identify thread groups uniquely when multiple {@link Amass} instances
 	 * are created.
@@ -58,9 +89,10 @@ public class Amass {
 	private static final AtomicInteger AMASS_INSTANCE_COUNT = new AtomicInteger(1);
 	
 	/**
-	 * The total number of worker thread of this {@link Amass} instance.
+	 * The total number of worker thread of this {@link Amass} instance. This
+	 * can be changed at runtime via {@link #setNumThreads(int)}.
 	 */
-	private final int numThreads;
+	private volatile int numThreads;
 	
 	/**
 	 * The handler that needs to be executed before each URL is crawled by
@@ -82,27 +114,113 @@ public class Amass {
 	 */
 	private final CrawlHandler crawlHandler;
 	
+	/**
+	 * The {@link DefaultCrawlHandler} created by this instance when no
+	 * handler was supplied, closed on shut down, <code>null</code> otherwise
+	 */
+	private final DefaultCrawlHandler defaultCrawlHandler;
+	
+	/**
+	 * The {@link NioCrawlHandler} created by this instance when asked to
+	 * crawl without blocking but given no handler, closed on shut down,
+	 * <code>null</code> otherwise
+	 */
+	private final NioCrawlHandler defaultAsyncCrawlHandler;
+	
+	/**
+	 * The handler that crawls each URL without blocking the worker, if any.
+	 * When set, the {@link #crawlHandler} is not used.
+	 * 
+	 */
+	private final AsyncCrawlHandler asyncCrawlHandler;
+	
+	/**
+	 * The permits for crawls in flight when using the {@link #asyncCrawlHandler}
+	 */
+	private final Semaphore asyncPermits;
+	
+	/**
+	 * The maximum number of crawls in flight when using the
+	 * {@link #asyncCrawlHandler}
+	 */
+	private final int maxAsyncCrawls;
+	
 	/**
 	 * The job queue that is used by this {@link Amass} instance.
 	 */
 	private final CrawlingQueue crawlingQueue;
 	
 	/**
-	 * The thread-group that this {@link Amass} instance creates.
+	 * The thread-group that this {@link Amass} instance creates. Virtual
+	 * worker threads do not belong to this group.
 	 * 
 	 */
 	private final ThreadGroup workerGroup;
 	
 	/**
-	 * The actual worker threads of this {@link Amass} instance.
+	 * The kind of threads to run the workers on.
+	 */
+	private final WorkerThreadMode workerThreadMode;
+	
+	/**
+	 * The number of bytes after which the workers cut a streamed body short,
+	 * zero for no limit.
+	 */
+	private final long maxContentLength;
+	
+	/**
+	 * The policy that decides which bodies the workers download,
+	 * <code>null</code> to download all.
+	 */
+	private final FetchPolicy fetchPolicy;
+	
+	/**
+	 * The validators of the URLs crawled, <code>null</code> if revalidation
+	 * is not enabled.
+	 */
+	private final ValidatorStore validatorStore;
+	
+	/**
+	 * The file to save the {@link #validatorStore} to, <code>null</code> to
+	 * not persist it.
+	 */
+	private final File validatorStoreFile;
+	
+	/**
+	 * The controller that adapts the number of workers, <code>null</code> if
+	 * the number of workers is kept as set.
+	 */
+	private final AdaptiveConcurrencyController concurrencyController;
+	
+	/**
+	 * The timer that runs the {@link #concurrencyController},
+	 * <code>null</code> if there is none.
+	 */
+	private final Timer concurrencyTimer;
+	
+	/**
+	 * The actual worker threads of this {@link Amass} instance. Guarded by
+	 * this instance.
 	 * 
 	 */
-	private final Thread[] workerThreads;
+	private final List<Thread> workerThreads = new ArrayList<Thread>();
 	
 	/**
 	 * The actual worker objects that have been created for this {@link Amass} instance.
+	 * Workers that have been asked to retire stay in this list till their
+	 * thread ends. Guarded by this instance.
 	 */
-	private final CrawlingWorker[] workers; 
+	private final List<CrawlingWorker> workers = new ArrayList<CrawlingWorker>();
+	
+	/**
+	 * Counter used to name worker threads uniquely as the pool grows.
+	 */
+	private final AtomicInteger workerIndex = new AtomicInteger(0);
+	
+	/**
+	 * The statistics of all crawls made by this {@link Amass} instance.
+	 */
+	private final CrawlStatistics crawlStatistics = new CrawlStatistics();
 	
 	/**
 	 * The state signal for this {@link Amass} instance.
@@ -145,6 +263,61 @@ public class Amass {
 		this(numThreads, backingQueue, queueMessageConverter, crawlingHandler, crawlingHandler, crawlingHandler);
 	}
 	
+	/**
+	 * Create a new instance of {@link Amass} that uses the given number of
+	 * threads for crawling purposes and the given configuration.
+	 * 
+	 * @param numThreads
+	 *            the number of threads to run in parallel
+	 * 
+	 * @param config
+	 *            the configuration to use
+	 * 
+	 * @param crawlingHandler
+	 *            the handler for all phases of the crawl
+	 */
+	public Amass(int numThreads, AmassConfig config, CrawlingHandler crawlingHandler) {
+		this(numThreads, null, null, crawlingHandler, crawlingHandler, crawlingHandler, config);
+	}
+	
+	/**
+	 * Create a new instance of {@link Amass} that crawls URLs using the given
+	 * {@link AsyncCrawlHandler}. The worker threads only dispatch jobs to the
+	 * handler, and thus a handful of them can keep up to
+	 * {@link AmassConfig#getMaxAsyncCrawls()} crawls in flight.
+	 * 
+	 * When no handler is given, a {@link NioCrawlHandler} is created that
+	 * applies the {@link AmassConfig#getFetchPolicy()} as soon as the headers
+	 * of a response arrive, and sends conditional requests when revalidation
+	 * is enabled. It is closed on shut down.
+	 * 
+	 * A given handler is not closed by this instance, and should be closed by
+	 * the caller after this instance has been shut down. Such a handler does
+	 * not know of the validators remembered by this instance, and thus sends
+	 * no conditional requests: unchanged pages are then only told apart by
+	 * their body. Unless it applies the fetch policy itself, bodies are also
+	 * read in full before the policy is applied.
+	 * 
+	 * @param numThreads
+	 *            the number of threads dispatching jobs to the handler
+	 * 
+	 * @param config
+	 *            the configuration to use
+	 * 
+	 * @param beforeCrawlHandler
+	 *            the handler to run before starting to crawl
+	 * 
+	 * @param asyncCrawlHandler
+	 *            the handler that does the actual crawling, or
+	 *            <code>null</code> to use a {@link NioCrawlHandler}
+	 * 
+	 * @param afterCrawlHandler
+	 *            the handler to run after completing the crawl
+	 */
+	public Amass(int numThreads, AmassConfig config, BeforeCrawlHandler beforeCrawlHandler, AsyncCrawlHandler asyncCrawlHandler, AfterCrawlHandler afterCrawlHandler) {
+		this(numThreads, null, null, beforeCrawlHandler, null, asyncCrawlHandler, afterCrawlHandler, config, true);
+	}
+	
 	/**
 	 * Create a new instance of {@link Amass} that uses the given number of
 	 * threads for crawling purposes and the given backing {@link BlockingQueue}
@@ -170,6 +343,41 @@ public class Amass {
 	 *            the handler to run after completing the crawl
 	 */
 	public Amass(final int numThreads, final BlockingQueue<Object> backingQueue, final QueueMessageConverter<? extends Object> queueMessageConverter, final BeforeCrawlHandler beforeCrawlHandler, final CrawlHandler crawlHandler, final AfterCrawlHandler afterCrawlHandler) {
+		this(numThreads, backingQueue, queueMessageConverter, beforeCrawlHandler, crawlHandler, afterCrawlHandler, new AmassConfig());
+	}
+	
+	/**
+	 * Create a new instance of {@link Amass} that uses the given number of
+	 * threads for crawling purposes, the given backing {@link BlockingQueue}
+	 * to read crawling jobs from, and the given configuration.
+	 * 
+	 * @param numThreads
+	 *            number of worker threads to run in parallel
+	 * 
+	 * @param backingQueue
+	 *            the backing queue from which to read jobs
+	 * 
+	 * @param queueMessageConverter
+	 *            the converter that converts the message from queue and
+	 *            converts it into a {@link CrawlableURL} object
+	 * 
+	 * @param beforeCrawlHandler
+	 *            the handler to run before starting to crawl
+	 * 
+	 * @param crawlHandler
+	 *            the handler that does the actual crawling
+	 * 
+	 * @param afterCrawlHandler
+	 *            the handler to run after completing the crawl
+	 * 
+	 * @param config
+	 *            the configuration to use
+	 */
+	public Amass(final int numThreads, final BlockingQueue<Object> backingQueue, final QueueMessageConverter<? extends Object> queueMessageConverter, final BeforeCrawlHandler beforeCrawlHandler, final CrawlHandler crawlHandler, final AfterCrawlHandler afterCrawlHandler, final AmassConfig config) {
+		this(numThreads, backingQueue, queueMessageConverter, beforeCrawlHandler, crawlHandler, null, afterCrawlHandler, config, false);
+	}
+	
+	private Amass(final int numThreads, final BlockingQueue<Object> backingQueue, final QueueMessageConverter<? extends Object> queueMessageConverter, final BeforeCrawlHandler beforeCrawlHandler, final CrawlHandler crawlHandler, final AsyncCrawlHandler asyncCrawlHandler, final AfterCrawlHandler afterCrawlHandler, final AmassConfig config, final boolean async) {
 		if(numThreads <= 0) {
 			throw new IllegalArgumentException("Number of threads cannot be less than one.");
 		}
@@ -178,18 +386,84 @@ public class Amass {
 			throw new IllegalArgumentException("After crawl handler cannot be null.");
 		}
 		
+		if(config == null) {
+			throw new IllegalArgumentException("Amass configuration cannot be null.");
+		}
+		
+		if(config.getWorkerThreadMode() == WorkerThreadMode.Virtual && !VirtualThreads.isSupported()) {
+			throw new IllegalStateException("Virtual worker threads need Java 21 or later.");
+		}
+		
 		this.numThreads = numThreads;
 		
+		if(config.isRevalidationEnabled()) {
+			this.validatorStore = new ValidatorStore(config.getMaxValidatedURLs());
+			this.validatorStoreFile = config.getValidatorStoreFile();
+			if(this.validatorStoreFile != null && this.validatorStoreFile.exists()) {
+				try {
+					this.validatorStore.load(this.validatorStoreFile);
+				} catch(IOException e) {
+					throw new IllegalStateException("Unable to load validator store from: " + this.validatorStoreFile.getAbsolutePath(), e);
+				}
+			}
+		} else {
+			this.validatorStore = null;
+			this.validatorStoreFile = null;
+		}
+		
 		this.beforeCrawlHandler = beforeCrawlHandler;
-		this.crawlHandler = crawlHandler;
+		if(async) {
+			this.defaultCrawlHandler = null;
+			this.crawlHandler = null;
+		} else if(crawlHandler == null) {
+			// a single pool of connections shared by all workers
+			this.defaultCrawlHandler = new DefaultCrawlHandler(DefaultCrawlHandler.DEFAULT_MAX_CONNECTIONS, DefaultCrawlHandler.DEFAULT_MAX_CONNECTIONS_PER_HOST, DefaultCrawlHandler.DEFAULT_TIMEOUT, DefaultCrawlHandler.DEFAULT_KEEP_ALIVE, DefaultCrawlHandler.DEFAULT_IDLE_TIMEOUT, new CachingDnsResolver(), config.getFetchPolicy(), this.validatorStore);
+			this.crawlHandler = this.defaultCrawlHandler;
+		} else {
+			this.defaultCrawlHandler = null;
+			this.crawlHandler = crawlHandler;
+		}
 		this.afterCrawlHandler = afterCrawlHandler;
 		
+		this.maxAsyncCrawls = config.getMaxAsyncCrawls();
+		if(async) {
+			this.asyncPermits = new Semaphore(this.maxAsyncCrawls);
+		} else {
+			this.asyncPermits = null;
+		}
+		
 		this.amassSignal = new AmassSignal();
-		this.crawlingQueue = new CrawlingQueue(backingQueue, queueMessageConverter, this.amassSignal);
+		CachingDnsResolver dnsResolver = null;
+		if(this.crawlHandler instanceof DefaultCrawlHandler) {
+			dnsResolver = ((DefaultCrawlHandler) this.crawlHandler).getDnsResolver();
+		}
+		
+		this.crawlingQueue = new CrawlingQueue(backingQueue, queueMessageConverter, this.amassSignal, config, dnsResolver);
 		
+		if(async && asyncCrawlHandler == null) {
+			// a single non-blocking client shared by all workers, created
+			// only now as it starts its selector threads right away
+			this.defaultAsyncCrawlHandler = new NioCrawlHandler(NioCrawlHandler.DEFAULT_IO_THREADS, NioCrawlHandler.DEFAULT_MAX_CONNECTIONS, NioCrawlHandler.DEFAULT_MAX_CONNECTIONS_PER_HOST, NioCrawlHandler.DEFAULT_TIMEOUT, NioCrawlHandler.DEFAULT_COMPLETION_THREADS, config.getFetchPolicy(), this.validatorStore);
+			this.asyncCrawlHandler = this.defaultAsyncCrawlHandler;
+		} else {
+			this.defaultAsyncCrawlHandler = null;
+			this.asyncCrawlHandler = asyncCrawlHandler;
+		}
+		
+		this.workerThreadMode = config.getWorkerThreadMode();
+		this.maxContentLength = config.getMaxContentLength();
+		this.fetchPolicy = config.getFetchPolicy();
 		this.workerGroup = new ThreadGroup("Amass-Workers-" + AMASS_INSTANCE_COUNT.getAndIncrement());
-		this.workers = new CrawlingWorker[this.numThreads];
-		this.workerThreads = new Thread[this.numThreads];
+		
+		if(config.isAdaptiveConcurrencyEnabled()) {
+			final long interval = config.getAdaptiveConcurrencyInterval();
+			this.concurrencyController = new AdaptiveConcurrencyController(this, config.getMinAdaptiveThreads(), config.getMaxAdaptiveThreads());
+			this.concurrencyTimer = new Timer("Amass-Concurrency", true);
+			this.concurrencyTimer.scheduleAtFixedRate(this.concurrencyController, interval, interval);
+		} else {
+			this.concurrencyController = null;
+			this.concurrencyTimer = null;
+		}
 		
 		initializeCrawlingThreads();
 	}
@@ -223,18 +497,22 @@ public class Amass {
 	 * @param url
 	 *            the URL to be crawled.
 	 * 
+	 * @return <code>true</code> if the job was queued, or the priority of the
+	 *         queued job was incremented, <code>false</code> if the job was
+	 *         rejected as the queue is full or the URL was already crawled
+	 * 
 	 * @throws IllegalArgumentException
 	 *             if the URL is empty or null
 	 * 
 	 * @throws IllegalStateException
 	 *             if this {@link Amass} instance has been closed.
 	 */
-	public void crawl(final String url) {
+	public boolean crawl(final String url) {
 		if(this.closed) {
 			throw new IllegalStateException("Amass instance has already been closed.");
 		}
 		
-		this.crawlingQueue.submitURL(url);
+		return this.crawlingQueue.submitURL(url);
 	}
 	
 	/**
@@ -247,18 +525,22 @@ public class Amass {
 	 * @param priority
 	 *            the priority to assign to this URL.
 	 * 
+	 * @return <code>true</code> if the job was queued, or the priority of the
+	 *         queued job was incremented, <code>false</code> if the job was
+	 *         rejected as the queue is full or the URL was already crawled
+	 * 
 	 * @throws IllegalArgumentException
 	 *             if the URL is empty or null
 	 * 
 	 * @throws IllegalStateException
 	 *             if this {@link Amass} instance has been closed.
 	 */
-	public void crawl(final String url, final int priority) {
+	public boolean crawl(final String url, final int priority) {
 		if(this.closed) {
 			throw new IllegalStateException("Amass instance has already been closed.");
 		}
 		
-		this.crawlingQueue.submitURL(url, priority);
+		return this.crawlingQueue.submitURL(url, priority);
 	}
 	
 	/**
@@ -269,18 +551,22 @@ public class Amass {
 	 * @param crawlableURL
 	 *            the job to be added
 	 * 
+	 * @return <code>true</code> if the job was queued, or the priority of the
+	 *         queued job was incremented, <code>false</code> if the job was
+	 *         rejected as the queue is full or the URL was already crawled
+	 * 
 	 * @throws IllegalArgumentException
 	 *             if the URL is empty or null
 	 * 
 	 * @throws IllegalStateException
 	 *             if this {@link Amass} instance has been closed.
 	 */
-	public void crawl(CrawlableURL crawlableURL) {
+	public boolean crawl(CrawlableURL crawlableURL) {
 		if(this.closed) {
 			throw new IllegalStateException("Amass instance has already been closed.");
 		}
 		
-		this.crawlingQueue.submitURL(crawlableURL);
+		return this.crawlingQueue.submitURL(crawlableURL);
 	}
 	
 	/**
@@ -294,18 +580,279 @@ public class Amass {
 	 * @param priority
 	 *            the priority to use when adding/increment this job
 	 * 
+	 * @return <code>true</code> if the job was queued, or the priority of the
+	 *         queued job was incremented, <code>false</code> if the job was
+	 *         rejected as the queue is full or the URL was already crawled
+	 * 
 	 * @throws IllegalArgumentException
 	 *             if the URL is empty or null
 	 * 
 	 * @throws IllegalStateException
 	 *             if this {@link Amass} instance has been closed.
 	 */
-	public void crawl(CrawlableURL crawlableURL, final int priority) {
+	public boolean crawl(CrawlableURL crawlableURL, final int priority) {
+		if(this.closed) {
+			throw new IllegalStateException("Amass instance has already been closed.");
+		}
+		
+		return this.crawlingQueue.submitURL(crawlableURL, priority);
+	}
+	
+	/**
+	 * Add the given URL to the queue of crawling jobs with the given priority,
+	 * once the given time has come. The URL is queued within one
+	 * {@link AmassConfig#getSchedulerTickInterval()} of that time, as if
+	 * {@link #crawl(String, int)} were called then, and is thus skipped if
+	 * the seen filter holds it by then.
+	 * 
+	 * @param url
+	 *            the URL to be crawled
+	 * 
+	 * @param priority
+	 *            the priority to assign to this URL
+	 * 
+	 * @param notBefore
+	 *            the time in millis since the epoch before which the URL is
+	 *            not queued
+	 * 
+	 * @return the {@link ScheduledCrawl} that can be used to cancel the crawl
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the URL is empty or null
+	 * 
+	 * @throws IllegalStateException
+	 *             if this {@link Amass} instance has been closed.
+	 */
+	public ScheduledCrawl crawl(final String url, final int priority, final long notBefore) {
+		if(this.closed) {
+			throw new IllegalStateException("Amass instance has already been closed.");
+		}
+		
+		return this.crawlingQueue.schedule(new ScheduledCrawl(url, priority, notBefore, 0));
+	}
+	
+	/**
+	 * Add the given {@link CrawlableURL} instance to the queue of crawling jobs
+	 * with the given priority, once the given time has come.
+	 * 
+	 * @param crawlableURL
+	 *            the job to be added
+	 * 
+	 * @param priority
+	 *            the priority to use when adding/increment this job
+	 * 
+	 * @param notBefore
+	 *            the time in millis since the epoch before which the job is
+	 *            not queued
+	 * 
+	 * @return the {@link ScheduledCrawl} that can be used to cancel the crawl
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the job is null
+	 * 
+	 * @throws IllegalStateException
+	 *             if this {@link Amass} instance has been closed.
+	 * 
+	 * @see #crawl(String, int, long)
+	 */
+	public ScheduledCrawl crawl(CrawlableURL crawlableURL, final int priority, final long notBefore) {
+		if(this.closed) {
+			throw new IllegalStateException("Amass instance has already been closed.");
+		}
+		
+		return this.crawlingQueue.schedule(new ScheduledCrawl(crawlableURL, priority, notBefore, 0));
+	}
+	
+	/**
+	 * Add the given URL to the queue of crawling jobs with the given priority
+	 * now, and again after every period till the returned
+	 * {@link ScheduledCrawl} is cancelled or this instance is shut down. If
+	 * the URL is still queued when it is due again, its priority is
+	 * incremented instead. Each run is queued even if the seen filter holds
+	 * the URL.
+	 * 
+	 * @param url
+	 *            the URL to be crawled
+	 * 
+	 * @param priority
+	 *            the priority to assign to this URL
+	 * 
+	 * @param period
+	 *            the time in millis between two crawls
+	 * 
+	 * @return the {@link ScheduledCrawl} that can be used to cancel the crawls
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the URL is empty or null, or the period is not positive
+	 * 
+	 * @throws IllegalStateException
+	 *             if this {@link Amass} instance has been closed.
+	 */
+	public ScheduledCrawl crawlEvery(final String url, final int priority, final long period) {
+		if(this.closed) {
+			throw new IllegalStateException("Amass instance has already been closed.");
+		}
+		
+		if(period <= 0) {
+			throw new IllegalArgumentException("Period of a recurring crawl must be positive.");
+		}
+		
+		return this.crawlingQueue.schedule(new ScheduledCrawl(url, priority, System.currentTimeMillis(), period));
+	}
+	
+	/**
+	 * Add the given {@link CrawlableURL} instance to the queue of crawling jobs
+	 * with the given priority now, and again after every period.
+	 * 
+	 * @param crawlableURL
+	 *            the job to be added
+	 * 
+	 * @param priority
+	 *            the priority to use when adding/increment this job
+	 * 
+	 * @param period
+	 *            the time in millis between two crawls
+	 * 
+	 * @return the {@link ScheduledCrawl} that can be used to cancel the crawls
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the job is null, or the period is not positive
+	 * 
+	 * @throws IllegalStateException
+	 *             if this {@link Amass} instance has been closed.
+	 * 
+	 * @see #crawlEvery(String, int, long)
+	 */
+	public ScheduledCrawl crawlEvery(CrawlableURL crawlableURL, final int priority, final long period) {
+		if(this.closed) {
+			throw new IllegalStateException("Amass instance has already been closed.");
+		}
+		
+		if(period <= 0) {
+			throw new IllegalArgumentException("Period of a recurring crawl must be positive.");
+		}
+		
+		return this.crawlingQueue.schedule(new ScheduledCrawl(crawlableURL, priority, System.currentTimeMillis(), period));
+	}
+	
+	/**
+	 * Add all the given URLs to the queue of crawling jobs with a default
+	 * priority of ONE. URLs already present, or repeated in the collection,
+	 * have their priority incremented by ONE for each occurrence.
+	 * 
+	 * @param urls
+	 *            the URLs to be crawled
+	 * 
+	 * @return the {@link SubmissionResult} with the number of URLs that were
+	 *         added, bumped in priority or rejected
+	 * 
+	 * @throws IllegalStateException
+	 *             if this {@link Amass} instance has been closed.
+	 */
+	public SubmissionResult crawlAll(final Collection<String> urls) {
+		return this.crawlAll(urls, 1);
+	}
+	
+	/**
+	 * Add all the given URLs to the queue of crawling jobs with the given
+	 * priority. URLs already present, or repeated in the collection, have
+	 * their priority incremented by the given amount for each occurrence.
+	 * 
+	 * @param urls
+	 *            the URLs to be crawled
+	 * 
+	 * @param priority
+	 *            the priority to assign to these URLs
+	 * 
+	 * @return the {@link SubmissionResult} with the number of URLs that were
+	 *         added, bumped in priority or rejected
+	 * 
+	 * @throws IllegalStateException
+	 *             if this {@link Amass} instance has been closed.
+	 */
+	public SubmissionResult crawlAll(final Collection<String> urls, final int priority) {
+		if(urls == null) {
+			throw new IllegalArgumentException("URLs cannot be null");
+		}
+		
+		return this.crawlAll(urls.iterator(), priority);
+	}
+	
+	/**
+	 * Add all URLs returned by the given iterator to the queue of crawling
+	 * jobs with the given priority. URLs already present, or repeated, have
+	 * their priority incremented by the given amount for each occurrence.
+	 * 
+	 * @param urls
+	 *            the iterator over the URLs to be crawled
+	 * 
+	 * @param priority
+	 *            the priority to assign to these URLs
+	 * 
+	 * @return the {@link SubmissionResult} with the number of URLs that were
+	 *         added, bumped in priority or rejected
+	 * 
+	 * @throws IllegalStateException
+	 *             if this {@link Amass} instance has been closed.
+	 */
+	public SubmissionResult crawlAll(final Iterator<String> urls, final int priority) {
+		if(this.closed) {
+			throw new IllegalStateException("Amass instance has already been closed.");
+		}
+		
+		return this.crawlingQueue.submitAllURLs(urls, priority);
+	}
+	
+	/**
+	 * Add all the given {@link CrawlableURL} instances to the queue of crawling
+	 * jobs with the given priority. Jobs already present, or repeated in the
+	 * collection, have their priority incremented by the given amount for
+	 * each occurrence.
+	 * 
+	 * @param crawlableURLs
+	 *            the jobs to be added
+	 * 
+	 * @param priority
+	 *            the priority to use when adding/incrementing these jobs
+	 * 
+	 * @return the {@link SubmissionResult} with the number of jobs that were
+	 *         added, bumped in priority or rejected
+	 * 
+	 * @throws IllegalStateException
+	 *             if this {@link Amass} instance has been closed.
+	 */
+	public SubmissionResult crawlAllCrawlableURLs(final Collection<? extends CrawlableURL> crawlableURLs, final int priority) {
+		if(crawlableURLs == null) {
+			throw new IllegalArgumentException("Crawlable URLs cannot be null");
+		}
+		
+		return this.crawlAllCrawlableURLs(crawlableURLs.iterator(), priority);
+	}
+	
+	/**
+	 * Add all {@link CrawlableURL} instances returned by the given iterator to
+	 * the queue of crawling jobs with the given priority. Jobs already
+	 * present, or repeated, have their priority incremented by the given
+	 * amount for each occurrence.
+	 * 
+	 * @param crawlableURLs
+	 *            the iterator over the jobs to be added
+	 * 
+	 * @param priority
+	 *            the priority to use when adding/incrementing these jobs
+	 * 
+	 * @return the {@link SubmissionResult} with the number of jobs that were
+	 *         added, bumped in priority or rejected
+	 * 
+	 * @throws IllegalStateException
+	 *             if this {@link Amass} instance has been closed.
+	 */
+	public SubmissionResult crawlAllCrawlableURLs(final Iterator<? extends CrawlableURL> crawlableURLs, final int priority) {
 		if(this.closed) {
 			throw new IllegalStateException("Amass instance has already been closed.");
 		}
 		
-		this.crawlingQueue.submitURL(crawlableURL, priority);
+		return this.crawlingQueue.submitAll(crawlableURLs, priority);
 	}
 	
 	/**
@@ -317,6 +864,50 @@ public class Amass {
 	public boolean hasPendingWork() {
 		return this.crawlingQueue.hasJob();
 	}
+	
+	/**
+	 * Return the number of crawls scheduled for later. Crawls that are not
+	 * yet due do not count as pending work, and are dropped when this
+	 * instance shuts down.
+	 * 
+	 * @return the number of crawls not yet due
+	 */
+	public int getNumScheduledCrawls() {
+		return this.crawlingQueue.getNumScheduled();
+	}
+	
+	/**
+	 * Change the share of the workers given to a job class when fair queuing
+	 * is enabled. A class with weight two gets twice the crawls of a class
+	 * with weight one, as long as both have jobs waiting.
+	 * 
+	 * @param jobClass
+	 *            the key of the job class, as returned by
+	 *            {@link ClassifiedCrawlableURL#getJobClass()}
+	 * 
+	 * @param weight
+	 *            the weight, relative to the weights of the other classes
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the weight is not a positive number
+	 * 
+	 * @throws IllegalStateException
+	 *             if fair queuing has not been enabled
+	 */
+	public void setJobClassWeight(final String jobClass, final double weight) {
+		this.crawlingQueue.setJobClassWeight(jobClass, weight);
+	}
+	
+	/**
+	 * Return the number of queued and served jobs of each job class when
+	 * fair queuing is enabled.
+	 * 
+	 * @return the statistics of each job class seen so far, empty if fair
+	 *         queuing has not been enabled
+	 */
+	public List<JobClassStatistics> getJobClassStatistics() {
+		return this.crawlingQueue.getJobClassStatistics();
+	}
 
 	// Internal methods follow
 	
@@ -328,17 +919,106 @@ public class Amass {
 	protected void initializeCrawlingThreads() {
 		this.amassSignal.setInitializing();
 		
-		for(int index = 0; index < this.numThreads; index++) {
-			CrawlingWorker crawlingThread = new CrawlingWorker(this.crawlingQueue, this.beforeCrawlHandler, this.crawlHandler, this.afterCrawlHandler, this.amassSignal);
-			Thread thread = new Thread(this.workerGroup, crawlingThread, "Amass-Worker-" + index);
+		synchronized(this) {
+			startWorkers(this.numThreads);
+		}
+		
+		this.amassSignal.setInitialized();
+	}
+	
+	/**
+	 * Change the number of worker threads of this instance. New workers are
+	 * started right away. When shrinking, the surplus workers complete their
+	 * current job and then end.
+	 * 
+	 * @param numThreads
+	 *            the number of worker threads to run
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the number of threads is less than one
+	 * 
+	 * @throws IllegalStateException
+	 *             if this {@link Amass} instance has been closed.
+	 */
+	public void setNumThreads(final int numThreads) {
+		if(numThreads <= 0) {
+			throw new IllegalArgumentException("Number of threads cannot be less than one.");
+		}
+		
+		synchronized(this) {
+			if(this.closed) {
+				throw new IllegalStateException("Amass instance has already been closed.");
+			}
+			
+			// forget the workers that have ended
+			Iterator<CrawlingWorker> workerIterator = this.workers.iterator();
+			Iterator<Thread> threadIterator = this.workerThreads.iterator();
+			int active = 0;
+			while(workerIterator.hasNext()) {
+				CrawlingWorker worker = workerIterator.next();
+				Thread thread = threadIterator.next();
+				if(!thread.isAlive()) {
+					workerIterator.remove();
+					threadIterator.remove();
+					continue;
+				}
+				
+				if(!worker.isClosureSeeked()) {
+					active++;
+				}
+			}
+			
+			if(numThreads > active) {
+				startWorkers(numThreads - active);
+			} else {
+				// retire the most recent workers
+				int surplus = active - numThreads;
+				for(int index = this.workers.size() - 1; index >= 0 && surplus > 0; index--) {
+					CrawlingWorker worker = this.workers.get(index);
+					if(!worker.isClosureSeeked()) {
+						worker.seekClosure();
+						surplus--;
+					}
+				}
+				
+				// wake up idle workers so that they can see the closure
+				this.crawlingQueue.wakeUpWorkers();
+			}
 			
-			this.workers[index] = crawlingThread;
-			this.workerThreads[index] = thread;
+			this.numThreads = numThreads;
+		}
+	}
+	
+	/**
+	 * Create and start the given number of worker threads. Must be called
+	 * while holding the lock on this instance.
+	 * 
+	 * @param count
+	 *            the number of workers to start
+	 */
+	private void startWorkers(final int count) {
+		for(int started = 0; started < count; started++) {
+			final int index = this.workerIndex.getAndIncrement();
+			
+			CrawlingWorker crawlingThread;
+			if(this.asyncCrawlHandler != null) {
+				crawlingThread = new CrawlingWorker(this.crawlingQueue, this.beforeCrawlHandler, this.asyncCrawlHandler, this.afterCrawlHandler, this.amassSignal, this.asyncPermits, this.crawlStatistics, this.fetchPolicy, this.validatorStore);
+			} else {
+				crawlingThread = new CrawlingWorker(this.crawlingQueue, this.beforeCrawlHandler, this.crawlHandler, this.afterCrawlHandler, this.amassSignal, this.crawlStatistics, this.maxContentLength, this.fetchPolicy, this.validatorStore);
+			}
+			
+			Thread thread;
+			if(this.workerThreadMode == WorkerThreadMode.Virtual) {
+				thread = VirtualThreads.newThread("Amass-Worker-" + index, crawlingThread);
+			} else {
+				thread = new Thread(this.workerGroup, crawlingThread, "Amass-Worker-" + index);
+			}
+			
+			this.workers.add(crawlingThread);
+			this.workerThreads.add(thread);
 			
 			thread.start();
 		}
-		
-		this.amassSignal.setInitialized();
 	}
 	
 	/**
@@ -346,7 +1026,13 @@ public class Amass {
 	 * 
 	 */
 	public void close() {
-		this.closed = true;
+		synchronized(this) {
+			this.closed = true;
+		}
+		
+		if(this.concurrencyTimer != null) {
+			this.concurrencyTimer.cancel();
+		}
 	}
 	
 	/**
@@ -362,6 +1048,15 @@ public class Amass {
 		
 		// check for closure of all crawling threads
 		waitForClosureOfCrawlingThreads(false);
+		
+		// wait for crawls still in flight
+		waitForAsyncCrawls();
+		
+		// release the queue
+		this.crawlingQueue.shutdown();
+		reportDroppedRetries();
+		closeDefaultCrawlHandler();
+		saveValidatorStore();
 	}
 	
 	/**
@@ -390,6 +1085,9 @@ public class Amass {
 	 * Cancel all current jobs and then shut down. This method will auto-close
 	 * this instance, and no more crawling jobs will be accepted.
 	 * 
+	 * When checkpointing is enabled, the cancelled jobs stay in the
+	 * checkpoint and are resumed by the next instance that uses it.
+	 * 
 	 */
 	public void cancelAndShutdown() {
 		this.close();
@@ -397,14 +1095,26 @@ public class Amass {
 		// signal stopping of everything right away
 		this.amassSignal.stop();
 		
-		// interrupt all running worker threads
-		this.workerGroup.interrupt();
+		// interrupt all running worker threads - we do not use the thread
+		// group for this as virtual threads are not part of it
+		for(Thread workerThread : getWorkerThreads()) {
+			workerThread.interrupt();
+		}
 		
 		// check for closure of queue
 		this.crawlingQueue.waitForClosure(true);
 		
 		// check for closure of all crawling threads
 		waitForClosureOfCrawlingThreads(true);
+		
+		// wait for crawls still in flight
+		waitForAsyncCrawls();
+		
+		// release the queue
+		this.crawlingQueue.shutdown();
+		reportDroppedRetries();
+		closeDefaultCrawlHandler();
+		saveValidatorStore();
 	}
 	
 	/**
@@ -416,9 +1126,16 @@ public class Amass {
 	 *            that this is a forced shutdown of the crawling instance.
 	 */
 	protected void waitForClosureOfCrawlingThreads(final boolean interruptThreads) {
-		for(int index = 0; index < this.numThreads; index++) {
-			final CrawlingWorker worker = this.workers[index];
-			final Thread workerThread = this.workerThreads[index];
+		final CrawlingWorker[] workers;
+		final Thread[] workerThreads;
+		synchronized(this) {
+			workers = getCrawlingWorkers();
+			workerThreads = getWorkerThreads();
+		}
+		
+		for(int index = 0; index < workers.length; index++) {
+			final CrawlingWorker worker = workers[index];
+			final Thread workerThread = workerThreads[index];
 
 			do {
 				if(!workerThread.isAlive()) {
@@ -440,6 +1157,85 @@ public class Amass {
 		}
 	}
 
+	/**
+	 * Wait till all crawls dispatched to the {@link #asyncCrawlHandler} have
+	 * completed. Does nothing if no such handler is in use.
+	 * 
+	 */
+	protected void waitForAsyncCrawls() {
+		if(this.asyncPermits == null) {
+			return;
+		}
+		
+		this.asyncPermits.acquireUninterruptibly(this.maxAsyncCrawls);
+		this.asyncPermits.release(this.maxAsyncCrawls);
+	}
+
+	/**
+	 * Report the final failure of the retries that were dropped when the
+	 * queue was shut down to the {@link #afterCrawlHandler}, as it has been
+	 * told of their failure as one that would be retried.
+	 * 
+	 */
+	protected void reportDroppedRetries() {
+		for(ScheduledRetry retry : this.crawlingQueue.takeDroppedRetries()) {
+			CrawlableURL crawlableURL = retry.getCrawlableURL();
+			if(crawlableURL == null) {
+				crawlableURL = new DefaultCrawlableURL(retry.getURL());
+			}
+			
+			try {
+				if(this.afterCrawlHandler instanceof RetryAwareAfterCrawlHandler) {
+					// the attempt that failed is the one before the retry
+					((RetryAwareAfterCrawlHandler) this.afterCrawlHandler).crawlError(crawlableURL, retry.getPriority(), retry.getCause(), 0, retry.getAttempt() - 1, false);
+				} else {
+					this.afterCrawlHandler.crawlError(crawlableURL, retry.getPriority(), retry.getCause(), 0);
+				}
+			} catch(Throwable t) {
+				LOGGER.error("Unable to execute after-crawl-error handler on url {}", crawlableURL, t);
+			}
+		}
+	}
+
+	/**
+	 * Close the connections of the {@link #defaultCrawlHandler} and the
+	 * {@link #defaultAsyncCrawlHandler}, if we created either.
+	 * 
+	 */
+	protected void closeDefaultCrawlHandler() {
+		if(this.defaultCrawlHandler != null) {
+			try {
+				this.defaultCrawlHandler.close();
+			} catch(IOException e) {
+				LOGGER.error("Unable to close connections of default crawl handler", e);
+			}
+		}
+		
+		if(this.defaultAsyncCrawlHandler != null) {
+			try {
+				this.defaultAsyncCrawlHandler.close();
+			} catch(IOException e) {
+				LOGGER.error("Unable to close connections of default async crawl handler", e);
+			}
+		}
+	}
+
+	/**
+	 * Save the {@link #validatorStore} to its file, if it is to be persisted.
+	 * 
+	 */
+	protected void saveValidatorStore() {
+		if(this.validatorStoreFile == null) {
+			return;
+		}
+		
+		try {
+			this.validatorStore.save(this.validatorStoreFile);
+		} catch(IOException e) {
+			LOGGER.error("Unable to save validator store to: " + this.validatorStoreFile.getAbsolutePath(), e);
+		}
+	}
+
 	/**
 	 * Output the debug information about various jobs that
 	 * we have.
@@ -457,6 +1253,41 @@ public class Amass {
 		return this.numThreads;
 	}
 
+	/**
+	 * @return the statistics of all crawls made so far
+	 */
+	public CrawlStatistics getCrawlStatistics() {
+		return this.crawlStatistics;
+	}
+
+	/**
+	 * @return the statistics of the pool of connections when crawling with a
+	 *         {@link DefaultCrawlHandler}, <code>null</code> otherwise
+	 */
+	public ConnectionPoolStatistics getConnectionPoolStatistics() {
+		if(this.crawlHandler instanceof DefaultCrawlHandler) {
+			return ((DefaultCrawlHandler) this.crawlHandler).getStatistics();
+		}
+		
+		return null;
+	}
+
+	/**
+	 * @return the validators of the URLs crawled, <code>null</code> if
+	 *         revalidation is not enabled
+	 */
+	public ValidatorStore getValidatorStore() {
+		return this.validatorStore;
+	}
+
+	/**
+	 * @return the controller that adapts the number of workers, to tune it,
+	 *         <code>null</code> if adaptive concurrency is not enabled
+	 */
+	public AdaptiveConcurrencyController getConcurrencyController() {
+		return this.concurrencyController;
+	}
+
 	/**
 	 * @return the beforeCrawlHandler
 	 */
@@ -471,11 +1302,22 @@ public class Amass {
 		return this.afterCrawlHandler;
 	}
 
+	/**
+	 * @return a snapshot of the current worker objects
+	 */
 	CrawlingWorker[] getCrawlingWorkers() {
-		return this.workers;
+		synchronized(this) {
+			return this.workers.toArray(new CrawlingWorker[this.workers.size()]);
+		}
 	}
 	
+	/**
+	 * @return a snapshot of the current worker threads, in the same order as
+	 *         {@link #getCrawlingWorkers()}
+	 */
 	Thread[] getWorkerThreads() {
-		 return this.workerThreads;
+		synchronized(this) {
+			return this.workerThreads.toArray(new Thread[this.workerThreads.size()]);
+		}
 	}
 }
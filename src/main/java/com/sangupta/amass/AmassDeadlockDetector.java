@@ -31,6 +31,11 @@ import com.sangupta.jerry.util.DateUtils;
 import com.sangupta.jerry.util.StringUtils;
 
 /**
+ * A {@link TimerTask} that dumps the state of all worker threads of an
+ * {@link Amass} instance, along with any dead-locked threads found by the
+ * JVM. Virtual worker threads are never reported as dead-locked by the JVM,
+ * but their last crawl times and stack traces are dumped as usual.
+ * 
  * @author sangupta
  *
  */
@@ -44,19 +49,25 @@ public class AmassDeadlockDetector extends TimerTask {
 		THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
 	}
 	
-	private final CrawlingWorker[] workers;
+	/**
+	 * The instance whose workers are checked on every run, as the workers
+	 * may change over time
+	 */
+	private final Amass amass;
+	
+	private CrawlingWorker[] workers;
 	
-	private final Thread[] threads;
+	private Thread[] threads;
 	
 	public AmassDeadlockDetector(Amass amass) {
-		this.workers = amass.getCrawlingWorkers();
-		this.threads = amass.getWorkerThreads();
+		this.amass = amass;
 	}
 	
 	/**
 	 * @param workers
 	 */
 	AmassDeadlockDetector(CrawlingWorker[] workers, Thread[] threads) {
+		this.amass = null;
 		this.workers = workers;
 		this.threads = threads;
 	}
@@ -66,6 +77,13 @@ public class AmassDeadlockDetector extends TimerTask {
 	 */
 	@Override
 	public void run() {
+		if(this.amass != null) {
+			synchronized(this.amass) {
+				this.workers = this.amass.getCrawlingWorkers();
+				this.threads = this.amass.getWorkerThreads();
+			}
+		}
+		
 		// for every run, check out the threads of amass and see if they are blocked
 		// or not, and why they are blocked
 		long[] ids = THREAD_MX_BEAN.findDeadlockedThreads();
@@ -0,0 +1,51 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.core;
+
+import com.sangupta.jerry.http.WebResponse;
+
+/**
+ * Callback that an {@link AsyncCrawlHandler} uses to report the outcome of a
+ * crawl.
+ * 
+ * @author sangupta
+ *
+ */
+public interface AsyncCrawlCallback {
+	
+	/**
+	 * Method to call when the crawl completed with a response.
+	 * 
+	 * @param response
+	 *            the {@link WebResponse} received as part of crawling
+	 */
+	public void completed(WebResponse response);
+	
+	/**
+	 * Method to call when the crawl could not be completed.
+	 * 
+	 * @param throwable
+	 *            the error encountered during the crawl
+	 */
+	public void failed(Throwable throwable);
+
+}
@@ -0,0 +1,55 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.core;
+
+import com.sangupta.amass.domain.CrawlableURL;
+
+/**
+ * Contract for custom crawling functions that do not block the calling
+ * thread. The crawl is started by {@link #crawl(CrawlableURL, AsyncCrawlCallback)}
+ * and its outcome is reported via the supplied {@link AsyncCrawlCallback}.
+ * 
+ * @author sangupta
+ *
+ */
+public interface AsyncCrawlHandler {
+	
+	/**
+	 * Start crawling the given URL and return right away. Implementations
+	 * must invoke exactly one method of the callback once the crawl has
+	 * completed or failed. Any exception thrown from this method is treated
+	 * as a failure of the crawl.
+	 * 
+	 * The callback runs the after-crawl handler and takes the lock of the
+	 * crawling queue, and thus is to be invoked on a thread that may block,
+	 * not on one that drives the I/O of other crawls.
+	 * 
+	 * @param crawlableURL
+	 *            the actual URL wrapped in a {@link CrawlableURL} instance that
+	 *            needs to be crawled.
+	 * 
+	 * @param callback
+	 *            the callback to notify when the crawl is over
+	 */
+	public void crawl(CrawlableURL crawlableURL, AsyncCrawlCallback callback);
+
+}
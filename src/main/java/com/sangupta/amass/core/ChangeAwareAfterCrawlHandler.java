@@ -0,0 +1,62 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.core;
+
+import com.sangupta.amass.domain.CrawlableURL;
+
+/**
+ * An {@link AfterCrawlHandler} that is told apart of crawls that found the
+ * page unchanged since its last crawl, so that it need not process the page
+ * again. A page is unchanged when the server answers a conditional request
+ * with <code>304 Not Modified</code>, or sends a body that hashes the same
+ * as the last one.
+ * 
+ * When an {@link AfterCrawlHandler} implements this interface, unchanged
+ * crawls are handed to the method of this interface only. A plain
+ * {@link AfterCrawlHandler} gets them as usual responses.
+ * 
+ * @author sangupta
+ *
+ */
+public interface ChangeAwareAfterCrawlHandler extends AfterCrawlHandler {
+	
+	/**
+	 * Method called when the page at a URL has not changed since its last
+	 * crawl.
+	 * 
+	 * @param crawlableURL
+	 *            the URL that was being crawled
+	 * 
+	 * @param priority
+	 *            the priority with which the URL was crawled.
+	 * 
+	 * @param responseCode
+	 *            the HTTP status code of the response, <code>304</code> if
+	 *            the server said the page is unchanged
+	 * 
+	 * @param timeConsumed
+	 *            the time consumed in milli-seconds to crawl
+	 */
+	public void crawlUnchanged(CrawlableURL crawlableURL, int priority, int responseCode, long timeConsumed);
+
+}
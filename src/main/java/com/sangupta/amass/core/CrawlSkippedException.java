@@ -0,0 +1,89 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.core;
+
+/**
+ * Thrown by a {@link CrawlHandler} when the {@link FetchPolicy} turned down
+ * the body of a response, to report the skip in place of a response.
+ * 
+ * @author sangupta
+ *
+ */
+public class CrawlSkippedException extends RuntimeException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final int responseCode;
+	
+	private final String contentType;
+	
+	private final long contentLength;
+	
+	/**
+	 * Create a new exception.
+	 * 
+	 * @param url
+	 *            the URL whose body was skipped
+	 * 
+	 * @param responseCode
+	 *            the HTTP status code of the response
+	 * 
+	 * @param contentType
+	 *            the value of the <code>Content-Type</code> header, if any
+	 * 
+	 * @param contentLength
+	 *            the length of the body as told by the server,
+	 *            <code>-1</code> if not known
+	 */
+	public CrawlSkippedException(String url, int responseCode, String contentType, long contentLength) {
+		super("Skipped body of url: " + url + " with status " + responseCode + " and content type " + contentType);
+		
+		this.responseCode = responseCode;
+		this.contentType = contentType;
+		this.contentLength = contentLength;
+	}
+	
+	// Usual accessors follow
+
+	/**
+	 * @return the responseCode
+	 */
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+	/**
+	 * @return the contentType
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @return the contentLength
+	 */
+	public long getContentLength() {
+		return contentLength;
+	}
+
+}
@@ -0,0 +1,64 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.core;
+
+import com.sangupta.amass.domain.CrawlableURL;
+
+/**
+ * Contract for deciding, from the status and headers of a response, whether
+ * its body is worth downloading. The decision is taken as soon as the
+ * headers have been received, so that unwanted bodies such as videos or
+ * archives are never downloaded.
+ * 
+ * A crawl whose body is not wanted is neither an error nor a success: it is
+ * reported to a {@link SkipAwareAfterCrawlHandler}, and to no other
+ * {@link AfterCrawlHandler}.
+ * 
+ * @author sangupta
+ *
+ */
+public interface FetchPolicy {
+	
+	/**
+	 * Check if the body of a response is to be downloaded.
+	 * 
+	 * @param crawlableURL
+	 *            the URL being crawled
+	 * 
+	 * @param responseCode
+	 *            the HTTP status code of the response
+	 * 
+	 * @param contentType
+	 *            the value of the <code>Content-Type</code> header,
+	 *            <code>null</code> if there is none
+	 * 
+	 * @param contentLength
+	 *            the length of the body as told by the server,
+	 *            <code>-1</code> if not known
+	 * 
+	 * @return <code>true</code> to download the body, <code>false</code> to
+	 *         skip it
+	 */
+	public boolean shouldFetch(CrawlableURL crawlableURL, int responseCode, String contentType, long contentLength);
+
+}
@@ -0,0 +1,53 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.core;
+
+import com.sangupta.amass.domain.CrawlableURL;
+
+/**
+ * Contract for deciding whether, and when, a failed crawl is tried again. A
+ * retry is held aside till it is due and then queued again, so that no
+ * worker waits for it.
+ * 
+ * @author sangupta
+ *
+ */
+public interface RetryPolicy {
+	
+	/**
+	 * Return the time to wait before crawling the given URL again.
+	 * 
+	 * @param crawlableURL
+	 *            the URL whose crawl failed
+	 * 
+	 * @param attempt
+	 *            the attempt that failed, one for the first crawl
+	 * 
+	 * @param throwable
+	 *            the error the crawl failed with
+	 * 
+	 * @return the delay in millis before the next attempt, or a negative
+	 *         value to not try again
+	 */
+	public long getRetryDelay(CrawlableURL crawlableURL, int attempt, Throwable throwable);
+
+}
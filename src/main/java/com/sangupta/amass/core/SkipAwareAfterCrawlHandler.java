@@ -0,0 +1,63 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.core;
+
+import com.sangupta.amass.domain.CrawlableURL;
+
+/**
+ * An {@link AfterCrawlHandler} that is also told of crawls whose body was
+ * turned down by the {@link FetchPolicy}. A plain {@link AfterCrawlHandler}
+ * does not hear of such crawls at all.
+ * 
+ * @author sangupta
+ *
+ */
+public interface SkipAwareAfterCrawlHandler extends AfterCrawlHandler {
+	
+	/**
+	 * Method called when the body of the response to a URL was not
+	 * downloaded, as per the {@link FetchPolicy}.
+	 * 
+	 * @param crawlableURL
+	 *            the URL that was being crawled
+	 * 
+	 * @param priority
+	 *            the priority with which the URL was crawled.
+	 * 
+	 * @param responseCode
+	 *            the HTTP status code of the response
+	 * 
+	 * @param contentType
+	 *            the value of the <code>Content-Type</code> header,
+	 *            <code>null</code> if there was none
+	 * 
+	 * @param contentLength
+	 *            the length of the body as told by the server,
+	 *            <code>-1</code> if not known
+	 * 
+	 * @param timeConsumed
+	 *            the time consumed in milli-seconds to crawl
+	 */
+	public void crawlSkipped(CrawlableURL crawlableURL, int priority, int responseCode, String contentType, long contentLength, long timeConsumed);
+
+}
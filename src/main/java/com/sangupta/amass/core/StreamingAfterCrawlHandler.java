@@ -0,0 +1,71 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.core;
+
+import java.io.IOException;
+
+import com.sangupta.amass.domain.CrawlableURL;
+import com.sangupta.amass.domain.StreamingWebResponse;
+
+/**
+ * An {@link AfterCrawlHandler} that reads the body of a response as it
+ * arrives, rather than after it has been held in memory in full. When the
+ * {@link CrawlHandler} is a {@link StreamingCrawlHandler} the body is read
+ * straight from the connection; otherwise the buffered response is handed
+ * over as a stream.
+ * 
+ * When an {@link AfterCrawlHandler} implements this interface, successful
+ * crawls are handed to the method of this interface only. Failures are still
+ * reported as described by {@link AfterCrawlHandler} and
+ * {@link RetryAwareAfterCrawlHandler}.
+ * 
+ * @author sangupta
+ *
+ */
+public interface StreamingAfterCrawlHandler extends AfterCrawlHandler {
+	
+	/**
+	 * Method called once the response headers of a URL have been received.
+	 * The body can be read only till this method returns, after which the
+	 * response is closed.
+	 * 
+	 * @param crawlableURL
+	 *            the URL that was being crawled
+	 * 
+	 * @param priority
+	 *            the priority with which the URL was crawled.
+	 * 
+	 * @param response
+	 *            the response whose body is yet to be read
+	 * 
+	 * @param timeConsumed
+	 *            the time consumed in milli-seconds till the headers were
+	 *            received
+	 * 
+	 * @throws IOException
+	 *             if reading the body fails, in which case the crawl is
+	 *             treated as failed and may be tried again
+	 */
+	public void afterCrawl(CrawlableURL crawlableURL, int priority, StreamingWebResponse response, long timeConsumed) throws IOException;
+
+}
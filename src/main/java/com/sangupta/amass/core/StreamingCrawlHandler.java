@@ -0,0 +1,57 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.core;
+
+import com.sangupta.amass.domain.CrawlableURL;
+import com.sangupta.amass.domain.StreamingWebResponse;
+
+/**
+ * A {@link CrawlHandler} that can also return the response before its body
+ * has been read, so that the body never has to be held in memory at once.
+ * The streaming method is used when the {@link AfterCrawlHandler} is a
+ * {@link StreamingAfterCrawlHandler}, and the buffered one otherwise.
+ * 
+ * @author sangupta
+ *
+ */
+public interface StreamingCrawlHandler extends CrawlHandler {
+	
+	/**
+	 * Crawl the given URL and return as soon as the response headers have
+	 * been received. The caller reads the body from the returned response,
+	 * and closes it once done.
+	 * 
+	 * @param crawlableURL
+	 *            the actual URL wrapped in a {@link CrawlableURL} instance that
+	 *            needs to be crawled.
+	 * 
+	 * @param maxContentLength
+	 *            the number of bytes after which to cut the body short, zero
+	 *            for no limit
+	 * 
+	 * @return A {@link StreamingWebResponse} object over the response of the
+	 *         URL
+	 */
+	public StreamingWebResponse crawlStreaming(CrawlableURL crawlableURL, long maxContentLength);
+
+}
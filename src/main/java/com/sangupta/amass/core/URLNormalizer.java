@@ -0,0 +1,55 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.core;
+
+import com.sangupta.amass.domain.CrawlableURL;
+import com.sangupta.amass.domain.DefaultCrawlableURL;
+
+/**
+ * Converts a URL to its canonical form, so that different spellings of the
+ * same URL are queued, de-duplicated and crawled as a single job.
+ * 
+ * The normalizer is applied to URLs submitted as {@link String}s or as
+ * {@link DefaultCrawlableURL}s. Other {@link CrawlableURL} implementations
+ * are queued with the URL they return, and should normalize it themselves if
+ * needed.
+ * 
+ * Implementations must be thread-safe, and should be cheap, as they are called
+ * for every URL submitted.
+ * 
+ * @author sangupta
+ *
+ */
+public interface URLNormalizer {
+	
+	/**
+	 * Return the canonical form of the given URL.
+	 * 
+	 * @param url
+	 *            the URL to normalize, never <code>null</code>
+	 * 
+	 * @return the canonical URL, which may be the same instance as the given
+	 *         URL if it already is canonical
+	 */
+	public String normalize(String url);
+
+}
@@ -0,0 +1,967 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.domain;
+
+import java.io.File;
+import java.util.Map;
+
+import com.sangupta.amass.AdaptiveConcurrencyController;
+import com.sangupta.amass.Amass;
+import com.sangupta.amass.core.AsyncCrawlHandler;
+import com.sangupta.amass.core.FetchPolicy;
+import com.sangupta.amass.core.RetryPolicy;
+import com.sangupta.amass.core.URLNormalizer;
+import com.sangupta.amass.impl.BucketedJobStore;
+import com.sangupta.amass.impl.FairJobStore;
+import com.sangupta.amass.impl.JobStore;
+import com.sangupta.amass.impl.SpillingJobStore;
+import com.sangupta.amass.impl.ValidatorStore;
+
+/**
+ * Configuration options for an {@link Amass} instance. The values are read
+ * when the {@link Amass} instance is constructed, and any change made to this
+ * object after that has no effect.
+ * 
+ * @author sangupta
+ *
+ */
+public class AmassConfig {
+	
+	/**
+	 * The kind of {@link JobStore} that holds the pending jobs of the
+	 * internal queue.
+	 */
+	private JobStoreType jobStoreType = JobStoreType.Heap;
+	
+	/**
+	 * The number of priority lanes when using {@link JobStoreType#Bucketed}
+	 */
+	private int priorityLanes = BucketedJobStore.DEFAULT_LANES;
+	
+	/**
+	 * The time in millis after which a waiting job gains one priority step
+	 * over newly queued jobs, zero for no aging.
+	 */
+	private long agingInterval = 0;
+	
+	/**
+	 * Whether the workers are shared among job classes as per their weights,
+	 * instead of by priority alone.
+	 */
+	private boolean fairQueuingEnabled = false;
+	
+	/**
+	 * The initial weights of the job classes by their key, <code>null</code>
+	 * for all classes to have the {@link FairJobStore#DEFAULT_WEIGHT}.
+	 */
+	private Map<String, Double> jobClassWeights = null;
+	
+	/**
+	 * The time in millis between two checks for scheduled crawls that are
+	 * due. Scheduled crawls are queued up to this much after their time.
+	 */
+	private long schedulerTickInterval = 100;
+	
+	/**
+	 * The policy that decides whether failed crawls are tried again,
+	 * <code>null</code> to not retry.
+	 */
+	private RetryPolicy retryPolicy = null;
+	
+	/**
+	 * The directory to spill low priority jobs to, <code>null</code> to keep
+	 * all jobs in memory.
+	 */
+	private File spillDirectory = null;
+	
+	/**
+	 * The maximum number of jobs kept on the heap when spilling to disk, or
+	 * when using {@link JobStoreType#OffHeap}.
+	 */
+	private int maxInMemoryJobs = SpillingJobStore.DEFAULT_MAX_IN_MEMORY;
+	
+	/**
+	 * The directory to checkpoint the pending jobs to, <code>null</code> to
+	 * not persist them.
+	 */
+	private File checkpointDirectory = null;
+	
+	/**
+	 * The time in millis between two checkpoints.
+	 */
+	private long checkpointInterval = 60000;
+	
+	/**
+	 * Whether URLs that have already been crawled are remembered, so that
+	 * submitting them again is ignored.
+	 */
+	private boolean seenFilterEnabled = false;
+	
+	/**
+	 * The number of URLs the seen filter is initially sized for. It grows on
+	 * its own beyond this.
+	 */
+	private long seenFilterExpectedURLs = 1000000;
+	
+	/**
+	 * The rate at which the seen filter wrongly reports a URL as crawled.
+	 */
+	private double seenFilterFalsePositiveRate = 0.01;
+	
+	/**
+	 * The time in millis after which a crawled URL may be crawled again,
+	 * zero for never.
+	 */
+	private long seenFilterExpiry = 0;
+	
+	/**
+	 * The file to load the seen filter from and save it to,
+	 * <code>null</code> to not persist it.
+	 */
+	private File seenFilterFile = null;
+	
+	/**
+	 * The normalizer applied to submitted URLs before de-duplication,
+	 * <code>null</code> to queue URLs as submitted.
+	 */
+	private URLNormalizer urlNormalizer = null;
+	
+	/**
+	 * The minimum time in millis between two crawls of the same host, zero
+	 * for no delay.
+	 */
+	private long politenessDelay = 0;
+	
+	/**
+	 * The maximum number of crawls of the same host that may run at the same
+	 * time, zero for no limit.
+	 */
+	private int maxRequestsPerHost = 0;
+	
+	/**
+	 * The maximum number of crawls in flight when crawling using an
+	 * {@link AsyncCrawlHandler}.
+	 */
+	private int maxAsyncCrawls = 1000;
+	
+	/**
+	 * The kind of threads to run the crawling workers on.
+	 */
+	private WorkerThreadMode workerThreadMode = WorkerThreadMode.Platform;
+	
+	/**
+	 * The maximum number of jobs the internal queue may hold, zero for no
+	 * limit.
+	 */
+	private int maxPendingJobs = 0;
+	
+	/**
+	 * The approximate maximum number of bytes the jobs held in the internal
+	 * queue may take, zero for no limit.
+	 */
+	private long maxPendingBytes = 0;
+	
+	/**
+	 * What to do when a new job is submitted to a full internal queue.
+	 */
+	private OverflowPolicy overflowPolicy = OverflowPolicy.Block;
+	
+	/**
+	 * The time in millis to wait for room when using
+	 * {@link OverflowPolicy#TimedOffer}.
+	 */
+	private long overflowTimeout = 1000;
+	
+	/**
+	 * The number of bytes after which the body of a streamed response is cut
+	 * short, zero for no limit.
+	 */
+	private long maxContentLength = 0;
+	
+	/**
+	 * The policy that decides, from the headers of a response, whether its
+	 * body is downloaded, <code>null</code> to download all bodies.
+	 */
+	private FetchPolicy fetchPolicy = null;
+	
+	/**
+	 * Whether the validators of crawled URLs are remembered, so that crawling
+	 * them again sends conditional requests and tells unchanged pages apart.
+	 */
+	private boolean revalidationEnabled = false;
+	
+	/**
+	 * The file to load the validators from and save them to,
+	 * <code>null</code> to not persist them.
+	 */
+	private File validatorStoreFile = null;
+	
+	/**
+	 * The maximum number of URLs whose validators are remembered, beyond
+	 * which arbitrary ones are forgotten.
+	 */
+	private int maxValidatedURLs = ValidatorStore.DEFAULT_MAX_URLS;
+	
+	/**
+	 * The fewest workers the {@link AdaptiveConcurrencyController} may cut
+	 * down to.
+	 */
+	private int minAdaptiveThreads = 1;
+	
+	/**
+	 * The most workers the {@link AdaptiveConcurrencyController} may grow
+	 * to, zero to keep the number of workers as set.
+	 */
+	private int maxAdaptiveThreads = 0;
+	
+	/**
+	 * The time in millis between two runs of the
+	 * {@link AdaptiveConcurrencyController}.
+	 */
+	private long adaptiveConcurrencyInterval = 5000;
+	
+	/**
+	 * Check if host-aware scheduling has been configured. When enabled, each
+	 * host gets its own priority queue of jobs. Cannot be used along with
+	 * spilling, fair queuing, or a {@link #getJobStoreType()} other than
+	 * {@link JobStoreType#Heap}.
+	 * 
+	 * @return <code>true</code> if either a politeness delay or a limit on
+	 *         the requests per host has been set, <code>false</code>
+	 *         otherwise
+	 */
+	public boolean isPolitenessEnabled() {
+		return this.politenessDelay > 0 || this.maxRequestsPerHost > 0;
+	}
+	
+	/**
+	 * Check if spilling of low priority jobs to disk has been configured.
+	 * Cannot be used along with politeness, fair queuing, or a
+	 * {@link #getJobStoreType()} other than {@link JobStoreType#Heap}.
+	 * 
+	 * @return <code>true</code> if a spill directory has been set,
+	 *         <code>false</code> otherwise
+	 */
+	public boolean isSpillingEnabled() {
+		return this.spillDirectory != null;
+	}
+	
+	/**
+	 * Check if fair queuing among job classes has been configured. When
+	 * enabled, jobs are held in a {@link FairJobStore}. Cannot be used along
+	 * with politeness, spilling, or a {@link #getJobStoreType()} other than
+	 * {@link JobStoreType#Heap}.
+	 * 
+	 * @return <code>true</code> if fair queuing has been enabled,
+	 *         <code>false</code> otherwise
+	 */
+	public boolean isFairQueuingEnabled() {
+		return this.fairQueuingEnabled;
+	}
+	
+	/**
+	 * Check if checkpointing of the pending jobs has been configured. When
+	 * enabled, the pending jobs found in the checkpoint directory are queued
+	 * again when the {@link Amass} instance is created.
+	 * 
+	 * @return <code>true</code> if a checkpoint directory has been set,
+	 *         <code>false</code> otherwise
+	 */
+	public boolean isCheckpointEnabled() {
+		return this.checkpointDirectory != null;
+	}
+	
+	/**
+	 * Check if aging of waiting jobs has been configured. When enabled, a job
+	 * gains one priority step over newly queued jobs for every
+	 * {@link #getAgingInterval()} it waits. A job with priority
+	 * <code>p</code> thus waits no longer than <code>(P - p)</code> aging
+	 * intervals, plus the time to crawl the jobs queued before it, where
+	 * <code>P</code> is the highest priority submitted. Cannot be used along
+	 * with {@link JobStoreType#Bucketed}.
+	 * 
+	 * @return <code>true</code> if an aging interval has been set,
+	 *         <code>false</code> otherwise
+	 */
+	public boolean isAgingEnabled() {
+		return this.agingInterval > 0;
+	}
+	
+	/**
+	 * Check if the internal queue has been bounded, either by the number of
+	 * jobs or by their size.
+	 * 
+	 * @return <code>true</code> if a capacity has been set,
+	 *         <code>false</code> otherwise
+	 */
+	public boolean isBounded() {
+		return this.maxPendingJobs > 0 || this.maxPendingBytes > 0;
+	}
+	
+	/**
+	 * Check if the number of workers is adapted to the conditions upstream
+	 * by an {@link AdaptiveConcurrencyController}, that runs every
+	 * {@link #getAdaptiveConcurrencyInterval()} between
+	 * {@link #getMinAdaptiveThreads()} and {@link #getMaxAdaptiveThreads()}
+	 * workers.
+	 * 
+	 * @return <code>true</code> if a maximum number of adaptive workers has
+	 *         been set, <code>false</code> otherwise
+	 */
+	public boolean isAdaptiveConcurrencyEnabled() {
+		return this.maxAdaptiveThreads > 0;
+	}
+	
+	// Usual accessors follow
+
+	/**
+	 * @return the jobStoreType
+	 */
+	public JobStoreType getJobStoreType() {
+		return jobStoreType;
+	}
+
+	/**
+	 * @param jobStoreType the jobStoreType to set
+	 */
+	public void setJobStoreType(JobStoreType jobStoreType) {
+		if(jobStoreType == null) {
+			throw new IllegalArgumentException("Job store type cannot be null");
+		}
+		
+		this.jobStoreType = jobStoreType;
+	}
+
+	/**
+	 * @return the priorityLanes
+	 */
+	public int getPriorityLanes() {
+		return priorityLanes;
+	}
+
+	/**
+	 * @param priorityLanes the priorityLanes to set
+	 */
+	public void setPriorityLanes(int priorityLanes) {
+		if(priorityLanes < 1) {
+			throw new IllegalArgumentException("Number of priority lanes cannot be less than one.");
+		}
+		
+		this.priorityLanes = priorityLanes;
+	}
+
+	/**
+	 * @return the agingInterval
+	 */
+	public long getAgingInterval() {
+		return agingInterval;
+	}
+
+	/**
+	 * @param agingInterval the agingInterval to set
+	 */
+	public void setAgingInterval(long agingInterval) {
+		if(agingInterval < 0) {
+			throw new IllegalArgumentException("Aging interval cannot be negative.");
+		}
+		
+		this.agingInterval = agingInterval;
+	}
+
+	/**
+	 * @param fairQueuingEnabled the fairQueuingEnabled to set
+	 */
+	public void setFairQueuingEnabled(boolean fairQueuingEnabled) {
+		this.fairQueuingEnabled = fairQueuingEnabled;
+	}
+
+	/**
+	 * @return the jobClassWeights
+	 */
+	public Map<String, Double> getJobClassWeights() {
+		return jobClassWeights;
+	}
+
+	/**
+	 * @param jobClassWeights the jobClassWeights to set
+	 */
+	public void setJobClassWeights(Map<String, Double> jobClassWeights) {
+		this.jobClassWeights = jobClassWeights;
+	}
+
+	/**
+	 * @return the schedulerTickInterval
+	 */
+	public long getSchedulerTickInterval() {
+		return schedulerTickInterval;
+	}
+
+	/**
+	 * @param schedulerTickInterval the schedulerTickInterval to set
+	 */
+	public void setSchedulerTickInterval(long schedulerTickInterval) {
+		if(schedulerTickInterval <= 0) {
+			throw new IllegalArgumentException("Scheduler tick interval must be positive.");
+		}
+		
+		this.schedulerTickInterval = schedulerTickInterval;
+	}
+
+	/**
+	 * @return the retryPolicy
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * @param retryPolicy the retryPolicy to set
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+	
+	/**
+	 * @return the spillDirectory
+	 */
+	public File getSpillDirectory() {
+		return spillDirectory;
+	}
+
+	/**
+	 * @param spillDirectory the spillDirectory to set
+	 */
+	public void setSpillDirectory(File spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+
+	/**
+	 * @return the maxInMemoryJobs
+	 */
+	public int getMaxInMemoryJobs() {
+		return maxInMemoryJobs;
+	}
+
+	/**
+	 * @param maxInMemoryJobs the maxInMemoryJobs to set
+	 */
+	public void setMaxInMemoryJobs(int maxInMemoryJobs) {
+		if(maxInMemoryJobs < 2) {
+			throw new IllegalArgumentException("Maximum in-memory jobs cannot be less than two.");
+		}
+		
+		this.maxInMemoryJobs = maxInMemoryJobs;
+	}
+	
+	/**
+	 * @return the checkpointDirectory
+	 */
+	public File getCheckpointDirectory() {
+		return checkpointDirectory;
+	}
+
+	/**
+	 * @param checkpointDirectory the checkpointDirectory to set
+	 */
+	public void setCheckpointDirectory(File checkpointDirectory) {
+		this.checkpointDirectory = checkpointDirectory;
+	}
+
+	/**
+	 * @return the checkpointInterval
+	 */
+	public long getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	/**
+	 * @param checkpointInterval the checkpointInterval to set
+	 */
+	public void setCheckpointInterval(long checkpointInterval) {
+		if(checkpointInterval <= 0) {
+			throw new IllegalArgumentException("Checkpoint interval must be positive.");
+		}
+		
+		this.checkpointInterval = checkpointInterval;
+	}
+	
+	/**
+	 * @return the seenFilterEnabled
+	 */
+	public boolean isSeenFilterEnabled() {
+		return seenFilterEnabled;
+	}
+
+	/**
+	 * @param seenFilterEnabled the seenFilterEnabled to set
+	 */
+	public void setSeenFilterEnabled(boolean seenFilterEnabled) {
+		this.seenFilterEnabled = seenFilterEnabled;
+	}
+
+	/**
+	 * @return the seenFilterExpectedURLs
+	 */
+	public long getSeenFilterExpectedURLs() {
+		return seenFilterExpectedURLs;
+	}
+
+	/**
+	 * @param seenFilterExpectedURLs the seenFilterExpectedURLs to set
+	 */
+	public void setSeenFilterExpectedURLs(long seenFilterExpectedURLs) {
+		if(seenFilterExpectedURLs < 1) {
+			throw new IllegalArgumentException("Expected number of URLs cannot be less than one.");
+		}
+		
+		this.seenFilterExpectedURLs = seenFilterExpectedURLs;
+	}
+
+	/**
+	 * @return the seenFilterFalsePositiveRate
+	 */
+	public double getSeenFilterFalsePositiveRate() {
+		return seenFilterFalsePositiveRate;
+	}
+
+	/**
+	 * @param seenFilterFalsePositiveRate the seenFilterFalsePositiveRate to set
+	 */
+	public void setSeenFilterFalsePositiveRate(double seenFilterFalsePositiveRate) {
+		if(seenFilterFalsePositiveRate <= 0 || seenFilterFalsePositiveRate >= 1) {
+			throw new IllegalArgumentException("False positive rate must be between zero and one.");
+		}
+		
+		this.seenFilterFalsePositiveRate = seenFilterFalsePositiveRate;
+	}
+
+	/**
+	 * @return the seenFilterExpiry
+	 */
+	public long getSeenFilterExpiry() {
+		return seenFilterExpiry;
+	}
+
+	/**
+	 * @param seenFilterExpiry the seenFilterExpiry to set
+	 */
+	public void setSeenFilterExpiry(long seenFilterExpiry) {
+		if(seenFilterExpiry < 0) {
+			throw new IllegalArgumentException("Seen filter expiry cannot be negative.");
+		}
+		
+		this.seenFilterExpiry = seenFilterExpiry;
+	}
+
+	/**
+	 * @return the seenFilterFile
+	 */
+	public File getSeenFilterFile() {
+		return seenFilterFile;
+	}
+
+	/**
+	 * @param seenFilterFile the seenFilterFile to set
+	 */
+	public void setSeenFilterFile(File seenFilterFile) {
+		this.seenFilterFile = seenFilterFile;
+	}
+
+	/**
+	 * @return the urlNormalizer
+	 */
+	public URLNormalizer getUrlNormalizer() {
+		return urlNormalizer;
+	}
+
+	/**
+	 * @param urlNormalizer the urlNormalizer to set
+	 */
+	public void setUrlNormalizer(URLNormalizer urlNormalizer) {
+		this.urlNormalizer = urlNormalizer;
+	}
+	
+	/**
+	 * @return the politenessDelay
+	 */
+	public long getPolitenessDelay() {
+		return politenessDelay;
+	}
+
+	/**
+	 * @param politenessDelay the politenessDelay to set
+	 */
+	public void setPolitenessDelay(long politenessDelay) {
+		if(politenessDelay < 0) {
+			throw new IllegalArgumentException("Politeness delay cannot be negative.");
+		}
+		
+		this.politenessDelay = politenessDelay;
+	}
+
+	/**
+	 * @return the maxRequestsPerHost
+	 */
+	public int getMaxRequestsPerHost() {
+		return maxRequestsPerHost;
+	}
+
+	/**
+	 * @param maxRequestsPerHost the maxRequestsPerHost to set
+	 */
+	public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+		if(maxRequestsPerHost < 0) {
+			throw new IllegalArgumentException("Maximum requests per host cannot be negative.");
+		}
+		
+		this.maxRequestsPerHost = maxRequestsPerHost;
+	}
+	
+	/**
+	 * @return the maxAsyncCrawls
+	 */
+	public int getMaxAsyncCrawls() {
+		return maxAsyncCrawls;
+	}
+
+	/**
+	 * @param maxAsyncCrawls the maxAsyncCrawls to set
+	 */
+	public void setMaxAsyncCrawls(int maxAsyncCrawls) {
+		if(maxAsyncCrawls < 1) {
+			throw new IllegalArgumentException("Maximum async crawls cannot be less than one.");
+		}
+		
+		this.maxAsyncCrawls = maxAsyncCrawls;
+	}
+	
+	/**
+	 * @return the workerThreadMode
+	 */
+	public WorkerThreadMode getWorkerThreadMode() {
+		return workerThreadMode;
+	}
+
+	/**
+	 * @param workerThreadMode the workerThreadMode to set
+	 */
+	public void setWorkerThreadMode(WorkerThreadMode workerThreadMode) {
+		if(workerThreadMode == null) {
+			throw new IllegalArgumentException("Worker thread mode cannot be null");
+		}
+		
+		this.workerThreadMode = workerThreadMode;
+	}
+	
+	/**
+	 * @return the maxPendingJobs
+	 */
+	public int getMaxPendingJobs() {
+		return maxPendingJobs;
+	}
+
+	/**
+	 * @param maxPendingJobs the maxPendingJobs to set
+	 */
+	public void setMaxPendingJobs(int maxPendingJobs) {
+		if(maxPendingJobs < 0) {
+			throw new IllegalArgumentException("Maximum pending jobs cannot be negative.");
+		}
+		
+		this.maxPendingJobs = maxPendingJobs;
+	}
+
+	/**
+	 * @return the maxPendingBytes
+	 */
+	public long getMaxPendingBytes() {
+		return maxPendingBytes;
+	}
+
+	/**
+	 * @param maxPendingBytes the maxPendingBytes to set
+	 */
+	public void setMaxPendingBytes(long maxPendingBytes) {
+		if(maxPendingBytes < 0) {
+			throw new IllegalArgumentException("Maximum pending bytes cannot be negative.");
+		}
+		
+		this.maxPendingBytes = maxPendingBytes;
+	}
+
+	/**
+	 * @return the overflowPolicy
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * @param overflowPolicy the overflowPolicy to set
+	 */
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		if(overflowPolicy == null) {
+			throw new IllegalArgumentException("Overflow policy cannot be null");
+		}
+		
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * @return the overflowTimeout
+	 */
+	public long getOverflowTimeout() {
+		return overflowTimeout;
+	}
+
+	/**
+	 * @param overflowTimeout the overflowTimeout to set
+	 */
+	public void setOverflowTimeout(long overflowTimeout) {
+		if(overflowTimeout < 0) {
+			throw new IllegalArgumentException("Overflow timeout cannot be negative.");
+		}
+		
+		this.overflowTimeout = overflowTimeout;
+	}
+
+	/**
+	 * @return the maxContentLength
+	 */
+	public long getMaxContentLength() {
+		return maxContentLength;
+	}
+
+	/**
+	 * @param maxContentLength the maxContentLength to set
+	 */
+	public void setMaxContentLength(long maxContentLength) {
+		if(maxContentLength < 0) {
+			throw new IllegalArgumentException("Maximum content length cannot be negative.");
+		}
+		
+		this.maxContentLength = maxContentLength;
+	}
+
+	/**
+	 * @return the fetchPolicy
+	 */
+	public FetchPolicy getFetchPolicy() {
+		return fetchPolicy;
+	}
+
+	/**
+	 * @param fetchPolicy the fetchPolicy to set
+	 */
+	public void setFetchPolicy(FetchPolicy fetchPolicy) {
+		this.fetchPolicy = fetchPolicy;
+	}
+
+	/**
+	 * @return the revalidationEnabled
+	 */
+	public boolean isRevalidationEnabled() {
+		return revalidationEnabled;
+	}
+
+	/**
+	 * @param revalidationEnabled the revalidationEnabled to set
+	 */
+	public void setRevalidationEnabled(boolean revalidationEnabled) {
+		this.revalidationEnabled = revalidationEnabled;
+	}
+
+	/**
+	 * @return the validatorStoreFile
+	 */
+	public File getValidatorStoreFile() {
+		return validatorStoreFile;
+	}
+
+	/**
+	 * @param validatorStoreFile the validatorStoreFile to set
+	 */
+	public void setValidatorStoreFile(File validatorStoreFile) {
+		this.validatorStoreFile = validatorStoreFile;
+	}
+
+	/**
+	 * @return the maxValidatedURLs
+	 */
+	public int getMaxValidatedURLs() {
+		return maxValidatedURLs;
+	}
+
+	/**
+	 * @param maxValidatedURLs the maxValidatedURLs to set
+	 */
+	public void setMaxValidatedURLs(int maxValidatedURLs) {
+		if(maxValidatedURLs < 1) {
+			throw new IllegalArgumentException("Maximum number of validated URLs cannot be less than one.");
+		}
+		
+		this.maxValidatedURLs = maxValidatedURLs;
+	}
+
+	/**
+	 * @return the minAdaptiveThreads
+	 */
+	public int getMinAdaptiveThreads() {
+		return minAdaptiveThreads;
+	}
+
+	/**
+	 * @param minAdaptiveThreads the minAdaptiveThreads to set
+	 */
+	public void setMinAdaptiveThreads(int minAdaptiveThreads) {
+		if(minAdaptiveThreads < 1) {
+			throw new IllegalArgumentException("Minimum number of adaptive threads cannot be less than one.");
+		}
+		
+		this.minAdaptiveThreads = minAdaptiveThreads;
+	}
+
+	/**
+	 * @return the maxAdaptiveThreads
+	 */
+	public int getMaxAdaptiveThreads() {
+		return maxAdaptiveThreads;
+	}
+
+	/**
+	 * @param maxAdaptiveThreads the maxAdaptiveThreads to set
+	 */
+	public void setMaxAdaptiveThreads(int maxAdaptiveThreads) {
+		if(maxAdaptiveThreads < 0) {
+			throw new IllegalArgumentException("Maximum number of adaptive threads cannot be negative.");
+		}
+		
+		this.maxAdaptiveThreads = maxAdaptiveThreads;
+	}
+
+	/**
+	 * @return the adaptiveConcurrencyInterval
+	 */
+	public long getAdaptiveConcurrencyInterval() {
+		return adaptiveConcurrencyInterval;
+	}
+
+	/**
+	 * @param adaptiveConcurrencyInterval the adaptiveConcurrencyInterval to set
+	 */
+	public void setAdaptiveConcurrencyInterval(long adaptiveConcurrencyInterval) {
+		if(adaptiveConcurrencyInterval <= 0) {
+			throw new IllegalArgumentException("Adaptive concurrency interval must be positive.");
+		}
+		
+		this.adaptiveConcurrencyInterval = adaptiveConcurrencyInterval;
+	}
+	
+	// Enumerations around the configuration
+	
+	/**
+	 * The kinds of {@link JobStore} available for the internal queue.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	public static enum JobStoreType {
+		
+		/**
+		 * An indexed binary heap, that supports any range of priorities
+		 * with O(log n) operations.
+		 */
+		Heap,
+		
+		/**
+		 * An array of per-priority FIFO lanes with O(1) operations, for use
+		 * when priorities are small integers. Cannot be used along with
+		 * aging.
+		 */
+		Bucketed,
+		
+		/**
+		 * A heap of the highest priority jobs, limited to
+		 * {@link AmassConfig#getMaxInMemoryJobs()}, with the rest of the jobs
+		 * held in direct memory outside the heap. Cannot be used along with
+		 * checkpointing.
+		 */
+		OffHeap;
+	}
+	
+	/**
+	 * The kinds of threads that crawling workers can run on.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	public static enum WorkerThreadMode {
+		
+		/**
+		 * One platform thread per worker.
+		 */
+		Platform,
+		
+		/**
+		 * One virtual thread per worker. This makes thousands of workers
+		 * cheap when crawl handlers block on I/O. Needs Java 21 or later.
+		 */
+		Virtual;
+	}
+	
+	/**
+	 * What to do when a new job is submitted to an internal queue that is at
+	 * its capacity. Submissions that only increment the priority of a job
+	 * already queued are always accepted.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	public static enum OverflowPolicy {
+		
+		/**
+		 * Block the submitting thread till there is room in the queue.
+		 */
+		Block,
+		
+		/**
+		 * Block the submitting thread till there is room in the queue, or
+		 * till the overflow timeout elapses, in which case the job is
+		 * rejected.
+		 */
+		TimedOffer,
+		
+		/**
+		 * Reject the job right away.
+		 */
+		Reject,
+		
+		/**
+		 * Evict the job that would be crawled last to make room, unless the
+		 * new job would itself be crawled last, in which case it is
+		 * rejected. Cannot be used along with politeness, fair queuing,
+		 * spilling of jobs to disk, or the off-heap job store.
+		 */
+		EvictLowest;
+	}
+
+}
@@ -0,0 +1,45 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.domain;
+
+import com.sangupta.amass.Amass;
+
+/**
+ * A {@link CrawlableURL} that belongs to a job class, such as a tenant or a
+ * feed. When fair queuing is enabled, {@link Amass} shares the workers among
+ * the job classes as per their weights, and orders jobs by priority only
+ * within a class.
+ * 
+ * @author sangupta
+ *
+ */
+public interface ClassifiedCrawlableURL extends CrawlableURL {
+	
+	/**
+	 * Return the job class this URL belongs to.
+	 * 
+	 * @return the key of the job class, <code>null</code> for the default
+	 *         class
+	 */
+	public String getJobClass();
+
+}
@@ -0,0 +1,144 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.domain;
+
+/**
+ * A snapshot of the use of a pool of HTTP connections, to help size it. A
+ * request that finds an open connection to its host in the pool is a hit; a
+ * request that has to open a new connection is a miss.
+ * 
+ * @author sangupta
+ *
+ */
+public class ConnectionPoolStatistics {
+	
+	/**
+	 * The number of connections asked of the pool
+	 */
+	private final long requests;
+	
+	/**
+	 * The number of new connections opened
+	 */
+	private final long misses;
+	
+	/**
+	 * The number of connections in use
+	 */
+	private final int leased;
+	
+	/**
+	 * The number of idle connections kept open
+	 */
+	private final int available;
+	
+	/**
+	 * The number of requests waiting for a connection
+	 */
+	private final int pending;
+	
+	/**
+	 * The maximum number of connections
+	 */
+	private final int max;
+	
+	public ConnectionPoolStatistics(long requests, long misses, int leased, int available, int pending, int max) {
+		this.requests = requests;
+		this.misses = misses;
+		this.leased = leased;
+		this.available = available;
+		this.pending = pending;
+		this.max = max;
+	}
+	
+	/**
+	 * Return the number of requests that reused an open connection.
+	 * 
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return Math.max(this.requests - this.misses, 0);
+	}
+	
+	/**
+	 * Return the fraction of requests that reused an open connection.
+	 * 
+	 * @return the hit ratio, between zero and one
+	 */
+	public double getHitRatio() {
+		if(this.requests == 0) {
+			return 0;
+		}
+		
+		return (double) getHits() / this.requests;
+	}
+	
+	@Override
+	public String toString() {
+		return "[requests: " + this.requests + ", hits: " + getHits() + ", misses: " + this.misses + ", leased: " + this.leased + ", available: " + this.available + ", pending: " + this.pending + ", max: " + this.max + "]";
+	}
+	
+	// Usual accessors follow
+
+	/**
+	 * @return the requests
+	 */
+	public long getRequests() {
+		return requests;
+	}
+
+	/**
+	 * @return the misses
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the leased
+	 */
+	public int getLeased() {
+		return leased;
+	}
+
+	/**
+	 * @return the available
+	 */
+	public int getAvailable() {
+		return available;
+	}
+
+	/**
+	 * @return the pending
+	 */
+	public int getPending() {
+		return pending;
+	}
+
+	/**
+	 * @return the max
+	 */
+	public int getMax() {
+		return max;
+	}
+
+}
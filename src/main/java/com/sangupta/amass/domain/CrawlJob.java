@@ -21,41 +21,90 @@
 
 package com.sangupta.amass.domain;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A job object created out of the URL or the {@link CrawlableURL} instance
- * when provided. This job instance maintains the priority and time at which
- * it was created.
+ * when provided. This job instance maintains the priority and the order in
+ * which it was created.
+ * 
+ * A job created out of a plain URL keeps the URL as UTF-8 bytes, and creates
+ * the {@link DefaultCrawlableURL} for it only when first asked for, which is
+ * when the job is handed to the crawl handlers. This keeps the queued jobs
+ * compact.
  * 
  * Two job instances are considered equal, if they are based on the same URL
  * in a case-sensitive manner. This instance will NOT do any normalization on
- * the URL.
+ * the URL. A job can thus be used as the key for its own URL.
  * 
  * The jobs are sorted based on their priority. The higher the priority of a job,
  * the sooner it will appear in a collection. If the priority of two jobs is equal,
- * they are compared based on creation time. The older the job was created, the sooner
- * it will appear in a collection.
+ * they are compared based on a sequence number handed out when the job is created.
+ * The older the job was created, the sooner it will appear in a collection. Unlike
+ * a time stamp, the sequence never ties, and keeps counting across restarts for jobs
+ * restored with their sequence.
+ * 
+ * When aging is enabled, the priority is lowered by the aging epoch in which the
+ * job was queued. As every job queued an epoch later ranks one lower, a waiting job
+ * gains one priority step per epoch over newer jobs, without its position in any
+ * collection having to change.
  * 
  * @author sangupta
  *
  */
 public class CrawlJob implements Comparable<CrawlJob> {
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	private static final AtomicIntegerFieldUpdater<CrawlJob> PRIORITY_UPDATER = AtomicIntegerFieldUpdater.newUpdater(CrawlJob.class, "priority");
+	
+	/**
+	 * The last sequence number handed out to a job
+	 */
+	private static final AtomicLong SEQUENCE = new AtomicLong();
+	
+	/**
+	 * The UTF-8 bytes of the URL, or <code>null</code> if the job was created
+	 * out of a {@link CrawlableURL}
+	 */
+	private final byte[] url;
+	
+	/**
+	 * The hash code of the URL
+	 */
+	private final int hash;
 
 	/**
-	 * The actual URL to work upon.
+	 * The actual URL to work upon. Created lazily from {@link #url} if the job
+	 * was created out of a plain URL.
+	 */
+	private CrawlableURL crawlableURL;
+	
+	/**
+	 * The priority assigned to this job, updated using the
+	 * {@link #PRIORITY_UPDATER}
+	 */
+	private volatile int priority;
+	
+	/**
+	 * The order in which this job was created
 	 */
-	private final CrawlableURL crawlableURL;
+	private final long sequence;
 	
 	/**
-	 * The priority assigned to this job 
+	 * The aging epoch in which this job was queued, zero if aging is not used
 	 */
-	private final AtomicInteger priority;
+	private long epoch;
 	
 	/**
-	 * The time at which this job was created
+	 * The slot this job occupies in the job store that holds it, or
+	 * <code>-1</code> if the job is not queued in any store. This is
+	 * maintained by the store itself.
 	 */
-	private final long millis;
+	private int storeIndex = -1;
 	
 	/**
 	 * Construct a new crawling job with default priority of one.
@@ -77,37 +126,126 @@ public class CrawlJob implements Comparable<CrawlJob> {
 	 *            the priority of crawling for this job
 	 */
 	public CrawlJob(final CrawlableURL crawlableURL, final int priority) {
+		this(crawlableURL, priority, SEQUENCE.incrementAndGet());
+	}
+	
+	/**
+	 * Re-create a crawling job that was created earlier, with the given
+	 * priority and sequence number. This is used when restoring jobs that were
+	 * kept outside the heap. Jobs created afterwards get a higher sequence
+	 * number.
+	 * 
+	 * @param crawlableURL
+	 *            the URL that needs to be crawled
+	 * 
+	 * @param priority
+	 *            the priority of crawling for this job
+	 * 
+	 * @param sequence
+	 *            the sequence number of the job when originally created, as
+	 *            returned by {@link #getSequence()}
+	 */
+	public CrawlJob(final CrawlableURL crawlableURL, final int priority, final long sequence) {
 		if(crawlableURL == null) {
 			throw new IllegalArgumentException("Crawlable URL cannot be null");
 		}
 		
+		this.url = null;
+		this.hash = crawlableURL.getURL().hashCode();
 		this.crawlableURL = crawlableURL;
-		this.priority = new AtomicInteger(priority);
-		this.millis = System.nanoTime();
+		this.priority = priority;
+		this.sequence = sequence;
+		advanceSequence(sequence);
+	}
+	
+	/**
+	 * Construct a new crawling job for the given plain URL with the given
+	 * priority.
+	 * 
+	 * @param url
+	 *            the URL that needs to be crawled
+	 * 
+	 * @param priority
+	 *            the priority of crawling for this job
+	 */
+	public CrawlJob(final String url, final int priority) {
+		this(url, priority, SEQUENCE.incrementAndGet());
+	}
+	
+	/**
+	 * Re-create a crawling job for the given plain URL that was created
+	 * earlier, with the given priority and sequence number. Jobs created
+	 * afterwards get a higher sequence number.
+	 * 
+	 * @param url
+	 *            the URL that needs to be crawled
+	 * 
+	 * @param priority
+	 *            the priority of crawling for this job
+	 * 
+	 * @param sequence
+	 *            the sequence number of the job when originally created, as
+	 *            returned by {@link #getSequence()}
+	 */
+	public CrawlJob(final String url, final int priority, final long sequence) {
+		if(url == null) {
+			throw new IllegalArgumentException("URL to be crawled cannot be null");
+		}
+		
+		this.url = url.getBytes(UTF_8);
+		this.hash = url.hashCode();
+		this.crawlableURL = null;
+		this.priority = priority;
+		this.sequence = sequence;
+		advanceSequence(sequence);
+	}
+
+	/**
+	 * Make sure that jobs created from now on get a sequence number higher
+	 * than the given one.
+	 * 
+	 * @param sequence
+	 *            the sequence number of a job
+	 */
+	private static void advanceSequence(final long sequence) {
+		long last;
+		while((last = SEQUENCE.get()) < sequence) {
+			if(SEQUENCE.compareAndSet(last, sequence)) {
+				return;
+			}
+		}
 	}
 
 	/**
-	 * Compare this job to another job based on the priority. If the priority is
-	 * the same, the time at which is was added.
+	 * Compare this job to another job based on the rank. If the rank is the
+	 * same, the order in which they were created. The values are compared and
+	 * never subtracted, so that no overflow can occur.
 	 * 
 	 * @see java.lang.Comparable#compareTo(java.lang.Object)
+	 * @see #getRank()
 	 */
 	public int compareTo(CrawlJob job) {
 		if(job == null) {
 			return -1;
 		}
 		
-		if(this.priority.get() == job.priority.get()) {
-			return (int) (this.millis - job.millis);
+		final long rank = this.getRank();
+		final long otherRank = job.getRank();
+		if(rank != otherRank) {
+			return rank > otherRank ? -1 : 1;
+		}
+		
+		if(this.sequence != job.sequence) {
+			return this.sequence < job.sequence ? -1 : 1;
 		}
 		
-		return 0 - (this.priority.get() - job.priority.get());
+		return 0;
 	}
 	
 	@Override
 	public boolean equals(Object object) {
-		if(object == null) {
-			return false;
+		if(this == object) {
+			return true;
 		}
 		
 		if(!(object instanceof CrawlJob)) {
@@ -115,17 +253,25 @@ public class CrawlJob implements Comparable<CrawlJob> {
 		}
 		
 		CrawlJob job = (CrawlJob) object;
-		return this.crawlableURL.equals(job.getCrawlableURL());
+		if(this.hash != job.hash) {
+			return false;
+		}
+		
+		if(this.url != null && job.url != null) {
+			return Arrays.equals(this.url, job.url);
+		}
+		
+		return this.getURL().equals(job.getURL());
 	}
 	
 	@Override
 	public int hashCode() {
-		return this.crawlableURL.hashCode();
+		return this.hash;
 	}
 	
 	@Override
 	public String toString() {
-		return this.crawlableURL.getURL();
+		return this.getURL();
 	}
 	
 	/**
@@ -136,7 +282,56 @@ public class CrawlJob implements Comparable<CrawlJob> {
 	 * 
 	 */
 	public void incrementPriority(final int additive) {
-		this.priority.addAndGet(additive);
+		PRIORITY_UPDATER.addAndGet(this, additive);
+	}
+	
+	/**
+	 * Return the URL of this job, without creating the {@link CrawlableURL}
+	 * if not done already.
+	 * 
+	 * @return the URL to crawl
+	 */
+	public String getURL() {
+		final CrawlableURL crawlableURL = this.crawlableURL;
+		if(crawlableURL != null) {
+			return crawlableURL.getURL();
+		}
+		
+		return new String(this.url, UTF_8);
+	}
+	
+	/**
+	 * Return the approximate number of bytes the URL of this job takes on the
+	 * heap.
+	 * 
+	 * @return the size of the URL in bytes
+	 */
+	public int getURLSize() {
+		if(this.url != null) {
+			return this.url.length;
+		}
+		
+		return 2 * this.crawlableURL.getURL().length();
+	}
+	
+	/**
+	 * Check if this job was created out of a plain URL, in which case its
+	 * {@link CrawlableURL} is a {@link DefaultCrawlableURL}.
+	 * 
+	 * @return <code>true</code> if the job was created out of a plain URL
+	 */
+	public boolean isPlainURL() {
+		return this.url != null;
+	}
+	
+	/**
+	 * Return the attempt this job is at crawling its URL. A job queued to
+	 * retry a failed crawl is at its second attempt or later.
+	 * 
+	 * @return the attempt, one for the first crawl
+	 */
+	public int getAttempt() {
+		return 1;
 	}
 
 	// Usual accessors follow
@@ -145,14 +340,69 @@ public class CrawlJob implements Comparable<CrawlJob> {
 	 * @return the crawlableURL
 	 */
 	public CrawlableURL getCrawlableURL() {
+		CrawlableURL crawlableURL = this.crawlableURL;
+		if(crawlableURL == null) {
+			// racing threads may each create one, all being equal
+			crawlableURL = new DefaultCrawlableURL(new String(this.url, UTF_8));
+			this.crawlableURL = crawlableURL;
+		}
+		
 		return crawlableURL;
 	}
 
 	/**
 	 * @return the priority
 	 */
-	public AtomicInteger getPriority() {
+	public int getPriority() {
 		return priority;
 	}
 
+	/**
+	 * Return the rank of this job, which is its priority less its aging
+	 * epoch. Jobs with a higher rank are crawled first.
+	 * 
+	 * @return the rank of the job
+	 */
+	public long getRank() {
+		return (long) this.priority - this.epoch;
+	}
+
+	/**
+	 * @return the sequence
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return the epoch
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * Set the aging epoch of this job. This must be done before the job is
+	 * added to any collection that depends on its order.
+	 * 
+	 * @param epoch the epoch to set
+	 */
+	public void setEpoch(long epoch) {
+		this.epoch = epoch;
+	}
+
+	/**
+	 * @return the storeIndex
+	 */
+	public int getStoreIndex() {
+		return storeIndex;
+	}
+
+	/**
+	 * @param storeIndex the storeIndex to set
+	 */
+	public void setStoreIndex(int storeIndex) {
+		this.storeIndex = storeIndex;
+	}
+
 }
@@ -0,0 +1,93 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.domain;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sangupta.amass.Amass;
+
+/**
+ * Running counters of the crawls made by an {@link Amass} instance. These are
+ * updated by the workers after every crawl and can be sampled at any time.
+ * 
+ * @author sangupta
+ *
+ */
+public class CrawlStatistics {
+	
+	/**
+	 * The number of crawls that completed, successfully or otherwise
+	 */
+	private final AtomicLong crawls = new AtomicLong();
+	
+	/**
+	 * The number of crawls that resulted in an error
+	 */
+	private final AtomicLong errors = new AtomicLong();
+	
+	/**
+	 * The total time in millis consumed by all crawls
+	 */
+	private final AtomicLong totalCrawlTime = new AtomicLong();
+	
+	/**
+	 * Record a completed crawl.
+	 * 
+	 * @param timeConsumed
+	 *            the time consumed in milli-seconds to crawl
+	 * 
+	 * @param error
+	 *            whether the crawl resulted in an error
+	 */
+	public void recordCrawl(long timeConsumed, boolean error) {
+		this.crawls.incrementAndGet();
+		this.totalCrawlTime.addAndGet(timeConsumed);
+		
+		if(error) {
+			this.errors.incrementAndGet();
+		}
+	}
+	
+	// Usual accessors follow
+
+	/**
+	 * @return the crawls
+	 */
+	public long getCrawls() {
+		return this.crawls.get();
+	}
+
+	/**
+	 * @return the errors
+	 */
+	public long getErrors() {
+		return this.errors.get();
+	}
+
+	/**
+	 * @return the totalCrawlTime
+	 */
+	public long getTotalCrawlTime() {
+		return this.totalCrawlTime.get();
+	}
+
+}
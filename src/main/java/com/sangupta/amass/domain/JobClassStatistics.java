@@ -0,0 +1,95 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.domain;
+
+/**
+ * A snapshot of the state of one job class when fair queuing is enabled.
+ * 
+ * @author sangupta
+ *
+ */
+public class JobClassStatistics {
+	
+	/**
+	 * The key of the job class
+	 */
+	private final String jobClass;
+	
+	/**
+	 * The share of the workers given to the job class, relative to the other
+	 * classes
+	 */
+	private final double weight;
+	
+	/**
+	 * The number of jobs of the class waiting to be crawled
+	 */
+	private final int queued;
+	
+	/**
+	 * The number of jobs of the class handed out for crawling so far
+	 */
+	private final long served;
+	
+	public JobClassStatistics(String jobClass, double weight, int queued, long served) {
+		this.jobClass = jobClass;
+		this.weight = weight;
+		this.queued = queued;
+		this.served = served;
+	}
+	
+	@Override
+	public String toString() {
+		return "[jobClass: " + this.jobClass + ", weight: " + this.weight + ", queued: " + this.queued + ", served: " + this.served + "]";
+	}
+	
+	// Usual accessors follow
+
+	/**
+	 * @return the jobClass
+	 */
+	public String getJobClass() {
+		return jobClass;
+	}
+
+	/**
+	 * @return the weight
+	 */
+	public double getWeight() {
+		return weight;
+	}
+
+	/**
+	 * @return the queued
+	 */
+	public int getQueued() {
+		return queued;
+	}
+
+	/**
+	 * @return the served
+	 */
+	public long getServed() {
+		return served;
+	}
+
+}
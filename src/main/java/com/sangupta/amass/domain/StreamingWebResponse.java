@@ -0,0 +1,398 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.domain;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collections;
+import java.util.Map;
+
+import com.sangupta.jerry.http.WebResponse;
+
+/**
+ * The response to a crawl whose body is read as it arrives rather than held
+ * in memory, so that it can be written to disk or fed to a parser as it
+ * comes in. The body is available as an {@link InputStream} or as a
+ * {@link ReadableByteChannel} over the same bytes, and is cut short after
+ * the maximum content length, if any.
+ * 
+ * The body can be read only while the after-crawl handler runs. The response
+ * is closed right after. What is left of a body not read to its end is read
+ * and thrown away if it is known to be short, so that the connection can be
+ * reused; otherwise the connection is closed rather than downloading the
+ * rest.
+ * 
+ * @author sangupta
+ *
+ */
+public class StreamingWebResponse implements Closeable {
+	
+	/**
+	 * The most bytes left in a body of known length that are read and thrown
+	 * away on close, as that is cheaper than opening a new connection
+	 */
+	public static final int MAX_DRAIN_LENGTH = 8 * 1024;
+	
+	private static final byte[] NO_BYTES = new byte[0];
+	
+	private final int responseCode;
+	
+	private final String message;
+	
+	/**
+	 * The value of the <code>Content-Type</code> header, if any
+	 */
+	private final String contentType;
+	
+	/**
+	 * The length of the body as told by the server, <code>-1</code> if not
+	 * known
+	 */
+	private final long contentLength;
+	
+	private final Map<String, String> headers;
+	
+	/**
+	 * The body, cut short after the maximum content length
+	 */
+	private final BoundedInputStream body;
+	
+	/**
+	 * What to close once done with this response, <code>null</code> if none
+	 */
+	private final Closeable resource;
+	
+	/**
+	 * The channel over the {@link #body}, created on first use
+	 */
+	private ReadableByteChannel channel;
+	
+	/**
+	 * Create a response over the given body.
+	 * 
+	 * @param responseCode
+	 *            the HTTP status code
+	 * 
+	 * @param message
+	 *            the HTTP status message
+	 * 
+	 * @param contentType
+	 *            the value of the <code>Content-Type</code> header, if any
+	 * 
+	 * @param contentLength
+	 *            the length of the body as told by the server,
+	 *            <code>-1</code> if not known
+	 * 
+	 * @param headers
+	 *            the response headers, if any
+	 * 
+	 * @param body
+	 *            the body, <code>null</code> if there is none
+	 * 
+	 * @param maxContentLength
+	 *            the number of bytes after which to cut the body short, zero
+	 *            for no limit
+	 * 
+	 * @param resource
+	 *            what to close once done with this response, such as the
+	 *            underlying connection, <code>null</code> if none
+	 */
+	public StreamingWebResponse(int responseCode, String message, String contentType, long contentLength, Map<String, String> headers, InputStream body, long maxContentLength, Closeable resource) {
+		if(maxContentLength < 0) {
+			throw new IllegalArgumentException("Maximum content length cannot be negative.");
+		}
+		
+		this.responseCode = responseCode;
+		this.message = message;
+		this.contentType = contentType;
+		this.contentLength = contentLength;
+		
+		if(headers == null) {
+			this.headers = Collections.emptyMap();
+		} else {
+			this.headers = Collections.unmodifiableMap(headers);
+		}
+		
+		if(body == null) {
+			body = new ByteArrayInputStream(NO_BYTES);
+		}
+		
+		this.body = new BoundedInputStream(body, maxContentLength);
+		this.resource = resource;
+	}
+	
+	/**
+	 * Create a response over the body of a {@link WebResponse} that has
+	 * already been read in full, for the handlers that only know how to
+	 * buffer.
+	 * 
+	 * @param response
+	 *            the buffered response, may be <code>null</code>
+	 * 
+	 * @param maxContentLength
+	 *            the number of bytes after which to cut the body short, zero
+	 *            for no limit
+	 * 
+	 * @return the streaming response, or <code>null</code> if the given
+	 *         response is <code>null</code>
+	 */
+	public static StreamingWebResponse fromWebResponse(WebResponse response, long maxContentLength) {
+		if(response == null) {
+			return null;
+		}
+		
+		byte[] bytes = response.getBytes();
+		if(bytes == null) {
+			bytes = NO_BYTES;
+		}
+		
+		return new StreamingWebResponse(response.getResponseCode(), response.getMessage(), response.getContentType(), bytes.length, response.getHeaders(), new ByteArrayInputStream(bytes), maxContentLength, null);
+	}
+	
+	/**
+	 * Return the body as a stream. This is the same stream on every call.
+	 * 
+	 * @return the body
+	 */
+	public InputStream getStream() {
+		return this.body;
+	}
+	
+	/**
+	 * Return the body as a channel, reading from the same bytes as
+	 * {@link #getStream()}.
+	 * 
+	 * @return the body
+	 */
+	public synchronized ReadableByteChannel getChannel() {
+		if(this.channel == null) {
+			this.channel = Channels.newChannel(this.body);
+		}
+		
+		return this.channel;
+	}
+	
+	/**
+	 * Check if the body was cut short after the maximum content length. This
+	 * is known for sure only once the body has been read up to the limit.
+	 * 
+	 * @return <code>true</code> if the body has more bytes than the maximum
+	 *         content length, <code>false</code> otherwise
+	 */
+	public boolean isTruncated() {
+		return this.body.truncated;
+	}
+	
+	/**
+	 * @return the number of bytes of the body read so far
+	 */
+	public long getBytesRead() {
+		return this.body.count;
+	}
+	
+	/**
+	 * Close the body, and whatever the response was read from.
+	 * 
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		if(this.resource == null) {
+			this.body.close();
+			return;
+		}
+		
+		if(this.contentLength >= 0 && this.contentLength - this.body.count <= MAX_DRAIN_LENGTH) {
+			try {
+				this.body.drain(MAX_DRAIN_LENGTH);
+			} catch(IOException e) {
+				// the connection is closed below
+			}
+		}
+		
+		// closing the resource first closes the connection, where closing the
+		// body first would drain whatever is left of it
+		try {
+			this.resource.close();
+		} finally {
+			this.body.close();
+		}
+	}
+	
+	// Usual accessors follow
+
+	/**
+	 * @return the responseCode
+	 */
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+	/**
+	 * @return the message
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return the contentType
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @return the contentLength
+	 */
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	/**
+	 * @return the headers
+	 */
+	public Map<String, String> getHeaders() {
+		return headers;
+	}
+	
+	/**
+	 * A stream that ends after a given number of bytes, and notes if the
+	 * underlying stream had more.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	private static class BoundedInputStream extends InputStream {
+		
+		private final InputStream in;
+		
+		/**
+		 * The number of bytes after which to end, zero for no limit
+		 */
+		private final long limit;
+		
+		private long count;
+		
+		/**
+		 * Whether the underlying stream has been read past the limit
+		 */
+		private boolean peeked;
+		
+		private volatile boolean truncated;
+		
+		BoundedInputStream(InputStream in, long limit) {
+			this.in = in;
+			this.limit = limit;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			if(atLimit()) {
+				return -1;
+			}
+			
+			final int value = this.in.read();
+			if(value >= 0) {
+				this.count++;
+			}
+			
+			return value;
+		}
+		
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			if(length == 0) {
+				return 0;
+			}
+			
+			if(atLimit()) {
+				return -1;
+			}
+			
+			if(this.limit > 0) {
+				length = (int) Math.min(length, this.limit - this.count);
+			}
+			
+			final int read = this.in.read(bytes, offset, length);
+			if(read > 0) {
+				this.count += read;
+			}
+			
+			return read;
+		}
+		
+		@Override
+		public int available() throws IOException {
+			final int available = this.in.available();
+			if(this.limit > 0) {
+				return (int) Math.min(available, this.limit - this.count);
+			}
+			
+			return available;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			this.in.close();
+		}
+		
+		/**
+		 * Read and throw away what is left of the underlying stream, past the
+		 * limit if need be, stopping after the given number of bytes.
+		 */
+		void drain(int max) throws IOException {
+			final byte[] buffer = new byte[Math.min(max, 4096) + 1];
+			int drained = 0;
+			int read;
+			while(drained <= max && (read = this.in.read(buffer)) >= 0) {
+				drained += read;
+			}
+		}
+		
+		/**
+		 * Check if the limit has been reached, peeking at the underlying
+		 * stream the first time to see if the body is longer.
+		 */
+		private boolean atLimit() throws IOException {
+			if(this.limit <= 0 || this.count < this.limit) {
+				return false;
+			}
+			
+			if(!this.peeked) {
+				this.peeked = true;
+				if(this.in.read() >= 0) {
+					this.truncated = true;
+				}
+			}
+			
+			return true;
+		}
+		
+	}
+
+}
@@ -0,0 +1,108 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.domain;
+
+/**
+ * The outcome of submitting a batch of URLs for crawling.
+ * 
+ * @author sangupta
+ *
+ */
+public class SubmissionResult {
+	
+	/**
+	 * The number of URLs that were added as new jobs
+	 */
+	private final int added;
+	
+	/**
+	 * The number of URLs that were already queued, and thus only had their
+	 * priority incremented
+	 */
+	private final int bumped;
+	
+	/**
+	 * The number of URLs that were rejected as the queue was full
+	 */
+	private final int rejected;
+	
+	/**
+	 * The number of URLs that were skipped as already crawled
+	 */
+	private final int seen;
+	
+	/**
+	 * The number of <code>null</code> entries that were skipped
+	 */
+	private final int skipped;
+	
+	public SubmissionResult(int added, int bumped, int rejected, int seen, int skipped) {
+		this.added = added;
+		this.bumped = bumped;
+		this.rejected = rejected;
+		this.seen = seen;
+		this.skipped = skipped;
+	}
+	
+	@Override
+	public String toString() {
+		return "[added: " + this.added + ", bumped: " + this.bumped + ", rejected: " + this.rejected + ", seen: " + this.seen + ", skipped: " + this.skipped + "]";
+	}
+	
+	// Usual accessors follow
+
+	/**
+	 * @return the added
+	 */
+	public int getAdded() {
+		return added;
+	}
+
+	/**
+	 * @return the bumped
+	 */
+	public int getBumped() {
+		return bumped;
+	}
+
+	/**
+	 * @return the rejected
+	 */
+	public int getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * @return the seen
+	 */
+	public int getSeen() {
+		return seen;
+	}
+
+	/**
+	 * @return the skipped
+	 */
+	public int getSkipped() {
+		return skipped;
+	}
+
+}
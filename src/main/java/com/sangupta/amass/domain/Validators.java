@@ -0,0 +1,91 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.domain;
+
+/**
+ * What is remembered of the last crawl of a URL to tell if it has changed
+ * since: the <code>ETag</code> and <code>Last-Modified</code> headers sent by
+ * the server, and a hash of the body.
+ * 
+ * @author sangupta
+ *
+ */
+public class Validators {
+	
+	/**
+	 * The value of the <code>ETag</code> header, <code>null</code> if there
+	 * was none
+	 */
+	private final String eTag;
+	
+	/**
+	 * The value of the <code>Last-Modified</code> header, kept as sent so
+	 * that it can be sent back as is, <code>null</code> if there was none
+	 */
+	private final String lastModified;
+	
+	/**
+	 * A 64-bit hash of the body, zero if not known
+	 */
+	private final long contentHash;
+	
+	public Validators(String eTag, String lastModified, long contentHash) {
+		this.eTag = eTag;
+		this.lastModified = lastModified;
+		this.contentHash = contentHash;
+	}
+	
+	/**
+	 * Check if there is nothing to revalidate the URL with.
+	 * 
+	 * @return <code>true</code> if neither header nor the hash of the body is
+	 *         known, <code>false</code> otherwise
+	 */
+	public boolean isEmpty() {
+		return this.eTag == null && this.lastModified == null && this.contentHash == 0;
+	}
+	
+	// Usual accessors follow
+
+	/**
+	 * @return the eTag
+	 */
+	public String getETag() {
+		return eTag;
+	}
+
+	/**
+	 * @return the lastModified
+	 */
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * @return the contentHash
+	 */
+	public long getContentHash() {
+		return contentHash;
+	}
+
+}
@@ -0,0 +1,215 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A plain Bloom filter over 64-bit hashes, using double hashing to derive
+ * the bit positions. Not thread-safe.
+ * 
+ * @author sangupta
+ *
+ */
+final class BloomFilter {
+	
+	private static final double LN2 = Math.log(2);
+	
+	/**
+	 * The bits of this filter
+	 */
+	private final long[] words;
+	
+	/**
+	 * The number of bits in this filter
+	 */
+	private final long numBits;
+	
+	/**
+	 * The number of bits set for each element
+	 */
+	private final int numHashes;
+	
+	/**
+	 * The number of elements this filter was sized for
+	 */
+	private final long capacity;
+	
+	/**
+	 * The number of elements added so far
+	 */
+	private long count;
+	
+	/**
+	 * Create a filter sized for the given number of elements at the given
+	 * false positive rate.
+	 * 
+	 * @param capacity
+	 *            the expected number of elements
+	 * 
+	 * @param falsePositiveRate
+	 *            the false positive rate once the filter holds its capacity
+	 */
+	BloomFilter(long capacity, double falsePositiveRate) {
+		final long bits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (LN2 * LN2));
+		final int numWords = (int) Math.max(1, (bits + 63) >>> 6);
+		
+		this.words = new long[numWords];
+		this.numBits = (long) numWords << 6;
+		this.numHashes = Math.max(1, (int) Math.round((double) this.numBits / capacity * LN2));
+		this.capacity = capacity;
+	}
+	
+	private BloomFilter(long[] words, int numHashes, long capacity, long count) {
+		this.words = words;
+		this.numBits = (long) words.length << 6;
+		this.numHashes = numHashes;
+		this.capacity = capacity;
+		this.count = count;
+	}
+	
+	/**
+	 * Add the element with the given hash.
+	 * 
+	 * @param hash
+	 *            the 64-bit hash of the element
+	 */
+	void add(long hash) {
+		final long step = secondHash(hash);
+		long combined = hash;
+		for(int index = 0; index < this.numHashes; index++) {
+			final long bit = (combined & Long.MAX_VALUE) % this.numBits;
+			this.words[(int) (bit >>> 6)] |= 1L << bit;
+			combined += step;
+		}
+		
+		this.count++;
+	}
+	
+	/**
+	 * Check if the element with the given hash may have been added.
+	 * 
+	 * @param hash
+	 *            the 64-bit hash of the element
+	 * 
+	 * @return <code>false</code> if the element was definitely not added,
+	 *         <code>true</code> if it was probably added
+	 */
+	boolean mightContain(long hash) {
+		final long step = secondHash(hash);
+		long combined = hash;
+		for(int index = 0; index < this.numHashes; index++) {
+			final long bit = (combined & Long.MAX_VALUE) % this.numBits;
+			if((this.words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+			
+			combined += step;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Check if this filter holds as many elements as it was sized for.
+	 * 
+	 * @return <code>true</code> if the filter is full
+	 */
+	boolean isFull() {
+		return this.count >= this.capacity;
+	}
+	
+	long getCapacity() {
+		return this.capacity;
+	}
+	
+	long getCount() {
+		return this.count;
+	}
+	
+	/**
+	 * @return the number of bytes taken by the bits of this filter
+	 */
+	long getSizeInBytes() {
+		return this.words.length * 8L;
+	}
+	
+	void writeTo(DataOutputStream out) throws IOException {
+		out.writeLong(this.capacity);
+		out.writeLong(this.count);
+		out.writeInt(this.numHashes);
+		out.writeInt(this.words.length);
+		for(long word : this.words) {
+			out.writeLong(word);
+		}
+	}
+	
+	static BloomFilter readFrom(DataInputStream in) throws IOException {
+		final long capacity = in.readLong();
+		final long count = in.readLong();
+		final int numHashes = in.readInt();
+		final long[] words = new long[in.readInt()];
+		for(int index = 0; index < words.length; index++) {
+			words[index] = in.readLong();
+		}
+		
+		return new BloomFilter(words, numHashes, capacity, count);
+	}
+	
+	/**
+	 * Compute a 64-bit hash of the given string.
+	 * 
+	 * @param value
+	 *            the string to hash
+	 * 
+	 * @return the hash
+	 */
+	static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		final int length = value.length();
+		for(int index = 0; index < length; index++) {
+			hash ^= value.charAt(index);
+			hash *= 0x100000001b3L;
+		}
+		
+		return mix(hash);
+	}
+	
+	private static long secondHash(long hash) {
+		return mix(hash + 0x9e3779b97f4a7c15L) | 1L;
+	}
+	
+	/**
+	 * The finalization step of MurmurHash3, to spread the bits of the hash.
+	 */
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+}
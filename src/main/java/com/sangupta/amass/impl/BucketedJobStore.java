@@ -0,0 +1,492 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+import com.sangupta.amass.domain.CrawlJob;
+
+/**
+ * A {@link JobStore} for bounded integer priorities that keeps one FIFO lane
+ * per priority value, and a bitmap of the lanes that are non-empty.
+ * 
+ * Priorities less than zero are stored in lane zero, and priorities beyond
+ * the highest lane are stored in the highest lane. Within a lane jobs are
+ * crawled in the order of their {@link CrawlJob#getSequence()}, as in the
+ * other stores. A job joins the tail of its lane, unless the lane holds a
+ * newer job already, as when its priority is changed: such a job is held in
+ * a small sorted set of late jobs of the lane, ordered by sequence, which is
+ * merged with the lane when polling.
+ * 
+ * When a job changes its lane, or is removed, it is not removed from its
+ * lane. The stale entry is skipped when it reaches the head of the lane, as
+ * the {@link CrawlJob#getStoreIndex()} of the job no longer matches the lane.
+ * Once the stale entries of a lane outnumber its live jobs, the lane is
+ * compacted, so that stale entries never take more than the live ones.
+ * 
+ * Adding a job newer than the jobs of its lane, as every fresh submission
+ * is, takes O(1) time, and so does polling it, amortized over the stale
+ * entries skipped. Adding or polling a late job takes O(log k) time, where
+ * k is the number of late jobs of its lane. Removing a job takes amortized
+ * O(1) time, or O(log k) once its lane has late jobs, as each compaction is
+ * paid for by the removals that made it necessary. Finding the highest or
+ * the lowest lane with a job scans the bitmap, one word per 64 lanes.
+ * 
+ * Lanes are keyed by priority alone, and thus this store does not support
+ * aging of jobs, which would need them to be ordered by
+ * {@link CrawlJob#getRank()}.
+ * 
+ * @author sangupta
+ *
+ */
+public class BucketedJobStore implements JobStore {
+	
+	/**
+	 * The default number of priority lanes
+	 */
+	public static final int DEFAULT_LANES = 64;
+	
+	/**
+	 * The number of stale entries a lane may hold before it is compacted,
+	 * even if it has fewer live jobs
+	 */
+	private static final int MIN_STALE_TO_COMPACT = 32;
+	
+	/**
+	 * Orders jobs by their sequence alone
+	 */
+	private static final Comparator<CrawlJob> SEQUENCE_ORDER = new Comparator<CrawlJob>() {
+		
+		@Override
+		public int compare(CrawlJob first, CrawlJob second) {
+			final long sequence = first.getSequence();
+			final long otherSequence = second.getSequence();
+			if(sequence == otherSequence) {
+				return 0;
+			}
+			
+			return sequence < otherSequence ? -1 : 1;
+		}
+		
+	};
+	
+	/**
+	 * The FIFO lane for each priority
+	 */
+	private final ArrayDeque<CrawlJob>[] lanes;
+	
+	/**
+	 * The jobs of each lane that joined it after a newer job, by sequence,
+	 * created when first needed
+	 */
+	private final TreeSet<CrawlJob>[] lateJobs;
+	
+	/**
+	 * The number of live jobs in each lane
+	 */
+	private final int[] liveJobs;
+	
+	/**
+	 * Bitmap of lanes which have at least one entry in them
+	 */
+	private final long[] nonEmptyLanes;
+	
+	/**
+	 * The number of live jobs in this store
+	 */
+	private int size;
+	
+	/**
+	 * Create a new store with {@link #DEFAULT_LANES} priority lanes.
+	 */
+	public BucketedJobStore() {
+		this(DEFAULT_LANES);
+	}
+	
+	/**
+	 * Create a new store with the given number of priority lanes.
+	 * 
+	 * @param numLanes
+	 *            the number of lanes, jobs with priority higher than
+	 *            <code>numLanes - 1</code> share the highest lane
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public BucketedJobStore(int numLanes) {
+		if(numLanes < 1) {
+			throw new IllegalArgumentException("Number of lanes cannot be less than one.");
+		}
+		
+		this.lanes = new ArrayDeque[numLanes];
+		for(int index = 0; index < numLanes; index++) {
+			this.lanes[index] = new ArrayDeque<CrawlJob>();
+		}
+		
+		this.lateJobs = new TreeSet[numLanes];
+		this.liveJobs = new int[numLanes];
+		
+		this.nonEmptyLanes = new long[(numLanes + 63) >>> 6];
+	}
+
+	@Override
+	public void offer(CrawlJob job) {
+		if(job == null) {
+			throw new IllegalArgumentException("Job cannot be null");
+		}
+		
+		addToLane(job, laneOf(job));
+		this.size++;
+	}
+	
+	@Override
+	public void offerAll(List<CrawlJob> jobs) {
+		for(CrawlJob job : jobs) {
+			offer(job);
+		}
+	}
+
+	@Override
+	public CrawlJob poll() {
+		if(this.size == 0) {
+			return null;
+		}
+		
+		do {
+			final int lane = highestNonEmptyLane();
+			if(lane < 0) {
+				// only stale entries were left
+				this.size = 0;
+				return null;
+			}
+			
+			final CrawlJob job = pollLane(lane);
+			if(job != null) {
+				job.setStoreIndex(-1);
+				this.liveJobs[lane]--;
+				this.size--;
+				return job;
+			}
+			
+			// only stale entries were in the lane
+		} while(true);
+	}
+
+	@Override
+	public CrawlJob peekLowest() {
+		if(this.size == 0) {
+			return null;
+		}
+		
+		do {
+			final int lane = lowestNonEmptyLane();
+			if(lane < 0) {
+				// only stale entries were left
+				this.size = 0;
+				return null;
+			}
+			
+			final ArrayDeque<CrawlJob> deque = this.lanes[lane];
+			CrawlJob job;
+			while((job = deque.peekLast()) != null && job.getStoreIndex() != lane) {
+				// stale entry, drop it
+				deque.pollLast();
+			}
+			
+			// a late job may be newer than the tail
+			final TreeSet<CrawlJob> late = this.lateJobs[lane];
+			if(late != null) {
+				CrawlJob lateLast = null;
+				while(!late.isEmpty() && (lateLast = late.last()).getStoreIndex() != lane) {
+					// stale entry, drop it
+					late.pollLast();
+					lateLast = null;
+				}
+				
+				if(lateLast != null && (job == null || lateLast.getSequence() > job.getSequence())) {
+					job = lateLast;
+				}
+			}
+			
+			if(job != null) {
+				return job;
+			}
+			
+			// only stale entries were in the lane
+			deque.clear();
+			if(late != null) {
+				late.clear();
+			}
+			
+			clearBit(lane);
+		} while(true);
+	}
+	
+	/**
+	 * Remove and return the live job of the given lane with the lowest
+	 * sequence, dropping the stale entries ahead of it.
+	 * 
+	 * @param lane
+	 *            the lane to poll
+	 * 
+	 * @return the job, or <code>null</code> if the lane has no live job
+	 */
+	private CrawlJob pollLane(int lane) {
+		final ArrayDeque<CrawlJob> deque = this.lanes[lane];
+		CrawlJob first;
+		while((first = deque.peekFirst()) != null && first.getStoreIndex() != lane) {
+			deque.pollFirst();
+		}
+		
+		final TreeSet<CrawlJob> late = this.lateJobs[lane];
+		CrawlJob lateFirst = null;
+		if(late != null) {
+			while(!late.isEmpty() && (lateFirst = late.first()).getStoreIndex() != lane) {
+				late.pollFirst();
+				lateFirst = null;
+			}
+		}
+		
+		final CrawlJob job;
+		if(lateFirst != null && (first == null || lateFirst.getSequence() < first.getSequence())) {
+			job = late.pollFirst();
+		} else {
+			job = deque.pollFirst();
+		}
+		
+		if(deque.isEmpty() && (late == null || late.isEmpty())) {
+			clearBit(lane);
+		}
+		
+		return job;
+	}
+	
+	/**
+	 * Removes the job lazily: its entry is left in the lane and skipped
+	 * later, as the job no longer records the lane.
+	 * 
+	 */
+	@Override
+	public boolean remove(CrawlJob job) {
+		final int lane = job.getStoreIndex();
+		if(lane < 0 || lane >= this.lanes.length) {
+			// not in this store
+			return false;
+		}
+		
+		job.setStoreIndex(-1);
+		this.size--;
+		leaveLane(lane);
+		return true;
+	}
+
+	@Override
+	public void priorityChanged(CrawlJob job) {
+		final int current = job.getStoreIndex();
+		if(current < 0) {
+			// not in this store
+			return;
+		}
+		
+		final int lane = laneOf(job);
+		if(lane == current) {
+			return;
+		}
+		
+		// leave the old entry behind, it will be skipped
+		addToLane(job, lane);
+		leaveLane(current);
+	}
+
+	@Override
+	public long getDelayNanos() {
+		if(this.size == 0) {
+			return Long.MAX_VALUE;
+		}
+		
+		return 0;
+	}
+	
+	@Override
+	public void completed(CrawlJob job) {
+		// nothing to do
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	@Override
+	public void clear() {
+		for(int lane = 0; lane < this.lanes.length; lane++) {
+			for(CrawlJob job : this.lanes[lane]) {
+				job.setStoreIndex(-1);
+			}
+			
+			this.lanes[lane].clear();
+			
+			final TreeSet<CrawlJob> late = this.lateJobs[lane];
+			if(late != null) {
+				for(CrawlJob job : late) {
+					job.setStoreIndex(-1);
+				}
+				
+				late.clear();
+			}
+			
+			this.liveJobs[lane] = 0;
+		}
+		
+		for(int index = 0; index < this.nonEmptyLanes.length; index++) {
+			this.nonEmptyLanes[index] = 0;
+		}
+		
+		this.size = 0;
+	}
+	
+	/**
+	 * Compute the lane in which the given job needs to be kept.
+	 * 
+	 * @param job
+	 *            the job to check
+	 * 
+	 * @return the lane for the job
+	 */
+	private int laneOf(CrawlJob job) {
+		final int priority = job.getPriority();
+		if(priority <= 0) {
+			return 0;
+		}
+		
+		if(priority >= this.lanes.length) {
+			return this.lanes.length - 1;
+		}
+		
+		return priority;
+	}
+	
+	private void addToLane(CrawlJob job, int lane) {
+		job.setStoreIndex(lane);
+		this.liveJobs[lane]++;
+		
+		final ArrayDeque<CrawlJob> deque = this.lanes[lane];
+		final CrawlJob last = deque.peekLast();
+		if(last == null || last.getSequence() <= job.getSequence()) {
+			deque.addLast(job);
+		} else {
+			TreeSet<CrawlJob> late = this.lateJobs[lane];
+			if(late == null) {
+				late = new TreeSet<CrawlJob>(SEQUENCE_ORDER);
+				this.lateJobs[lane] = late;
+			}
+			
+			// a stale entry of the job, left when it last left the lane,
+			// is live again rather than added twice
+			late.add(job);
+		}
+		
+		this.nonEmptyLanes[lane >>> 6] |= (1L << (lane & 63));
+	}
+	
+	/**
+	 * Account for a job that has left the given lane, leaving a stale entry
+	 * behind, and compact the lane if stale entries outnumber its live jobs.
+	 * 
+	 * @param lane
+	 *            the lane the job has left
+	 */
+	private void leaveLane(int lane) {
+		final int live = --this.liveJobs[lane];
+		final TreeSet<CrawlJob> late = this.lateJobs[lane];
+		final int stale = this.lanes[lane].size() + (late == null ? 0 : late.size()) - live;
+		if(stale <= Math.max(live, MIN_STALE_TO_COMPACT)) {
+			return;
+		}
+		
+		final ArrayDeque<CrawlJob> deque = this.lanes[lane];
+		final int entries = deque.size();
+		for(int index = 0; index < entries; index++) {
+			final CrawlJob job = deque.pollFirst();
+			if(job.getStoreIndex() == lane) {
+				deque.addLast(job);
+			}
+		}
+		
+		if(late != null) {
+			final Iterator<CrawlJob> iterator = late.iterator();
+			while(iterator.hasNext()) {
+				if(iterator.next().getStoreIndex() != lane) {
+					iterator.remove();
+				}
+			}
+		}
+		
+		if(deque.isEmpty() && (late == null || late.isEmpty())) {
+			clearBit(lane);
+		}
+	}
+	
+	private void clearBit(int lane) {
+		this.nonEmptyLanes[lane >>> 6] &= ~(1L << (lane & 63));
+	}
+	
+	/**
+	 * Find the lowest lane that has an entry.
+	 * 
+	 * @return the index of the lane, or <code>-1</code> if all lanes are empty
+	 */
+	private int lowestNonEmptyLane() {
+		for(int index = 0; index < this.nonEmptyLanes.length; index++) {
+			final long word = this.nonEmptyLanes[index];
+			if(word != 0) {
+				return (index << 6) + Long.numberOfTrailingZeros(word);
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Find the highest lane that has an entry.
+	 * 
+	 * @return the index of the lane, or <code>-1</code> if all lanes are empty
+	 */
+	private int highestNonEmptyLane() {
+		for(int index = this.nonEmptyLanes.length - 1; index >= 0; index--) {
+			final long word = this.nonEmptyLanes[index];
+			if(word != 0) {
+				return (index << 6) + 63 - Long.numberOfLeadingZeros(word);
+			}
+		}
+		
+		return -1;
+	}
+
+}
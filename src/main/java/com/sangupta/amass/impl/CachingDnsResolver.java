@@ -0,0 +1,535 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.conn.DnsResolver;
+
+/**
+ * A {@link DnsResolver} that caches the addresses of host names, and can
+ * resolve host names ahead of their use on a few threads of its own.
+ * 
+ * The resolver of the JVM does not tell the TTL of the records it returns,
+ * and thus resolved names are cached for a fixed time to live. Names that do
+ * not resolve are cached too, for a shorter time, so that a dead host does
+ * not cost a lookup for each of its URLs. Concurrent lookups of the same name
+ * wait for a single lookup, including one started by a prefetch; a prefetch
+ * still queued when the name is needed is run by the thread needing it,
+ * rather than waited for behind other prefetches. Once the
+ * cache holds the maximum number of names, expired names are purged, and
+ * then arbitrary ones if still needed.
+ * 
+ * The resolver must be closed once no longer needed to stop its threads.
+ * 
+ * @author sangupta
+ *
+ */
+public class CachingDnsResolver implements DnsResolver, Closeable {
+	
+	/**
+	 * Default time in millis to cache a resolved name
+	 */
+	public static final long DEFAULT_TTL = 5 * 60 * 1000;
+	
+	/**
+	 * Default time in millis to cache a name that did not resolve
+	 */
+	public static final long DEFAULT_NEGATIVE_TTL = 30 * 1000;
+	
+	/**
+	 * Default maximum number of names cached
+	 */
+	public static final int DEFAULT_MAX_HOSTS = 500000;
+	
+	/**
+	 * Default number of threads that resolve names ahead of their use
+	 */
+	public static final int DEFAULT_PREFETCH_THREADS = 8;
+	
+	/**
+	 * The maximum number of names waiting to be prefetched, beyond which
+	 * prefetches are dropped
+	 */
+	private static final int PREFETCH_QUEUE_CAPACITY = 10000;
+	
+	private static final AtomicInteger PREFETCH_THREAD_COUNT = new AtomicInteger(1);
+	
+	/**
+	 * The time in millis to cache a resolved name
+	 */
+	private final long ttl;
+	
+	/**
+	 * The time in millis to cache a name that did not resolve
+	 */
+	private final long negativeTtl;
+	
+	/**
+	 * The maximum number of names cached
+	 */
+	private final int maxHosts;
+	
+	/**
+	 * The cached resolutions by host name
+	 */
+	private final ConcurrentHashMap<String, Resolution> cache = new ConcurrentHashMap<String, Resolution>();
+	
+	/**
+	 * The lookups in progress by host name
+	 */
+	private final ConcurrentHashMap<String, Lookup> lookups = new ConcurrentHashMap<String, Lookup>();
+	
+	/**
+	 * Runs the prefetches, <code>null</code> if names are not prefetched
+	 */
+	private final ThreadPoolExecutor prefetcher;
+	
+	/**
+	 * Whether a purge of the {@link #cache} is in progress
+	 */
+	private final AtomicBoolean purging = new AtomicBoolean(false);
+	
+	/**
+	 * The number of names resolved from the cache
+	 */
+	private final AtomicLong hits = new AtomicLong();
+	
+	/**
+	 * The number of names that had to be looked up, or waited for
+	 */
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * Create a new resolver with default settings.
+	 */
+	public CachingDnsResolver() {
+		this(DEFAULT_TTL, DEFAULT_NEGATIVE_TTL, DEFAULT_MAX_HOSTS, DEFAULT_PREFETCH_THREADS);
+	}
+	
+	/**
+	 * Create a new resolver.
+	 * 
+	 * @param ttl
+	 *            the time in millis to cache a resolved name
+	 * 
+	 * @param negativeTtl
+	 *            the time in millis to cache a name that did not resolve,
+	 *            zero to not cache such names
+	 * 
+	 * @param maxHosts
+	 *            the maximum number of names cached
+	 * 
+	 * @param prefetchThreads
+	 *            the number of threads that resolve names ahead of their
+	 *            use, zero to not prefetch
+	 */
+	public CachingDnsResolver(long ttl, long negativeTtl, int maxHosts, int prefetchThreads) {
+		if(ttl < 0 || negativeTtl < 0) {
+			throw new IllegalArgumentException("Time to live cannot be negative.");
+		}
+		
+		if(maxHosts < 1) {
+			throw new IllegalArgumentException("Maximum hosts cannot be less than one.");
+		}
+		
+		if(prefetchThreads < 0) {
+			throw new IllegalArgumentException("Number of prefetch threads cannot be negative.");
+		}
+		
+		this.ttl = ttl;
+		this.negativeTtl = negativeTtl;
+		this.maxHosts = maxHosts;
+		
+		if(prefetchThreads > 0) {
+			this.prefetcher = new ThreadPoolExecutor(prefetchThreads, prefetchThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(PREFETCH_QUEUE_CAPACITY), new PrefetchThreadFactory());
+			this.prefetcher.allowCoreThreadTimeOut(true);
+		} else {
+			this.prefetcher = null;
+		}
+	}
+
+	@Override
+	public InetAddress[] resolve(String host) throws UnknownHostException {
+		if(isLiteral(host)) {
+			return InetAddress.getAllByName(host);
+		}
+		
+		Resolution resolution = cached(host);
+		if(resolution != null) {
+			this.hits.incrementAndGet();
+		} else {
+			this.misses.incrementAndGet();
+			resolution = await(startLookup(host, true));
+		}
+		
+		return resolution.getAddresses(host);
+	}
+	
+	/**
+	 * Start resolving the host of the given URL in the background, unless it
+	 * is cached or being resolved already. Does nothing if prefetching is
+	 * disabled, or if too many names are waiting to be prefetched.
+	 * 
+	 * @param url
+	 *            the URL whose host is to be resolved
+	 */
+	public void prefetch(String url) {
+		if(this.prefetcher == null) {
+			return;
+		}
+		
+		final String host = hostOf(url);
+		if(host.isEmpty() || isLiteral(host) || cached(host) != null) {
+			return;
+		}
+		
+		startLookup(host, false);
+	}
+	
+	/**
+	 * Return the number of names cached, including expired ones not yet
+	 * purged.
+	 * 
+	 * @return the number of names
+	 */
+	public int size() {
+		return this.cache.size();
+	}
+	
+	/**
+	 * Stop the prefetch threads, cancel the prefetches still queued and
+	 * clear the cache.
+	 * 
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() {
+		if(this.prefetcher != null) {
+			// prefetches never run are cancelled, so that nothing waits for them
+			for(Runnable prefetch : this.prefetcher.shutdownNow()) {
+				((Future<?>) prefetch).cancel(false);
+			}
+		}
+		
+		this.cache.clear();
+	}
+	
+	/**
+	 * Return the cached resolution of the given name if it has not expired.
+	 */
+	private Resolution cached(String host) {
+		final Resolution resolution = this.cache.get(host);
+		if(resolution == null || resolution.expires - System.currentTimeMillis() <= 0) {
+			return null;
+		}
+		
+		return resolution;
+	}
+	
+	/**
+	 * Return the lookup in progress for the given name, or start one, either
+	 * on the calling thread or on the {@link #prefetcher}. When inline, a
+	 * lookup still queued for the {@link #prefetcher} is run on the calling
+	 * thread.
+	 */
+	private Lookup startLookup(String host, boolean inline) {
+		Lookup lookup = this.lookups.get(host);
+		if(lookup == null) {
+			final Lookup created = new Lookup(host);
+			lookup = this.lookups.putIfAbsent(host, created);
+			if(lookup == null) {
+				lookup = created;
+				if(!inline) {
+					try {
+						this.prefetcher.execute(created);
+					} catch(RejectedExecutionException e) {
+						// too many waiting, or closed - the name is resolved when used
+						this.lookups.remove(host, created);
+					}
+					
+					return created;
+				}
+			}
+		}
+		
+		if(inline) {
+			// does nothing if the lookup has been started already
+			lookup.run();
+		}
+		
+		return lookup;
+	}
+	
+	/**
+	 * Wait for the given lookup to complete.
+	 */
+	private static Resolution await(Lookup lookup) throws UnknownHostException {
+		boolean interrupted = false;
+		try {
+			while(true) {
+				try {
+					return lookup.get();
+				} catch(InterruptedException e) {
+					interrupted = true;
+				} catch(CancellationException e) {
+					throw new IllegalStateException("DNS resolver has been closed, unable to resolve host: " + lookup.host);
+				} catch(ExecutionException e) {
+					final Throwable cause = e.getCause();
+					if(cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					
+					throw new IllegalStateException("Unable to resolve host: " + lookup.host, cause);
+				}
+			}
+		} finally {
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Resolve the given name and cache the outcome.
+	 */
+	private Resolution lookUp(String host) {
+		Resolution resolution;
+		try {
+			resolution = new Resolution(InetAddress.getAllByName(host), null, System.currentTimeMillis() + this.ttl);
+		} catch(UnknownHostException e) {
+			resolution = new Resolution(null, e, System.currentTimeMillis() + this.negativeTtl);
+		}
+		
+		final long timeToLive = resolution.addresses != null ? this.ttl : this.negativeTtl;
+		if(timeToLive > 0) {
+			if(this.cache.size() >= this.maxHosts) {
+				purge();
+			}
+			
+			this.cache.put(host, resolution);
+		}
+		
+		return resolution;
+	}
+	
+	/**
+	 * Remove the expired names from the cache, and then arbitrary ones till
+	 * it is three-quarters full.
+	 */
+	private void purge() {
+		if(!this.purging.compareAndSet(false, true)) {
+			return;
+		}
+		
+		try {
+			final long now = System.currentTimeMillis();
+			Iterator<Resolution> iterator = this.cache.values().iterator();
+			while(iterator.hasNext()) {
+				if(iterator.next().expires - now <= 0) {
+					iterator.remove();
+				}
+			}
+			
+			final int target = this.maxHosts - this.maxHosts / 4;
+			iterator = this.cache.values().iterator();
+			while(this.cache.size() > target && iterator.hasNext()) {
+				iterator.next();
+				iterator.remove();
+			}
+		} finally {
+			this.purging.set(false);
+		}
+	}
+	
+	/**
+	 * Return the host name, without the port, of the given URL.
+	 */
+	static String hostOf(String url) {
+		final String host = PolitenessJobStore.hostOf(url);
+		if(host.startsWith("[")) {
+			return host;
+		}
+		
+		final int colon = host.lastIndexOf(':');
+		if(colon < 0) {
+			return host;
+		}
+		
+		return host.substring(0, colon);
+	}
+	
+	/**
+	 * Check if the given host is an IP address rather than a name: an IPv6
+	 * address, or an IPv4 address of four dot-separated decimal parts of no
+	 * more than 255 each. A name that merely ends in a digit, such as
+	 * <code>node42</code>, is thus still looked up.
+	 */
+	static boolean isLiteral(String host) {
+		if(host == null || host.isEmpty()) {
+			return false;
+		}
+		
+		if(host.indexOf(':') >= 0 || host.startsWith("[")) {
+			return true;
+		}
+		
+		int dots = 0;
+		int digits = 0;
+		int value = 0;
+		for(int index = 0; index < host.length(); index++) {
+			final char ch = host.charAt(index);
+			if(ch == '.') {
+				if(digits == 0 || ++dots > 3) {
+					return false;
+				}
+				
+				digits = 0;
+				value = 0;
+				continue;
+			}
+			
+			if(ch < '0' || ch > '9' || ++digits > 3) {
+				return false;
+			}
+			
+			value = value * 10 + (ch - '0');
+			if(value > 255) {
+				return false;
+			}
+		}
+		
+		return dots == 3 && digits > 0;
+	}
+	
+	// Usual accessors follow
+
+	/**
+	 * @return the number of names resolved from the cache
+	 */
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * @return the number of names that had to be looked up
+	 */
+	public long getMisses() {
+		return this.misses.get();
+	}
+	
+	/**
+	 * The outcome of resolving a name.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	private static class Resolution {
+		
+		final InetAddress[] addresses;
+		
+		final UnknownHostException failure;
+		
+		final long expires;
+		
+		Resolution(InetAddress[] addresses, UnknownHostException failure, long expires) {
+			this.addresses = addresses;
+			this.failure = failure;
+			this.expires = expires;
+		}
+		
+		InetAddress[] getAddresses(String host) throws UnknownHostException {
+			if(this.addresses == null) {
+				throw new UnknownHostException(this.failure.getMessage() != null ? this.failure.getMessage() : host);
+			}
+			
+			return this.addresses.clone();
+		}
+		
+	}
+	
+	/**
+	 * A lookup of a name in progress, that removes itself from the
+	 * {@link CachingDnsResolver#lookups} once done.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	private class Lookup extends FutureTask<Resolution> {
+		
+		final String host;
+		
+		Lookup(final String host) {
+			super(new Callable<Resolution>() {
+				
+				@Override
+				public Resolution call() {
+					return lookUp(host);
+				}
+				
+			});
+			
+			this.host = host;
+		}
+		
+		@Override
+		protected void done() {
+			lookups.remove(this.host, this);
+		}
+		
+	}
+	
+	/**
+	 * Creates the daemon threads of the {@link CachingDnsResolver#prefetcher}.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	private static class PrefetchThreadFactory implements ThreadFactory {
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "Amass-DNS-Prefetch-" + PREFETCH_THREAD_COUNT.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+		
+	}
+
+}
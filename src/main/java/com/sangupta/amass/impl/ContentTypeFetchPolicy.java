@@ -0,0 +1,156 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import com.sangupta.amass.core.FetchPolicy;
+import com.sangupta.amass.domain.CrawlableURL;
+
+/**
+ * A {@link FetchPolicy} that downloads the bodies of successful responses of
+ * the given media types, and up to a maximum length. A
+ * <code>304 Not Modified</code> response is let through as well, as it has no
+ * body and tells that the page is unchanged.
+ * 
+ * The media type is matched without its parameters and in a case-insensitive
+ * manner. A response without a <code>Content-Type</code> is fetched, as is
+ * one whose length is not known, as nothing can be told of them up front.
+ * Override {@link #isWantedStatus(int)} to also fetch the bodies of error
+ * responses.
+ * 
+ * @author sangupta
+ *
+ */
+public class ContentTypeFetchPolicy implements FetchPolicy {
+	
+	/**
+	 * The media types of HTML pages and of feeds
+	 */
+	public static final String[] DEFAULT_CONTENT_TYPES = { "text/html", "application/xhtml+xml", "application/rss+xml", "application/atom+xml", "application/xml", "text/xml" };
+	
+	/**
+	 * The media types whose bodies are fetched, in lower case
+	 */
+	private final Set<String> contentTypes;
+	
+	/**
+	 * The length beyond which a body is not fetched, zero for no limit
+	 */
+	private final long maxContentLength;
+	
+	/**
+	 * Create a policy that fetches the {@link #DEFAULT_CONTENT_TYPES} of any
+	 * length.
+	 */
+	public ContentTypeFetchPolicy() {
+		this(Arrays.asList(DEFAULT_CONTENT_TYPES), 0);
+	}
+	
+	/**
+	 * Create a policy.
+	 * 
+	 * @param contentTypes
+	 *            the media types whose bodies are fetched, such as
+	 *            <code>text/html</code>
+	 * 
+	 * @param maxContentLength
+	 *            the length beyond which a body is not fetched, zero for no
+	 *            limit
+	 */
+	public ContentTypeFetchPolicy(Collection<String> contentTypes, long maxContentLength) {
+		if(contentTypes == null || contentTypes.isEmpty()) {
+			throw new IllegalArgumentException("Content types cannot be null or empty");
+		}
+		
+		if(maxContentLength < 0) {
+			throw new IllegalArgumentException("Maximum content length cannot be negative");
+		}
+		
+		this.contentTypes = new HashSet<String>();
+		for(String contentType : contentTypes) {
+			this.contentTypes.add(contentType.trim().toLowerCase(Locale.ENGLISH));
+		}
+		
+		this.maxContentLength = maxContentLength;
+	}
+
+	@Override
+	public boolean shouldFetch(CrawlableURL crawlableURL, int responseCode, String contentType, long contentLength) {
+		if(!isWantedStatus(responseCode)) {
+			return false;
+		}
+		
+		if(this.maxContentLength > 0 && contentLength > this.maxContentLength) {
+			return false;
+		}
+		
+		if(contentType == null) {
+			return true;
+		}
+		
+		return this.contentTypes.contains(mediaType(contentType));
+	}
+	
+	/**
+	 * Check if the body of a response with the given status is wanted. By
+	 * default only the bodies of successful responses are, along with
+	 * <code>304 Not Modified</code> responses.
+	 * 
+	 * @param responseCode
+	 *            the HTTP status code of the response
+	 * 
+	 * @return <code>true</code> if the body may be fetched,
+	 *         <code>false</code> otherwise
+	 */
+	protected boolean isWantedStatus(int responseCode) {
+		return (responseCode >= 200 && responseCode < 300) || responseCode == ValidatorStore.HTTP_NOT_MODIFIED;
+	}
+	
+	/**
+	 * Return the media type of the given <code>Content-Type</code> value,
+	 * without its parameters and in lower case.
+	 */
+	private static String mediaType(String contentType) {
+		final int semicolon = contentType.indexOf(';');
+		if(semicolon >= 0) {
+			contentType = contentType.substring(0, semicolon);
+		}
+		
+		return contentType.trim().toLowerCase(Locale.ENGLISH);
+	}
+	
+	// Usual accessors follow
+
+	/**
+	 * @return the maxContentLength
+	 */
+	public long getMaxContentLength() {
+		return maxContentLength;
+	}
+
+}
@@ -0,0 +1,288 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds {@link ScheduledCrawl}s, including retries of failed crawls, in a
+ * {@link TimingWheel} and submits them to the {@link CrawlingQueue} when they
+ * are due, past the seen filter of the queue, which would otherwise drop all
+ * but the first run of a recurring crawl. A recurring crawl is placed back
+ * in the wheel for its next run; runs missed while the queue was blocked are
+ * skipped rather than queued in a burst.
+ * 
+ * The timer thread is started with the first scheduled crawl, so that an
+ * instance that never schedules anything costs nothing.
+ * 
+ * When the queue is being closed, the scheduler is first closed, so that it
+ * keeps only the retries it holds, and the queue waits for them to be due.
+ * Retries still held when the scheduler is shut down are handed back, so
+ * that their failure can be reported.
+ * 
+ * @author sangupta
+ *
+ */
+public class CrawlScheduler {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(CrawlScheduler.class);
+	
+	/**
+	 * The queue to submit due crawls to
+	 */
+	private final CrawlingQueue crawlingQueue;
+	
+	/**
+	 * The millis between two ticks of the {@link #wheel}
+	 */
+	private final long tickMillis;
+	
+	/**
+	 * The crawls not yet due. Guarded by this instance.
+	 */
+	private final TimingWheel<ScheduledCrawl> wheel;
+	
+	/**
+	 * The timer that moves the {@link #wheel}, <code>null</code> till the
+	 * first crawl is scheduled. Guarded by this instance.
+	 */
+	private Timer timer;
+	
+	/**
+	 * The number of due crawls being submitted to the queue. Guarded by this
+	 * instance.
+	 */
+	private int submitting;
+	
+	/**
+	 * Whether this scheduler has been closed to all but retries. Guarded by
+	 * this instance.
+	 */
+	private boolean closed;
+	
+	/**
+	 * Whether this scheduler has been shut down. Guarded by this instance.
+	 */
+	private boolean shutdown;
+	
+	public CrawlScheduler(CrawlingQueue crawlingQueue, long tickMillis) {
+		if(crawlingQueue == null) {
+			throw new IllegalArgumentException("Crawling queue cannot be null");
+		}
+		
+		this.crawlingQueue = crawlingQueue;
+		this.tickMillis = tickMillis;
+		this.wheel = new TimingWheel<ScheduledCrawl>(tickMillis, System.currentTimeMillis());
+	}
+	
+	/**
+	 * Schedule the given crawl.
+	 * 
+	 * @param crawl
+	 *            the crawl to schedule
+	 * 
+	 * @return the crawl itself
+	 * 
+	 * @throws IllegalStateException
+	 *             if this scheduler has been shut down, or closed and the
+	 *             crawl is not a retry
+	 */
+	public synchronized ScheduledCrawl schedule(ScheduledCrawl crawl) {
+		if(this.shutdown) {
+			throw new IllegalStateException("Crawl scheduler has already been shut down.");
+		}
+		
+		if(this.closed && crawl.getAttempt() == 0) {
+			throw new IllegalStateException("Crawl scheduler has already been closed.");
+		}
+		
+		this.wheel.add(crawl);
+		
+		if(this.timer == null) {
+			this.timer = new Timer("Amass-Scheduler", true);
+			this.timer.scheduleAtFixedRate(new TickTask(), this.tickMillis, this.tickMillis);
+		}
+		
+		return crawl;
+	}
+	
+	/**
+	 * Return the number of crawls that are yet to be queued, including the
+	 * due ones being submitted. Cancelled crawls are counted till they are
+	 * due.
+	 * 
+	 * @return the number of scheduled crawls
+	 */
+	public synchronized int size() {
+		return this.wheel.size() + this.submitting;
+	}
+	
+	/**
+	 * Return the millis between two ticks, after which due crawls are
+	 * submitted.
+	 * 
+	 * @return the tick interval in millis
+	 */
+	long getTickMillis() {
+		return this.tickMillis;
+	}
+	
+	/**
+	 * Close this scheduler to all but retries. The crawls that are not
+	 * retries are dropped, and recurring crawls are not scheduled again. The
+	 * retries held are still submitted when due.
+	 * 
+	 */
+	public synchronized void close() {
+		if(this.closed || this.shutdown) {
+			return;
+		}
+		
+		this.closed = true;
+		
+		final List<ScheduledCrawl> crawls = new ArrayList<ScheduledCrawl>();
+		this.wheel.drainTo(crawls);
+		for(ScheduledCrawl crawl : crawls) {
+			if(crawl.getAttempt() > 0) {
+				this.wheel.add(crawl);
+			}
+		}
+	}
+	
+	/**
+	 * Stop this scheduler and drop all crawls that are not yet due.
+	 * 
+	 * @return the retries that were dropped
+	 */
+	public synchronized List<ScheduledRetry> shutdown() {
+		final List<ScheduledRetry> dropped = new ArrayList<ScheduledRetry>();
+		if(this.shutdown) {
+			return dropped;
+		}
+		
+		this.shutdown = true;
+		
+		final List<ScheduledCrawl> crawls = new ArrayList<ScheduledCrawl>();
+		this.wheel.drainTo(crawls);
+		for(ScheduledCrawl crawl : crawls) {
+			if(crawl instanceof ScheduledRetry) {
+				dropped.add((ScheduledRetry) crawl);
+			}
+		}
+		
+		if(this.timer != null) {
+			this.timer.cancel();
+		}
+		
+		return dropped;
+	}
+	
+	/**
+	 * Move the {@link #wheel} to the current time and submit the crawls that
+	 * are due.
+	 * 
+	 */
+	void tick() {
+		final List<ScheduledCrawl> due = new ArrayList<ScheduledCrawl>();
+		final long now = System.currentTimeMillis();
+		final boolean closed;
+		synchronized(this) {
+			if(this.shutdown) {
+				return;
+			}
+			
+			this.wheel.advance(now, due);
+			this.submitting = due.size();
+			closed = this.closed;
+		}
+		
+		if(due.isEmpty()) {
+			return;
+		}
+		
+		// submit outside the lock as the queue may block when full
+		for(ScheduledCrawl crawl : due) {
+			if(crawl.isCancelled() || (closed && crawl.getAttempt() == 0)) {
+				continue;
+			}
+			
+			try {
+				if(crawl.getAttempt() > 0) {
+					this.crawlingQueue.submitRetry(crawl);
+				} else {
+					this.crawlingQueue.submitScheduled(crawl);
+				}
+			} catch(RuntimeException e) {
+				LOGGER.error("Unable to submit scheduled crawl: " + crawl, e);
+			}
+		}
+		
+		synchronized(this) {
+			this.submitting = 0;
+			if(this.shutdown || this.closed) {
+				return;
+			}
+			
+			for(ScheduledCrawl crawl : due) {
+				if(!crawl.isRecurring() || crawl.isCancelled()) {
+					continue;
+				}
+				
+				// skip the runs that have been missed
+				long deadline = crawl.deadline + crawl.getPeriod();
+				if(deadline <= now) {
+					deadline += ((now - deadline) / crawl.getPeriod() + 1) * crawl.getPeriod();
+				}
+				
+				crawl.deadline = deadline;
+				this.wheel.add(crawl);
+			}
+		}
+	}
+	
+	/**
+	 * Moves the {@link CrawlScheduler#wheel} on every tick.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	private class TickTask extends TimerTask {
+
+		@Override
+		public void run() {
+			try {
+				tick();
+			} catch(RuntimeException e) {
+				// keep the timer alive
+				LOGGER.error("Unable to submit scheduled crawls", e);
+			}
+		}
+		
+	}
+
+}
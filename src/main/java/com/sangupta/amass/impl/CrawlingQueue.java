@@ -21,19 +21,38 @@
 
 package com.sangupta.amass.impl;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.sangupta.amass.core.QueueMessageConverter;
+import com.sangupta.amass.core.RetryPolicy;
+import com.sangupta.amass.core.URLNormalizer;
+import com.sangupta.amass.domain.AmassConfig;
+import com.sangupta.amass.domain.AmassConfig.JobStoreType;
+import com.sangupta.amass.domain.AmassConfig.OverflowPolicy;
 import com.sangupta.amass.domain.AmassSignal;
 import com.sangupta.amass.domain.CrawlJob;
 import com.sangupta.amass.domain.CrawlableURL;
 import com.sangupta.amass.domain.DefaultCrawlableURL;
+import com.sangupta.amass.domain.JobClassStatistics;
+import com.sangupta.amass.domain.SubmissionResult;
 
 /**
  * A priority based queue, that collects all URLs that need to be crawled.
@@ -54,18 +73,109 @@ public class CrawlingQueue {
 	 * internal queue.
 	 */
 	private static final int DEFAULT_PRIORITY = 1;
+	
+	/**
+	 * The maximum time in millis that a worker waits on the external queue
+	 * before checking for closure of this queue again. External queues cannot
+	 * be signalled, and thus we need to wake up periodically.
+	 */
+	private static final long EXTERNAL_QUEUE_POLL_INTERVAL = 500;
+	
+	/**
+	 * The maximum number of distinct URLs that a batch submission inserts
+	 * under a single acquisition of the {@link #lock}.
+	 */
+	private static final int SUBMIT_BATCH_SIZE = 64 * 1024;
+	
+	/**
+	 * The approximate number of bytes taken by a job on the heap, excluding
+	 * the bytes of its URL.
+	 */
+	private static final long JOB_OVERHEAD_BYTES = 100;
+	
+	/**
+	 * The time in millis between two flushes of the {@link #journal}
+	 */
+	private static final long JOURNAL_FLUSH_INTERVAL = 1000;
 
 	/**
 	 * The map that maps the URL to a crawling job so that the same URL does
-	 * not get crawled by two different threads at the same go.
+	 * not get crawled by two different threads at the same go. As jobs are
+	 * equal by their URL, each job is its own key, so that no separate
+	 * {@link String} is kept per URL.
 	 */
-	private final ConcurrentHashMap<String, CrawlJob> jobs;
+	private final ConcurrentHashMap<CrawlJob, CrawlJob> jobs;
 	
 	/**
-	 * The embeddded priority queue that serves worker threads.
+	 * The embeddded priority queue that serves worker threads. All access to
+	 * this queue is guarded by {@link #lock}.
 	 * 
 	 */
-	private final BlockingQueue<CrawlJob> internalQueue;
+	private final JobStore internalQueue;
+	
+	/**
+	 * Lock that guards the {@link #internalQueue} and allows workers to block
+	 * till a job is handed over to them.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+	
+	/**
+	 * Condition signalled whenever a job is added to the {@link #internalQueue},
+	 * or when workers need to wake up to check for stop or closure.
+	 */
+	private final Condition notEmpty = this.lock.newCondition();
+	
+	/**
+	 * Condition signalled when the last job is taken out of the
+	 * {@link #internalQueue}.
+	 */
+	private final Condition drained = this.lock.newCondition();
+	
+	/**
+	 * Condition signalled when a job leaves the {@link #internalQueue}, so
+	 * that producers waiting for room can proceed.
+	 */
+	private final Condition notFull = this.lock.newCondition();
+	
+	/**
+	 * The maximum number of jobs in the {@link #internalQueue}, zero or less
+	 * for no limit
+	 */
+	private final int maxPendingJobs;
+	
+	/**
+	 * The approximate maximum number of bytes taken by the jobs in the
+	 * {@link #internalQueue}, zero or less for no limit
+	 */
+	private final long maxPendingBytes;
+	
+	/**
+	 * What to do when a job is submitted and the queue is full
+	 */
+	private final OverflowPolicy overflowPolicy;
+	
+	/**
+	 * The time to wait for room with {@link OverflowPolicy#TimedOffer}
+	 */
+	private final long overflowTimeoutNanos;
+	
+	/**
+	 * The time in millis per aging epoch, zero if jobs do not age
+	 */
+	private final long agingInterval;
+	
+	/**
+	 * The approximate number of bytes taken by the jobs in the
+	 * {@link #internalQueue}. Guarded by {@link #lock}.
+	 */
+	private long pendingBytes;
+	
+	/**
+	 * The worker thread, if any, that is waiting for the delay after which
+	 * the {@link #internalQueue} will have a job ready. Guarded by
+	 * {@link #lock}.
+	 */
+	private Thread leader;
 	
 	/**
 	 * A blocking queue that is provided from outside.
@@ -85,6 +195,54 @@ public class CrawlingQueue {
 	 */
 	private final AmassSignal amassSignal;
 	
+	/**
+	 * The journal that persists the jobs of the {@link #internalQueue}, or
+	 * <code>null</code> if checkpointing is not enabled
+	 */
+	private final FrontierJournal journal;
+	
+	/**
+	 * The timer that flushes and checkpoints the {@link #journal}, or
+	 * <code>null</code> if checkpointing is not enabled
+	 */
+	private final Timer checkpointTimer;
+	
+	/**
+	 * The filter of URLs that have already been crawled, or <code>null</code>
+	 * if crawled URLs are not remembered. Guarded by {@link #lock}.
+	 */
+	private final SeenFilter seenFilter;
+	
+	/**
+	 * The file to save the {@link #seenFilter} to, or <code>null</code> if it
+	 * is not persisted
+	 */
+	private final File seenFilterFile;
+	
+	/**
+	 * The normalizer applied to submitted URLs, or <code>null</code> if URLs
+	 * are queued as submitted
+	 */
+	private final URLNormalizer urlNormalizer;
+	
+	/**
+	 * The resolver asked to resolve the host of each new job ahead of its
+	 * crawl, or <code>null</code> to not prefetch
+	 */
+	private final CachingDnsResolver dnsResolver;
+	
+	/**
+	 * The scheduler of crawls due later, or <code>null</code> when using an
+	 * external queue
+	 */
+	private final CrawlScheduler scheduler;
+	
+	/**
+	 * The policy that decides whether failed crawls are tried again, or
+	 * <code>null</code> to not retry
+	 */
+	private final RetryPolicy retryPolicy;
+	
 	/**
 	 * Indicates if a closure of this queue has been seeked.
 	 * 
@@ -92,7 +250,13 @@ public class CrawlingQueue {
 	private volatile boolean closureSeeked;
 	
 	/**
-	 * Constructor that creates an object of the crawling queue.
+	 * The retries that were still scheduled when this queue was shut down
+	 */
+	private final List<ScheduledRetry> droppedRetries = Collections.synchronizedList(new ArrayList<ScheduledRetry>());
+	
+	/**
+	 * Constructor that creates an object of the crawling queue using the
+	 * default configuration.
 	 * 
 	 * @param externalQueue
 	 *            the backing queue from which we read crawling jobs
@@ -106,7 +270,65 @@ public class CrawlingQueue {
 	 *            signals
 	 */
 	public CrawlingQueue(BlockingQueue<Object> externalQueue, QueueMessageConverter<? extends Object> queueMessageConverter, AmassSignal amassSignal) {
+		this(externalQueue, queueMessageConverter, amassSignal, new AmassConfig());
+	}
+	
+	/**
+	 * Constructor that creates an object of the crawling queue.
+	 * 
+	 * @param externalQueue
+	 *            the backing queue from which we read crawling jobs
+	 * 
+	 * @param queueMessageConverter
+	 *            the converter to read object from queue and convert it to a
+	 *            {@link CrawlableURL} object
+	 * 
+	 * @param amassSignal
+	 *            the {@link AmassSignal} object that will be sending us the
+	 *            signals
+	 * 
+	 * @param config
+	 *            the configuration to use for the internal queue
+	 */
+	public CrawlingQueue(BlockingQueue<Object> externalQueue, QueueMessageConverter<? extends Object> queueMessageConverter, AmassSignal amassSignal, AmassConfig config) {
+		this(externalQueue, queueMessageConverter, amassSignal, config, null);
+	}
+	
+	/**
+	 * Constructor that creates an object of the crawling queue which
+	 * prefetches the host of each new job.
+	 * 
+	 * @param externalQueue
+	 *            the backing queue from which we read crawling jobs
+	 * 
+	 * @param queueMessageConverter
+	 *            the converter to read object from queue and convert it to a
+	 *            {@link CrawlableURL} object
+	 * 
+	 * @param amassSignal
+	 *            the {@link AmassSignal} object that will be sending us the
+	 *            signals
+	 * 
+	 * @param config
+	 *            the configuration to use for the internal queue
+	 * 
+	 * @param dnsResolver
+	 *            the resolver to resolve the host of each new job ahead of
+	 *            its crawl, <code>null</code> to not prefetch
+	 */
+	public CrawlingQueue(BlockingQueue<Object> externalQueue, QueueMessageConverter<? extends Object> queueMessageConverter, AmassSignal amassSignal, AmassConfig config, CachingDnsResolver dnsResolver) {
+		if(config == null) {
+			throw new IllegalArgumentException("Amass configuration cannot be null");
+		}
+		
 		this.amassSignal = amassSignal;
+		this.maxPendingJobs = config.getMaxPendingJobs();
+		this.maxPendingBytes = config.getMaxPendingBytes();
+		this.overflowPolicy = config.getOverflowPolicy();
+		this.overflowTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getOverflowTimeout());
+		this.agingInterval = config.getAgingInterval();
+		this.retryPolicy = config.getRetryPolicy();
+		this.dnsResolver = dnsResolver;
 		
 		if(externalQueue != null) {
 			if(queueMessageConverter == null) {
@@ -117,150 +339,1076 @@ public class CrawlingQueue {
 			this.externalQueue = externalQueue;
 			this.queueMessageConverter = queueMessageConverter;
 			this.internalQueue = null;
+			this.journal = null;
+			this.checkpointTimer = null;
+			this.seenFilter = null;
+			this.seenFilterFile = null;
+			this.urlNormalizer = null;
+			this.scheduler = null;
 		} else {
 			if(queueMessageConverter != null) {
 				throw new IllegalArgumentException("QueueMessageConverter must be null when using an internal queue.");
 			}
 			
-			this.jobs = new ConcurrentHashMap<String, CrawlJob>();
-			this.internalQueue = new PriorityBlockingQueue<CrawlJob>();
+			checkJobStoreOptions(config);
+			
+			this.jobs = new ConcurrentHashMap<CrawlJob, CrawlJob>();
+			this.internalQueue = createJobStore(config, this.jobs);
+			
+			if(config.isCheckpointEnabled() && (this.internalQueue instanceof SpillingJobStore || this.internalQueue instanceof OffHeapJobStore)) {
+				throw new IllegalArgumentException("Checkpointing cannot be used along with spilling of jobs to disk, or off the heap.");
+			}
 			this.externalQueue = null;
 			this.queueMessageConverter = null;
+			this.urlNormalizer = config.getUrlNormalizer();
+			this.scheduler = new CrawlScheduler(this, config.getSchedulerTickInterval());
+			
+			if(config.isSeenFilterEnabled()) {
+				this.seenFilter = new SeenFilter(config.getSeenFilterExpectedURLs(), config.getSeenFilterFalsePositiveRate(), config.getSeenFilterExpiry());
+				this.seenFilterFile = config.getSeenFilterFile();
+				if(this.seenFilterFile != null && this.seenFilterFile.exists()) {
+					try {
+						this.seenFilter.load(this.seenFilterFile);
+					} catch(IOException e) {
+						throw new IllegalStateException("Unable to load seen filter from: " + this.seenFilterFile.getAbsolutePath(), e);
+					}
+				}
+			} else {
+				this.seenFilter = null;
+				this.seenFilterFile = null;
+			}
+			
+			if(config.isCheckpointEnabled()) {
+				this.journal = new FrontierJournal(config.getCheckpointDirectory());
+				resume();
+				
+				this.checkpointTimer = new Timer("Amass-Checkpoint", true);
+				this.checkpointTimer.schedule(new JournalFlushTask(), JOURNAL_FLUSH_INTERVAL, JOURNAL_FLUSH_INTERVAL);
+				this.checkpointTimer.schedule(new CheckpointTask(), config.getCheckpointInterval(), config.getCheckpointInterval());
+			} else {
+				this.journal = null;
+				this.checkpointTimer = null;
+			}
+		}
+	}
+	
+	/**
+	 * Queue again all jobs that were pending as per the {@link #journal}, and
+	 * start a new checkpoint from them.
+	 */
+	private void resume() {
+		final Map<String, CrawlJob> recovered;
+		try {
+			recovered = this.journal.recover();
+		} catch(IOException e) {
+			throw new IllegalStateException("Unable to recover pending jobs from checkpoint", e);
+		}
+		
+		final List<CrawlJob> pending = new ArrayList<CrawlJob>(recovered.size());
+		for(CrawlJob job : recovered.values()) {
+			if(this.agingInterval == 0) {
+				// aged by a previous instance
+				job.setEpoch(0);
+			}
+			
+			this.jobs.put(job, job);
+			this.pendingBytes += estimateSize(job);
+			pending.add(job);
+		}
+		
+		this.internalQueue.offerAll(pending);
+		
+		try {
+			this.journal.checkpoint(this.jobs.values());
+		} catch(IOException e) {
+			throw new IllegalStateException("Unable to checkpoint pending jobs", e);
+		}
+	}
+	
+	/**
+	 * Make sure that at most one of the options that pick the kind of
+	 * {@link JobStore} has been configured, as each needs a store of its own,
+	 * and that the store picked supports aging and eviction if enabled.
+	 * 
+	 * @param config
+	 *            the configuration to check
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if more than one such option has been configured, aging
+	 *             with the {@link BucketedJobStore}, or the
+	 *             {@link OverflowPolicy#EvictLowest} policy with any store
+	 *             other than the heap or bucketed one
+	 */
+	private static void checkJobStoreOptions(AmassConfig config) {
+		int stores = 0;
+		if(config.isPolitenessEnabled()) {
+			stores++;
+		}
+		
+		if(config.isSpillingEnabled()) {
+			stores++;
+		}
+		
+		if(config.isFairQueuingEnabled()) {
+			stores++;
+		}
+		
+		if(config.getJobStoreType() != JobStoreType.Heap) {
+			stores++;
+		}
+		
+		if(stores > 1) {
+			throw new IllegalArgumentException("Only one of politeness, spilling of jobs to disk, fair queuing and a job store type other than Heap can be used at a time.");
+		}
+		
+		if(config.isAgingEnabled() && config.getJobStoreType() == JobStoreType.Bucketed) {
+			throw new IllegalArgumentException("Aging cannot be used along with the bucketed job store, whose lanes ignore the age of jobs.");
+		}
+		
+		if(config.getOverflowPolicy() == OverflowPolicy.EvictLowest) {
+			if(config.isPolitenessEnabled() || config.isFairQueuingEnabled()) {
+				throw new IllegalArgumentException("Jobs cannot be evicted with politeness or fair queuing, which cannot find the lowest job without scanning all hosts or job classes.");
+			}
+			
+			if(config.isSpillingEnabled() || config.getJobStoreType() == JobStoreType.OffHeap) {
+				throw new IllegalArgumentException("Jobs cannot be evicted when spilling jobs to disk, or off the heap, as jobs moved out cannot be evicted.");
+			}
+		}
+	}
+	
+	/**
+	 * Create the {@link JobStore} to hold pending jobs as per the given
+	 * configuration.
+	 * 
+	 * @param config
+	 *            the configuration to use
+	 * 
+	 * @param jobs
+	 *            the map of URL to queued job
+	 * 
+	 * @return the {@link JobStore} instance
+	 */
+	private static JobStore createJobStore(AmassConfig config, ConcurrentHashMap<CrawlJob, CrawlJob> jobs) {
+		if(config.isPolitenessEnabled()) {
+			return new PolitenessJobStore(config.getPolitenessDelay(), config.getMaxRequestsPerHost());
+		}
+		
+		if(config.isSpillingEnabled()) {
+			return new SpillingJobStore(config.getSpillDirectory(), config.getMaxInMemoryJobs(), jobs);
+		}
+		
+		if(config.isFairQueuingEnabled()) {
+			return new FairJobStore(config.getJobClassWeights());
+		}
+		
+		switch(config.getJobStoreType()) {
+			case Bucketed:
+				return new BucketedJobStore(config.getPriorityLanes());
+				
+			case OffHeap:
+				return new OffHeapJobStore(config.getMaxInMemoryJobs(), jobs);
+				
+			case Heap:
+			default:
+				return new HeapJobStore();
+		}
+	}
+	
+	/**
+	 * Submit the given URL to the crawling queue with default priority.
+	 * 
+	 * @param url
+	 *            the URL that needs to be added to crawling queue
+	 * 
+	 * @return <code>true</code> if the URL was added to the queue,
+	 *         <code>false</code> otherwise
+	 */
+	public boolean submitURL(String url) {
+		return this.submitURL(url, DEFAULT_PRIORITY);
+	}
+
+	/**
+	 * Submit the given URL to the crawling queue with the given priority.
+	 * 
+	 * @param url
+	 *            the URL that needs to be added to crawling queue
+	 * 
+	 * @param priority
+	 *            the priority which needs to used for adding
+	 * 
+	 * @return <code>true</code> if the URL was added to the queue,
+	 *         <code>false</code> otherwise
+	 */
+	public boolean submitURL(final String url, final int priority) {
+		if(url == null) {
+			return false;
+		}
+		
+		return submitJob(new CrawlJob(normalize(url), priority), priority, true);
+	}
+	
+	/**
+	 * Submit the given instance of {@link CrawlableURL} object with default
+	 * priority to the crawling queue
+	 * 
+	 * @param crawlableURL
+	 *            the object that needs to be added
+	 * 
+	 * @return <code>true</code> if the URL was added to the queue,
+	 *         <code>false</code> otherwise
+	 */
+	public boolean submitURL(CrawlableURL crawlableURL) {
+		return this.submitURL(crawlableURL, DEFAULT_PRIORITY);
+	}
+	
+	/**
+	 * Submit the given instance of {@link CrawlableURL} object with the given
+	 * priority to the crawling queue
+	 * 
+	 * @param crawlableURL
+	 *            the object that needs to be added
+	 * 
+	 * @param priority
+	 *            the priority with which to add the instance
+	 * 
+	 * @return <code>true</code> if the URL was added to the queue, or the
+	 *         priority of the already queued job was incremented,
+	 *         <code>false</code> if the job was rejected as the queue is full,
+	 *         or as the URL has already been crawled
+	 */
+	public boolean submitURL(final CrawlableURL crawlableURL, final int priority) {
+		if(crawlableURL == null) {
+			return false;
+		}
+		
+		return submitJob(newJob(crawlableURL, priority), priority, true);
+	}
+	
+	/**
+	 * Submit the given new job to the crawling queue, or increment the
+	 * priority of the queued job with the same URL.
+	 * 
+	 * @param job
+	 *            the new job, also used to look up the queued one
+	 * 
+	 * @param priority
+	 *            the priority with which the job was submitted
+	 * 
+	 * @param checkSeen
+	 *            whether to reject the job if its URL has already been
+	 *            crawled
+	 * 
+	 * @return <code>true</code> if the job was added to the queue, or the
+	 *         priority of the already queued job was incremented,
+	 *         <code>false</code> if the job was rejected
+	 */
+	private boolean submitJob(final CrawlJob job, final int priority, final boolean checkSeen) {
+		if(this.internalQueue == null) {
+			throw new IllegalArgumentException("Jobs can only be submitted to internal queue implementations.");
+		}
+		
+		stampEpoch(job);
+		
+		boolean added = false;
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			final CrawlJob queued = this.jobs.get(job);
+			if(queued == null) {
+				// no previous jobs
+				// skip if crawled already
+				if(checkSeen && isSeen(job)) {
+					LOGGER.debug("Skipping URL as already crawled: {}", job);
+					return false;
+				}
+				
+				// make room for this one, if we are bounded
+				if(!makeRoom(job)) {
+					return false;
+				}
+				
+				// the URL may have been submitted while we waited
+				final CrawlJob existing = this.jobs.get(job);
+				if(existing != null) {
+					bumpPriority(existing, priority);
+					return true;
+				}
+				
+				// submit this one up and wake up a waiting worker
+				this.jobs.put(job, job);
+				this.internalQueue.offer(job);
+				this.pendingBytes += estimateSize(job);
+				journalSubmitted(job);
+				this.notEmpty.signal();
+				added = true;
+			} else {
+				// there seems to be a job previously submitted
+				// let's increase its priority and move it up the queue
+				bumpPriority(queued, priority);
+			}
+		} finally {
+			lock.unlock();
+		}
+		
+		if(added) {
+			prefetchHost(job);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Ask the {@link #dnsResolver}, if any, to resolve the host of the given
+	 * new job, so that it is resolved by the time a worker takes the job.
+	 * 
+	 * @param job
+	 *            the job just queued
+	 */
+	private void prefetchHost(final CrawlJob job) {
+		if(this.dnsResolver != null) {
+			this.dnsResolver.prefetch(job.getURL());
+		}
+	}
+	
+	/**
+	 * Submit all the given URLs to the crawling queue with the given priority.
+	 * 
+	 * @param urls
+	 *            the URLs that need to be added to crawling queue
+	 * 
+	 * @param priority
+	 *            the priority which needs to used for adding
+	 * 
+	 * @return the {@link SubmissionResult} of the batch
+	 * 
+	 * @see #submitAll(Iterator, int)
+	 */
+	public SubmissionResult submitAllURLs(final Iterator<String> urls, final int priority) {
+		return submitBatch(urls, priority);
+	}
+	
+	/**
+	 * Submit all the given {@link CrawlableURL} instances to the crawling
+	 * queue with the given priority.
+	 * 
+	 * This is equivalent to calling {@link #submitURL(CrawlableURL, int)} for
+	 * each instance, but cheaper: duplicates within the batch are merged
+	 * before touching the queue, and the resulting jobs are inserted in chunks
+	 * under a single acquisition of the lock, letting the job store build its
+	 * structure once per chunk.
+	 * 
+	 * @param crawlableURLs
+	 *            the objects that need to be added
+	 * 
+	 * @param priority
+	 *            the priority with which to add the instances
+	 * 
+	 * @return the {@link SubmissionResult} of the batch
+	 */
+	public SubmissionResult submitAll(final Iterator<? extends CrawlableURL> crawlableURLs, final int priority) {
+		return submitBatch(crawlableURLs, priority);
+	}
+	
+	/**
+	 * Schedule the given crawl, to be submitted to this queue when due.
+	 * 
+	 * @param crawl
+	 *            the crawl to schedule
+	 * 
+	 * @return the crawl itself, that can be used to cancel it
+	 * 
+	 * @throws IllegalStateException
+	 *             if this queue has been closed
+	 */
+	public ScheduledCrawl schedule(final ScheduledCrawl crawl) {
+		if(this.scheduler == null) {
+			throw new IllegalArgumentException("Jobs can only be scheduled with internal queue implementations.");
+		}
+		
+		return this.scheduler.schedule(crawl);
+	}
+	
+	/**
+	 * Schedule the given job, whose crawl failed, to be crawled again if the
+	 * {@link #retryPolicy} so decides. Failed crawls are not retried once the
+	 * closure of this queue has been seeked.
+	 * 
+	 * @param job
+	 *            the job whose crawl failed
+	 * 
+	 * @param attempt
+	 *            the attempt that failed, one for the first crawl
+	 * 
+	 * @param throwable
+	 *            the error the crawl failed with
+	 * 
+	 * @return <code>true</code> if the job will be crawled again,
+	 *         <code>false</code> otherwise
+	 */
+	public boolean retry(final CrawlJob job, final int attempt, final Throwable throwable) {
+		if(this.retryPolicy == null || this.scheduler == null) {
+			return false;
+		}
+		
+		final long delay;
+		try {
+			delay = this.retryPolicy.getRetryDelay(job.getCrawlableURL(), attempt, throwable);
+		} catch(RuntimeException e) {
+			LOGGER.error("Unable to run retry policy on url {}", job, e);
+			return false;
+		}
+		
+		if(delay < 0) {
+			return false;
+		}
+		
+		final long notBefore = System.currentTimeMillis() + delay;
+		final ScheduledRetry crawl;
+		if(job.isPlainURL()) {
+			crawl = new ScheduledRetry(job.getURL(), job.getPriority(), notBefore, attempt + 1, throwable);
+		} else {
+			crawl = new ScheduledRetry(job.getCrawlableURL(), job.getPriority(), notBefore, attempt + 1, throwable);
+		}
+		
+		// schedule under the lock, so that closure waits for the retry
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			if(this.closureSeeked) {
+				return false;
+			}
+			
+			this.scheduler.schedule(crawl);
+		} catch(IllegalStateException e) {
+			// shutting down
+			return false;
+		} finally {
+			lock.unlock();
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Queue the given scheduled crawl that is now due. A recurring crawl is
+	 * not rejected by the seen filter, as it is meant to crawl its URL again,
+	 * while a one-time crawl is, as if submitted only now.
+	 * 
+	 * @param crawl
+	 *            the crawl to queue
+	 * 
+	 * @return <code>true</code> if the job was added to the queue, or the
+	 *         priority of the already queued job was incremented,
+	 *         <code>false</code> if the job was rejected
+	 */
+	boolean submitScheduled(final ScheduledCrawl crawl) {
+		final int priority = crawl.getPriority();
+		final CrawlJob job;
+		if(crawl.isPlainURL()) {
+			job = new CrawlJob(normalize(crawl.getURL()), priority);
+		} else {
+			job = newJob(crawl.getCrawlableURL(), priority);
+		}
+		
+		return submitJob(job, priority, !crawl.isRecurring());
+	}
+	
+	/**
+	 * Queue the given retry of a failed crawl that is now due. The retry is
+	 * not rejected by the seen filter, as its URL was marked as crawled when
+	 * it was first taken.
+	 * 
+	 * @param crawl
+	 *            the retry to queue
+	 * 
+	 * @return <code>true</code> if the job was added to the queue, or the
+	 *         priority of the already queued job was incremented,
+	 *         <code>false</code> if the job was rejected
+	 */
+	boolean submitRetry(final ScheduledCrawl crawl) {
+		final int priority = crawl.getPriority();
+		final CrawlJob job;
+		if(crawl.isPlainURL()) {
+			job = new RetryJob(crawl.getURL(), priority, crawl.getAttempt());
+		} else {
+			job = new RetryJob(crawl.getCrawlableURL(), priority, crawl.getAttempt());
+		}
+		
+		// a job already queued for the URL keeps its own attempt
+		return submitJob(job, priority, false);
+	}
+	
+	/**
+	 * Return the number of crawls scheduled for later.
+	 * 
+	 * @return the number of crawls not yet due
+	 */
+	public int getNumScheduled() {
+		if(this.scheduler == null) {
+			return 0;
+		}
+		
+		return this.scheduler.size();
+	}
+	
+	/**
+	 * Submit a batch of {@link String} or {@link CrawlableURL} items.
+	 * 
+	 * @param items
+	 *            the items to submit
+	 * 
+	 * @param priority
+	 *            the priority with which to add the items
+	 * 
+	 * @return the {@link SubmissionResult} of the batch
+	 */
+	private SubmissionResult submitBatch(final Iterator<?> items, final int priority) {
+		if(this.internalQueue == null) {
+			throw new IllegalArgumentException("Jobs can only be submitted to internal queue implementations.");
+		}
+		
+		if(items == null) {
+			throw new IllegalArgumentException("Items to submit cannot be null");
+		}
+		
+		final BatchCounts counts = new BatchCounts();
+		final LinkedHashMap<CrawlJob, CrawlJob> batch = new LinkedHashMap<CrawlJob, CrawlJob>();
+		while(items.hasNext()) {
+			final Object item = items.next();
+			
+			final CrawlJob job;
+			if(item instanceof CrawlableURL) {
+				job = newJob((CrawlableURL) item, priority);
+			} else if(item != null) {
+				job = new CrawlJob(normalize((String) item), priority);
+			} else {
+				counts.skipped++;
+				continue;
+			}
+			
+			final CrawlJob repeated = batch.get(job);
+			if(repeated != null) {
+				// repeated within the batch
+				repeated.incrementPriority(priority);
+				counts.bumped++;
+				continue;
+			}
+			
+			stampEpoch(job);
+			batch.put(job, job);
+			if(batch.size() == SUBMIT_BATCH_SIZE) {
+				flushBatch(batch, counts);
+				batch.clear();
+			}
+		}
+		
+		if(!batch.isEmpty()) {
+			flushBatch(batch, counts);
+		}
+		
+		return new SubmissionResult(counts.added, counts.bumped, counts.rejected, counts.seen, counts.skipped);
+	}
+	
+	/**
+	 * Move the given batch of jobs, with no duplicates among them, into the
+	 * internal queue under a single acquisition of the lock. Jobs whose URL
+	 * is already queued increment the priority of the queued job instead.
+	 * 
+	 * If the queue is bounded and runs full, the jobs collected so far are
+	 * handed to the store before applying the {@link OverflowPolicy}, so that
+	 * workers can drain them while we wait for room.
+	 * 
+	 * @param batch
+	 *            the jobs, each keyed by itself
+	 * 
+	 * @param counts
+	 *            the counts to update
+	 */
+	private void flushBatch(final LinkedHashMap<CrawlJob, CrawlJob> batch, final BatchCounts counts) {
+		final List<CrawlJob> fresh = new ArrayList<CrawlJob>(batch.size());
+		
+		// the jobs added, whose hosts are to be resolved ahead of their crawl
+		final List<CrawlJob> added;
+		if(this.dnsResolver != null) {
+			added = new ArrayList<CrawlJob>(batch.size());
+		} else {
+			added = null;
+		}
+		
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			for(CrawlJob job : batch.values()) {
+				CrawlJob existing = this.jobs.get(job);
+				if(existing == null && isSeen(job)) {
+					counts.seen++;
+					continue;
+				}
+				
+				if(existing == null && !hasRoom(fresh.size(), job)) {
+					offerFresh(fresh);
+					if(!makeRoom(job)) {
+						counts.rejected++;
+						continue;
+					}
+					
+					// the URL may have been submitted while we waited
+					existing = this.jobs.get(job);
+				}
+				
+				if(existing == null) {
+					this.jobs.put(job, job);
+					this.pendingBytes += estimateSize(job);
+					journalSubmitted(job);
+					fresh.add(job);
+					if(added != null) {
+						added.add(job);
+					}
+					counts.added++;
+				} else {
+					bumpPriority(existing, job.getPriority());
+					counts.bumped++;
+				}
+			}
+			
+			offerFresh(fresh);
+		} finally {
+			lock.unlock();
+		}
+		
+		// hosts already resolved, or being resolved, are skipped quickly
+		if(added != null) {
+			for(CrawlJob job : added) {
+				prefetchHost(job);
+			}
+		}
+	}
+	
+	/**
+	 * Hand over the given new jobs to the store and wake up the workers. Must
+	 * be called while holding the {@link #lock}.
+	 * 
+	 * @param fresh
+	 *            the new jobs, which is cleared once done
+	 */
+	private void offerFresh(final List<CrawlJob> fresh) {
+		if(fresh.isEmpty()) {
+			return;
+		}
+		
+		this.internalQueue.offerAll(fresh);
+		this.notEmpty.signalAll();
+		fresh.clear();
+	}
+	
+	/**
+	 * Increment the priority of a queued job and let the store move it. Must
+	 * be called while holding the {@link #lock}.
+	 * 
+	 * @param job
+	 *            the queued job
+	 * 
+	 * @param priority
+	 *            the priority to add
+	 */
+	private void bumpPriority(final CrawlJob job, final int priority) {
+		job.incrementPriority(priority);
+		this.internalQueue.priorityChanged(job);
+		journalSubmitted(job);
+	}
+	
+	/**
+	 * Record a queued job, or a change in its priority, in the
+	 * {@link #journal} if there is one. Must be called while holding the
+	 * {@link #lock}, after the {@link #jobs} map is updated.
+	 * 
+	 * @param job
+	 *            the queued job
+	 */
+	private void journalSubmitted(final CrawlJob job) {
+		if(this.journal != null) {
+			this.journal.submitted(job);
 		}
 	}
 	
 	/**
-	 * Submit the given URL to the crawling queue with default priority.
+	 * Record a job leaving the queue in the {@link #journal} if there is one.
+	 * Must be called while holding the {@link #lock}, after the {@link #jobs}
+	 * map is updated.
+	 * 
+	 * @param job
+	 *            the job taken or evicted
+	 */
+	private void journalRemoved(final CrawlJob job) {
+		if(this.journal != null) {
+			this.journal.removed(job);
+		}
+	}
+	
+	/**
+	 * Check if the given URL has already been crawled, as per the
+	 * {@link #seenFilter} if there is one. Must be called while holding the
+	 * {@link #lock}.
 	 * 
 	 * @param url
-	 *            the URL that needs to be added to crawling queue
+	 *            the URL to check
 	 * 
-	 * @return <code>true</code> if the URL was added to the queue,
-	 *         <code>false</code> otherwise
+	 * @return <code>true</code> if the URL has probably been crawled
 	 */
-	public boolean submitURL(String url) {
-		return this.submitURL(url, DEFAULT_PRIORITY);
+	private boolean isSeen(final CrawlJob job) {
+		return this.seenFilter != null && this.seenFilter.mightContain(job.getURL());
 	}
-
+	
 	/**
-	 * Submit the given URL to the crawling queue with the given priority.
+	 * Set the aging epoch of the given new job to the current one, if jobs
+	 * age.
 	 * 
-	 * @param url
-	 *            the URL that needs to be added to crawling queue
+	 * @param job
+	 *            the job about to be queued
+	 */
+	private void stampEpoch(final CrawlJob job) {
+		if(this.agingInterval > 0) {
+			job.setEpoch(System.currentTimeMillis() / this.agingInterval);
+		}
+	}
+	
+	/**
+	 * Create the job for the given {@link CrawlableURL}. The URL of a
+	 * {@link DefaultCrawlableURL} is normalized and kept in the compact form
+	 * of {@link CrawlJob}. Other {@link CrawlableURL} implementations are kept
+	 * as is, as they may carry more than the URL.
+	 * 
+	 * @param crawlableURL
+	 *            the submitted URL
 	 * 
 	 * @param priority
-	 *            the priority which needs to used for adding
+	 *            the priority of the job
 	 * 
-	 * @return <code>true</code> if the URL was added to the queue,
-	 *         <code>false</code> otherwise
+	 * @return the new job
 	 */
-	public boolean submitURL(final String url, final int priority) {
-		if(url == null) {
-			return false;
+	private CrawlJob newJob(final CrawlableURL crawlableURL, final int priority) {
+		if(crawlableURL.getClass() == DefaultCrawlableURL.class) {
+			return new CrawlJob(normalize(crawlableURL.getURL()), priority);
 		}
 		
-		return submitURL(new DefaultCrawlableURL(url), priority);
+		return new CrawlJob(crawlableURL, priority);
 	}
 	
 	/**
-	 * Submit the given instance of {@link CrawlableURL} object with default
-	 * priority to the crawling queue
+	 * Normalize the given URL using the {@link #urlNormalizer}, if any.
 	 * 
-	 * @param crawlableURL
-	 *            the object that needs to be added
+	 * @param url
+	 *            the submitted URL
 	 * 
-	 * @return <code>true</code> if the URL was added to the queue,
-	 *         <code>false</code> otherwise
+	 * @return the URL to queue
 	 */
-	public boolean submitURL(CrawlableURL crawlableURL) {
-		return this.submitURL(crawlableURL, DEFAULT_PRIORITY);
+	private String normalize(final String url) {
+		if(this.urlNormalizer == null) {
+			return url;
+		}
+		
+		final String canonical;
+		try {
+			canonical = this.urlNormalizer.normalize(url);
+		} catch(RuntimeException e) {
+			LOGGER.debug("Unable to normalize URL, queueing as is: {}", url);
+			return url;
+		}
+		
+		if(canonical == null) {
+			return url;
+		}
+		
+		return canonical;
 	}
 	
 	/**
-	 * Submit the given instance of {@link CrawlableURL} object with the given
-	 * priority to the crawling queue
+	 * Check if the internal queue has room for the given job. Must be called
+	 * while holding the {@link #lock}.
 	 * 
-	 * @param crawlableURL
-	 *            the object that needs to be added
+	 * @param unsubmitted
+	 *            the number of jobs already admitted but yet to be handed to
+	 *            the store
 	 * 
-	 * @param priority
-	 *            the priority with which to add the instance
+	 * @param job
+	 *            the job to be added
 	 * 
-	 * @return <code>true</code> if the URL was added to the queue,
-	 *         <code>false</code> otherwise
+	 * @return <code>true</code> if the job can be added
 	 */
-	public boolean submitURL(final CrawlableURL crawlableURL, final int priority) {
-		if(this.internalQueue == null) {
-			throw new IllegalArgumentException("Jobs can only be submitted to internal queue implementations.");
+	private boolean hasRoom(final int unsubmitted, final CrawlJob job) {
+		final int pending = this.internalQueue.size() + unsubmitted;
+		if(this.maxPendingJobs > 0 && pending >= this.maxPendingJobs) {
+			return false;
 		}
 		
-		if(crawlableURL == null) {
+		if(this.maxPendingBytes > 0 && pending > 0 && this.pendingBytes + estimateSize(job) > this.maxPendingBytes) {
 			return false;
 		}
 		
-		CrawlJob job = this.jobs.get(crawlableURL.getURL());
-		if(job == null) {
-			job = new CrawlJob(crawlableURL, priority);
+		return true;
+	}
+	
+	/**
+	 * Make room for the given job as per the {@link OverflowPolicy} of this
+	 * queue. Must be called while holding the {@link #lock}, and with all
+	 * admitted jobs already handed to the store.
+	 * 
+	 * @param job
+	 *            the job to be added
+	 * 
+	 * @return <code>true</code> if the job can be added, <code>false</code>
+	 *         if it must be rejected
+	 */
+	private boolean makeRoom(final CrawlJob job) {
+		if(hasRoom(0, job)) {
+			return true;
 		}
 		
-		CrawlJob previous = this.jobs.putIfAbsent(crawlableURL.getURL(), job);
-		if(previous == null) {
-			// no previous jobs
-			// submit this one up
-			this.internalQueue.offer(job);
-		} else {
-			// there seems to be a job previously submitted
-			// let's increase its priority
-			previous.incrementPriority(priority);
+		try {
+			switch(this.overflowPolicy) {
+				case Reject:
+					return false;
+					
+				case EvictLowest:
+					do {
+						final CrawlJob lowest = this.internalQueue.peekLowest();
+						if(lowest == null || job.compareTo(lowest) >= 0) {
+							// the new job would be crawled last anyways
+							return false;
+						}
+						
+						LOGGER.debug("Evicting job to make room: {}", lowest);
+						this.internalQueue.remove(lowest);
+						this.jobs.remove(lowest);
+						this.pendingBytes -= estimateSize(lowest);
+						journalRemoved(lowest);
+					} while(!hasRoom(0, job));
+					
+					return true;
+					
+				case TimedOffer:
+					long nanos = this.overflowTimeoutNanos;
+					while(!hasRoom(0, job)) {
+						if(nanos <= 0 || this.amassSignal.isStopping()) {
+							return false;
+						}
+						
+						nanos = this.notFull.awaitNanos(nanos);
+					}
+					
+					break;
+					
+				case Block:
+				default:
+					while(!hasRoom(0, job)) {
+						if(this.amassSignal.isStopping()) {
+							return false;
+						}
+						
+						this.notFull.await();
+					}
+					
+					break;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
 		}
 		
+		// let the next waiting producer check for room as well
+		this.notFull.signal();
 		return true;
 	}
 	
+	/**
+	 * Estimate the number of bytes the given job takes on the heap, including
+	 * the entry in the {@link #jobs} map and the slot in the store.
+	 * 
+	 * @param job
+	 *            the job to check
+	 * 
+	 * @return the approximate size in bytes
+	 */
+	static long estimateSize(final CrawlJob job) {
+		return JOB_OVERHEAD_BYTES + job.getURLSize();
+	}
+	
 	/**
 	 * Get a crawling job out of this {@link CrawlingQueue}. If no element is
-	 * available in this queue, this method will wait till one is available.
+	 * available in this queue, this method will block till one is available.
 	 * 
 	 * If this queue is shutting down, it will return a <code>null</code>.
 	 * 
 	 * @return an instance of the {@link CrawlJob} once it is available in the
 	 *         queue
 	 */
-	@SuppressWarnings("unchecked")
 	public CrawlJob take() {
-		CrawlJob job = null;
-		do {
-			if(isInternalQueueBacked()) {
-				// read from the internal queue if we are using one
+		return take(null);
+	}
+	
+	/**
+	 * Get a crawling job out of this {@link CrawlingQueue} for the given
+	 * worker. If no element is available in this queue, this method will
+	 * block till one is available.
+	 * 
+	 * If this queue is shutting down, or the closure of the given worker is
+	 * seeked, it will return a <code>null</code>.
+	 * 
+	 * @param worker
+	 *            the worker asking for the job, may be <code>null</code>
+	 * 
+	 * @return an instance of the {@link CrawlJob} once it is available in the
+	 *         queue
+	 */
+	public CrawlJob take(CrawlingWorker worker) {
+		if(isInternalQueueBacked()) {
+			return takeFromInternalQueue(worker);
+		}
+		
+		return takeFromExternalQueue(worker);
+	}
+	
+	/**
+	 * Take the highest priority job out of the internal queue. The calling
+	 * thread is parked till a job is submitted, or till a stop or closure is
+	 * signalled on this queue.
+	 * 
+	 * @param worker
+	 *            the worker asking for the job, may be <code>null</code>
+	 * 
+	 * @return the {@link CrawlJob} to work upon, or <code>null</code> if we
+	 *         are stopping or closing down
+	 */
+	private CrawlJob takeFromInternalQueue(final CrawlingWorker worker) {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			CrawlJob job = null;
+			do {
+				// see if we are stopping by
+				if(this.amassSignal.isStopping()) {
+					LOGGER.debug("Skipping take because stopping signal sent");
+					return null;
+				}
+				
+				if(worker != null && worker.isClosureSeeked()) {
+					LOGGER.debug("Skipping take because worker closure seeked");
+					return null;
+				}
+				
 				job = this.internalQueue.poll();
-
-			} else {
-			
-				// else read from the external queue
+				if(job != null) {
+					final CrawlJob queued = this.jobs.get(job);
+					if(queued == job || (queued == null && !isSeen(job))) {
+						break;
+					}
+					
+					if(queued != null) {
+						// a job restored from outside the heap whose URL was
+						// submitted again meanwhile - merge the two
+						bumpPriority(queued, job.getPriority());
+					} else {
+						// a job restored from outside the heap whose URL was
+						// crawled meanwhile - drop it
+						LOGGER.debug("Dropping restored job as already crawled: {}", job);
+					}
+					
+					this.pendingBytes -= estimateSize(job);
+					this.internalQueue.completed(job);
+					continue;
+				}
+				
+				if(this.closureSeeked) {
+					LOGGER.debug("Skipping take because closure seeked");
+					return null;
+				}
+				
+				// nothing that can be crawled right now - wait for a
+				// submission, a completion, or a stop/closure signal. If
+				// a job becomes available after a known delay, only one
+				// worker waits for that delay, others wait to be signalled.
+				final long delay = this.internalQueue.getDelayNanos();
 				try {
-					Object message = this.externalQueue.take();
-					LOGGER.debug("Message received from external queue: {}", message);
-					if(message != null) {
-						CrawlableURL crawlableURL = null;
-
-						// convert the message
+					if(delay == Long.MAX_VALUE || this.leader != null) {
+						this.notEmpty.await();
+					} else {
+						final Thread current = Thread.currentThread();
+						this.leader = current;
 						try {
-							crawlableURL = this.queueMessageConverter.convert(message);
-						} catch(Exception e) {
-							LOGGER.error("Unable to convert message to crawlable url: " + message, e);
-						}
-						
-						// if the obtained URL is not null, return back
-						// us a crawling job
-						if(crawlableURL != null) {
-							job = new CrawlJob(crawlableURL);
-						} else {
-							LOGGER.error("NULL translated as message over the queue: {}", message);
+							this.notEmpty.awaitNanos(delay);
+						} finally {
+							if(this.leader == current) {
+								this.leader = null;
+							}
 						}
 					}
 				} catch (InterruptedException e) {
-					LOGGER.error("Interrupted while waiting to read message", e);
+					// eat up
+				}
+			} while(true);
+			
+			if(this.internalQueue.isEmpty()) {
+				this.drained.signalAll();
+			} else if(this.leader == null) {
+				// let another worker look at the remaining jobs
+				this.notEmpty.signal();
+			}
+			
+			// remove from the jobs map
+			this.jobs.remove(job);
+			this.pendingBytes -= estimateSize(job);
+			journalRemoved(job);
+			this.notFull.signal();
+			
+			// remember that the URL has been crawled
+			if(this.seenFilter != null) {
+				this.seenFilter.add(job.getCrawlableURL().getURL());
+			}
+			
+			return job;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Take the next job from the external queue. As the external queue cannot
+	 * be signalled by us, we wait on it only for a bounded time before checking
+	 * for stop or closure of this queue.
+	 * 
+	 * @param worker
+	 *            the worker asking for the job, may be <code>null</code>
+	 * 
+	 * @return the {@link CrawlJob} to work upon, or <code>null</code> if we
+	 *         are stopping or closing down
+	 */
+	@SuppressWarnings("unchecked")
+	private CrawlJob takeFromExternalQueue(final CrawlingWorker worker) {
+		CrawlJob job = null;
+		do {
+			try {
+				Object message = this.externalQueue.poll(EXTERNAL_QUEUE_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				if(message != null) {
+					LOGGER.debug("Message received from external queue: {}", message);
+					CrawlableURL crawlableURL = null;
+
+					// convert the message
+					try {
+						crawlableURL = this.queueMessageConverter.convert(message);
+					} catch(Exception e) {
+						LOGGER.error("Unable to convert message to crawlable url: " + message, e);
+					}
+					
+					// if the obtained URL is not null, return back
+					// us a crawling job
+					if(crawlableURL != null) {
+						job = new CrawlJob(crawlableURL);
+					} else {
+						LOGGER.error("NULL translated as message over the queue: {}", message);
+					}
 				}
+			} catch (InterruptedException e) {
+				LOGGER.error("Interrupted while waiting to read message", e);
 			}
 			
 			// see if we are stopping by
@@ -269,32 +1417,101 @@ public class CrawlingQueue {
 				return null;
 			}
 			
-			// any null attributes indicate that there is nothing
-			// in the queue and we might need to wait more.
-			
 			if(job != null) {
-				break;
+				return job;
 			}
 			
-			if(this.closureSeeked) {
+			if(this.closureSeeked || (worker != null && worker.isClosureSeeked())) {
 				LOGGER.debug("Skipping message because closure seeked: {}", job);
 				return null;
 			}
-			
-			// wait for 100 millis before retrying
-			try {
-				Thread.sleep(100);
-			} catch (InterruptedException e) {
-				// eat up
-			}
 		} while(true);
+	}
+
+	/**
+	 * Notify this queue that the crawl of a job obtained via {@link #take()}
+	 * has finished, successfully or otherwise. This allows the internal queue
+	 * to hand out more jobs that depend on this job, like more jobs from the
+	 * same host.
+	 * 
+	 * @param job
+	 *            the job that was crawled
+	 */
+	public void jobCompleted(CrawlJob job) {
+		if(job == null || !isInternalQueueBacked()) {
+			return;
+		}
+		
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			this.internalQueue.completed(job);
+			this.notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
 
-		// remove from the jobs map
-		if(this.jobs != null) {
-			this.jobs.remove(job.getCrawlableURL().getURL());
+	/**
+	 * Change the share of the workers given to a job class. The new weight
+	 * applies from the next turn of the class.
+	 * 
+	 * @param jobClass
+	 *            the key of the job class
+	 * 
+	 * @param weight
+	 *            the weight, relative to the weights of the other classes
+	 * 
+	 * @throws IllegalStateException
+	 *             if fair queuing is not in use
+	 */
+	public void setJobClassWeight(String jobClass, double weight) {
+		if(!(this.internalQueue instanceof FairJobStore)) {
+			throw new IllegalStateException("Fair queuing has not been enabled.");
+		}
+		
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			((FairJobStore) this.internalQueue).setWeight(jobClass, weight);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Return the queued and served counts of each job class.
+	 * 
+	 * @return the statistics of each job class seen so far, empty if fair
+	 *         queuing is not in use
+	 */
+	public List<JobClassStatistics> getJobClassStatistics() {
+		if(!(this.internalQueue instanceof FairJobStore)) {
+			return Collections.emptyList();
 		}
 		
-		return job;
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return ((FairJobStore) this.internalQueue).getStatistics();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Wake up all workers waiting for a job so that they can check for their
+	 * closure.
+	 * 
+	 */
+	public void wakeUpWorkers() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			this.notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -309,7 +1526,7 @@ public class CrawlingQueue {
 		
 		for (Enumeration<CrawlJob> myJobs = this.jobs.elements(); myJobs.hasMoreElements(); ) {
 			CrawlJob myJob = myJobs.nextElement();
-			System.out.println("URL " + myJob.getCrawlableURL().getURL() + " with priority of " + myJob.getPriority().get());
+			System.out.println("URL " + myJob.getURL() + " with priority of " + myJob.getPriority());
 		}
 	}
 	
@@ -330,26 +1547,48 @@ public class CrawlingQueue {
 	 * not clean up any external queue that is provided, and it's
 	 * responsibility lies with the using application.
 	 * 
+	 * The cleared jobs are not recorded in the journal, if any, so that
+	 * they are resumed by the next instance using the same checkpoint.
+	 * 
 	 */
 	private void clearAllJobs() {
-		if(isInternalQueueBacked()) {
-			this.internalQueue.clear();
+		if(!isInternalQueueBacked()) {
+			return;
 		}
 		
-		if(this.jobs != null) {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			this.internalQueue.clear();
 			this.jobs.clear();
+			this.pendingBytes = 0;
+			this.drained.signalAll();
+			this.notFull.signalAll();
+		} finally {
+			lock.unlock();
 		}
 	}
 
 	/**
 	 * Wait for the closure of this queue. The closure time is the time till all
-	 * jobs have been read from this queue.
+	 * jobs have been read from this queue. Scheduled crawls that are not yet
+	 * due are dropped, but for retries of failed crawls, which are waited for
+	 * unless the jobs are cleared.
 	 * 
 	 * @param clearJobs
-	 *            if set to <code>true</code> all pending jobs are deleted
-	 *            before we wait for completion of currently running jobs
+	 *            if set to <code>true</code> all pending jobs and retries
+	 *            are deleted before we wait for completion of currently
+	 *            running jobs
 	 */
 	public void waitForClosure(boolean clearJobs) {
+		if(this.scheduler != null) {
+			if(clearJobs) {
+				this.droppedRetries.addAll(this.scheduler.shutdown());
+			} else {
+				this.scheduler.close();
+			}
+		}
+		
 		if(clearJobs) {
 			clearAllJobs();
 		}
@@ -363,25 +1602,80 @@ public class CrawlingQueue {
 		}
 		
 		// we are using an internal queue, we must wait
-		// till it gets cleared up
-		CrawlJob job = null;
-		do {
-			job = this.internalQueue.peek();
-			if(job == null) {
-				break;
+		// till it gets cleared up, and no retry is left
+		// to be submitted to it
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			while(!this.internalQueue.isEmpty() || this.scheduler.size() > 0) {
+				try {
+					if(this.internalQueue.isEmpty()) {
+						// retries are only submitted on a tick
+						this.drained.await(this.scheduler.getTickMillis(), TimeUnit.MILLISECONDS);
+					} else {
+						this.drained.await();
+					}
+				} catch (InterruptedException e) {
+					// eat up
+				}
 			}
 			
-			// wait for 250ms
+			// wake up all workers waiting for a job
+			// so that they can see the closure
+			this.closureSeeked = true;
+			this.notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Release the resources held by this queue. When checkpointing, this
+	 * stops the periodic checkpoints and flushes the journal to disk, so that
+	 * the jobs still pending can be resumed later. The seen filter, if any,
+	 * is saved to its file. Retries still scheduled are dropped, and can be
+	 * obtained from {@link #takeDroppedRetries()}.
+	 * 
+	 */
+	public void shutdown() {
+		if(this.scheduler != null) {
+			this.droppedRetries.addAll(this.scheduler.shutdown());
+		}
+		
+		if(this.journal != null) {
+			this.checkpointTimer.cancel();
+			this.journal.close();
+		}
+		
+		if(this.seenFilterFile != null) {
+			final ReentrantLock lock = this.lock;
+			lock.lock();
 			try {
-				Thread.sleep(250);
-			} catch (InterruptedException e) {
-				// eat up
+				this.seenFilter.save(this.seenFilterFile);
+			} catch(IOException e) {
+				LOGGER.error("Unable to save seen filter to: " + this.seenFilterFile.getAbsolutePath(), e);
+			} finally {
+				lock.unlock();
 			}
-		} while(true);
-		
-		this.closureSeeked = true;
+		}
 	}
-
+	
+	/**
+	 * Return the retries of failed crawls that were dropped when this queue
+	 * was shut down, and forget them. The after-crawl handler has been told
+	 * that these crawls would be retried, and is to be told of their final
+	 * failure.
+	 * 
+	 * @return the dropped retries, empty if none
+	 */
+	public List<ScheduledRetry> takeDroppedRetries() {
+		synchronized(this.droppedRetries) {
+			final List<ScheduledRetry> dropped = new ArrayList<ScheduledRetry>(this.droppedRetries);
+			this.droppedRetries.clear();
+			return dropped;
+		}
+	}
+	
 	/**
 	 * Check if we have a job available in the actual queue over which this
 	 * {@link CrawlingQueue} instance is based.
@@ -391,10 +1685,72 @@ public class CrawlingQueue {
 	 */
 	public boolean hasJob() {
 		if(this.internalQueue != null) {
-			return !this.internalQueue.isEmpty();
+			final ReentrantLock lock = this.lock;
+			lock.lock();
+			try {
+				return !this.internalQueue.isEmpty();
+			} finally {
+				lock.unlock();
+			}
 		}
 		
 		return !this.externalQueue.isEmpty();
 	}
+	
+	/**
+	 * Running counts of a batch submission.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	private static class BatchCounts {
+		
+		int added;
+		
+		int bumped;
+		
+		int rejected;
+		
+		int seen;
+		
+		int skipped;
+		
+	}
+	
+	/**
+	 * Flushes the {@link CrawlingQueue#journal} periodically.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	private class JournalFlushTask extends TimerTask {
+
+		@Override
+		public void run() {
+			journal.flush();
+		}
+		
+	}
+	
+	/**
+	 * Checkpoints the {@link CrawlingQueue#jobs} periodically.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	private class CheckpointTask extends TimerTask {
+
+		@Override
+		public void run() {
+			try {
+				journal.checkpoint(jobs.values());
+			} catch(IOException e) {
+				LOGGER.error("Unable to checkpoint pending jobs", e);
+			} catch(RuntimeException e) {
+				LOGGER.error("Unable to checkpoint pending jobs", e);
+			}
+		}
+		
+	}
 
 }
@@ -21,19 +21,53 @@
 
 package com.sangupta.amass.impl;
 
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.sangupta.amass.core.AfterCrawlHandler;
+import com.sangupta.amass.core.AsyncCrawlCallback;
+import com.sangupta.amass.core.AsyncCrawlHandler;
 import com.sangupta.amass.core.BeforeCrawlHandler;
+import com.sangupta.amass.core.ChangeAwareAfterCrawlHandler;
 import com.sangupta.amass.core.CrawlHandler;
+import com.sangupta.amass.core.CrawlSkippedException;
+import com.sangupta.amass.core.FetchPolicy;
+import com.sangupta.amass.core.RetryAwareAfterCrawlHandler;
+import com.sangupta.amass.core.SkipAwareAfterCrawlHandler;
+import com.sangupta.amass.core.StreamingAfterCrawlHandler;
+import com.sangupta.amass.core.StreamingCrawlHandler;
 import com.sangupta.amass.domain.AmassSignal;
 import com.sangupta.amass.domain.CrawlJob;
+import com.sangupta.amass.domain.CrawlStatistics;
+import com.sangupta.amass.domain.StreamingWebResponse;
 import com.sangupta.jerry.http.WebResponse;
 
 /**
  * A single thread that crawls one job at a time.
  * 
+ * When created with an {@link AsyncCrawlHandler}, the worker only dispatches
+ * jobs to the handler and does not wait for the crawl to complete. The number
+ * of crawls in flight across all such workers is then bounded by a shared
+ * {@link Semaphore}.
+ * 
+ * When the after-crawl handler is a {@link StreamingAfterCrawlHandler}, the
+ * worker hands it the response before the body has been read, and closes the
+ * response once the handler returns.
+ * 
+ * When given a {@link FetchPolicy}, the worker reports a response whose body
+ * is not wanted as skipped. A streamed response is checked as soon as its
+ * headers arrive; a buffered one only once it has been read, unless the
+ * crawl handler applied the policy itself by throwing a
+ * {@link CrawlSkippedException}.
+ * 
+ * When given a {@link ValidatorStore}, the worker records the validators of
+ * each response into it, and reports a page that has not changed since its
+ * last crawl to a {@link ChangeAwareAfterCrawlHandler} as unchanged.
+ * 
  * @author sangupta
  *
  */
@@ -49,10 +83,40 @@ public class CrawlingWorker implements Runnable {
 	
 	private final CrawlHandler crawlHandler;
 	
+	private final AsyncCrawlHandler asyncCrawlHandler;
+	
+	/**
+	 * Permits for crawls in flight when using the {@link #asyncCrawlHandler}
+	 */
+	private final Semaphore asyncPermits;
+	
 	private final AfterCrawlHandler afterCrawlHandler;
 	
 	private final AmassSignal amassSignal;
 	
+	/**
+	 * The statistics to record each crawl into
+	 */
+	private final CrawlStatistics crawlStatistics;
+	
+	/**
+	 * The number of bytes after which to cut a streamed body short, zero for
+	 * no limit
+	 */
+	private final long maxContentLength;
+	
+	/**
+	 * The policy that decides which bodies are wanted, <code>null</code> if
+	 * all are
+	 */
+	private final FetchPolicy fetchPolicy;
+	
+	/**
+	 * The validators of the URLs crawled, <code>null</code> to not tell
+	 * unchanged pages apart
+	 */
+	private final ValidatorStore validatorStore;
+	
 	private volatile boolean working = false;
 	
 	/**
@@ -67,18 +131,155 @@ public class CrawlingWorker implements Runnable {
 	private volatile boolean closureSeeked;
 	
 	public CrawlingWorker(CrawlingQueue crawlingQueue, BeforeCrawlHandler beforeCrawlHandler, CrawlHandler crawlHandler, AfterCrawlHandler afterCrawlHandler, AmassSignal amassSignal) {
+		this(crawlingQueue, beforeCrawlHandler, crawlHandler, afterCrawlHandler, amassSignal, new CrawlStatistics());
+	}
+	
+	public CrawlingWorker(CrawlingQueue crawlingQueue, BeforeCrawlHandler beforeCrawlHandler, CrawlHandler crawlHandler, AfterCrawlHandler afterCrawlHandler, AmassSignal amassSignal, CrawlStatistics crawlStatistics) {
+		this(crawlingQueue, beforeCrawlHandler, crawlHandler, afterCrawlHandler, amassSignal, crawlStatistics, 0, null, null);
+	}
+	
+	/**
+	 * Create a worker that crawls using the given {@link CrawlHandler}.
+	 * 
+	 * @param crawlingQueue
+	 *            the queue to read jobs from
+	 * 
+	 * @param beforeCrawlHandler
+	 *            the handler to run before starting to crawl
+	 * 
+	 * @param crawlHandler
+	 *            the handler that does the actual crawling, which may be
+	 *            shared by all workers and is not closed by this worker
+	 * 
+	 * @param afterCrawlHandler
+	 *            the handler to run after completing the crawl
+	 * 
+	 * @param amassSignal
+	 *            the signal to watch for pause and stop
+	 * 
+	 * @param crawlStatistics
+	 *            the statistics to record each crawl into
+	 * 
+	 * @param maxContentLength
+	 *            the number of bytes after which to cut a streamed body short,
+	 *            zero for no limit
+	 * 
+	 * @param fetchPolicy
+	 *            the policy that decides which bodies are wanted,
+	 *            <code>null</code> if all are
+	 * 
+	 * @param validatorStore
+	 *            the validators of the URLs crawled, <code>null</code> to not
+	 *            tell unchanged pages apart
+	 */
+	public CrawlingWorker(CrawlingQueue crawlingQueue, BeforeCrawlHandler beforeCrawlHandler, CrawlHandler crawlHandler, AfterCrawlHandler afterCrawlHandler, AmassSignal amassSignal, CrawlStatistics crawlStatistics, long maxContentLength, FetchPolicy fetchPolicy, ValidatorStore validatorStore) {
+		if(crawlHandler == null) {
+			throw new IllegalArgumentException("Crawl handler cannot be null");
+		}
+		
+		if(maxContentLength < 0) {
+			throw new IllegalArgumentException("Maximum content length cannot be negative");
+		}
+		
 		this.crawlingQueue = crawlingQueue;
 		
 		this.beforeCrawlHandler = beforeCrawlHandler;
-		if(crawlHandler == null) {
-			this.crawlHandler = new DefaultCrawlHandler();
-		} else {
-			this.crawlHandler = crawlHandler;
-		}
+		this.crawlHandler = crawlHandler;
+		
+		this.asyncCrawlHandler = null;
+		this.asyncPermits = null;
 		
 		this.afterCrawlHandler = afterCrawlHandler;
 		
 		this.amassSignal = amassSignal;
+		this.crawlStatistics = crawlStatistics;
+		this.maxContentLength = maxContentLength;
+		this.fetchPolicy = fetchPolicy;
+		this.validatorStore = validatorStore;
+	}
+	
+	/**
+	 * Create a worker that dispatches jobs to the given {@link AsyncCrawlHandler}.
+	 * 
+	 * @param crawlingQueue
+	 *            the queue to read jobs from
+	 * 
+	 * @param beforeCrawlHandler
+	 *            the handler to run before starting to crawl
+	 * 
+	 * @param asyncCrawlHandler
+	 *            the handler that does the actual crawling
+	 * 
+	 * @param afterCrawlHandler
+	 *            the handler to run after completing the crawl
+	 * 
+	 * @param amassSignal
+	 *            the signal to watch for pause and stop
+	 * 
+	 * @param asyncPermits
+	 *            the permits for crawls in flight, shared by all workers
+	 * 
+	 * @param crawlStatistics
+	 *            the statistics to record each crawl into
+	 */
+	public CrawlingWorker(CrawlingQueue crawlingQueue, BeforeCrawlHandler beforeCrawlHandler, AsyncCrawlHandler asyncCrawlHandler, AfterCrawlHandler afterCrawlHandler, AmassSignal amassSignal, Semaphore asyncPermits, CrawlStatistics crawlStatistics) {
+		this(crawlingQueue, beforeCrawlHandler, asyncCrawlHandler, afterCrawlHandler, amassSignal, asyncPermits, crawlStatistics, null, null);
+	}
+	
+	/**
+	 * Create a worker that dispatches jobs to the given {@link AsyncCrawlHandler},
+	 * and reports responses whose body is not wanted as skipped, and pages
+	 * that have not changed as unchanged.
+	 * 
+	 * @param crawlingQueue
+	 *            the queue to read jobs from
+	 * 
+	 * @param beforeCrawlHandler
+	 *            the handler to run before starting to crawl
+	 * 
+	 * @param asyncCrawlHandler
+	 *            the handler that does the actual crawling
+	 * 
+	 * @param afterCrawlHandler
+	 *            the handler to run after completing the crawl
+	 * 
+	 * @param amassSignal
+	 *            the signal to watch for pause and stop
+	 * 
+	 * @param asyncPermits
+	 *            the permits for crawls in flight, shared by all workers
+	 * 
+	 * @param crawlStatistics
+	 *            the statistics to record each crawl into
+	 * 
+	 * @param fetchPolicy
+	 *            the policy that decides which bodies are wanted,
+	 *            <code>null</code> if all are
+	 * 
+	 * @param validatorStore
+	 *            the validators of the URLs crawled, <code>null</code> to not
+	 *            tell unchanged pages apart
+	 */
+	public CrawlingWorker(CrawlingQueue crawlingQueue, BeforeCrawlHandler beforeCrawlHandler, AsyncCrawlHandler asyncCrawlHandler, AfterCrawlHandler afterCrawlHandler, AmassSignal amassSignal, Semaphore asyncPermits, CrawlStatistics crawlStatistics, FetchPolicy fetchPolicy, ValidatorStore validatorStore) {
+		if(asyncCrawlHandler == null) {
+			throw new IllegalArgumentException("Async crawl handler cannot be null");
+		}
+		
+		if(asyncPermits == null) {
+			throw new IllegalArgumentException("Async permits cannot be null");
+		}
+		
+		this.crawlingQueue = crawlingQueue;
+		this.beforeCrawlHandler = beforeCrawlHandler;
+		this.crawlHandler = null;
+		this.asyncCrawlHandler = asyncCrawlHandler;
+		this.asyncPermits = asyncPermits;
+		this.afterCrawlHandler = afterCrawlHandler;
+		this.amassSignal = amassSignal;
+		this.crawlStatistics = crawlStatistics;
+		this.maxContentLength = 0;
+		this.fetchPolicy = fetchPolicy;
+		this.validatorStore = validatorStore;
 	}
 
 	/**
@@ -102,6 +303,16 @@ public class CrawlingWorker implements Runnable {
 		this.closureSeeked = true;
 	}
 	
+	/**
+	 * Check if closure of this worker has been seeked.
+	 * 
+	 * @return <code>true</code> if this worker will not pick up any more
+	 *         jobs, <code>false</code> otherwise
+	 */
+	public boolean isClosureSeeked() {
+		return this.closureSeeked;
+	}
+	
 	/**
 	 * Run the ever-running job of crawling picking jobs from the {@link CrawlingQueue}
 	 * and executing them as needed.
@@ -109,9 +320,13 @@ public class CrawlingWorker implements Runnable {
 	 */
 	private void runCrawlingJob() {
 		do {
+			if(this.closureSeeked) {
+				return;
+			}
+			
 			CrawlJob job = null;
 			try {
-				job = this.crawlingQueue.take();
+				job = this.crawlingQueue.take(this);
 			} catch(Throwable t) {
 				LOGGER.debug("Unable to fetch element from queue", t);
 			}
@@ -133,29 +348,60 @@ public class CrawlingWorker implements Runnable {
 				continue;
 			}
 			
+			if(!crawlJob(job)) {
+				break;
+			}
+		} while(true);
+	}
+	
+	/**
+	 * Crawl the given job running all the handlers over it. The queue is
+	 * notified of the completion of the job once all handlers have run.
+	 * 
+	 * @param job
+	 *            the job to crawl
+	 * 
+	 * @return <code>false</code> if we are stopping and no more jobs need to
+	 *         be crawled, <code>true</code> otherwise
+	 */
+	private boolean crawlJob(final CrawlJob job) {
+		final int attempt = job.getAttempt();
+		boolean completeNow = true;
+		try {
 			boolean crawl = true; 
 			if(this.beforeCrawlHandler != null) {
 				try {
-					crawl = this.beforeCrawlHandler.beforeCrawl(job.getCrawlableURL(), job.getPriority().get());
+					crawl = this.beforeCrawlHandler.beforeCrawl(job.getCrawlableURL(), job.getPriority());
 				} catch(Throwable t) {
 					// catch all otherwise thread will break
 					LOGGER.error("Unable to run before-crawl handler on url {}", job);
 				}
-
+	
 				// check again for stop/pause as the before operation
 				// may have been an expensive operation
 				if(this.amassSignal.isStopping()) {
-					break;
+					return false;
 				}
 				pauseIfNeeded();
 			}
 			
 			if(!crawl) {
-				continue;
+				return true;
 			}
 			
 			LOGGER.debug("Crawling URL: " + job.getCrawlableURL().getURL() + "... ");
 			
+			if(this.asyncCrawlHandler != null) {
+				// the callback completes the job
+				completeNow = !dispatchAsync(job, attempt);
+				return true;
+			}
+			
+			if(this.afterCrawlHandler instanceof StreamingAfterCrawlHandler) {
+				crawlStreaming(job, attempt, (StreamingAfterCrawlHandler) this.afterCrawlHandler);
+				return true;
+			}
+			
 			long start = System.currentTimeMillis();
 			Throwable throwable = null;
 			WebResponse webResponse= null;
@@ -163,29 +409,292 @@ public class CrawlingWorker implements Runnable {
 				webResponse = this.crawlHandler.crawl(job.getCrawlableURL());
 			} catch(Throwable t) {
 				throwable = t;
-				LOGGER.error("Unable to execute crawl handler on url {}", job, throwable);
+				logCrawlError(job, throwable);
 			} finally {
 				this.lastCrawlTime = System.currentTimeMillis();
 				LOGGER.debug("Thread " + Thread.currentThread().getName() + " last crawl time: " + this.lastCrawlTime);
 			}
 			final long timeConsumed = this.lastCrawlTime - start;
-
-			// after crawl handler
-			if(throwable == null) {
-				try {
-					this.afterCrawlHandler.afterCrawl(job.getCrawlableURL(), job.getPriority().get(), webResponse, timeConsumed);
-				} catch(Throwable t) {
-					LOGGER.error("Unable to execute after-crawl handler on url {}", job, t);
-				}
+	
+			runAfterCrawlHandler(job, attempt, webResponse, throwable, timeConsumed);
+			return true;
+		} finally {
+			if(completeNow) {
+				this.crawlingQueue.jobCompleted(job);
+			}
+		}
+	}
+	
+	/**
+	 * Crawl the given job and hand its response to the streaming after-crawl
+	 * handler before the body has been read. A failure to read the body is
+	 * treated as a failure of the crawl.
+	 * 
+	 * @param job
+	 *            the job to crawl
+	 * 
+	 * @param attempt
+	 *            the attempt this crawl is of the URL
+	 * 
+	 * @param streamingHandler
+	 *            the after-crawl handler to read the body
+	 */
+	private void crawlStreaming(final CrawlJob job, final int attempt, final StreamingAfterCrawlHandler streamingHandler) {
+		long start = System.currentTimeMillis();
+		Throwable throwable = null;
+		StreamingWebResponse response = null;
+		try {
+			if(this.crawlHandler instanceof StreamingCrawlHandler) {
+				response = ((StreamingCrawlHandler) this.crawlHandler).crawlStreaming(job.getCrawlableURL(), this.maxContentLength);
 			} else {
-				// in case we get an error we must stop crawling now.
+				response = StreamingWebResponse.fromWebResponse(this.crawlHandler.crawl(job.getCrawlableURL()), this.maxContentLength);
+			}
+		} catch(Throwable t) {
+			throwable = t;
+			logCrawlError(job, throwable);
+		} finally {
+			this.lastCrawlTime = System.currentTimeMillis();
+		}
+		final long timeConsumed = this.lastCrawlTime - start;
+		
+		if(throwable != null) {
+			runAfterCrawlHandler(job, attempt, null, throwable, timeConsumed);
+			return;
+		}
+		
+		try {
+			if(response != null && this.validatorStore != null) {
+				// the body is not hashed, as it is yet to be read
+				if(this.validatorStore.record(job.getCrawlableURL().getURL(), response.getResponseCode(), response.getHeaders(), 0) && reportUnchanged(job, response.getResponseCode(), timeConsumed)) {
+					return;
+				}
+			}
+			
+			if(response != null && this.fetchPolicy != null && !this.fetchPolicy.shouldFetch(job.getCrawlableURL(), response.getResponseCode(), response.getContentType(), response.getContentLength())) {
+				reportSkip(job, response.getResponseCode(), response.getContentType(), response.getContentLength(), timeConsumed);
+				return;
+			}
+			
+			streamingHandler.afterCrawl(job.getCrawlableURL(), job.getPriority(), response, timeConsumed);
+			this.crawlStatistics.recordCrawl(timeConsumed, false);
+		} catch(IOException e) {
+			LOGGER.error("Unable to read response of url {}", job, e);
+			runAfterCrawlHandler(job, attempt, null, e, timeConsumed);
+		} catch(Throwable t) {
+			this.crawlStatistics.recordCrawl(timeConsumed, false);
+			LOGGER.error("Unable to execute after-crawl handler on url {}", job, t);
+		} finally {
+			if(response != null) {
 				try {
-					this.afterCrawlHandler.crawlError(job.getCrawlableURL(), job.getPriority().get(), throwable, timeConsumed);
-				} catch(Throwable t1) {
-					LOGGER.error("Unable to execute after-crawl-error handler on url {}", job, t1);
+					response.close();
+				} catch(IOException e) {
+					LOGGER.debug("Unable to close response of url {}", job, e);
 				}
 			}
-		} while(true);
+		}
+	}
+	
+	/**
+	 * Hand over the given job to the {@link #asyncCrawlHandler} once a permit
+	 * for a crawl in flight is available. If interrupted while waiting, the
+	 * crawl is reported as failed with the {@link InterruptedException}.
+	 * 
+	 * @param job
+	 *            the job to crawl
+	 * 
+	 * @param attempt
+	 *            the attempt this crawl is of the URL
+	 * 
+	 * @return <code>true</code> if the job was handed over, and its callback
+	 *         will complete the job, <code>false</code> otherwise
+	 */
+	private boolean dispatchAsync(final CrawlJob job, final int attempt) {
+		try {
+			this.asyncPermits.acquire();
+		} catch (InterruptedException e) {
+			// keep the interrupt for the worker loop to see, and tell of
+			// the crawl that could not be made
+			Thread.currentThread().interrupt();
+			LOGGER.debug("Interrupted while waiting to dispatch url {}", job);
+			runAfterCrawlHandler(job, attempt, null, e, 0);
+			return false;
+		}
+		
+		final AsyncCallback callback = new AsyncCallback(job, attempt);
+		try {
+			this.asyncCrawlHandler.crawl(job.getCrawlableURL(), callback);
+		} catch(Throwable t) {
+			callback.failed(t);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Run the after-crawl handler for the given job. A failed crawl is first
+	 * handed to the retry policy, and a plain {@link AfterCrawlHandler} is
+	 * told of the failure only if it will not be tried again.
+	 * 
+	 * @param job
+	 *            the job that was crawled
+	 * 
+	 * @param attempt
+	 *            the attempt this crawl was of the URL
+	 * 
+	 * @param webResponse
+	 *            the response received, if any
+	 * 
+	 * @param throwable
+	 *            the error encountered, if any
+	 * 
+	 * @param timeConsumed
+	 *            the time consumed in milli-seconds to crawl
+	 */
+	private void runAfterCrawlHandler(final CrawlJob job, final int attempt, final WebResponse webResponse, final Throwable throwable, final long timeConsumed) {
+		if(throwable instanceof CrawlSkippedException) {
+			final CrawlSkippedException skipped = (CrawlSkippedException) throwable;
+			reportSkip(job, skipped.getResponseCode(), skipped.getContentType(), skipped.getContentLength(), timeConsumed);
+			return;
+		}
+		
+		if(throwable == null && webResponse != null && this.validatorStore != null) {
+			final int responseCode = webResponse.getResponseCode();
+			long contentHash = 0;
+			if(responseCode >= 200 && responseCode < 300 && webResponse.getBytes() != null) {
+				contentHash = ValidatorStore.hash(webResponse.getBytes());
+			}
+			
+			if(this.validatorStore.record(job.getCrawlableURL().getURL(), responseCode, webResponse.getHeaders(), contentHash) && reportUnchanged(job, responseCode, timeConsumed)) {
+				return;
+			}
+		}
+		
+		if(throwable == null && webResponse != null && this.fetchPolicy != null) {
+			final byte[] bytes = webResponse.getBytes();
+			final long contentLength = bytes == null ? 0 : bytes.length;
+			if(!this.fetchPolicy.shouldFetch(job.getCrawlableURL(), webResponse.getResponseCode(), webResponse.getContentType(), contentLength)) {
+				reportSkip(job, webResponse.getResponseCode(), webResponse.getContentType(), contentLength, timeConsumed);
+				return;
+			}
+		}
+		
+		this.crawlStatistics.recordCrawl(timeConsumed, throwable != null);
+		
+		final RetryAwareAfterCrawlHandler retryAwareHandler;
+		if(this.afterCrawlHandler instanceof RetryAwareAfterCrawlHandler) {
+			retryAwareHandler = (RetryAwareAfterCrawlHandler) this.afterCrawlHandler;
+		} else {
+			retryAwareHandler = null;
+		}
+		
+		if(throwable == null) {
+			try {
+				if(retryAwareHandler != null) {
+					retryAwareHandler.afterCrawl(job.getCrawlableURL(), job.getPriority(), webResponse, timeConsumed, attempt);
+				} else {
+					this.afterCrawlHandler.afterCrawl(job.getCrawlableURL(), job.getPriority(), webResponse, timeConsumed);
+				}
+			} catch(Throwable t) {
+				LOGGER.error("Unable to execute after-crawl handler on url {}", job, t);
+			}
+		} else {
+			final boolean retrying = this.crawlingQueue.retry(job, attempt, throwable);
+			
+			// in case we get an error we must stop crawling now.
+			try {
+				if(retryAwareHandler != null) {
+					retryAwareHandler.crawlError(job.getCrawlableURL(), job.getPriority(), throwable, timeConsumed, attempt, retrying);
+				} else if(!retrying) {
+					this.afterCrawlHandler.crawlError(job.getCrawlableURL(), job.getPriority(), throwable, timeConsumed);
+				}
+			} catch(Throwable t1) {
+				LOGGER.error("Unable to execute after-crawl-error handler on url {}", job, t1);
+			}
+		}
+	}
+	
+	/**
+	 * Report a crawl whose body was not wanted to the after-crawl handler, if
+	 * it cares to know. The crawl is recorded as a success, as the server
+	 * did answer.
+	 * 
+	 * @param job
+	 *            the job that was crawled
+	 * 
+	 * @param responseCode
+	 *            the HTTP status code of the response
+	 * 
+	 * @param contentType
+	 *            the value of the <code>Content-Type</code> header, if any
+	 * 
+	 * @param contentLength
+	 *            the length of the body, <code>-1</code> if not known
+	 * 
+	 * @param timeConsumed
+	 *            the time consumed in milli-seconds to crawl
+	 */
+	private void reportSkip(final CrawlJob job, final int responseCode, final String contentType, final long contentLength, final long timeConsumed) {
+		this.crawlStatistics.recordCrawl(timeConsumed, false);
+		
+		if(!(this.afterCrawlHandler instanceof SkipAwareAfterCrawlHandler)) {
+			return;
+		}
+		
+		try {
+			((SkipAwareAfterCrawlHandler) this.afterCrawlHandler).crawlSkipped(job.getCrawlableURL(), job.getPriority(), responseCode, contentType, contentLength, timeConsumed);
+		} catch(Throwable t) {
+			LOGGER.error("Unable to execute crawl-skipped handler on url {}", job, t);
+		}
+	}
+	
+	/**
+	 * Report a page that has not changed since its last crawl to the
+	 * after-crawl handler, if it can tell such pages apart.
+	 * 
+	 * @param job
+	 *            the job that was crawled
+	 * 
+	 * @param responseCode
+	 *            the HTTP status code of the response
+	 * 
+	 * @param timeConsumed
+	 *            the time consumed in milli-seconds to crawl
+	 * 
+	 * @return <code>true</code> if the crawl was reported as unchanged,
+	 *         <code>false</code> if it is to be handled as a usual response
+	 */
+	private boolean reportUnchanged(final CrawlJob job, final int responseCode, final long timeConsumed) {
+		if(!(this.afterCrawlHandler instanceof ChangeAwareAfterCrawlHandler)) {
+			return false;
+		}
+		
+		this.crawlStatistics.recordCrawl(timeConsumed, false);
+		try {
+			((ChangeAwareAfterCrawlHandler) this.afterCrawlHandler).crawlUnchanged(job.getCrawlableURL(), job.getPriority(), responseCode, timeConsumed);
+		} catch(Throwable t) {
+			LOGGER.error("Unable to execute crawl-unchanged handler on url {}", job, t);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Log the failure of a crawl handler. A body turned down by the fetch
+	 * policy is not an error.
+	 * 
+	 * @param job
+	 *            the job whose crawl failed
+	 * 
+	 * @param throwable
+	 *            the error the crawl failed with
+	 */
+	private static void logCrawlError(final CrawlJob job, final Throwable throwable) {
+		if(throwable instanceof CrawlSkippedException) {
+			LOGGER.debug("Skipped body of url {}: {}", job, throwable.getMessage());
+			return;
+		}
+		
+		LOGGER.error("Unable to execute crawl handler on url {}", job, throwable);
 	}
 	
 	/**
@@ -223,4 +732,55 @@ public class CrawlingWorker implements Runnable {
 		return lastCrawlTime;
 	}
 
+
+	/**
+	 * Callback handed to the {@link AsyncCrawlHandler} for a single job. It
+	 * runs the after-crawl handler, completes the job and releases the permit
+	 * of the crawl. Only the first notification is honoured.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	private class AsyncCallback implements AsyncCrawlCallback {
+		
+		private final CrawlJob job;
+		
+		private final int attempt;
+		
+		private final long start = System.currentTimeMillis();
+		
+		private final AtomicBoolean done = new AtomicBoolean(false);
+		
+		AsyncCallback(CrawlJob job, int attempt) {
+			this.job = job;
+			this.attempt = attempt;
+		}
+
+		@Override
+		public void completed(WebResponse response) {
+			finish(response, null);
+		}
+
+		@Override
+		public void failed(Throwable throwable) {
+			logCrawlError(this.job, throwable);
+			finish(null, throwable);
+		}
+		
+		private void finish(WebResponse response, Throwable throwable) {
+			if(!this.done.compareAndSet(false, true)) {
+				return;
+			}
+			
+			try {
+				lastCrawlTime = System.currentTimeMillis();
+				runAfterCrawlHandler(this.job, this.attempt, response, throwable, lastCrawlTime - this.start);
+			} finally {
+				crawlingQueue.jobCompleted(this.job);
+				asyncPermits.release();
+			}
+		}
+		
+	}
+
 }
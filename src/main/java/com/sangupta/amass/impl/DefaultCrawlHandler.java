@@ -1,15 +1,595 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
 package com.sangupta.amass.impl;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+
 import com.sangupta.amass.core.CrawlHandler;
+import com.sangupta.amass.core.CrawlSkippedException;
+import com.sangupta.amass.core.FetchPolicy;
+import com.sangupta.amass.core.StreamingCrawlHandler;
+import com.sangupta.amass.domain.ConnectionPoolStatistics;
 import com.sangupta.amass.domain.CrawlableURL;
-import com.sangupta.jerry.http.WebInvoker;
+import com.sangupta.amass.domain.StreamingWebResponse;
+import com.sangupta.amass.domain.Validators;
 import com.sangupta.jerry.http.WebResponse;
+import com.sangupta.jerry.http.WebResponseHandler;
 
-public class DefaultCrawlHandler implements CrawlHandler {
+/**
+ * The {@link CrawlHandler} used when none is supplied. It fetches each URL
+ * with a GET request over a pool of keep-alive connections, so that hosts
+ * crawled again and again do not pay for a TCP and TLS handshake on every
+ * request.
+ * 
+ * The pool is bounded in total and per host. Connections are kept alive for
+ * as long as the server allows, or for the default keep-alive if it does
+ * not say, and are closed once idle for longer than the idle timeout. TLS
+ * sessions are cached, so that a new connection to a host seen before
+ * resumes its session with an abbreviated handshake. Host names are
+ * resolved through a {@link CachingDnsResolver}, which the crawling queue
+ * can ask to resolve the host of a URL as soon as it is submitted.
+ * 
+ * When streamed, the body is read straight from the connection. A body read
+ * to its end returns the connection to the pool; one left unread, or cut
+ * short, closes the connection rather than downloading the rest.
+ * 
+ * When given a {@link FetchPolicy}, the handler checks the status and headers
+ * of each response before reading its body, and throws a
+ * {@link CrawlSkippedException} if the body is not wanted. When given a
+ * {@link ValidatorStore}, the handler sends the validators of the last crawl
+ * of a URL, so that the server can answer with <code>304 Not Modified</code>
+ * rather than the body.
+ * 
+ * One instance is meant to be shared by all workers, and must be closed once
+ * no longer needed to close its connections.
+ * 
+ * @author sangupta
+ *
+ */
+public class DefaultCrawlHandler implements StreamingCrawlHandler, Closeable {
+	
+	/**
+	 * Default maximum number of open connections
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 200;
+	
+	/**
+	 * Default maximum number of open connections to a single host
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+	
+	/**
+	 * Default connect and read timeout in millis
+	 */
+	public static final int DEFAULT_TIMEOUT = 30000;
+	
+	/**
+	 * Default time in millis to keep a connection alive when the server does
+	 * not say
+	 */
+	public static final long DEFAULT_KEEP_ALIVE = 30000;
+	
+	/**
+	 * Default time in millis after which an idle connection is closed
+	 */
+	public static final long DEFAULT_IDLE_TIMEOUT = 60000;
+	
+	/**
+	 * The number of TLS sessions cached for resumption
+	 */
+	private static final int TLS_SESSION_CACHE_SIZE = 10000;
+	
+	/**
+	 * The pool of connections
+	 */
+	private final CountingConnectionManager connectionManager;
+	
+	/**
+	 * The resolver of host names, <code>null</code> to use the resolver of the
+	 * JVM
+	 */
+	private final CachingDnsResolver dnsResolver;
+	
+	/**
+	 * The policy that decides which bodies to download, <code>null</code> to
+	 * download all
+	 */
+	private final FetchPolicy fetchPolicy;
+	
+	/**
+	 * The validators of the URLs crawled before, <code>null</code> to not
+	 * send conditional requests
+	 */
+	private final ValidatorStore validatorStore;
+	
+	/**
+	 * The client that runs requests over the {@link #connectionManager}
+	 */
+	private final CloseableHttpClient httpClient;
+	
+	/**
+	 * Converts the HTTP response into a {@link WebResponse}, and releases the
+	 * connection back to the pool
+	 */
+	private final WebResponseHandler responseHandler = new WebResponseHandler();
+	
+	/**
+	 * The time in millis after which an idle connection is closed, zero or
+	 * less to keep them open
+	 */
+	private final long idleTimeout;
+	
+	/**
+	 * The time in millis when idle connections were last closed
+	 */
+	private final AtomicLong lastEviction = new AtomicLong(System.currentTimeMillis());
+	
+	/**
+	 * Create a new handler with default settings.
+	 */
+	public DefaultCrawlHandler() {
+		this(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_TIMEOUT, DEFAULT_KEEP_ALIVE, DEFAULT_IDLE_TIMEOUT);
+	}
+	
+	/**
+	 * Create a new handler that resolves host names through a
+	 * {@link CachingDnsResolver} with default settings.
+	 * 
+	 * @param maxConnections
+	 *            the maximum number of open connections
+	 * 
+	 * @param maxConnectionsPerHost
+	 *            the maximum number of open connections to a single host
+	 * 
+	 * @param timeout
+	 *            the connect and read timeout in millis
+	 * 
+	 * @param keepAlive
+	 *            the time in millis to keep a connection alive when the
+	 *            server does not say, zero or less to keep it till idle
+	 * 
+	 * @param idleTimeout
+	 *            the time in millis after which an idle connection is
+	 *            closed, zero or less to keep idle connections open
+	 */
+	public DefaultCrawlHandler(int maxConnections, int maxConnectionsPerHost, int timeout, long keepAlive, long idleTimeout) {
+		this(maxConnections, maxConnectionsPerHost, timeout, keepAlive, idleTimeout, new CachingDnsResolver());
+	}
+	
+	/**
+	 * Create a new handler.
+	 * 
+	 * @param maxConnections
+	 *            the maximum number of open connections
+	 * 
+	 * @param maxConnectionsPerHost
+	 *            the maximum number of open connections to a single host
+	 * 
+	 * @param timeout
+	 *            the connect and read timeout in millis
+	 * 
+	 * @param keepAlive
+	 *            the time in millis to keep a connection alive when the
+	 *            server does not say, zero or less to keep it till idle
+	 * 
+	 * @param idleTimeout
+	 *            the time in millis after which an idle connection is
+	 *            closed, zero or less to keep idle connections open
+	 * 
+	 * @param dnsResolver
+	 *            the resolver of host names, closed along with this handler,
+	 *            or <code>null</code> to use the resolver of the JVM
+	 */
+	public DefaultCrawlHandler(int maxConnections, int maxConnectionsPerHost, int timeout, long keepAlive, long idleTimeout, CachingDnsResolver dnsResolver) {
+		this(maxConnections, maxConnectionsPerHost, timeout, keepAlive, idleTimeout, dnsResolver, null, null);
+	}
+	
+	/**
+	 * Create a new handler that skips unwanted bodies, and does not send
+	 * conditional requests.
+	 * 
+	 * @param maxConnections
+	 *            the maximum number of open connections
+	 * 
+	 * @param maxConnectionsPerHost
+	 *            the maximum number of open connections to a single host
+	 * 
+	 * @param timeout
+	 *            the connect and read timeout in millis
+	 * 
+	 * @param keepAlive
+	 *            the time in millis to keep a connection alive when the
+	 *            server does not say, zero or less to keep it till idle
+	 * 
+	 * @param idleTimeout
+	 *            the time in millis after which an idle connection is
+	 *            closed, zero or less to keep idle connections open
+	 * 
+	 * @param dnsResolver
+	 *            the resolver of host names, closed along with this handler,
+	 *            or <code>null</code> to use the resolver of the JVM
+	 * 
+	 * @param fetchPolicy
+	 *            the policy that decides which bodies to download,
+	 *            <code>null</code> to download all
+	 * 
+	 * @param validatorStore
+	 *            the validators of the URLs crawled before, to send
+	 *            conditional requests with, <code>null</code> to not send
+	 *            them
+	 */
+	public DefaultCrawlHandler(int maxConnections, int maxConnectionsPerHost, int timeout, final long keepAlive, long idleTimeout, CachingDnsResolver dnsResolver, FetchPolicy fetchPolicy, ValidatorStore validatorStore) {
+		if(maxConnections < 1 || maxConnectionsPerHost < 1) {
+			throw new IllegalArgumentException("Maximum connections cannot be less than one.");
+		}
+		
+		Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+																		.register("http", PlainConnectionSocketFactory.getSocketFactory())
+																		.register("https", new SSLConnectionSocketFactory(createSSLContext()))
+																		.build();
+		
+		this.dnsResolver = dnsResolver;
+		this.fetchPolicy = fetchPolicy;
+		this.validatorStore = validatorStore;
+		this.connectionManager = new CountingConnectionManager(socketFactories, dnsResolver);
+		this.connectionManager.setMaxTotal(maxConnections);
+		this.connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+		
+		RequestConfig requestConfig = RequestConfig.custom()
+												.setConnectTimeout(timeout)
+												.setSocketTimeout(timeout)
+												.setConnectionRequestTimeout(timeout)
+												.build();
+		
+		ConnectionKeepAliveStrategy keepAliveStrategy = new ConnectionKeepAliveStrategy() {
+			
+			@Override
+			public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+				final long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+				if(duration > 0 || keepAlive <= 0) {
+					return duration;
+				}
+				
+				return keepAlive;
+			}
+			
+		};
+		
+		this.httpClient = HttpClients.custom()
+									.setConnectionManager(this.connectionManager)
+									.setDefaultRequestConfig(requestConfig)
+									.setKeepAliveStrategy(keepAliveStrategy)
+									.build();
+		
+		this.idleTimeout = idleTimeout;
+	}
 
+	/**
+	 * @throws IllegalStateException
+	 *             if the request fails, with the {@link IOException} as the
+	 *             cause
+	 */
 	@Override
 	public WebResponse crawl(CrawlableURL crawlableURL) {
-		return WebInvoker.getResponse(crawlableURL.getURL());
+		final CloseableHttpResponse response = execute(crawlableURL);
+		try {
+			skipIfUnwanted(crawlableURL, response);
+			return this.responseHandler.handleResponse(response);
+		} catch(IOException e) {
+			throw new IllegalStateException("Unable to crawl url: " + crawlableURL.getURL(), e);
+		} finally {
+			closeQuietly(response);
+		}
+	}
+	
+	/**
+	 * @throws IllegalStateException
+	 *             if the request fails, with the {@link IOException} as the
+	 *             cause
+	 */
+	@Override
+	public StreamingWebResponse crawlStreaming(CrawlableURL crawlableURL, long maxContentLength) {
+		final CloseableHttpResponse response = execute(crawlableURL);
+		try {
+			skipIfUnwanted(crawlableURL, response);
+			
+			final StatusLine statusLine = response.getStatusLine();
+			
+			final Map<String, String> headers = new HashMap<String, String>();
+			for(Header header : response.getAllHeaders()) {
+				headers.put(header.getName(), header.getValue());
+			}
+			
+			final HttpEntity entity = response.getEntity();
+			if(entity == null) {
+				return new StreamingWebResponse(statusLine.getStatusCode(), statusLine.getReasonPhrase(), null, 0, headers, null, maxContentLength, response);
+			}
+			
+			final Header contentType = entity.getContentType();
+			final InputStream body = entity.getContent();
+			return new StreamingWebResponse(statusLine.getStatusCode(), statusLine.getReasonPhrase(), contentType == null ? null : contentType.getValue(), entity.getContentLength(), headers, body, maxContentLength, response);
+		} catch(IOException e) {
+			closeQuietly(response);
+			throw new IllegalStateException("Unable to crawl url: " + crawlableURL.getURL(), e);
+		} catch(RuntimeException e) {
+			closeQuietly(response);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Send a GET request for the given URL and return once the response
+	 * headers have been received. The request is made conditional if the
+	 * validators of the URL are known.
+	 * 
+	 * @param crawlableURL
+	 *            the URL to crawl
+	 * 
+	 * @return the response, whose body is yet to be read
+	 * 
+	 * @throws IllegalStateException
+	 *             if the request fails
+	 */
+	private CloseableHttpResponse execute(CrawlableURL crawlableURL) {
+		evictIdleConnections();
+		
+		final HttpGet request = new HttpGet(crawlableURL.getURL());
+		if(this.validatorStore != null) {
+			final Validators validators = this.validatorStore.get(crawlableURL.getURL());
+			if(validators != null) {
+				if(validators.getETag() != null) {
+					request.addHeader("If-None-Match", validators.getETag());
+				}
+				
+				if(validators.getLastModified() != null) {
+					request.addHeader("If-Modified-Since", validators.getLastModified());
+				}
+			}
+		}
+		
+		try {
+			return this.httpClient.execute(request);
+		} catch(IOException e) {
+			throw new IllegalStateException("Unable to crawl url: " + crawlableURL.getURL(), e);
+		}
+	}
+	
+	/**
+	 * Check the given response against the {@link #fetchPolicy}. The body of
+	 * an unwanted response is read and thrown away if it is short, so that
+	 * the connection can be reused, and is left for the connection to be
+	 * closed otherwise.
+	 * 
+	 * @param crawlableURL
+	 *            the URL crawled
+	 * 
+	 * @param response
+	 *            the response whose body is yet to be read
+	 * 
+	 * @throws CrawlSkippedException
+	 *             if the body is not wanted
+	 * 
+	 * @throws IOException
+	 *             if reading the body to throw it away fails
+	 */
+	private void skipIfUnwanted(CrawlableURL crawlableURL, HttpResponse response) throws IOException {
+		if(this.fetchPolicy == null) {
+			return;
+		}
+		
+		final int responseCode = response.getStatusLine().getStatusCode();
+		final HttpEntity entity = response.getEntity();
+		
+		String contentType = null;
+		long contentLength = 0;
+		if(entity != null) {
+			final Header header = entity.getContentType();
+			if(header != null) {
+				contentType = header.getValue();
+			}
+			
+			contentLength = entity.getContentLength();
+		}
+		
+		if(this.fetchPolicy.shouldFetch(crawlableURL, responseCode, contentType, contentLength)) {
+			return;
+		}
+		
+		if(entity != null && contentLength >= 0 && contentLength <= StreamingWebResponse.MAX_DRAIN_LENGTH) {
+			final InputStream body = entity.getContent();
+			final byte[] buffer = new byte[(int) contentLength + 1];
+			while(body.read(buffer) >= 0) {
+				// throw away
+			}
+		}
+		
+		throw new CrawlSkippedException(crawlableURL.getURL(), responseCode, contentType, contentLength);
+	}
+	
+	/**
+	 * Return the use of the pool of connections so far.
+	 * 
+	 * @return the statistics of the pool
+	 */
+	public ConnectionPoolStatistics getStatistics() {
+		final PoolStats stats = this.connectionManager.getTotalStats();
+		return new ConnectionPoolStatistics(this.connectionManager.requests.get(), this.connectionManager.connects.get(), stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax());
+	}
+	
+	/**
+	 * Close all connections.
+	 * 
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			this.httpClient.close();
+		} finally {
+			if(this.dnsResolver != null) {
+				this.dnsResolver.close();
+			}
+		}
+	}
+	
+	/**
+	 * @return the resolver of host names, <code>null</code> if the resolver of
+	 *         the JVM is used
+	 */
+	public CachingDnsResolver getDnsResolver() {
+		return this.dnsResolver;
+	}
+	
+	/**
+	 * @return the validators of the URLs crawled before, <code>null</code> if
+	 *         conditional requests are not sent
+	 */
+	public ValidatorStore getValidatorStore() {
+		return this.validatorStore;
+	}
+	
+	/**
+	 * @return the policy that decides which bodies to download,
+	 *         <code>null</code> if all are
+	 */
+	public FetchPolicy getFetchPolicy() {
+		return this.fetchPolicy;
+	}
+	
+	/**
+	 * Close the connections that have been idle for too long, or whose
+	 * keep-alive has expired. This is done by the crawling threads once every
+	 * half of the idle timeout, so that no thread of its own is needed.
+	 * 
+	 */
+	private void evictIdleConnections() {
+		if(this.idleTimeout <= 0) {
+			return;
+		}
+		
+		final long now = System.currentTimeMillis();
+		final long last = this.lastEviction.get();
+		if(now - last < this.idleTimeout / 2 || !this.lastEviction.compareAndSet(last, now)) {
+			return;
+		}
+		
+		this.connectionManager.closeExpiredConnections();
+		this.connectionManager.closeIdleConnections(this.idleTimeout, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Close the given response, and with it its connection, ignoring any
+	 * error in doing so.
+	 * 
+	 * @param response
+	 *            the response to close
+	 */
+	private static void closeQuietly(CloseableHttpResponse response) {
+		try {
+			response.close();
+		} catch(IOException e) {
+			// eat up
+		}
+	}
+	
+	/**
+	 * Create a TLS context of our own, so that its session cache is sized for
+	 * the hosts of a crawl rather than shared with the rest of the process.
+	 * 
+	 * @return the TLS context
+	 */
+	private static SSLContext createSSLContext() {
+		try {
+			SSLContext sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(null, null, null);
+			sslContext.getClientSessionContext().setSessionCacheSize(TLS_SESSION_CACHE_SIZE);
+			return sslContext;
+		} catch(GeneralSecurityException e) {
+			throw new IllegalStateException("Unable to create TLS context", e);
+		}
+	}
+	
+	/**
+	 * A pool of connections that counts the connections asked for, and the
+	 * ones that had to be opened.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	private static class CountingConnectionManager extends PoolingHttpClientConnectionManager {
+		
+		final AtomicLong requests = new AtomicLong();
+		
+		final AtomicLong connects = new AtomicLong();
+		
+		CountingConnectionManager(Registry<ConnectionSocketFactory> socketFactories, DnsResolver dnsResolver) {
+			super(socketFactories, dnsResolver);
+		}
+		
+		@Override
+		public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+			this.requests.incrementAndGet();
+			return super.requestConnection(route, state);
+		}
+		
+		@Override
+		public void connect(HttpClientConnection connection, HttpRoute route, int connectTimeout, HttpContext context) throws IOException {
+			this.connects.incrementAndGet();
+			super.connect(connection, route, connectTimeout, context);
+		}
+		
 	}
 
 }
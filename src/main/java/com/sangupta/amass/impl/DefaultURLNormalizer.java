@@ -0,0 +1,402 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import com.sangupta.amass.core.URLNormalizer;
+
+/**
+ * The default {@link URLNormalizer}. For URLs of the form
+ * <code>scheme://authority/path?query#fragment</code> it
+ * 
+ * <ul>
+ * <li>lower-cases the scheme and the host,</li>
+ * <li>drops the default port of the <code>http</code>, <code>https</code>
+ * and <code>ftp</code> schemes,</li>
+ * <li>uses <code>/</code> for an empty path,</li>
+ * <li>decodes percent-encoded unreserved characters, and upper-cases the hex
+ * digits of all other percent-encoded characters,</li>
+ * <li>removes empty and tracking query parameters, and sorts the rest,</li>
+ * <li>drops the fragment.</li>
+ * </ul>
+ * 
+ * Any other URL is returned as is. A URL that is already canonical is
+ * returned without creating a new {@link String}.
+ * 
+ * @author sangupta
+ *
+ */
+public class DefaultURLNormalizer implements URLNormalizer {
+	
+	/**
+	 * The query parameters removed by default, as they only track the source
+	 * of a visit
+	 */
+	public static final String[] DEFAULT_TRACKING_PARAMETERS = { "utm_source", "utm_medium", "utm_campaign", "utm_term", "utm_content", "gclid", "fbclid", "msclkid" };
+	
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+	
+	/**
+	 * The names of the query parameters to remove
+	 */
+	private final String[] trackingParameters;
+	
+	/**
+	 * Create a normalizer that removes the
+	 * {@link #DEFAULT_TRACKING_PARAMETERS}.
+	 */
+	public DefaultURLNormalizer() {
+		this(Arrays.asList(DEFAULT_TRACKING_PARAMETERS));
+	}
+	
+	/**
+	 * Create a normalizer that removes the given query parameters.
+	 * 
+	 * @param trackingParameters
+	 *            the names of the query parameters to remove, matched in a
+	 *            case-sensitive manner
+	 */
+	public DefaultURLNormalizer(Collection<String> trackingParameters) {
+		if(trackingParameters == null) {
+			throw new IllegalArgumentException("Tracking parameters cannot be null");
+		}
+		
+		this.trackingParameters = trackingParameters.toArray(new String[trackingParameters.size()]);
+	}
+
+	@Override
+	public String normalize(final String url) {
+		final int schemeEnd = url.indexOf("://");
+		if(schemeEnd <= 0 || !isScheme(url, schemeEnd)) {
+			return url;
+		}
+		
+		final int length = url.length();
+		final StringBuilder builder = new StringBuilder(length);
+		
+		// scheme
+		for(int index = 0; index < schemeEnd; index++) {
+			builder.append(toLowerCase(url.charAt(index)));
+		}
+		
+		builder.append("://");
+		
+		// authority
+		final int authorityStart = schemeEnd + 3;
+		int authorityEnd = authorityStart;
+		while(authorityEnd < length) {
+			final char ch = url.charAt(authorityEnd);
+			if(ch == '/' || ch == '?' || ch == '#') {
+				break;
+			}
+			
+			authorityEnd++;
+		}
+		
+		appendAuthority(builder, url, authorityStart, authorityEnd, defaultPort(url, schemeEnd));
+		
+		// path
+		int pathEnd = authorityEnd;
+		while(pathEnd < length) {
+			final char ch = url.charAt(pathEnd);
+			if(ch == '?' || ch == '#') {
+				break;
+			}
+			
+			pathEnd++;
+		}
+		
+		if(pathEnd == authorityEnd) {
+			builder.append('/');
+		} else {
+			appendEncoded(builder, url, authorityEnd, pathEnd);
+		}
+		
+		// query, the fragment is dropped
+		if(pathEnd < length && url.charAt(pathEnd) == '?') {
+			int queryEnd = url.indexOf('#', pathEnd + 1);
+			if(queryEnd < 0) {
+				queryEnd = length;
+			}
+			
+			appendQuery(builder, url, pathEnd + 1, queryEnd);
+		}
+		
+		if(builder.length() == length && url.contentEquals(builder)) {
+			return url;
+		}
+		
+		return builder.toString();
+	}
+	
+	/**
+	 * Append the authority with the host in lower case, and without the port
+	 * if it is the default one.
+	 */
+	private static void appendAuthority(StringBuilder builder, String url, int start, int end, int defaultPort) {
+		// user info is kept as is
+		int hostStart = start;
+		for(int index = end - 1; index >= start; index--) {
+			if(url.charAt(index) == '@') {
+				builder.append(url, start, index + 1);
+				hostStart = index + 1;
+				break;
+			}
+		}
+		
+		// skip over an IPv6 literal when looking for the port
+		int portSearch = hostStart;
+		if(hostStart < end && url.charAt(hostStart) == '[') {
+			final int close = url.indexOf(']', hostStart);
+			if(close > 0 && close < end) {
+				portSearch = close;
+			}
+		}
+		
+		int colon = url.indexOf(':', portSearch);
+		if(colon >= end) {
+			colon = -1;
+		}
+		
+		final int hostEnd = colon < 0 ? end : colon;
+		for(int index = hostStart; index < hostEnd; index++) {
+			builder.append(toLowerCase(url.charAt(index)));
+		}
+		
+		if(colon < 0 || colon + 1 == end) {
+			return;
+		}
+		
+		int port = 0;
+		for(int index = colon + 1; index < end; index++) {
+			final char ch = url.charAt(index);
+			if(ch < '0' || ch > '9' || port > 65535) {
+				port = -1;
+				break;
+			}
+			
+			port = port * 10 + (ch - '0');
+		}
+		
+		if(port != defaultPort) {
+			builder.append(url, colon, end);
+		}
+	}
+	
+	/**
+	 * Append the query without empty and tracking parameters, and with the
+	 * rest sorted. The question mark is left out if no parameter is left.
+	 */
+	private void appendQuery(StringBuilder builder, String url, int start, int end) {
+		final int queryStart = builder.length();
+		builder.append('?');
+		
+		int count = 0;
+		int[] bounds = null;
+		
+		int paramStart = start;
+		while(paramStart < end) {
+			int paramEnd = url.indexOf('&', paramStart);
+			if(paramEnd < 0 || paramEnd > end) {
+				paramEnd = end;
+			}
+			
+			if(paramEnd > paramStart && !isTrackingParameter(url, paramStart, paramEnd)) {
+				if(count > 0) {
+					builder.append('&');
+				}
+				
+				if(bounds == null) {
+					bounds = new int[8];
+				} else if(bounds.length == count * 2) {
+					bounds = Arrays.copyOf(bounds, bounds.length * 2);
+				}
+				
+				bounds[count * 2] = builder.length();
+				appendEncoded(builder, url, paramStart, paramEnd);
+				bounds[count * 2 + 1] = builder.length();
+				count++;
+			}
+			
+			paramStart = paramEnd + 1;
+		}
+		
+		if(count == 0) {
+			builder.setLength(queryStart);
+			return;
+		}
+		
+		// sort only if needed
+		boolean sorted = true;
+		for(int index = 1; index < count && sorted; index++) {
+			sorted = compare(builder, bounds[index * 2 - 2], bounds[index * 2 - 1], bounds[index * 2], bounds[index * 2 + 1]) <= 0;
+		}
+		
+		if(sorted) {
+			return;
+		}
+		
+		final String[] params = new String[count];
+		for(int index = 0; index < count; index++) {
+			params[index] = builder.substring(bounds[index * 2], bounds[index * 2 + 1]);
+		}
+		
+		Arrays.sort(params);
+		builder.setLength(queryStart + 1);
+		for(int index = 0; index < count; index++) {
+			if(index > 0) {
+				builder.append('&');
+			}
+			
+			builder.append(params[index]);
+		}
+	}
+	
+	/**
+	 * Append the given part of the URL, decoding percent-encoded unreserved
+	 * characters, and upper-casing the hex digits of the others.
+	 */
+	private static void appendEncoded(StringBuilder builder, String url, int start, int end) {
+		for(int index = start; index < end; index++) {
+			final char ch = url.charAt(index);
+			if(ch != '%' || index + 2 >= end) {
+				builder.append(ch);
+				continue;
+			}
+			
+			final int high = hexValue(url.charAt(index + 1));
+			final int low = hexValue(url.charAt(index + 2));
+			if(high < 0 || low < 0) {
+				builder.append(ch);
+				continue;
+			}
+			
+			final char decoded = (char) ((high << 4) | low);
+			if(isUnreserved(decoded)) {
+				builder.append(decoded);
+			} else {
+				builder.append('%').append(HEX_DIGITS[high]).append(HEX_DIGITS[low]);
+			}
+			
+			index += 2;
+		}
+	}
+	
+	private boolean isTrackingParameter(String url, int start, int end) {
+		int nameEnd = url.indexOf('=', start);
+		if(nameEnd < 0 || nameEnd > end) {
+			nameEnd = end;
+		}
+		
+		final int nameLength = nameEnd - start;
+		for(String name : this.trackingParameters) {
+			if(name.length() == nameLength && url.regionMatches(start, name, 0, nameLength)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Compare two regions of the builder lexicographically.
+	 */
+	private static int compare(StringBuilder builder, int start1, int end1, int start2, int end2) {
+		final int length1 = end1 - start1;
+		final int length2 = end2 - start2;
+		final int length = Math.min(length1, length2);
+		for(int index = 0; index < length; index++) {
+			final int diff = builder.charAt(start1 + index) - builder.charAt(start2 + index);
+			if(diff != 0) {
+				return diff;
+			}
+		}
+		
+		return length1 - length2;
+	}
+	
+	/**
+	 * Check that the URL starts with a valid scheme that ends at the given
+	 * index.
+	 */
+	private static boolean isScheme(String url, int end) {
+		for(int index = 0; index < end; index++) {
+			final char ch = url.charAt(index);
+			if(!((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (index > 0 && ((ch >= '0' && ch <= '9') || ch == '+' || ch == '-' || ch == '.')))) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Return the default port of the scheme of the URL, or <code>-1</code> if
+	 * not known.
+	 */
+	private static int defaultPort(String url, int schemeEnd) {
+		if(schemeEnd == 4 && url.regionMatches(true, 0, "http", 0, 4)) {
+			return 80;
+		}
+		
+		if(schemeEnd == 5 && url.regionMatches(true, 0, "https", 0, 5)) {
+			return 443;
+		}
+		
+		if(schemeEnd == 3 && url.regionMatches(true, 0, "ftp", 0, 3)) {
+			return 21;
+		}
+		
+		return -1;
+	}
+	
+	private static boolean isUnreserved(char ch) {
+		return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9') || ch == '-' || ch == '.' || ch == '_' || ch == '~';
+	}
+	
+	private static int hexValue(char ch) {
+		if(ch >= '0' && ch <= '9') {
+			return ch - '0';
+		}
+		
+		if(ch >= 'A' && ch <= 'F') {
+			return ch - 'A' + 10;
+		}
+		
+		if(ch >= 'a' && ch <= 'f') {
+			return ch - 'a' + 10;
+		}
+		
+		return -1;
+	}
+	
+	private static char toLowerCase(char ch) {
+		if(ch >= 'A' && ch <= 'Z') {
+			return (char) (ch + ('a' - 'A'));
+		}
+		
+		return ch;
+	}
+
+}
@@ -0,0 +1,242 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.sangupta.amass.core.RetryPolicy;
+import com.sangupta.amass.domain.CrawlableURL;
+
+/**
+ * A {@link RetryPolicy} that waits exponentially longer after each failed
+ * attempt, up to a maximum delay, and gives up after a number of attempts.
+ * 
+ * Each delay is shortened by a random part of up to the jitter fraction, so
+ * that URLs that failed together, say when a host went down, are not all
+ * tried again at the same instant. Only errors that are, or are caused by,
+ * one of the retryable classes are tried again; by default these are
+ * {@link IOException}s. Override {@link #isRetryable(Throwable)} for any
+ * other classification.
+ * 
+ * @author sangupta
+ *
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+	
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	
+	public static final long DEFAULT_INITIAL_DELAY = 1000;
+	
+	public static final long DEFAULT_MAX_DELAY = 5 * 60 * 1000;
+	
+	public static final double DEFAULT_MULTIPLIER = 2;
+	
+	public static final double DEFAULT_JITTER = 0.5;
+	
+	/**
+	 * The number of attempts after which a URL is given up, including the
+	 * first crawl
+	 */
+	private final int maxAttempts;
+	
+	/**
+	 * The delay in millis after the first failure
+	 */
+	private final long initialDelay;
+	
+	/**
+	 * The longest delay in millis
+	 */
+	private final long maxDelay;
+	
+	/**
+	 * The factor by which the delay grows after each failure
+	 */
+	private final double multiplier;
+	
+	/**
+	 * The largest fraction of a delay that is randomly taken off it
+	 */
+	private final double jitter;
+	
+	/**
+	 * The classes of errors that are tried again
+	 */
+	private final List<Class<? extends Throwable>> retryableErrors;
+	
+	private final Random random = new Random();
+	
+	/**
+	 * Create a policy with the default settings.
+	 */
+	public ExponentialBackoffRetryPolicy() {
+		this(DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY);
+	}
+	
+	/**
+	 * Create a policy that doubles the delay after each failure, with the
+	 * default jitter, and retries {@link IOException}s.
+	 * 
+	 * @param maxAttempts
+	 *            the number of attempts, including the first crawl
+	 * 
+	 * @param initialDelay
+	 *            the delay in millis after the first failure
+	 * 
+	 * @param maxDelay
+	 *            the longest delay in millis
+	 */
+	public ExponentialBackoffRetryPolicy(int maxAttempts, long initialDelay, long maxDelay) {
+		this(maxAttempts, initialDelay, maxDelay, DEFAULT_MULTIPLIER, DEFAULT_JITTER, Collections.<Class<? extends Throwable>>singletonList(IOException.class));
+	}
+	
+	/**
+	 * Create a policy.
+	 * 
+	 * @param maxAttempts
+	 *            the number of attempts, including the first crawl
+	 * 
+	 * @param initialDelay
+	 *            the delay in millis after the first failure
+	 * 
+	 * @param maxDelay
+	 *            the longest delay in millis
+	 * 
+	 * @param multiplier
+	 *            the factor by which the delay grows after each failure
+	 * 
+	 * @param jitter
+	 *            the largest fraction, between zero and one, of a delay that
+	 *            is randomly taken off it
+	 * 
+	 * @param retryableErrors
+	 *            the classes of errors that are tried again
+	 */
+	public ExponentialBackoffRetryPolicy(int maxAttempts, long initialDelay, long maxDelay, double multiplier, double jitter, Collection<Class<? extends Throwable>> retryableErrors) {
+		if(maxAttempts < 1) {
+			throw new IllegalArgumentException("Maximum attempts cannot be less than one.");
+		}
+		
+		if(initialDelay < 0 || maxDelay < initialDelay) {
+			throw new IllegalArgumentException("Delays cannot be negative, and the maximum delay cannot be less than the initial one.");
+		}
+		
+		if(!(multiplier >= 1)) {
+			throw new IllegalArgumentException("Multiplier cannot be less than one.");
+		}
+		
+		if(!(jitter >= 0 && jitter <= 1)) {
+			throw new IllegalArgumentException("Jitter must be between zero and one.");
+		}
+		
+		if(retryableErrors == null) {
+			throw new IllegalArgumentException("Retryable errors cannot be null");
+		}
+		
+		this.maxAttempts = maxAttempts;
+		this.initialDelay = initialDelay;
+		this.maxDelay = maxDelay;
+		this.multiplier = multiplier;
+		this.jitter = jitter;
+		this.retryableErrors = new ArrayList<Class<? extends Throwable>>(retryableErrors);
+	}
+
+	@Override
+	public long getRetryDelay(CrawlableURL crawlableURL, int attempt, Throwable throwable) {
+		if(attempt >= this.maxAttempts || !isRetryable(throwable)) {
+			return -1;
+		}
+		
+		double delay = Math.min(this.initialDelay * Math.pow(this.multiplier, attempt - 1), this.maxDelay);
+		delay -= delay * this.jitter * this.random.nextDouble();
+		
+		return (long) delay;
+	}
+	
+	/**
+	 * Check if a crawl that failed with the given error may succeed if tried
+	 * again.
+	 * 
+	 * @param throwable
+	 *            the error the crawl failed with
+	 * 
+	 * @return <code>true</code> if the error, or any of its causes, is an
+	 *         instance of one of the retryable classes
+	 */
+	protected boolean isRetryable(Throwable throwable) {
+		// bound the walk in case of a cycle of causes
+		for(int depth = 0; throwable != null && depth < 16; depth++) {
+			for(Class<? extends Throwable> retryable : this.retryableErrors) {
+				if(retryable.isInstance(throwable)) {
+					return true;
+				}
+			}
+			
+			throwable = throwable.getCause();
+		}
+		
+		return false;
+	}
+	
+	// Usual accessors follow
+
+	/**
+	 * @return the maxAttempts
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * @return the initialDelay
+	 */
+	public long getInitialDelay() {
+		return initialDelay;
+	}
+
+	/**
+	 * @return the maxDelay
+	 */
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	/**
+	 * @return the multiplier
+	 */
+	public double getMultiplier() {
+		return multiplier;
+	}
+
+	/**
+	 * @return the jitter
+	 */
+	public double getJitter() {
+		return jitter;
+	}
+
+}
@@ -0,0 +1,329 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sangupta.amass.domain.ClassifiedCrawlableURL;
+import com.sangupta.amass.domain.CrawlJob;
+import com.sangupta.amass.domain.CrawlableURL;
+import com.sangupta.amass.domain.JobClassStatistics;
+
+/**
+ * A {@link JobStore} that shares the crawls among job classes, such as
+ * tenants or feeds, using deficit round robin, and orders the jobs of each
+ * class by priority.
+ * 
+ * The job class of a job is given by its {@link ClassifiedCrawlableURL}. Jobs
+ * of any other {@link CrawlableURL} belong to the {@link #DEFAULT_CLASS}.
+ * Each class has its own {@link HeapJobStore}. Classes with waiting jobs take
+ * turns in a round: on its turn a class is credited its weight, and hands out
+ * one job for each whole credit it has. A class with weight two thus gets
+ * twice the crawls of a class with weight one while both have jobs waiting,
+ * and a busy class cannot hold up the others by submitting more jobs, or jobs
+ * of higher priority. A class that runs out of jobs leaves the round and
+ * loses its unused credit.
+ * 
+ * @author sangupta
+ *
+ */
+public class FairJobStore implements JobStore {
+	
+	/**
+	 * The job class of jobs that do not specify one
+	 */
+	public static final String DEFAULT_CLASS = "";
+	
+	/**
+	 * The weight of a job class that has not been given one
+	 */
+	public static final double DEFAULT_WEIGHT = 1;
+	
+	/**
+	 * All job classes seen so far, by their key
+	 */
+	private final Map<String, JobClass> classes = new LinkedHashMap<String, JobClass>();
+	
+	/**
+	 * The job classes that have jobs waiting, in the order of their turns
+	 */
+	private final ArrayDeque<JobClass> round = new ArrayDeque<JobClass>();
+	
+	/**
+	 * The number of jobs in this store
+	 */
+	private int size;
+	
+	/**
+	 * Create a new store in which all job classes have the
+	 * {@link #DEFAULT_WEIGHT}.
+	 */
+	public FairJobStore() {
+		this(null);
+	}
+	
+	/**
+	 * Create a new store with the given weights.
+	 * 
+	 * @param weights
+	 *            the weights of the job classes by their key, may be
+	 *            <code>null</code>
+	 */
+	public FairJobStore(Map<String, Double> weights) {
+		if(weights != null) {
+			for(Map.Entry<String, Double> entry : weights.entrySet()) {
+				setWeight(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	@Override
+	public void offer(CrawlJob job) {
+		if(job == null) {
+			throw new IllegalArgumentException("Job cannot be null");
+		}
+		
+		final JobClass jobClass = classOf(job);
+		jobClass.jobs.offer(job);
+		this.size++;
+		
+		if(!jobClass.inRound) {
+			jobClass.inRound = true;
+			jobClass.deficit = 0;
+			this.round.addLast(jobClass);
+		}
+	}
+
+	@Override
+	public void offerAll(List<CrawlJob> jobs) {
+		for(CrawlJob job : jobs) {
+			offer(job);
+		}
+	}
+
+	@Override
+	public CrawlJob poll() {
+		while(!this.round.isEmpty()) {
+			final JobClass head = this.round.peekFirst();
+			if(head.jobs.isEmpty()) {
+				leaveRound(head);
+				continue;
+			}
+			
+			if(head.deficit >= 1) {
+				head.deficit -= 1;
+				final CrawlJob job = head.jobs.poll();
+				head.served++;
+				this.size--;
+				
+				if(head.jobs.isEmpty()) {
+					leaveRound(head);
+				}
+				
+				return job;
+			}
+			
+			// done with this turn, credit the next one
+			this.round.pollFirst();
+			head.deficit += head.weight;
+			this.round.addLast(head);
+		}
+		
+		return null;
+	}
+
+	/**
+	 * Not supported, as the lowest job may belong to any of the job classes.
+	 * 
+	 */
+	@Override
+	public CrawlJob peekLowest() {
+		throw new UnsupportedOperationException("Jobs cannot be evicted from a fair job store");
+	}
+
+	@Override
+	public boolean remove(CrawlJob job) {
+		if(classOf(job).jobs.remove(job)) {
+			this.size--;
+			return true;
+		}
+		
+		return false;
+	}
+
+	@Override
+	public long getDelayNanos() {
+		if(this.size == 0) {
+			return Long.MAX_VALUE;
+		}
+		
+		return 0;
+	}
+
+	@Override
+	public void completed(CrawlJob job) {
+		// nothing to do
+	}
+
+	@Override
+	public void priorityChanged(CrawlJob job) {
+		classOf(job).jobs.priorityChanged(job);
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	@Override
+	public void clear() {
+		for(JobClass jobClass : this.classes.values()) {
+			jobClass.jobs.clear();
+			jobClass.inRound = false;
+			jobClass.deficit = 0;
+		}
+		
+		this.round.clear();
+		this.size = 0;
+	}
+	
+	/**
+	 * Set the weight of the given job class. The new weight is used from the
+	 * next turn of the class.
+	 * 
+	 * @param key
+	 *            the key of the job class
+	 * 
+	 * @param weight
+	 *            the weight, relative to the weights of the other classes
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the key is <code>null</code>, or the weight is not a
+	 *             positive number
+	 */
+	public void setWeight(String key, double weight) {
+		if(key == null) {
+			throw new IllegalArgumentException("Job class cannot be null");
+		}
+		
+		if(!(weight > 0) || Double.isInfinite(weight)) {
+			throw new IllegalArgumentException("Weight of a job class must be a positive number.");
+		}
+		
+		getJobClass(key).weight = weight;
+	}
+	
+	/**
+	 * Return the state of all job classes seen so far.
+	 * 
+	 * @return the statistics of each job class
+	 */
+	public List<JobClassStatistics> getStatistics() {
+		final List<JobClassStatistics> statistics = new ArrayList<JobClassStatistics>(this.classes.size());
+		for(JobClass jobClass : this.classes.values()) {
+			statistics.add(new JobClassStatistics(jobClass.key, jobClass.weight, jobClass.jobs.size(), jobClass.served));
+		}
+		
+		return statistics;
+	}
+	
+	/**
+	 * Take the given class, which is at the head of the round, out of the
+	 * round.
+	 */
+	private void leaveRound(JobClass jobClass) {
+		this.round.pollFirst();
+		jobClass.inRound = false;
+		jobClass.deficit = 0;
+	}
+	
+	private JobClass classOf(CrawlJob job) {
+		String key = null;
+		if(!job.isPlainURL()) {
+			final CrawlableURL crawlableURL = job.getCrawlableURL();
+			if(crawlableURL instanceof ClassifiedCrawlableURL) {
+				key = ((ClassifiedCrawlableURL) crawlableURL).getJobClass();
+			}
+		}
+		
+		if(key == null) {
+			key = DEFAULT_CLASS;
+		}
+		
+		return getJobClass(key);
+	}
+	
+	private JobClass getJobClass(String key) {
+		JobClass jobClass = this.classes.get(key);
+		if(jobClass == null) {
+			jobClass = new JobClass(key);
+			this.classes.put(key, jobClass);
+		}
+		
+		return jobClass;
+	}
+	
+	/**
+	 * The jobs and scheduling state of one job class.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	private static class JobClass {
+		
+		final String key;
+		
+		final HeapJobStore jobs = new HeapJobStore();
+		
+		double weight = DEFAULT_WEIGHT;
+		
+		/**
+		 * The credit left for this class in the current round
+		 */
+		double deficit;
+		
+		/**
+		 * Whether this class is part of the {@link FairJobStore#round}
+		 */
+		boolean inRound;
+		
+		/**
+		 * The number of jobs handed out
+		 */
+		long served;
+		
+		JobClass(String key) {
+			this.key = key;
+		}
+		
+	}
+
+}
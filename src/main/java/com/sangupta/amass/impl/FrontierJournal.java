@@ -0,0 +1,535 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sangupta.amass.domain.CrawlJob;
+
+/**
+ * Persists the pending jobs of a {@link CrawlingQueue} so that the frontier
+ * can be resumed after the JVM goes down.
+ * 
+ * The state is kept as a series of generations in a directory. Each
+ * generation has a snapshot of all queued jobs as they were when the
+ * generation started, and an append-only journal of every job submitted,
+ * re-prioritized or removed since. Journal records carry the absolute
+ * priority of a job, so replaying them over the snapshot is idempotent.
+ * 
+ * A checkpoint switches the journal to a new generation first, and then
+ * writes the snapshot for it by iterating over the live URL map of the
+ * queue without any locking. A change made during the iteration is also in
+ * the new journal, and thus replaying the journal over the snapshot yields
+ * the correct state. Once the snapshot is safely on disk, the files of older
+ * generations are deleted. Workers are never paused for a checkpoint.
+ * 
+ * Journal writes are buffered and flushed by {@link #flush()}, which the
+ * owner calls periodically. A crash may thus lose the changes made since
+ * the last flush.
+ * 
+ * @author sangupta
+ *
+ */
+public class FrontierJournal implements Closeable {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(FrontierJournal.class);
+	
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	
+	private static final String JOURNAL_PREFIX = "journal-";
+	
+	private static final String SUFFIX = ".bin";
+	
+	private static final String TEMP_SUFFIX = ".tmp";
+	
+	/**
+	 * Marks the start of every snapshot and journal file
+	 */
+	private static final int MAGIC = 0x414d4153;
+	
+	private static final byte OP_END = 0;
+	
+	private static final byte OP_SUBMIT = 1;
+	
+	private static final byte OP_REMOVE = 2;
+	
+	private static final int IO_BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * The directory holding all files
+	 */
+	private final File directory;
+	
+	/**
+	 * Serializes checkpoints, and their recovery and closure
+	 */
+	private final Object checkpointLock = new Object();
+	
+	/**
+	 * The generation of the current journal. Guarded by this instance.
+	 */
+	private long generation;
+	
+	/**
+	 * The stream of the current journal, or <code>null</code> if no journal
+	 * is open. Guarded by this instance.
+	 */
+	private DataOutputStream journal;
+	
+	/**
+	 * The file stream under {@link #journal}, used to sync it to disk
+	 */
+	private FileOutputStream journalFile;
+	
+	/**
+	 * Whether the current journal could not be written to
+	 */
+	private boolean failed;
+	
+	/**
+	 * Create a new journal in the given directory.
+	 * 
+	 * @param directory
+	 *            the directory to keep the files in
+	 */
+	public FrontierJournal(File directory) {
+		if(directory == null) {
+			throw new IllegalArgumentException("Checkpoint directory cannot be null");
+		}
+		
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("Unable to create checkpoint directory: " + directory.getAbsolutePath());
+		}
+		
+		this.directory = directory;
+	}
+	
+	/**
+	 * Read back the jobs that were pending when the files in the directory
+	 * were last written.
+	 * 
+	 * @return the pending jobs mapped by their URL, in the order they were
+	 *         written
+	 * 
+	 * @throws IOException
+	 *             if the files cannot be read
+	 */
+	public Map<String, CrawlJob> recover() throws IOException {
+		synchronized(this.checkpointLock) {
+			final Map<String, CrawlJob> jobs = new LinkedHashMap<String, CrawlJob>();
+			
+			final long snapshot = latestGeneration(SNAPSHOT_PREFIX);
+			if(snapshot > 0) {
+				replay(fileOf(SNAPSHOT_PREFIX, snapshot, SUFFIX), jobs);
+			}
+			
+			final long[] journals = generations(JOURNAL_PREFIX);
+			for(long journalGeneration : journals) {
+				if(journalGeneration >= snapshot) {
+					replay(fileOf(JOURNAL_PREFIX, journalGeneration, SUFFIX), jobs);
+				}
+			}
+			
+			synchronized(this) {
+				long latest = snapshot;
+				if(journals.length > 0) {
+					latest = Math.max(latest, journals[journals.length - 1]);
+				}
+				
+				this.generation = Math.max(this.generation, latest);
+			}
+			
+			LOGGER.info("Recovered {} pending jobs from {}", jobs.size(), this.directory.getAbsolutePath());
+			return jobs;
+		}
+	}
+	
+	/**
+	 * Record that the given job was queued, or that its priority changed.
+	 * 
+	 * @param job
+	 *            the queued job
+	 */
+	public synchronized void submitted(CrawlJob job) {
+		if(this.journal == null || this.failed) {
+			return;
+		}
+		
+		try {
+			this.journal.writeByte(OP_SUBMIT);
+			JobCodec.writeJob(this.journal, job);
+		} catch(IOException e) {
+			journalFailed(e);
+		}
+	}
+	
+	/**
+	 * Record that the given job left the queue.
+	 * 
+	 * @param job
+	 *            the job that was taken or evicted
+	 */
+	public synchronized void removed(CrawlJob job) {
+		if(this.journal == null || this.failed) {
+			return;
+		}
+		
+		try {
+			this.journal.writeByte(OP_REMOVE);
+			JobCodec.writeString(this.journal, job.getURL());
+		} catch(IOException e) {
+			journalFailed(e);
+		}
+	}
+	
+	/**
+	 * Flush the records written so far to the file system.
+	 */
+	public synchronized void flush() {
+		if(this.journal == null || this.failed) {
+			return;
+		}
+		
+		try {
+			this.journal.flush();
+		} catch(IOException e) {
+			journalFailed(e);
+		}
+	}
+	
+	/**
+	 * Start a new generation, whose snapshot holds the given jobs. The jobs
+	 * may change while they are being written.
+	 * 
+	 * @param jobs
+	 *            the live view of all queued jobs
+	 * 
+	 * @throws IOException
+	 *             if the snapshot cannot be written
+	 */
+	public void checkpoint(Collection<CrawlJob> jobs) throws IOException {
+		synchronized(this.checkpointLock) {
+			final long snapshotGeneration = rotate();
+			
+			final File temp = fileOf(SNAPSHOT_PREFIX, snapshotGeneration, TEMP_SUFFIX);
+			final FileOutputStream file = new FileOutputStream(temp);
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, IO_BUFFER_SIZE));
+			int count = 0;
+			try {
+				out.writeInt(MAGIC);
+				for(CrawlJob job : jobs) {
+					out.writeByte(OP_SUBMIT);
+					JobCodec.writeJob(out, job);
+					count++;
+				}
+				
+				out.writeByte(OP_END);
+				out.flush();
+				file.getFD().sync();
+			} finally {
+				out.close();
+			}
+			
+			final File snapshot = fileOf(SNAPSHOT_PREFIX, snapshotGeneration, SUFFIX);
+			if(!temp.renameTo(snapshot)) {
+				throw new IOException("Unable to rename snapshot to: " + snapshot.getAbsolutePath());
+			}
+			
+			deleteGenerationsBefore(snapshotGeneration);
+			LOGGER.debug("Checkpointed {} pending jobs in generation {}", count, snapshotGeneration);
+		}
+	}
+	
+	/**
+	 * Flush and close the current journal. Records are no longer written
+	 * after this call.
+	 */
+	@Override
+	public void close() {
+		synchronized(this.checkpointLock) {
+			closeJournal();
+		}
+	}
+	
+	/**
+	 * Switch to the journal of the next generation. The previous journal is
+	 * synced to disk and closed outside the lock on this instance, so that
+	 * writers are not held up by the sync.
+	 * 
+	 * @return the new generation
+	 * 
+	 * @throws IOException
+	 *             if the new journal cannot be created
+	 */
+	private long rotate() throws IOException {
+		final DataOutputStream previous;
+		final FileOutputStream previousFile;
+		final long newGeneration;
+		
+		synchronized(this) {
+			previous = this.journal;
+			previousFile = this.journalFile;
+			if(previous != null && !this.failed) {
+				try {
+					previous.flush();
+				} catch(IOException e) {
+					LOGGER.error("Unable to flush frontier journal", e);
+				}
+			}
+			
+			this.journal = null;
+			this.generation++;
+			newGeneration = this.generation;
+			
+			this.journalFile = new FileOutputStream(fileOf(JOURNAL_PREFIX, newGeneration, SUFFIX));
+			this.journal = new DataOutputStream(new BufferedOutputStream(this.journalFile, IO_BUFFER_SIZE));
+			this.journal.writeInt(MAGIC);
+			this.failed = false;
+		}
+		
+		syncAndClose(previous, previousFile);
+		return newGeneration;
+	}
+	
+	/**
+	 * Flush, sync and close the current journal, if any.
+	 */
+	private void closeJournal() {
+		final DataOutputStream previous;
+		final FileOutputStream previousFile;
+		synchronized(this) {
+			previous = this.journal;
+			previousFile = this.journalFile;
+			this.journal = null;
+			this.journalFile = null;
+			
+			if(previous != null && !this.failed) {
+				try {
+					previous.flush();
+				} catch(IOException e) {
+					LOGGER.error("Unable to flush frontier journal", e);
+				}
+			}
+		}
+		
+		syncAndClose(previous, previousFile);
+	}
+	
+	/**
+	 * Sync the given journal to disk and close it.
+	 * 
+	 * @param journal
+	 *            the journal stream, may be <code>null</code>
+	 * 
+	 * @param journalFile
+	 *            the file stream under the journal stream
+	 */
+	private static void syncAndClose(DataOutputStream journal, FileOutputStream journalFile) {
+		if(journal == null) {
+			return;
+		}
+		
+		try {
+			journalFile.getFD().sync();
+		} catch(IOException e) {
+			LOGGER.error("Unable to sync frontier journal", e);
+		}
+		
+		try {
+			journal.close();
+		} catch(IOException e) {
+			// eat up
+		}
+	}
+	
+	/**
+	 * Stop writing to the current journal after a failure. The next
+	 * checkpoint starts a new one.
+	 * 
+	 * @param e
+	 *            the failure
+	 */
+	private void journalFailed(IOException e) {
+		LOGGER.error("Unable to write to frontier journal, changes will be lost till the next checkpoint", e);
+		this.failed = true;
+	}
+	
+	/**
+	 * Apply the records of the given file to the given jobs. A truncated
+	 * record at the end of the file, as left by a crash, is ignored.
+	 * 
+	 * @param file
+	 *            the snapshot or journal to read
+	 * 
+	 * @param jobs
+	 *            the jobs to update
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	private static void replay(File file, Map<String, CrawlJob> jobs) throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), IO_BUFFER_SIZE));
+		try {
+			if(in.readInt() != MAGIC) {
+				throw new IOException("Not a frontier file: " + file.getAbsolutePath());
+			}
+			
+			do {
+				final byte op = in.readByte();
+				switch(op) {
+					case OP_SUBMIT:
+						final CrawlJob job = JobCodec.readJob(in);
+						jobs.put(job.getURL(), job);
+						break;
+						
+					case OP_REMOVE:
+						jobs.remove(JobCodec.readString(in));
+						break;
+						
+					case OP_END:
+						return;
+						
+					default:
+						LOGGER.warn("Skipping rest of corrupt frontier file: {}", file.getAbsolutePath());
+						return;
+				}
+			} while(true);
+		} catch(EOFException e) {
+			// end of file, or a record cut short by a crash
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Delete the snapshots and journals older than the given generation, and
+	 * any left-over temporary snapshot.
+	 * 
+	 * @param generation
+	 *            the oldest generation to keep
+	 */
+	private void deleteGenerationsBefore(long generation) {
+		final File[] files = this.directory.listFiles();
+		if(files == null) {
+			return;
+		}
+		
+		for(File file : files) {
+			final String name = file.getName();
+			long fileGeneration = generationOf(name, SNAPSHOT_PREFIX, SUFFIX);
+			if(fileGeneration < 0) {
+				fileGeneration = generationOf(name, JOURNAL_PREFIX, SUFFIX);
+			}
+			
+			if(fileGeneration < 0) {
+				fileGeneration = generationOf(name, SNAPSHOT_PREFIX, TEMP_SUFFIX);
+			}
+			
+			if(fileGeneration >= 0 && fileGeneration < generation && !file.delete()) {
+				LOGGER.warn("Unable to delete old frontier file: {}", file.getAbsolutePath());
+			}
+		}
+	}
+	
+	/**
+	 * Find the latest generation of the files with the given prefix.
+	 * 
+	 * @param prefix
+	 *            the prefix of the files
+	 * 
+	 * @return the latest generation, or zero if there is none
+	 */
+	private long latestGeneration(String prefix) {
+		final long[] generations = generations(prefix);
+		if(generations.length == 0) {
+			return 0;
+		}
+		
+		return generations[generations.length - 1];
+	}
+	
+	/**
+	 * Find all generations of the files with the given prefix.
+	 * 
+	 * @param prefix
+	 *            the prefix of the files
+	 * 
+	 * @return the generations in ascending order
+	 */
+	private long[] generations(String prefix) {
+		final String[] names = this.directory.list();
+		if(names == null) {
+			return new long[0];
+		}
+		
+		long[] generations = new long[names.length];
+		int count = 0;
+		for(String name : names) {
+			final long generation = generationOf(name, prefix, SUFFIX);
+			if(generation >= 0) {
+				generations[count++] = generation;
+			}
+		}
+		
+		generations = Arrays.copyOf(generations, count);
+		Arrays.sort(generations);
+		return generations;
+	}
+	
+	private File fileOf(String prefix, long generation, String suffix) {
+		return new File(this.directory, prefix + generation + suffix);
+	}
+	
+	/**
+	 * Parse the generation out of the given file name.
+	 * 
+	 * @return the generation, or <code>-1</code> if the name does not match
+	 */
+	private static long generationOf(String name, String prefix, String suffix) {
+		if(!name.startsWith(prefix) || !name.endsWith(suffix)) {
+			return -1;
+		}
+		
+		try {
+			return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+		} catch(NumberFormatException e) {
+			return -1;
+		}
+	}
+
+}
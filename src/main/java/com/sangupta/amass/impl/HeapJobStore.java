@@ -0,0 +1,454 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.sangupta.amass.domain.CrawlJob;
+
+/**
+ * A {@link JobStore} backed by an indexed min-max heap. Every job remembers
+ * its position in the heap via {@link CrawlJob#getStoreIndex()}, which
+ * allows the store to move a job up or down in O(log n) time when its
+ * priority is changed after it was queued.
+ * 
+ * The levels of the heap alternate between min and max levels: a job on an
+ * even level is crawled before all jobs below it, and a job on an odd level
+ * after all jobs below it. The job to crawl next is thus at the root, and
+ * the one to crawl last is one of its children, which allows both to be
+ * found in O(1) time.
+ * 
+ * Jobs are ordered as per {@link CrawlJob#compareTo(CrawlJob)}.
+ * 
+ * @author sangupta
+ *
+ */
+public class HeapJobStore implements JobStore {
+	
+	/**
+	 * The initial capacity of the heap
+	 */
+	private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+	
+	/**
+	 * The heap of jobs, with the next job to crawl at index zero
+	 */
+	private CrawlJob[] heap;
+	
+	/**
+	 * The number of jobs in the heap
+	 */
+	private int size;
+	
+	/**
+	 * Create a new store with the default initial capacity.
+	 */
+	public HeapJobStore() {
+		this(DEFAULT_INITIAL_CAPACITY);
+	}
+	
+	/**
+	 * Create a new store with the given initial capacity.
+	 * 
+	 * @param initialCapacity
+	 *            the number of jobs the heap can hold before growing
+	 */
+	public HeapJobStore(int initialCapacity) {
+		if(initialCapacity < 1) {
+			throw new IllegalArgumentException("Initial capacity cannot be less than one.");
+		}
+		
+		this.heap = new CrawlJob[initialCapacity];
+	}
+
+	@Override
+	public void offer(CrawlJob job) {
+		if(job == null) {
+			throw new IllegalArgumentException("Job cannot be null");
+		}
+		
+		if(this.size == this.heap.length) {
+			this.heap = Arrays.copyOf(this.heap, this.heap.length + (this.heap.length >> 1));
+		}
+		
+		siftUp(this.size++, job);
+	}
+	
+	/**
+	 * Adds all jobs to the heap. When the batch is large compared to the jobs
+	 * already held, the jobs are appended and the heap is rebuilt bottom-up
+	 * in O(n) time, instead of sifting up each job on its own.
+	 * 
+	 */
+	@Override
+	public void offerAll(List<CrawlJob> jobs) {
+		final int count = jobs.size();
+		if(count < 32 || count < (this.size >>> 2)) {
+			for(CrawlJob job : jobs) {
+				offer(job);
+			}
+			
+			return;
+		}
+		
+		for(CrawlJob job : jobs) {
+			if(job == null) {
+				throw new IllegalArgumentException("Job cannot be null");
+			}
+		}
+		
+		final int required = this.size + count;
+		if(required > this.heap.length) {
+			this.heap = Arrays.copyOf(this.heap, Math.max(required, this.heap.length + (this.heap.length >> 1)));
+		}
+		
+		for(CrawlJob job : jobs) {
+			place(this.size++, job);
+		}
+		
+		for(int index = (this.size >>> 1) - 1; index >= 0; index--) {
+			siftDown(index, this.heap[index]);
+		}
+	}
+
+	@Override
+	public CrawlJob poll() {
+		if(this.size == 0) {
+			return null;
+		}
+		
+		final CrawlJob job = this.heap[0];
+		final int last = --this.size;
+		final CrawlJob moved = this.heap[last];
+		this.heap[last] = null;
+		
+		if(last > 0) {
+			siftDown(0, moved);
+		}
+		
+		job.setStoreIndex(-1);
+		return job;
+	}
+
+	/**
+	 * Return, without removing, the job that would be polled next.
+	 * 
+	 * @return the next job to crawl, or <code>null</code> if the store is
+	 *         empty
+	 */
+	public CrawlJob peek() {
+		return this.heap[0];
+	}
+	
+	/**
+	 * The job to be crawled last is the root itself, or the later of its
+	 * children on the first max level.
+	 * 
+	 */
+	@Override
+	public CrawlJob peekLowest() {
+		switch(this.size) {
+			case 0:
+				return null;
+				
+			case 1:
+				return this.heap[0];
+				
+			case 2:
+				return this.heap[1];
+				
+			default:
+				if(this.heap[2].compareTo(this.heap[1]) > 0) {
+					return this.heap[2];
+				}
+				
+				return this.heap[1];
+		}
+	}
+	
+	@Override
+	public boolean remove(CrawlJob job) {
+		final int index = job.getStoreIndex();
+		if(index < 0 || index >= this.size || this.heap[index] != job) {
+			// not in this store
+			return false;
+		}
+		
+		final int last = --this.size;
+		final CrawlJob moved = this.heap[last];
+		this.heap[last] = null;
+		job.setStoreIndex(-1);
+		
+		if(index != last) {
+			siftUp(index, moved);
+			siftDown(index, this.heap[index]);
+		}
+		
+		return true;
+	}
+
+	@Override
+	public void priorityChanged(CrawlJob job) {
+		final int index = job.getStoreIndex();
+		if(index < 0 || index >= this.size || this.heap[index] != job) {
+			// not in this store
+			return;
+		}
+		
+		siftUp(index, job);
+		siftDown(index, this.heap[index]);
+	}
+
+	@Override
+	public long getDelayNanos() {
+		if(this.size == 0) {
+			return Long.MAX_VALUE;
+		}
+		
+		return 0;
+	}
+	
+	@Override
+	public void completed(CrawlJob job) {
+		// nothing to do
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	@Override
+	public void clear() {
+		for(int index = 0; index < this.size; index++) {
+			this.heap[index].setStoreIndex(-1);
+			this.heap[index] = null;
+		}
+		
+		this.size = 0;
+	}
+	
+	/**
+	 * Move the given job up from the given slot till it is in order with all
+	 * the jobs above it. The job that ends up in the slot may then need to be
+	 * moved down with {@link #siftDown(int, CrawlJob)}, unless the slot is a
+	 * leaf.
+	 * 
+	 * @param index
+	 *            the slot to start from
+	 * 
+	 * @param job
+	 *            the job to place
+	 */
+	private void siftUp(final int index, final CrawlJob job) {
+		if(index == 0) {
+			place(index, job);
+			return;
+		}
+		
+		final int parentIndex = (index - 1) >>> 1;
+		final CrawlJob parent = this.heap[parentIndex];
+		if(isMinLevel(index)) {
+			if(job.compareTo(parent) > 0) {
+				// to be crawled after the parent on the max level above
+				place(index, parent);
+				siftUpMax(parentIndex, job);
+			} else {
+				siftUpMin(index, job);
+			}
+		} else {
+			if(job.compareTo(parent) < 0) {
+				// to be crawled before the parent on the min level above
+				place(index, parent);
+				siftUpMin(parentIndex, job);
+			} else {
+				siftUpMax(index, job);
+			}
+		}
+	}
+	
+	/**
+	 * Move the given job up the min levels from the given slot, which is on a
+	 * min level, till its grandparent is to be crawled before it.
+	 * 
+	 * @param index
+	 *            the slot to start from
+	 * 
+	 * @param job
+	 *            the job to place
+	 */
+	private void siftUpMin(int index, final CrawlJob job) {
+		while(index > 2) {
+			final int grandparentIndex = (index - 3) >>> 2;
+			final CrawlJob grandparent = this.heap[grandparentIndex];
+			if(job.compareTo(grandparent) >= 0) {
+				break;
+			}
+			
+			place(index, grandparent);
+			index = grandparentIndex;
+		}
+		
+		place(index, job);
+	}
+	
+	/**
+	 * Move the given job up the max levels from the given slot, which is on a
+	 * max level, till its grandparent is to be crawled after it.
+	 * 
+	 * @param index
+	 *            the slot to start from
+	 * 
+	 * @param job
+	 *            the job to place
+	 */
+	private void siftUpMax(int index, final CrawlJob job) {
+		while(index > 2) {
+			final int grandparentIndex = (index - 3) >>> 2;
+			final CrawlJob grandparent = this.heap[grandparentIndex];
+			if(job.compareTo(grandparent) <= 0) {
+				break;
+			}
+			
+			place(index, grandparent);
+			index = grandparentIndex;
+		}
+		
+		place(index, job);
+	}
+	
+	/**
+	 * Move the given job down from the given slot till it is in order with
+	 * all the jobs below it.
+	 * 
+	 * @param index
+	 *            the slot to start from
+	 * 
+	 * @param job
+	 *            the job to place
+	 */
+	private void siftDown(final int index, final CrawlJob job) {
+		if(isMinLevel(index)) {
+			siftDown(index, job, 1);
+		} else {
+			siftDown(index, job, -1);
+		}
+	}
+	
+	/**
+	 * Move the given job down from the given slot, which is on a min level
+	 * when the sign is one and on a max level when it is minus one. On each
+	 * step the job is swapped with the child or grandchild that is to be
+	 * crawled first, or last on a max level, if that one is to be crawled
+	 * before it, or after it on a max level.
+	 * 
+	 * @param index
+	 *            the slot to start from
+	 * 
+	 * @param job
+	 *            the job to place
+	 * 
+	 * @param sign
+	 *            one for a min level, minus one for a max level
+	 */
+	private void siftDown(int index, CrawlJob job, final int sign) {
+		do {
+			final int firstChild = (index << 1) + 1;
+			if(firstChild >= this.size) {
+				break;
+			}
+			
+			// the extreme among the up to two children and four grandchildren
+			int extremeIndex = firstChild;
+			final int lastDescendant = Math.min((firstChild << 1) + 4, this.size - 1);
+			for(int descendant = firstChild + 1; descendant <= lastDescendant; descendant++) {
+				if(descendant == firstChild + 2) {
+					// skip over to the grandchildren
+					descendant = (firstChild << 1) + 1;
+					if(descendant > lastDescendant) {
+						break;
+					}
+				}
+				
+				if(sign * this.heap[descendant].compareTo(this.heap[extremeIndex]) < 0) {
+					extremeIndex = descendant;
+				}
+			}
+			
+			final CrawlJob extreme = this.heap[extremeIndex];
+			if(sign * extreme.compareTo(job) >= 0) {
+				break;
+			}
+			
+			place(index, extreme);
+			index = extremeIndex;
+			if(extremeIndex <= firstChild + 1) {
+				// a child, which has no children of its own on this level
+				break;
+			}
+			
+			// a grandchild, make sure it stays in order with its parent
+			final int parentIndex = (extremeIndex - 1) >>> 1;
+			final CrawlJob parent = this.heap[parentIndex];
+			if(sign * job.compareTo(parent) > 0) {
+				place(parentIndex, job);
+				job = parent;
+			}
+		} while(true);
+		
+		place(index, job);
+	}
+	
+	/**
+	 * Check if the given slot is on a min level of the heap.
+	 * 
+	 * @param index
+	 *            the slot to check
+	 * 
+	 * @return <code>true</code> for a min level, <code>false</code> for a
+	 *         max level
+	 */
+	private static boolean isMinLevel(final int index) {
+		return ((31 - Integer.numberOfLeadingZeros(index + 1)) & 1) == 0;
+	}
+	
+	/**
+	 * Put the job in the given slot and record the slot in the job.
+	 * 
+	 * @param index
+	 *            the slot to use
+	 * 
+	 * @param job
+	 *            the job to place
+	 */
+	private void place(final int index, final CrawlJob job) {
+		this.heap[index] = job;
+		job.setStoreIndex(index);
+	}
+
+}
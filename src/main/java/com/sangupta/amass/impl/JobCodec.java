@@ -0,0 +1,241 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+
+import com.sangupta.amass.domain.CrawlJob;
+import com.sangupta.amass.domain.CrawlableURL;
+import com.sangupta.amass.domain.DefaultCrawlableURL;
+
+/**
+ * Compact binary encoding of {@link CrawlJob}s, used when jobs are written
+ * outside of the heap. A job is written as its priority, its sequence number,
+ * its aging epoch, and its {@link CrawlableURL}: either as the UTF-8 bytes of the URL for a
+ * {@link DefaultCrawlableURL}, or in the Java serialized form for any other
+ * {@link Serializable} implementation. A job that retries a failed crawl
+ * has a flag set in its record type, and its attempt written right after.
+ * 
+ * @author sangupta
+ *
+ */
+final class JobCodec {
+	
+	/**
+	 * Record type of a job written as its URL
+	 */
+	private static final byte TYPE_URL = 0;
+	
+	/**
+	 * Record type of a job backed by a {@link Serializable}
+	 * {@link CrawlableURL}
+	 */
+	private static final byte TYPE_SERIALIZED = 1;
+	
+	/**
+	 * Flag of the record type of a job that retries a failed crawl
+	 */
+	private static final byte FLAG_RETRY = 0x10;
+	
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	private JobCodec() {
+		// no instances
+	}
+	
+	/**
+	 * Check if the given job can be written without losing any of its data.
+	 * 
+	 * @param job
+	 *            the job to check
+	 * 
+	 * @return <code>true</code> if the {@link CrawlableURL} of the job is a
+	 *         {@link DefaultCrawlableURL} or is {@link Serializable}
+	 */
+	static boolean isSerializable(CrawlJob job) {
+		if(job.isPlainURL()) {
+			return true;
+		}
+		
+		final CrawlableURL crawlableURL = job.getCrawlableURL();
+		return crawlableURL.getClass() == DefaultCrawlableURL.class || crawlableURL instanceof Serializable;
+	}
+	
+	/**
+	 * Write the given job. A {@link CrawlableURL} that is not
+	 * {@link Serializable} is written as its URL alone.
+	 * 
+	 * @param out
+	 *            the stream to write to
+	 * 
+	 * @param job
+	 *            the job to write
+	 * 
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	static void writeJob(DataOutputStream out, CrawlJob job) throws IOException {
+		out.writeInt(job.getPriority());
+		out.writeLong(job.getSequence());
+		out.writeLong(job.getEpoch());
+		
+		if(job.isPlainURL()) {
+			writeType(out, TYPE_URL, job);
+			writeString(out, job.getURL());
+			return;
+		}
+		
+		final CrawlableURL crawlableURL = job.getCrawlableURL();
+		if(crawlableURL.getClass() == DefaultCrawlableURL.class || !(crawlableURL instanceof Serializable)) {
+			writeType(out, TYPE_URL, job);
+			writeString(out, crawlableURL.getURL());
+			return;
+		}
+		
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final ObjectOutputStream objectStream = new ObjectOutputStream(buffer);
+		objectStream.writeObject(crawlableURL);
+		objectStream.close();
+		
+		final byte[] bytes = buffer.toByteArray();
+		writeType(out, TYPE_SERIALIZED, job);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	/**
+	 * Read a job written by {@link #writeJob(DataOutputStream, CrawlJob)}.
+	 * 
+	 * @param in
+	 *            the stream to read from
+	 * 
+	 * @return the job read
+	 * 
+	 * @throws IOException
+	 *             if reading fails
+	 */
+	static CrawlJob readJob(DataInputStream in) throws IOException {
+		final int priority = in.readInt();
+		final long sequence = in.readLong();
+		final long epoch = in.readLong();
+		byte type = in.readByte();
+		
+		int attempt = 1;
+		if((type & FLAG_RETRY) != 0) {
+			type &= ~FLAG_RETRY;
+			attempt = in.readInt();
+		}
+		
+		final CrawlJob job;
+		if(type == TYPE_URL) {
+			final String url = readString(in);
+			if(attempt > 1) {
+				job = new RetryJob(url, priority, sequence, attempt);
+			} else {
+				job = new CrawlJob(url, priority, sequence);
+			}
+		} else if(type == TYPE_SERIALIZED) {
+			final CrawlableURL crawlableURL;
+			final byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			
+			final ObjectInputStream objectStream = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			try {
+				crawlableURL = (CrawlableURL) objectStream.readObject();
+			} catch(ClassNotFoundException e) {
+				throw new IOException("Unable to read crawlable URL: " + e.getMessage());
+			} finally {
+				objectStream.close();
+			}
+			
+			if(attempt > 1) {
+				job = new RetryJob(crawlableURL, priority, sequence, attempt);
+			} else {
+				job = new CrawlJob(crawlableURL, priority, sequence);
+			}
+		} else {
+			throw new IOException("Unknown job record type: " + type);
+		}
+		
+		job.setEpoch(epoch);
+		return job;
+	}
+	
+	/**
+	 * Write the record type of the given job, followed by its attempt if it
+	 * retries a failed crawl.
+	 */
+	private static void writeType(DataOutputStream out, byte type, CrawlJob job) throws IOException {
+		final int attempt = job.getAttempt();
+		if(attempt <= 1) {
+			out.writeByte(type);
+			return;
+		}
+		
+		out.writeByte(type | FLAG_RETRY);
+		out.writeInt(attempt);
+	}
+	
+	/**
+	 * Write the given string as its length followed by its UTF-8 bytes.
+	 * 
+	 * @param out
+	 *            the stream to write to
+	 * 
+	 * @param value
+	 *            the string to write
+	 * 
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		final byte[] bytes = value.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	/**
+	 * Read a string written by {@link #writeString(DataOutputStream, String)}.
+	 * 
+	 * @param in
+	 *            the stream to read from
+	 * 
+	 * @return the string read
+	 * 
+	 * @throws IOException
+	 *             if reading fails
+	 */
+	static String readString(DataInputStream in) throws IOException {
+		final byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+}
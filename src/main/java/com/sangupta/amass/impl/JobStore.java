@@ -0,0 +1,141 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.util.List;
+
+import com.sangupta.amass.domain.CrawlJob;
+
+/**
+ * Contract for the data structure that holds the pending {@link CrawlJob}s of
+ * an internal {@link CrawlingQueue} in their crawling order.
+ * 
+ * Implementations need NOT be thread-safe: the {@link CrawlingQueue} guards
+ * every call to the store with its own lock.
+ * 
+ * @author sangupta
+ *
+ */
+public interface JobStore {
+	
+	/**
+	 * Add the given job to this store.
+	 * 
+	 * @param job
+	 *            the job to be added
+	 */
+	public void offer(CrawlJob job);
+	
+	/**
+	 * Add all the given jobs to this store. Implementations may do so more
+	 * efficiently than adding the jobs one at a time.
+	 * 
+	 * @param jobs
+	 *            the jobs to be added
+	 */
+	public void offerAll(List<CrawlJob> jobs);
+	
+	/**
+	 * Remove and return the job that needs to be crawled next.
+	 * 
+	 * @return the next job to crawl, or <code>null</code> if the store is
+	 *         empty or none of the jobs in the store can be crawled right now
+	 */
+	public CrawlJob poll();
+	
+	/**
+	 * Return, without removing, the job that this store would hand out last.
+	 * This is called while holding the lock of the {@link CrawlingQueue} on
+	 * every submission to a full queue, and must thus take no more than
+	 * O(log n) time.
+	 * 
+	 * @return the job to be crawled last, or <code>null</code> if the store
+	 *         is empty
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the store cannot find the job fast enough, in which case
+	 *             the {@link CrawlingQueue} refuses to evict jobs from it
+	 */
+	public CrawlJob peekLowest();
+	
+	/**
+	 * Remove the given job, which has not yet been polled, from this store.
+	 * 
+	 * @param job
+	 *            the job to remove
+	 * 
+	 * @return <code>true</code> if the job was removed, <code>false</code>
+	 *         if it was not held in this store
+	 */
+	public boolean remove(CrawlJob job);
+	
+	/**
+	 * Return the time after which a call to {@link #poll()} may return a job.
+	 * 
+	 * @return the delay in nano-seconds, <code>0</code> if a job can be
+	 *         polled right away, or {@link Long#MAX_VALUE} if the store is
+	 *         empty or needs a call to {@link #completed(CrawlJob)} before a
+	 *         job can be polled
+	 */
+	public long getDelayNanos();
+	
+	/**
+	 * Notify the store that the crawl of a job polled from this store has
+	 * finished, successfully or otherwise.
+	 * 
+	 * @param job
+	 *            the job that was crawled
+	 */
+	public void completed(CrawlJob job);
+	
+	/**
+	 * Notify the store that the priority of the given job, which is already
+	 * held in this store, has changed, so that the job can be moved to its
+	 * correct position.
+	 * 
+	 * @param job
+	 *            the job whose priority was changed
+	 */
+	public void priorityChanged(CrawlJob job);
+	
+	/**
+	 * Return the number of jobs held in this store.
+	 * 
+	 * @return the number of jobs
+	 */
+	public int size();
+	
+	/**
+	 * Check if this store holds any job.
+	 * 
+	 * @return <code>true</code> if the store is empty, <code>false</code>
+	 *         otherwise
+	 */
+	public boolean isEmpty();
+	
+	/**
+	 * Remove all jobs from this store.
+	 * 
+	 */
+	public void clear();
+
+}
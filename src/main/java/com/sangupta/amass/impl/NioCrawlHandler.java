@@ -0,0 +1,435 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+
+import com.sangupta.amass.core.AsyncCrawlCallback;
+import com.sangupta.amass.core.AsyncCrawlHandler;
+import com.sangupta.amass.core.CrawlSkippedException;
+import com.sangupta.amass.core.FetchPolicy;
+import com.sangupta.amass.domain.CrawlableURL;
+import com.sangupta.amass.domain.Validators;
+import com.sangupta.jerry.http.WebResponse;
+import com.sangupta.jerry.http.WebResponseHandler;
+
+/**
+ * An {@link AsyncCrawlHandler} that uses non-blocking I/O to crawl URLs. All
+ * requests are multiplexed over a handful of selector threads, and thus
+ * thousands of requests can be kept in flight without parking a thread for
+ * each of them.
+ * 
+ * Responses are turned over to the callbacks on a separate pool of
+ * completion threads, so that the after-crawl handlers, retries and the
+ * recording of validators never hold up a selector thread, and with it the
+ * I/O of all other crawls.
+ * 
+ * When given a {@link FetchPolicy}, the handler checks the status and headers
+ * of each response as soon as they arrive, and reports a
+ * {@link CrawlSkippedException} rather than downloading a body that is not
+ * wanted. When given a {@link ValidatorStore}, the handler sends the
+ * validators of the last crawl of a URL, so that the server can answer with
+ * <code>304 Not Modified</code> rather than the body.
+ * 
+ * The handler must be closed once no longer needed to release the selector
+ * threads and connections.
+ * 
+ * @author sangupta
+ *
+ */
+public class NioCrawlHandler implements AsyncCrawlHandler, Closeable {
+	
+	/**
+	 * Default number of selector threads
+	 */
+	public static final int DEFAULT_IO_THREADS = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * Default maximum number of open connections
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 2000;
+	
+	/**
+	 * Default maximum number of open connections to a single host
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+	
+	/**
+	 * Default connect and read timeout in millis
+	 */
+	public static final int DEFAULT_TIMEOUT = 30000;
+	
+	/**
+	 * Default number of threads that turn responses over to the callbacks
+	 */
+	public static final int DEFAULT_COMPLETION_THREADS = Runtime.getRuntime().availableProcessors();
+	
+	private static final AtomicInteger COMPLETION_THREAD_COUNT = new AtomicInteger(1);
+	
+	/**
+	 * The underlying non-blocking HTTP client
+	 */
+	private final CloseableHttpAsyncClient httpClient;
+	
+	/**
+	 * Converts the HTTP response into a {@link WebResponse}
+	 */
+	private final WebResponseHandler responseHandler = new WebResponseHandler();
+	
+	/**
+	 * The policy that decides which bodies to download, <code>null</code> to
+	 * download all
+	 */
+	private final FetchPolicy fetchPolicy;
+	
+	/**
+	 * The validators of the URLs crawled before, <code>null</code> to not
+	 * send conditional requests
+	 */
+	private final ValidatorStore validatorStore;
+	
+	/**
+	 * Runs the callbacks, off the selector threads
+	 */
+	private final ThreadPoolExecutor completionExecutor;
+	
+	/**
+	 * Create a new handler with default settings.
+	 */
+	public NioCrawlHandler() {
+		this(DEFAULT_IO_THREADS, DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_TIMEOUT);
+	}
+	
+	/**
+	 * Create a new handler.
+	 * 
+	 * @param ioThreads
+	 *            the number of selector threads to use
+	 * 
+	 * @param maxConnections
+	 *            the maximum number of open connections
+	 * 
+	 * @param maxConnectionsPerHost
+	 *            the maximum number of open connections to a single host
+	 * 
+	 * @param timeout
+	 *            the connect and read timeout in millis
+	 */
+	public NioCrawlHandler(int ioThreads, int maxConnections, int maxConnectionsPerHost, int timeout) {
+		this(ioThreads, maxConnections, maxConnectionsPerHost, timeout, DEFAULT_COMPLETION_THREADS, null, null);
+	}
+	
+	/**
+	 * Create a new handler that applies the given {@link FetchPolicy} and
+	 * sends conditional requests using the given {@link ValidatorStore}.
+	 * 
+	 * @param ioThreads
+	 *            the number of selector threads to use
+	 * 
+	 * @param maxConnections
+	 *            the maximum number of open connections
+	 * 
+	 * @param maxConnectionsPerHost
+	 *            the maximum number of open connections to a single host
+	 * 
+	 * @param timeout
+	 *            the connect and read timeout in millis
+	 * 
+	 * @param completionThreads
+	 *            the number of threads that turn responses over to the
+	 *            callbacks
+	 * 
+	 * @param fetchPolicy
+	 *            the policy that decides which bodies to download,
+	 *            <code>null</code> to download all
+	 * 
+	 * @param validatorStore
+	 *            the validators of the URLs crawled before, to send
+	 *            conditional requests with, <code>null</code> to not send
+	 *            them
+	 */
+	public NioCrawlHandler(int ioThreads, int maxConnections, int maxConnectionsPerHost, int timeout, int completionThreads, FetchPolicy fetchPolicy, ValidatorStore validatorStore) {
+		if(ioThreads < 1) {
+			throw new IllegalArgumentException("Number of I/O threads cannot be less than one.");
+		}
+		
+		if(completionThreads < 1) {
+			throw new IllegalArgumentException("Number of completion threads cannot be less than one.");
+		}
+		
+		if(maxConnections < 1 || maxConnectionsPerHost < 1) {
+			throw new IllegalArgumentException("Maximum connections cannot be less than one.");
+		}
+		
+		this.fetchPolicy = fetchPolicy;
+		this.validatorStore = validatorStore;
+		
+		IOReactorConfig reactorConfig = IOReactorConfig.custom()
+												.setIoThreadCount(ioThreads)
+												.setConnectTimeout(timeout)
+												.setSoTimeout(timeout)
+												.setSoKeepAlive(true)
+												.build();
+		
+		RequestConfig requestConfig = RequestConfig.custom()
+												.setConnectTimeout(timeout)
+												.setSocketTimeout(timeout)
+												.build();
+		
+		this.httpClient = HttpAsyncClients.custom()
+											.setDefaultIOReactorConfig(reactorConfig)
+											.setDefaultRequestConfig(requestConfig)
+											.setMaxConnTotal(maxConnections)
+											.setMaxConnPerRoute(maxConnectionsPerHost)
+											.build();
+		
+		// the number of responses waiting is bounded by the crawls in flight
+		this.completionExecutor = new ThreadPoolExecutor(completionThreads, completionThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new CompletionThreadFactory());
+		this.completionExecutor.allowCoreThreadTimeOut(true);
+		
+		this.httpClient.start();
+	}
+
+	/**
+	 * @see com.sangupta.amass.core.AsyncCrawlHandler#crawl(com.sangupta.amass.domain.CrawlableURL, com.sangupta.amass.core.AsyncCrawlCallback)
+	 */
+	@Override
+	public void crawl(final CrawlableURL crawlableURL, final AsyncCrawlCallback callback) {
+		final HttpGet request = new HttpGet(crawlableURL.getURL());
+		if(this.validatorStore != null) {
+			final Validators validators = this.validatorStore.get(crawlableURL.getURL());
+			if(validators != null) {
+				if(validators.getETag() != null) {
+					request.addHeader("If-None-Match", validators.getETag());
+				}
+				
+				if(validators.getLastModified() != null) {
+					request.addHeader("If-Modified-Since", validators.getLastModified());
+				}
+			}
+		}
+		
+		final PolicyResponseConsumer consumer = new PolicyResponseConsumer(crawlableURL);
+		this.httpClient.execute(HttpAsyncMethods.create(request), consumer, new FutureCallback<HttpResponse>() {
+
+			@Override
+			public void completed(final HttpResponse response) {
+				complete(new Runnable() {
+					
+					@Override
+					public void run() {
+						WebResponse webResponse;
+						try {
+							webResponse = responseHandler.handleResponse(response);
+						} catch(Throwable t) {
+							callback.failed(t);
+							return;
+						}
+						
+						callback.completed(webResponse);
+					}
+					
+				});
+			}
+
+			@Override
+			public void failed(final Exception e) {
+				complete(new Runnable() {
+					
+					@Override
+					public void run() {
+						if(consumer.skipped != null) {
+							callback.failed(consumer.skipped);
+							return;
+						}
+						
+						callback.failed(e);
+					}
+					
+				});
+			}
+
+			@Override
+			public void cancelled() {
+				complete(new Runnable() {
+					
+					@Override
+					public void run() {
+						callback.failed(new CancellationException("Crawl request was cancelled"));
+					}
+					
+				});
+			}
+			
+		});
+	}
+	
+	/**
+	 * Run the given completion on the {@link #completionExecutor}, or right
+	 * here once the handler has been closed, so that no callback is lost.
+	 * 
+	 * @param completion
+	 *            the completion to run
+	 */
+	private void complete(Runnable completion) {
+		try {
+			this.completionExecutor.execute(completion);
+		} catch(RejectedExecutionException e) {
+			completion.run();
+		}
+	}
+
+	/**
+	 * Shut down the selector threads and close all connections. Requests in
+	 * flight are cancelled, and the callbacks still to run are waited for,
+	 * for up to {@link #DEFAULT_TIMEOUT} millis.
+	 * 
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			this.httpClient.close();
+		} finally {
+			this.completionExecutor.shutdown();
+			try {
+				this.completionExecutor.awaitTermination(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	// Usual accessors follow
+	
+	/**
+	 * @return the validators of the URLs crawled before, <code>null</code> if
+	 *         conditional requests are not sent
+	 */
+	public ValidatorStore getValidatorStore() {
+		return this.validatorStore;
+	}
+	
+	/**
+	 * @return the policy that decides which bodies to download,
+	 *         <code>null</code> if all are
+	 */
+	public FetchPolicy getFetchPolicy() {
+		return this.fetchPolicy;
+	}
+	
+	/**
+	 * Buffers the body of a response, unless the {@link #fetchPolicy} turns
+	 * it down once the headers have arrived. The exchange is then failed,
+	 * which closes the connection rather than downloading the rest of the
+	 * body.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	private class PolicyResponseConsumer extends BasicAsyncResponseConsumer {
+		
+		private final CrawlableURL crawlableURL;
+		
+		/**
+		 * The skip to report in place of the failure of the exchange, set
+		 * on a selector thread before the exchange fails
+		 */
+		private volatile CrawlSkippedException skipped;
+		
+		PolicyResponseConsumer(CrawlableURL crawlableURL) {
+			this.crawlableURL = crawlableURL;
+		}
+		
+		@Override
+		protected void onResponseReceived(HttpResponse response) throws IOException {
+			super.onResponseReceived(response);
+			
+			if(fetchPolicy == null) {
+				return;
+			}
+			
+			final int responseCode = response.getStatusLine().getStatusCode();
+			final HttpEntity entity = response.getEntity();
+			
+			String contentType = null;
+			long contentLength = 0;
+			if(entity != null) {
+				final Header header = entity.getContentType();
+				if(header != null) {
+					contentType = header.getValue();
+				}
+				
+				contentLength = entity.getContentLength();
+			}
+			
+			if(fetchPolicy.shouldFetch(this.crawlableURL, responseCode, contentType, contentLength)) {
+				return;
+			}
+			
+			// an I/O error, unlike any other, fails only this exchange
+			// and not the selector thread
+			this.skipped = new CrawlSkippedException(this.crawlableURL.getURL(), responseCode, contentType, contentLength);
+			throw new IOException(this.skipped.getMessage());
+		}
+		
+	}
+	
+	/**
+	 * Creates the daemon threads of the
+	 * {@link NioCrawlHandler#completionExecutor}.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	private static class CompletionThreadFactory implements ThreadFactory {
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "Amass-Nio-Completion-" + COMPLETION_THREAD_COUNT.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+		
+	}
+
+}
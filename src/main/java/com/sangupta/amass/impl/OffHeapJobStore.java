@@ -0,0 +1,658 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sangupta.amass.domain.CrawlJob;
+import com.sangupta.amass.domain.CrawlableURL;
+import com.sangupta.amass.domain.DefaultCrawlableURL;
+
+/**
+ * A {@link JobStore} that keeps a bounded window of the highest priority jobs
+ * on the heap, and the rest in direct memory outside of it. The number of
+ * objects the garbage collector has to trace thus stays flat irrespective of
+ * the number of pending jobs.
+ * 
+ * Jobs are kept in an on-heap {@link HeapJobStore}. When it grows beyond the
+ * configured size, its jobs are sorted, the top half is kept and the bottom
+ * half is moved off the heap. Each moved job is written as a record into an
+ * arena of direct {@link ByteBuffer} chunks, and an entry of its rank,
+ * sequence number and record address is added to a binary heap kept in another
+ * direct {@link ByteBuffer}. Jobs are handed out from whichever of the two
+ * heaps has the better job, and a job is read back into an object only when
+ * handed out. A chunk is released once all its records have been read back,
+ * and the arena is compacted once more than half of it is unused.
+ * 
+ * Jobs moved off the heap are forgotten from the URL index of the
+ * {@link CrawlingQueue}, the same as with a {@link SpillingJobStore}: a URL
+ * submitted again while its job is off the heap gets a new job, which the
+ * {@link CrawlingQueue} merges with the older one when the latter is read
+ * back. The priority of a job off the heap is fixed till it is read back.
+ * 
+ * Only jobs backed by a {@link DefaultCrawlableURL}, or by a
+ * {@link Serializable} {@link CrawlableURL}, are moved; others always stay on
+ * the heap.
+ * 
+ * @author sangupta
+ *
+ */
+public class OffHeapJobStore implements JobStore {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(OffHeapJobStore.class);
+	
+	/**
+	 * The size of each chunk of the record arena
+	 */
+	private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+	
+	/**
+	 * The size of an entry in the off-heap binary heap: the rank, the
+	 * sequence number and the address of the record
+	 */
+	private static final int ENTRY_SIZE = 8 + 8 + 8;
+	
+	/**
+	 * The number of entries the off-heap binary heap starts with
+	 */
+	private static final int INITIAL_ENTRIES = 64 * 1024;
+	
+	/**
+	 * The jobs held on the heap
+	 */
+	private final HeapJobStore hot = new HeapJobStore();
+	
+	/**
+	 * The maximum number of jobs on the heap before moving jobs out
+	 */
+	private final int maxOnHeap;
+	
+	/**
+	 * The URL index of the owning {@link CrawlingQueue}, from which jobs moved
+	 * off the heap are removed
+	 */
+	private final ConcurrentMap<CrawlJob, CrawlJob> index;
+	
+	/**
+	 * The binary heap of entries of the jobs off the heap, created when first
+	 * needed
+	 */
+	private ByteBuffer entries;
+	
+	/**
+	 * The number of jobs off the heap
+	 */
+	private int count;
+	
+	/**
+	 * The chunks of the record arena, <code>null</code> for released ones
+	 */
+	private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+	
+	/**
+	 * The number of bytes of live records in each chunk
+	 */
+	private int[] chunkLive = new int[16];
+	
+	/**
+	 * The number of chunks not released
+	 */
+	private int numChunks;
+	
+	/**
+	 * The chunk new records are appended to, <code>-1</code> if none
+	 */
+	private int current = -1;
+	
+	/**
+	 * The position in the {@link #current} chunk to append at
+	 */
+	private int position;
+	
+	/**
+	 * The number of bytes of live records in the arena
+	 */
+	private long liveBytes;
+	
+	/**
+	 * A released chunk kept for reuse
+	 */
+	private ByteBuffer spareChunk;
+	
+	/**
+	 * The buffer jobs are encoded into before being copied to the arena
+	 */
+	private final RecordBuffer encoded = new RecordBuffer();
+	
+	private final DataOutputStream encoder = new DataOutputStream(this.encoded);
+	
+	/**
+	 * The buffer records are copied into before being decoded
+	 */
+	private byte[] scratch = new byte[1024];
+	
+	/**
+	 * Create a new store.
+	 * 
+	 * @param maxOnHeap
+	 *            the maximum number of jobs to keep on the heap
+	 * 
+	 * @param index
+	 *            the map of queued jobs, each keyed by itself, maintained by
+	 *            the owning {@link CrawlingQueue}
+	 */
+	public OffHeapJobStore(int maxOnHeap, ConcurrentMap<CrawlJob, CrawlJob> index) {
+		if(maxOnHeap < 2) {
+			throw new IllegalArgumentException("Maximum on-heap jobs cannot be less than two.");
+		}
+		
+		if(index == null) {
+			throw new IllegalArgumentException("Job index cannot be null");
+		}
+		
+		this.maxOnHeap = maxOnHeap;
+		this.index = index;
+	}
+
+	@Override
+	public void offer(CrawlJob job) {
+		this.hot.offer(job);
+		moveIfNeeded();
+	}
+
+	@Override
+	public void offerAll(List<CrawlJob> jobs) {
+		this.hot.offerAll(jobs);
+		moveIfNeeded();
+	}
+
+	@Override
+	public CrawlJob poll() {
+		if(this.count == 0) {
+			return this.hot.poll();
+		}
+		
+		final CrawlJob onHeap = this.hot.peek();
+		if(onHeap != null && !isBefore(this.entries.getLong(0), this.entries.getLong(8), onHeap.getRank(), onHeap.getSequence())) {
+			return this.hot.poll();
+		}
+		
+		// the next job is off the heap
+		final long address = this.entries.getLong(16);
+		this.count--;
+		if(this.count > 0) {
+			final int last = this.count * ENTRY_SIZE;
+			siftDown(0, this.entries.getLong(last), this.entries.getLong(last + 8), this.entries.getLong(last + 16));
+		}
+		
+		return readRecord(address);
+	}
+	
+	/**
+	 * Not supported, as jobs off the heap cannot be evicted.
+	 * 
+	 */
+	@Override
+	public CrawlJob peekLowest() {
+		throw new UnsupportedOperationException("Jobs cannot be evicted from an off-heap job store");
+	}
+	
+	@Override
+	public boolean remove(CrawlJob job) {
+		return this.hot.remove(job);
+	}
+
+	@Override
+	public long getDelayNanos() {
+		if(isEmpty()) {
+			return Long.MAX_VALUE;
+		}
+		
+		return 0;
+	}
+
+	@Override
+	public void completed(CrawlJob job) {
+		// nothing to do
+	}
+
+	@Override
+	public void priorityChanged(CrawlJob job) {
+		// only jobs on the heap are known to the index
+		this.hot.priorityChanged(job);
+	}
+
+	@Override
+	public int size() {
+		final long size = (long) this.hot.size() + this.count;
+		if(size > Integer.MAX_VALUE) {
+			return Integer.MAX_VALUE;
+		}
+		
+		return (int) size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.hot.isEmpty() && this.count == 0;
+	}
+
+	@Override
+	public void clear() {
+		this.hot.clear();
+		this.count = 0;
+		
+		this.chunks.clear();
+		Arrays.fill(this.chunkLive, 0);
+		this.numChunks = 0;
+		this.current = -1;
+		this.position = 0;
+		this.liveBytes = 0;
+	}
+	
+	/**
+	 * Return the number of jobs that are off the heap.
+	 * 
+	 * @return the number of jobs off the heap
+	 */
+	public int getNumOffHeap() {
+		return this.count;
+	}
+	
+	/**
+	 * Return the number of bytes of direct memory held by this store.
+	 * 
+	 * @return the size of the off-heap memory in bytes
+	 */
+	public long getOffHeapBytes() {
+		long bytes = (long) this.numChunks * CHUNK_SIZE;
+		if(this.entries != null) {
+			bytes += this.entries.capacity();
+		}
+		
+		return bytes;
+	}
+	
+	/**
+	 * Move the lower half of the jobs on the heap out of it, if there are more
+	 * jobs on the heap than allowed.
+	 */
+	private void moveIfNeeded() {
+		if(this.hot.size() <= this.maxOnHeap) {
+			return;
+		}
+		
+		final int keep = this.maxOnHeap >>> 1;
+		final List<CrawlJob> kept = new ArrayList<CrawlJob>(keep);
+		
+		int moved = 0;
+		CrawlJob job;
+		while((job = this.hot.poll()) != null) {
+			if(kept.size() < keep || !JobCodec.isSerializable(job) || !writeRecord(job)) {
+				kept.add(job);
+				continue;
+			}
+			
+			this.index.remove(job, job);
+			moved++;
+		}
+		
+		this.hot.offerAll(kept);
+		LOGGER.debug("Moved {} jobs off the heap, {} jobs off the heap now", moved, this.count);
+	}
+	
+	/**
+	 * Write the given job into the arena and add its entry to the off-heap
+	 * binary heap.
+	 * 
+	 * @param job
+	 *            the job to write
+	 * 
+	 * @return <code>true</code> if the job was written, <code>false</code> if
+	 *         it is too large for the arena
+	 */
+	private boolean writeRecord(CrawlJob job) {
+		this.encoded.reset();
+		try {
+			JobCodec.writeJob(this.encoder, job);
+		} catch(IOException e) {
+			throw new IllegalStateException("Unable to encode job: " + job, e);
+		}
+		
+		final int length = this.encoded.size();
+		if(4 + length > CHUNK_SIZE) {
+			return false;
+		}
+		
+		ensureEntryCapacity();
+		
+		final long address = allocate(4 + length);
+		final ByteBuffer chunk = this.chunks.get(chunkOf(address));
+		chunk.position(offsetOf(address));
+		chunk.putInt(length);
+		chunk.put(this.encoded.buffer(), 0, length);
+		
+		siftUp(this.count, job.getRank(), job.getSequence(), address);
+		this.count++;
+		return true;
+	}
+	
+	/**
+	 * Read back the job at the given address, and free its record.
+	 * 
+	 * @param address
+	 *            the address of the record
+	 * 
+	 * @return the job read
+	 */
+	private CrawlJob readRecord(long address) {
+		final ByteBuffer chunk = this.chunks.get(chunkOf(address));
+		final int offset = offsetOf(address);
+		final int length = chunk.getInt(offset);
+		if(this.scratch.length < length) {
+			this.scratch = new byte[Math.max(length, this.scratch.length * 2)];
+		}
+		
+		chunk.position(offset + 4);
+		chunk.get(this.scratch, 0, length);
+		free(address, 4 + length);
+		
+		try {
+			return JobCodec.readJob(new DataInputStream(new ByteArrayInputStream(this.scratch, 0, length)));
+		} catch(IOException e) {
+			throw new IllegalStateException("Unable to decode job held off the heap", e);
+		}
+	}
+	
+	/**
+	 * Reserve the given number of bytes in the arena.
+	 * 
+	 * @param size
+	 *            the number of bytes needed
+	 * 
+	 * @return the address of the reserved bytes
+	 */
+	private long allocate(int size) {
+		if(this.current < 0 || this.position + size > CHUNK_SIZE) {
+			newChunk();
+		}
+		
+		final long address = ((long) this.current << 32) | this.position;
+		this.position += size;
+		this.chunkLive[this.current] += size;
+		this.liveBytes += size;
+		return address;
+	}
+	
+	/**
+	 * Free the record of the given size at the given address, releasing its
+	 * chunk if no live record is left in it.
+	 * 
+	 * @param address
+	 *            the address of the record
+	 * 
+	 * @param size
+	 *            the size of the record
+	 */
+	private void free(long address, int size) {
+		final int chunk = chunkOf(address);
+		this.chunkLive[chunk] -= size;
+		this.liveBytes -= size;
+		
+		if(this.chunkLive[chunk] == 0) {
+			if(chunk == this.current) {
+				// start afresh in the same chunk
+				this.position = 0;
+			} else {
+				releaseChunk(chunk);
+			}
+		}
+		
+		if(this.numChunks > 2 && (long) this.numChunks * CHUNK_SIZE > 2 * this.liveBytes) {
+			compact();
+		}
+	}
+	
+	/**
+	 * Start appending to a new chunk.
+	 */
+	private void newChunk() {
+		if(this.current >= 0 && this.chunkLive[this.current] == 0) {
+			releaseChunk(this.current);
+		}
+		
+		ByteBuffer buffer = this.spareChunk;
+		this.spareChunk = null;
+		if(buffer == null) {
+			buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+		}
+		
+		buffer.clear();
+		
+		// reuse the slot of a released chunk, if any
+		int slot = this.chunks.indexOf(null);
+		if(slot < 0) {
+			slot = this.chunks.size();
+			this.chunks.add(buffer);
+			if(slot == this.chunkLive.length) {
+				this.chunkLive = Arrays.copyOf(this.chunkLive, slot * 2);
+			}
+		} else {
+			this.chunks.set(slot, buffer);
+		}
+		
+		this.chunkLive[slot] = 0;
+		this.numChunks++;
+		this.current = slot;
+		this.position = 0;
+	}
+	
+	private void releaseChunk(int chunk) {
+		final ByteBuffer buffer = this.chunks.set(chunk, null);
+		this.numChunks--;
+		if(this.spareChunk == null) {
+			this.spareChunk = buffer;
+		}
+		
+		if(chunk == this.current) {
+			this.current = -1;
+		}
+	}
+	
+	/**
+	 * Copy all live records into new chunks, so that the space left by records
+	 * read back from partially used chunks is given back.
+	 */
+	private void compact() {
+		final List<ByteBuffer> old = new ArrayList<ByteBuffer>(this.chunks);
+		final int before = this.numChunks;
+		
+		this.chunks.clear();
+		Arrays.fill(this.chunkLive, 0);
+		this.numChunks = 0;
+		this.current = -1;
+		this.position = 0;
+		this.liveBytes = 0;
+		
+		for(int slot = 0; slot < this.count; slot++) {
+			final int base = slot * ENTRY_SIZE + 16;
+			final long address = this.entries.getLong(base);
+			final ByteBuffer from = old.get(chunkOf(address));
+			final int offset = offsetOf(address);
+			final int size = 4 + from.getInt(offset);
+			
+			final long moved = allocate(size);
+			final ByteBuffer to = this.chunks.get(chunkOf(moved));
+			from.limit(offset + size).position(offset);
+			to.position(offsetOf(moved));
+			to.put(from);
+			from.clear();
+			
+			this.entries.putLong(base, moved);
+		}
+		
+		LOGGER.debug("Compacted off-heap jobs from {} chunks into {}", before, this.numChunks);
+	}
+	
+	/**
+	 * Make room for one more entry in the off-heap binary heap.
+	 */
+	private void ensureEntryCapacity() {
+		if(this.entries == null) {
+			this.entries = ByteBuffer.allocateDirect(INITIAL_ENTRIES * ENTRY_SIZE);
+			return;
+		}
+		
+		final int needed = (this.count + 1) * ENTRY_SIZE;
+		if(needed <= this.entries.capacity()) {
+			return;
+		}
+		
+		if(this.count >= Integer.MAX_VALUE / ENTRY_SIZE / 2) {
+			throw new IllegalStateException("Too many jobs off the heap: " + this.count);
+		}
+		
+		final ByteBuffer grown = ByteBuffer.allocateDirect(this.entries.capacity() * 2);
+		this.entries.limit(this.count * ENTRY_SIZE).position(0);
+		grown.put(this.entries);
+		grown.clear();
+		this.entries = grown;
+	}
+	
+	/**
+	 * Move the given entry up from the given slot to its position.
+	 */
+	private void siftUp(int slot, long rank, long sequence, long address) {
+		while(slot > 0) {
+			final int parent = (slot - 1) >>> 1;
+			final int base = parent * ENTRY_SIZE;
+			if(!isBefore(rank, sequence, this.entries.getLong(base), this.entries.getLong(base + 8))) {
+				break;
+			}
+			
+			copyEntry(parent, slot);
+			slot = parent;
+		}
+		
+		writeEntry(slot, rank, sequence, address);
+	}
+	
+	/**
+	 * Move the given entry down from the given slot to its position.
+	 */
+	private void siftDown(int slot, long rank, long sequence, long address) {
+		final int half = this.count >>> 1;
+		while(slot < half) {
+			int child = (slot << 1) + 1;
+			int base = child * ENTRY_SIZE;
+			long childRank = this.entries.getLong(base);
+			long childSequence = this.entries.getLong(base + 8);
+			
+			final int right = child + 1;
+			if(right < this.count) {
+				final int rightBase = right * ENTRY_SIZE;
+				final long rightRank = this.entries.getLong(rightBase);
+				final long rightSequence = this.entries.getLong(rightBase + 8);
+				if(isBefore(rightRank, rightSequence, childRank, childSequence)) {
+					child = right;
+					childRank = rightRank;
+					childSequence = rightSequence;
+				}
+			}
+			
+			if(!isBefore(childRank, childSequence, rank, sequence)) {
+				break;
+			}
+			
+			copyEntry(child, slot);
+			slot = child;
+		}
+		
+		writeEntry(slot, rank, sequence, address);
+	}
+	
+	private void copyEntry(int from, int to) {
+		final int fromBase = from * ENTRY_SIZE;
+		writeEntry(to, this.entries.getLong(fromBase), this.entries.getLong(fromBase + 8), this.entries.getLong(fromBase + 16));
+	}
+	
+	private void writeEntry(int slot, long rank, long sequence, long address) {
+		final int base = slot * ENTRY_SIZE;
+		this.entries.putLong(base, rank);
+		this.entries.putLong(base + 8, sequence);
+		this.entries.putLong(base + 16, address);
+	}
+	
+	/**
+	 * Check if a job with the first rank and sequence number is to be
+	 * crawled before one with the second, the same as
+	 * {@link CrawlJob#compareTo(CrawlJob)}.
+	 */
+	private static boolean isBefore(long rank1, long sequence1, long rank2, long sequence2) {
+		if(rank1 != rank2) {
+			return rank1 > rank2;
+		}
+		
+		return sequence1 < sequence2;
+	}
+	
+	private static int chunkOf(long address) {
+		return (int) (address >>> 32);
+	}
+	
+	private static int offsetOf(long address) {
+		return (int) address;
+	}
+	
+	/**
+	 * A {@link ByteArrayOutputStream} that exposes its buffer, so that it can
+	 * be copied without creating a new array.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	private static class RecordBuffer extends ByteArrayOutputStream {
+		
+		RecordBuffer() {
+			super(256);
+		}
+		
+		byte[] buffer() {
+			return this.buf;
+		}
+		
+	}
+
+}
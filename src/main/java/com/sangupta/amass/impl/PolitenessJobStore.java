@@ -0,0 +1,431 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.sangupta.amass.domain.CrawlJob;
+
+/**
+ * A {@link JobStore} that schedules jobs in a host-aware manner so that no
+ * single host is hammered by all workers at once. Every host gets its own
+ * sub-queue of jobs ordered by priority. A host is handed out again only
+ * after a minimum delay has passed since its last job was handed out, and
+ * only while the number of its jobs being crawled is below the configured
+ * maximum.
+ * 
+ * Hosts that can be crawled are kept in a ready-heap keyed by the time at
+ * which the host is next allowed to be crawled, and the host at the top of
+ * the heap is served next. Hosts that have reached their maximum number of
+ * in-flight jobs leave the ready-heap till one of their jobs completes.
+ * 
+ * @author sangupta
+ *
+ */
+public class PolitenessJobStore implements JobStore {
+	
+	/**
+	 * The initial capacity of the job heap of each host
+	 */
+	private static final int HOST_QUEUE_INITIAL_CAPACITY = 4;
+	
+	/**
+	 * Orders hosts by the time at which they are next allowed to be crawled
+	 */
+	private static final Comparator<HostQueue> NEXT_ALLOWED_COMPARATOR = new Comparator<HostQueue>() {
+
+		@Override
+		public int compare(HostQueue host1, HostQueue host2) {
+			final long diff = host1.nextAllowed - host2.nextAllowed;
+			if(diff < 0) {
+				return -1;
+			}
+			
+			if(diff > 0) {
+				return 1;
+			}
+			
+			return 0;
+		}
+		
+	};
+	
+	/**
+	 * Minimum delay in nanos between two jobs of the same host being handed
+	 * out
+	 */
+	private final long minDelayNanos;
+	
+	/**
+	 * Maximum number of jobs of a host that may be crawled at the same time,
+	 * zero or less means unlimited
+	 */
+	private final int maxInFlight;
+	
+	/**
+	 * All hosts known to this store
+	 */
+	private final Map<String, HostQueue> hosts = new HashMap<String, HostQueue>();
+	
+	/**
+	 * Hosts that have pending jobs and are below their in-flight limit
+	 */
+	private final PriorityQueue<HostQueue> readyHosts = new PriorityQueue<HostQueue>(64, NEXT_ALLOWED_COMPARATOR);
+	
+	/**
+	 * Hosts that have neither pending nor in-flight jobs, in the order in
+	 * which they became idle. These are purged once their delay has passed.
+	 */
+	private final ArrayDeque<HostQueue> idleHosts = new ArrayDeque<HostQueue>();
+	
+	/**
+	 * The number of pending jobs across all hosts
+	 */
+	private int size;
+	
+	/**
+	 * Create a new store.
+	 * 
+	 * @param minDelayMillis
+	 *            the minimum delay in milli-seconds between two jobs of the
+	 *            same host being handed out
+	 * 
+	 * @param maxInFlight
+	 *            the maximum number of jobs of the same host that may be
+	 *            crawled at the same time, zero or less for no limit
+	 */
+	public PolitenessJobStore(long minDelayMillis, int maxInFlight) {
+		if(minDelayMillis < 0) {
+			throw new IllegalArgumentException("Minimum delay cannot be negative.");
+		}
+		
+		this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+		this.maxInFlight = maxInFlight;
+	}
+
+	@Override
+	public void offer(CrawlJob job) {
+		if(job == null) {
+			throw new IllegalArgumentException("Job cannot be null");
+		}
+		
+		final String hostName = hostOf(job);
+		HostQueue host = this.hosts.get(hostName);
+		if(host == null) {
+			host = new HostQueue(hostName, System.nanoTime());
+			this.hosts.put(hostName, host);
+		}
+		
+		host.idle = false;
+		host.jobs.offer(job);
+		this.size++;
+		
+		makeReadyIfNeeded(host);
+	}
+	
+	@Override
+	public void offerAll(List<CrawlJob> jobs) {
+		for(CrawlJob job : jobs) {
+			offer(job);
+		}
+	}
+
+	@Override
+	public CrawlJob poll() {
+		final long now = System.nanoTime();
+		purgeIdleHosts(now);
+		
+		final HostQueue host = this.readyHosts.peek();
+		if(host == null || host.nextAllowed - now > 0) {
+			return null;
+		}
+		
+		this.readyHosts.poll();
+		host.ready = false;
+		
+		final CrawlJob job = host.jobs.poll();
+		host.inFlight++;
+		host.nextAllowed = now + this.minDelayNanos;
+		this.size--;
+		
+		makeReadyIfNeeded(host);
+		return job;
+	}
+	
+	@Override
+	public long getDelayNanos() {
+		final HostQueue host = this.readyHosts.peek();
+		if(host == null) {
+			// either empty, or all hosts with pending jobs are at their limit
+			return Long.MAX_VALUE;
+		}
+		
+		final long delay = host.nextAllowed - System.nanoTime();
+		if(delay < 0) {
+			return 0;
+		}
+		
+		return delay;
+	}
+	
+	@Override
+	public void completed(CrawlJob job) {
+		final HostQueue host = this.hosts.get(hostOf(job));
+		if(host == null || host.inFlight == 0) {
+			// job was never polled from us
+			return;
+		}
+		
+		host.inFlight--;
+		if(!makeReadyIfNeeded(host) && host.inFlight == 0 && host.jobs.isEmpty()) {
+			host.idle = true;
+			this.idleHosts.addLast(host);
+		}
+	}
+
+	/**
+	 * Not supported, as the lowest job may belong to any of the hosts.
+	 * 
+	 */
+	@Override
+	public CrawlJob peekLowest() {
+		throw new UnsupportedOperationException("Jobs cannot be evicted from a politeness job store");
+	}
+	
+	@Override
+	public boolean remove(CrawlJob job) {
+		final HostQueue host = this.hosts.get(hostOf(job));
+		if(host == null || !host.jobs.remove(job)) {
+			return false;
+		}
+		
+		this.size--;
+		if(host.jobs.isEmpty()) {
+			if(host.ready) {
+				host.ready = false;
+				this.readyHosts.remove(host);
+			}
+			
+			if(host.inFlight == 0) {
+				host.idle = true;
+				this.idleHosts.addLast(host);
+			}
+		}
+		
+		return true;
+	}
+
+	@Override
+	public void priorityChanged(CrawlJob job) {
+		final HostQueue host = this.hosts.get(hostOf(job));
+		if(host != null) {
+			host.jobs.priorityChanged(job);
+		}
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	@Override
+	public void clear() {
+		for(HostQueue host : this.hosts.values()) {
+			host.jobs.clear();
+		}
+		
+		this.hosts.clear();
+		this.readyHosts.clear();
+		this.idleHosts.clear();
+		this.size = 0;
+	}
+	
+	/**
+	 * Return the number of hosts currently tracked by this store.
+	 * 
+	 * @return the number of hosts
+	 */
+	public int getNumHosts() {
+		return this.hosts.size();
+	}
+	
+	/**
+	 * Add the host to the ready-heap if it has pending jobs and is below its
+	 * in-flight limit.
+	 * 
+	 * @param host
+	 *            the host to check
+	 * 
+	 * @return <code>true</code> if the host is in the ready-heap,
+	 *         <code>false</code> otherwise
+	 */
+	private boolean makeReadyIfNeeded(HostQueue host) {
+		if(host.ready) {
+			return true;
+		}
+		
+		if(host.jobs.isEmpty()) {
+			return false;
+		}
+		
+		if(this.maxInFlight > 0 && host.inFlight >= this.maxInFlight) {
+			return false;
+		}
+		
+		host.ready = true;
+		this.readyHosts.offer(host);
+		return true;
+	}
+	
+	/**
+	 * Forget the hosts that have been idle for longer than the minimum delay.
+	 * 
+	 * @param now
+	 *            the current nano time
+	 */
+	private void purgeIdleHosts(final long now) {
+		do {
+			final HostQueue host = this.idleHosts.peekFirst();
+			if(host == null) {
+				return;
+			}
+			
+			if(!host.idle) {
+				// the host got more jobs since, or is a duplicate entry
+				this.idleHosts.pollFirst();
+				continue;
+			}
+			
+			if(host.nextAllowed - now > 0) {
+				return;
+			}
+			
+			this.idleHosts.pollFirst();
+			if(this.hosts.get(host.name) == host) {
+				this.hosts.remove(host.name);
+			}
+		} while(true);
+	}
+	
+	/**
+	 * Extract the host of the URL of the given job.
+	 * 
+	 * @param job
+	 *            the job to use
+	 * 
+	 * @return the host name in lower case, or an empty string if the URL has
+	 *         no host
+	 */
+	static String hostOf(CrawlJob job) {
+		return hostOf(job.getURL());
+	}
+	
+	/**
+	 * Extract the host, along with the port if present, from the given URL.
+	 * 
+	 * @param url
+	 *            the URL to use
+	 * 
+	 * @return the host name in lower case, or an empty string if the URL has
+	 *         no host
+	 */
+	static String hostOf(String url) {
+		if(url == null) {
+			return "";
+		}
+		
+		int start = url.indexOf("://");
+		if(start < 0) {
+			return "";
+		}
+		
+		start += 3;
+		int end = start;
+		final int length = url.length();
+		while(end < length) {
+			final char ch = url.charAt(end);
+			if(ch == '/' || ch == '?' || ch == '#') {
+				break;
+			}
+			
+			if(ch == '@') {
+				// skip user info
+				start = end + 1;
+			}
+			
+			end++;
+		}
+		
+		return url.substring(start, end).toLowerCase();
+	}
+	
+	/**
+	 * Jobs and scheduling state of a single host.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	private static class HostQueue {
+		
+		final String name;
+		
+		final HeapJobStore jobs = new HeapJobStore(HOST_QUEUE_INITIAL_CAPACITY);
+		
+		/**
+		 * The nano time at which the next job of this host may be handed out
+		 */
+		long nextAllowed;
+		
+		/**
+		 * Number of jobs of this host being crawled right now
+		 */
+		int inFlight;
+		
+		/**
+		 * Whether this host is in the ready-heap
+		 */
+		boolean ready;
+		
+		/**
+		 * Whether this host has neither pending nor in-flight jobs
+		 */
+		boolean idle;
+		
+		HostQueue(String name, long nextAllowed) {
+			this.name = name;
+			this.nextAllowed = nextAllowed;
+		}
+		
+	}
+
+}
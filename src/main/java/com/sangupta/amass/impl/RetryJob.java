@@ -0,0 +1,70 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.impl;
+
+import com.sangupta.amass.domain.CrawlJob;
+import com.sangupta.amass.domain.CrawlableURL;
+
+/**
+ * A {@link CrawlJob} queued to retry a failed crawl, which carries the
+ * attempt it is at. Keeping the attempt on the job, rather than aside keyed
+ * by URL, means that a retry merged into a job already queued for the same
+ * URL leaves that job as it is. Jobs that are not retries do not pay for the
+ * extra field.
+ * 
+ * @author sangupta
+ *
+ */
+final class RetryJob extends CrawlJob {
+	
+	/**
+	 * The attempt this job is at, two for the first retry
+	 */
+	private final int attempt;
+	
+	RetryJob(String url, int priority, int attempt) {
+		super(url, priority);
+		this.attempt = attempt;
+	}
+	
+	RetryJob(CrawlableURL crawlableURL, int priority, int attempt) {
+		super(crawlableURL, priority);
+		this.attempt = attempt;
+	}
+	
+	RetryJob(String url, int priority, long sequence, int attempt) {
+		super(url, priority, sequence);
+		this.attempt = attempt;
+	}
+	
+	RetryJob(CrawlableURL crawlableURL, int priority, long sequence, int attempt) {
+		super(crawlableURL, priority, sequence);
+		this.attempt = attempt;
+	}
+	
+	@Override
+	public int getAttempt() {
+		return this.attempt;
+	}
+
+}
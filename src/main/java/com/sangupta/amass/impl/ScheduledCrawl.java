@@ -0,0 +1,186 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.nio.charset.Charset;
+
+import com.sangupta.amass.domain.CrawlableURL;
+
+/**
+ * A crawl that is due at a later time, once or repeatedly. It is handed over
+ * to the {@link CrawlingQueue} by the {@link CrawlScheduler} when due.
+ * 
+ * A plain URL is kept as UTF-8 bytes, so that millions of scheduled crawls
+ * can be held cheaply.
+ * 
+ * @author sangupta
+ *
+ */
+public class ScheduledCrawl extends TimingWheel.Entry {
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	/**
+	 * The UTF-8 bytes of a plain URL, or the {@link CrawlableURL} to crawl
+	 */
+	private final Object target;
+	
+	/**
+	 * The priority to crawl with
+	 */
+	private final int priority;
+	
+	/**
+	 * The time in millis between two crawls, zero to crawl once
+	 */
+	private final long period;
+	
+	/**
+	 * Whether this crawl has been cancelled
+	 */
+	private volatile boolean cancelled;
+	
+	public ScheduledCrawl(String url, int priority, long notBefore, long period) {
+		super(notBefore);
+		
+		if(url == null || url.isEmpty()) {
+			throw new IllegalArgumentException("URL to be crawled cannot be null/empty");
+		}
+		
+		if(period < 0) {
+			throw new IllegalArgumentException("Period of a scheduled crawl cannot be negative.");
+		}
+		
+		this.target = url.getBytes(UTF_8);
+		this.priority = priority;
+		this.period = period;
+	}
+	
+	public ScheduledCrawl(CrawlableURL crawlableURL, int priority, long notBefore, long period) {
+		super(notBefore);
+		
+		if(crawlableURL == null) {
+			throw new IllegalArgumentException("CrawlableURL cannot be null");
+		}
+		
+		if(period < 0) {
+			throw new IllegalArgumentException("Period of a scheduled crawl cannot be negative.");
+		}
+		
+		this.target = crawlableURL;
+		this.priority = priority;
+		this.period = period;
+	}
+	
+	/**
+	 * Cancel this crawl, so that it is not queued any more. A crawl that has
+	 * already been queued is not affected.
+	 * 
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+	
+	/**
+	 * Check if this crawl is repeated.
+	 * 
+	 * @return <code>true</code> if this crawl has a period,
+	 *         <code>false</code> if it is crawled once
+	 */
+	public boolean isRecurring() {
+		return this.period > 0;
+	}
+	
+	/**
+	 * Return the attempt this crawl is of a URL that failed.
+	 * 
+	 * @return the attempt, zero if this crawl is not a retry
+	 */
+	public int getAttempt() {
+		return 0;
+	}
+	
+	/**
+	 * Check if this crawl holds a plain URL, rather than a
+	 * {@link CrawlableURL}.
+	 * 
+	 * @return <code>true</code> if created with a plain URL
+	 */
+	boolean isPlainURL() {
+		return this.target instanceof byte[];
+	}
+	
+	/**
+	 * Return the {@link CrawlableURL} this crawl was created with.
+	 * 
+	 * @return the {@link CrawlableURL}, or <code>null</code> for a plain URL
+	 */
+	public CrawlableURL getCrawlableURL() {
+		if(isPlainURL()) {
+			return null;
+		}
+		
+		return (CrawlableURL) this.target;
+	}
+	
+	/**
+	 * Return the URL to crawl.
+	 * 
+	 * @return the URL
+	 */
+	public String getURL() {
+		if(isPlainURL()) {
+			return new String((byte[]) this.target, UTF_8);
+		}
+		
+		return ((CrawlableURL) this.target).getURL();
+	}
+	
+	@Override
+	public String toString() {
+		return "[ScheduledCrawl: " + getURL() + ", priority: " + this.priority + ", period: " + this.period + "]";
+	}
+	
+	// Usual accessors follow
+
+	/**
+	 * @return the priority
+	 */
+	public int getPriority() {
+		return priority;
+	}
+
+	/**
+	 * @return the period
+	 */
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * @return the cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+}
@@ -0,0 +1,75 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.impl;
+
+import com.sangupta.amass.domain.CrawlableURL;
+
+/**
+ * A crawl of a URL that failed, to be attempted again when due. It carries
+ * the error of the failed attempt, so that the error can still be reported
+ * if the retry is dropped at shutdown.
+ * 
+ * @author sangupta
+ *
+ */
+public final class ScheduledRetry extends ScheduledCrawl {
+	
+	/**
+	 * The attempt this crawl is of the URL, two for the first retry
+	 */
+	private final int attempt;
+	
+	/**
+	 * The error the previous attempt failed with
+	 */
+	private final Throwable cause;
+	
+	ScheduledRetry(String url, int priority, long notBefore, int attempt, Throwable cause) {
+		super(url, priority, notBefore, 0);
+		
+		this.attempt = attempt;
+		this.cause = cause;
+	}
+	
+	ScheduledRetry(CrawlableURL crawlableURL, int priority, long notBefore, int attempt, Throwable cause) {
+		super(crawlableURL, priority, notBefore, 0);
+		
+		this.attempt = attempt;
+		this.cause = cause;
+	}
+	
+	@Override
+	public int getAttempt() {
+		return this.attempt;
+	}
+	
+	// Usual accessors follow
+
+	/**
+	 * @return the cause
+	 */
+	public Throwable getCause() {
+		return cause;
+	}
+
+}
@@ -0,0 +1,320 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A probabilistic set of the URLs that have already been crawled, that takes
+ * a few bytes per URL irrespective of the length of the URL.
+ * 
+ * The set is a scalable Bloom filter: it starts with a single filter sized
+ * for the expected number of URLs, and adds a filter of twice the size and
+ * half the false positive rate each time the last one is full. This keeps
+ * the overall false positive rate below twice the configured rate, however
+ * many URLs are added.
+ * 
+ * When an expiry is set, URLs are kept in two windows of filters. Every
+ * expiry period the older window is dropped and a new window is started, so
+ * a URL is forgotten, and may be crawled again, between one and two expiry
+ * periods after it was added.
+ * 
+ * The filter can be saved to and loaded from a file. It is not thread-safe.
+ * 
+ * @author sangupta
+ *
+ */
+public class SeenFilter {
+	
+	/**
+	 * Marks the start of a saved filter
+	 */
+	private static final int MAGIC = 0x414d5346;
+	
+	/**
+	 * The number of URLs the first filter of a window is sized for
+	 */
+	private final long expectedURLs;
+	
+	/**
+	 * The false positive rate of the first filter of a window
+	 */
+	private final double falsePositiveRate;
+	
+	/**
+	 * The time in millis after which URLs are forgotten, zero for never
+	 */
+	private final long expiry;
+	
+	/**
+	 * The filters of the current window, the last one being filled
+	 */
+	private List<BloomFilter> current = new ArrayList<BloomFilter>();
+	
+	/**
+	 * The filters of the previous window, empty when there is none
+	 */
+	private List<BloomFilter> previous = new ArrayList<BloomFilter>();
+	
+	/**
+	 * The time in millis at which the current window was started
+	 */
+	private long windowStart;
+	
+	/**
+	 * Create a new filter.
+	 * 
+	 * @param expectedURLs
+	 *            the number of URLs the first filter is sized for
+	 * 
+	 * @param falsePositiveRate
+	 *            the false positive rate of the first filter
+	 * 
+	 * @param expiry
+	 *            the time in millis after which URLs may be forgotten, zero
+	 *            to never forget them
+	 */
+	public SeenFilter(long expectedURLs, double falsePositiveRate, long expiry) {
+		if(expectedURLs < 1) {
+			throw new IllegalArgumentException("Expected number of URLs cannot be less than one.");
+		}
+		
+		if(falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("False positive rate must be between zero and one.");
+		}
+		
+		if(expiry < 0) {
+			throw new IllegalArgumentException("Expiry cannot be negative.");
+		}
+		
+		this.expectedURLs = expectedURLs;
+		this.falsePositiveRate = falsePositiveRate;
+		this.expiry = expiry;
+		
+		this.current.add(new BloomFilter(expectedURLs, falsePositiveRate));
+		this.windowStart = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Check if the given URL has been added to this filter.
+	 * 
+	 * @param url
+	 *            the URL to check
+	 * 
+	 * @return <code>false</code> if the URL was definitely not added, or has
+	 *         expired, <code>true</code> if it was probably added
+	 */
+	public boolean mightContain(String url) {
+		expireIfNeeded();
+		
+		final long hash = BloomFilter.hash(url);
+		return contains(this.current, hash) || contains(this.previous, hash);
+	}
+	
+	/**
+	 * Add the given URL to this filter.
+	 * 
+	 * @param url
+	 *            the URL to add
+	 */
+	public void add(String url) {
+		expireIfNeeded();
+		
+		final long hash = BloomFilter.hash(url);
+		if(contains(this.current, hash)) {
+			return;
+		}
+		
+		BloomFilter filter = this.current.get(this.current.size() - 1);
+		if(filter.isFull()) {
+			final int tightening = this.current.size();
+			filter = new BloomFilter(filter.getCapacity() * 2, this.falsePositiveRate / (1L << Math.min(tightening, 30)));
+			this.current.add(filter);
+		}
+		
+		filter.add(hash);
+	}
+	
+	/**
+	 * Return the approximate number of URLs held by this filter.
+	 * 
+	 * @return the number of URLs
+	 */
+	public long getCount() {
+		return count(this.current) + count(this.previous);
+	}
+	
+	/**
+	 * Return the number of bytes taken by the bits of this filter.
+	 * 
+	 * @return the size in bytes
+	 */
+	public long getSizeInBytes() {
+		long size = 0;
+		for(BloomFilter filter : this.current) {
+			size += filter.getSizeInBytes();
+		}
+		
+		for(BloomFilter filter : this.previous) {
+			size += filter.getSizeInBytes();
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Save this filter to the given file.
+	 * 
+	 * @param file
+	 *            the file to write to
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void save(File file) throws IOException {
+		final File temp = new File(file.getAbsolutePath() + ".tmp");
+		final FileOutputStream fileStream = new FileOutputStream(temp);
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream, 64 * 1024));
+		try {
+			out.writeInt(MAGIC);
+			out.writeLong(this.windowStart);
+			writeFilters(out, this.current);
+			writeFilters(out, this.previous);
+			out.flush();
+			fileStream.getFD().sync();
+		} finally {
+			out.close();
+		}
+		
+		if(file.exists() && !file.delete()) {
+			throw new IOException("Unable to replace seen filter: " + file.getAbsolutePath());
+		}
+		
+		if(!temp.renameTo(file)) {
+			throw new IOException("Unable to rename seen filter to: " + file.getAbsolutePath());
+		}
+	}
+	
+	/**
+	 * Load the URLs saved in the given file into this filter, replacing the
+	 * URLs held so far.
+	 * 
+	 * @param file
+	 *            the file to read from
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public void load(File file) throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+		try {
+			if(in.readInt() != MAGIC) {
+				throw new IOException("Not a seen filter file: " + file.getAbsolutePath());
+			}
+			
+			final long windowStart = in.readLong();
+			final List<BloomFilter> current = readFilters(in);
+			final List<BloomFilter> previous = readFilters(in);
+			if(current.isEmpty()) {
+				throw new IOException("No filters in seen filter file: " + file.getAbsolutePath());
+			}
+			
+			this.windowStart = windowStart;
+			this.current = current;
+			this.previous = previous;
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Start a new window if the current one is older than the expiry. If the
+	 * previous window is older than the expiry as well, both are dropped.
+	 */
+	private void expireIfNeeded() {
+		if(this.expiry == 0) {
+			return;
+		}
+		
+		final long now = System.currentTimeMillis();
+		final long age = now - this.windowStart;
+		if(age < this.expiry) {
+			return;
+		}
+		
+		if(age < 2 * this.expiry) {
+			this.previous = this.current;
+		} else {
+			this.previous = new ArrayList<BloomFilter>();
+		}
+		
+		this.current = new ArrayList<BloomFilter>();
+		this.current.add(new BloomFilter(this.expectedURLs, this.falsePositiveRate));
+		this.windowStart = now;
+	}
+	
+	private static boolean contains(List<BloomFilter> filters, long hash) {
+		for(int index = filters.size() - 1; index >= 0; index--) {
+			if(filters.get(index).mightContain(hash)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private static long count(List<BloomFilter> filters) {
+		long count = 0;
+		for(BloomFilter filter : filters) {
+			count += filter.getCount();
+		}
+		
+		return count;
+	}
+	
+	private static void writeFilters(DataOutputStream out, List<BloomFilter> filters) throws IOException {
+		out.writeInt(filters.size());
+		for(BloomFilter filter : filters) {
+			filter.writeTo(out);
+		}
+	}
+	
+	private static List<BloomFilter> readFilters(DataInputStream in) throws IOException {
+		final int size = in.readInt();
+		final List<BloomFilter> filters = new ArrayList<BloomFilter>(size);
+		for(int index = 0; index < size; index++) {
+			filters.add(BloomFilter.readFrom(in));
+		}
+		
+		return filters;
+	}
+
+}
@@ -0,0 +1,469 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sangupta.amass.domain.CrawlJob;
+import com.sangupta.amass.domain.CrawlableURL;
+import com.sangupta.amass.domain.DefaultCrawlableURL;
+
+/**
+ * A {@link JobStore} that keeps a bounded window of the highest priority jobs
+ * in memory, and spills the rest to segment files on local disk. This keeps
+ * the heap use flat irrespective of the number of pending jobs.
+ * 
+ * Jobs are kept in an in-memory {@link HeapJobStore}. When it grows beyond
+ * the configured size, its jobs are sorted, the top half is kept and the
+ * bottom half is written out as a sorted, append-only segment. Jobs are
+ * handed out by merging the in-memory heap with the heads of all segments,
+ * each of which is read sequentially through a buffered stream, front to
+ * back. A segment file is deleted as soon as it has been read fully. Once
+ * there are too many segments, they are merged into one.
+ * 
+ * Spilled jobs are forgotten from the URL index of the {@link CrawlingQueue},
+ * so that they take no memory at all. A URL submitted again while its job is
+ * on disk gets a new job, which the {@link CrawlingQueue} merges with the
+ * spilled one when the latter is read back. If the new job gets crawled
+ * first, the spilled one is crawled again when read back, the same as a URL
+ * submitted again after it was crawled. The priority of a spilled job is
+ * fixed till it is read back.
+ * 
+ * Only jobs backed by a {@link DefaultCrawlableURL}, or by a
+ * {@link Serializable} {@link CrawlableURL}, are spilled; others always stay
+ * in memory.
+ * 
+ * @author sangupta
+ *
+ */
+public class SpillingJobStore implements JobStore {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(SpillingJobStore.class);
+	
+	/**
+	 * The default number of jobs kept in memory
+	 */
+	public static final int DEFAULT_MAX_IN_MEMORY = 1000000;
+	
+	/**
+	 * The number of segments beyond which all segments are merged into one
+	 */
+	private static final int MAX_SEGMENTS = 64;
+	
+	/**
+	 * The size of the buffer used to read or write each segment
+	 */
+	private static final int IO_BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * Orders segments by the job at their head
+	 */
+	private static final Comparator<Segment> HEAD_COMPARATOR = new Comparator<Segment>() {
+
+		@Override
+		public int compare(Segment segment1, Segment segment2) {
+			return segment1.head.compareTo(segment2.head);
+		}
+		
+	};
+	
+	/**
+	 * The jobs held in memory
+	 */
+	private final HeapJobStore hot = new HeapJobStore();
+	
+	/**
+	 * The segments on disk that still have jobs, ordered by their head
+	 */
+	private final PriorityQueue<Segment> segments = new PriorityQueue<Segment>(16, HEAD_COMPARATOR);
+	
+	/**
+	 * The directory in which the segment files are created
+	 */
+	private final File directory;
+	
+	/**
+	 * The maximum number of jobs in memory before spilling
+	 */
+	private final int maxInMemory;
+	
+	/**
+	 * The URL index of the owning {@link CrawlingQueue}, from which spilled
+	 * jobs are removed
+	 */
+	private final ConcurrentMap<CrawlJob, CrawlJob> index;
+	
+	/**
+	 * The number of jobs on disk
+	 */
+	private long spilled;
+	
+	/**
+	 * Create a new store.
+	 * 
+	 * @param directory
+	 *            the directory to create the segment files in
+	 * 
+	 * @param maxInMemory
+	 *            the maximum number of jobs to keep in memory
+	 * 
+	 * @param index
+	 *            the map of queued jobs, each keyed by itself, maintained by
+	 *            the owning {@link CrawlingQueue}
+	 */
+	public SpillingJobStore(File directory, int maxInMemory, ConcurrentMap<CrawlJob, CrawlJob> index) {
+		if(directory == null) {
+			throw new IllegalArgumentException("Spill directory cannot be null");
+		}
+		
+		if(maxInMemory < 2) {
+			throw new IllegalArgumentException("Maximum in-memory jobs cannot be less than two.");
+		}
+		
+		if(index == null) {
+			throw new IllegalArgumentException("Job index cannot be null");
+		}
+		
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("Unable to create spill directory: " + directory.getAbsolutePath());
+		}
+		
+		this.directory = directory;
+		this.maxInMemory = maxInMemory;
+		this.index = index;
+	}
+
+	@Override
+	public void offer(CrawlJob job) {
+		this.hot.offer(job);
+		spillIfNeeded();
+	}
+
+	@Override
+	public void offerAll(List<CrawlJob> jobs) {
+		this.hot.offerAll(jobs);
+		spillIfNeeded();
+	}
+
+	@Override
+	public CrawlJob poll() {
+		final Segment segment = this.segments.peek();
+		if(segment == null) {
+			return this.hot.poll();
+		}
+		
+		final CrawlJob inMemory = this.hot.peek();
+		if(inMemory != null && inMemory.compareTo(segment.head) <= 0) {
+			return this.hot.poll();
+		}
+		
+		// the next job is on disk
+		this.segments.poll();
+		final CrawlJob job = segment.head;
+		this.spilled--;
+		
+		try {
+			if(segment.advance()) {
+				this.segments.offer(segment);
+			}
+		} catch(IOException e) {
+			throw new IllegalStateException("Unable to read spilled jobs from: " + segment.file.getAbsolutePath(), e);
+		}
+		
+		return job;
+	}
+	
+	/**
+	 * Not supported, as jobs on disk cannot be evicted.
+	 * 
+	 */
+	@Override
+	public CrawlJob peekLowest() {
+		throw new UnsupportedOperationException("Jobs cannot be evicted from a spilling job store");
+	}
+	
+	@Override
+	public boolean remove(CrawlJob job) {
+		return this.hot.remove(job);
+	}
+
+	@Override
+	public long getDelayNanos() {
+		if(isEmpty()) {
+			return Long.MAX_VALUE;
+		}
+		
+		return 0;
+	}
+
+	@Override
+	public void completed(CrawlJob job) {
+		// nothing to do
+	}
+
+	@Override
+	public void priorityChanged(CrawlJob job) {
+		// only jobs in memory are known to the index
+		this.hot.priorityChanged(job);
+	}
+
+	@Override
+	public int size() {
+		final long size = this.hot.size() + this.spilled;
+		if(size > Integer.MAX_VALUE) {
+			return Integer.MAX_VALUE;
+		}
+		
+		return (int) size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.hot.isEmpty() && this.spilled == 0;
+	}
+
+	@Override
+	public void clear() {
+		this.hot.clear();
+		
+		Segment segment;
+		while((segment = this.segments.poll()) != null) {
+			segment.close();
+		}
+		
+		this.spilled = 0;
+	}
+	
+	/**
+	 * Return the number of jobs that are on disk.
+	 * 
+	 * @return the number of spilled jobs
+	 */
+	public long getNumSpilled() {
+		return this.spilled;
+	}
+	
+	/**
+	 * Return the number of segment files that still hold jobs.
+	 * 
+	 * @return the number of segments
+	 */
+	public int getNumSegments() {
+		return this.segments.size();
+	}
+	
+	/**
+	 * Spill the lower half of the jobs in memory to a new segment, if there are
+	 * more jobs in memory than allowed.
+	 */
+	private void spillIfNeeded() {
+		if(this.hot.size() <= this.maxInMemory) {
+			return;
+		}
+		
+		final int keep = this.maxInMemory >>> 1;
+		final List<CrawlJob> kept = new ArrayList<CrawlJob>(keep);
+		final List<CrawlJob> toSpill = new ArrayList<CrawlJob>(this.hot.size() - keep);
+		
+		CrawlJob job;
+		while((job = this.hot.poll()) != null) {
+			if(kept.size() < keep || !JobCodec.isSerializable(job)) {
+				kept.add(job);
+			} else {
+				toSpill.add(job);
+			}
+		}
+		
+		this.hot.offerAll(kept);
+		if(toSpill.isEmpty()) {
+			return;
+		}
+		
+		try {
+			final File file = newSegmentFile();
+			final DataOutputStream out = openForWrite(file);
+			try {
+				out.writeLong(toSpill.size());
+				for(CrawlJob spill : toSpill) {
+					JobCodec.writeJob(out, spill);
+				}
+			} finally {
+				out.close();
+			}
+			
+			addSegment(file);
+		} catch(IOException e) {
+			throw new IllegalStateException("Unable to spill jobs to: " + this.directory.getAbsolutePath(), e);
+		}
+		
+		for(CrawlJob spill : toSpill) {
+			this.index.remove(spill, spill);
+		}
+		
+		this.spilled += toSpill.size();
+		LOGGER.debug("Spilled {} jobs to disk, {} jobs on disk now", toSpill.size(), this.spilled);
+		
+		if(this.segments.size() > MAX_SEGMENTS) {
+			compact();
+		}
+	}
+	
+	/**
+	 * Merge all segments into a single one, so that the number of open files
+	 * and read buffers stays bounded.
+	 */
+	private void compact() {
+		long total = 0;
+		for(Segment segment : this.segments) {
+			total += segment.remaining + 1;
+		}
+		
+		try {
+			final File file = newSegmentFile();
+			final DataOutputStream out = openForWrite(file);
+			try {
+				out.writeLong(total);
+				
+				Segment segment;
+				while((segment = this.segments.poll()) != null) {
+					JobCodec.writeJob(out, segment.head);
+					if(segment.advance()) {
+						this.segments.offer(segment);
+					}
+				}
+			} finally {
+				out.close();
+			}
+			
+			addSegment(file);
+		} catch(IOException e) {
+			throw new IllegalStateException("Unable to merge spilled jobs in: " + this.directory.getAbsolutePath(), e);
+		}
+		
+		LOGGER.debug("Merged all segments into one with {} jobs", total);
+	}
+	
+	/**
+	 * Open the given segment file for reading and add it to the merge.
+	 * 
+	 * @param file
+	 *            the segment file
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	private void addSegment(File file) throws IOException {
+		final Segment segment = new Segment(file);
+		if(segment.advance()) {
+			this.segments.offer(segment);
+		}
+	}
+	
+	private File newSegmentFile() throws IOException {
+		return File.createTempFile("amass-", ".segment", this.directory);
+	}
+	
+	private static DataOutputStream openForWrite(File file) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE));
+	}
+	
+	/**
+	 * A sorted run of jobs on disk, read sequentially.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	private static class Segment {
+		
+		final File file;
+		
+		final DataInputStream in;
+		
+		/**
+		 * The number of records yet to be read
+		 */
+		long remaining;
+		
+		/**
+		 * The next job of this segment
+		 */
+		CrawlJob head;
+		
+		Segment(File file) throws IOException {
+			this.file = file;
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), IO_BUFFER_SIZE));
+			this.remaining = this.in.readLong();
+		}
+		
+		/**
+		 * Read the next job into the head. The segment is closed and its file
+		 * deleted once all jobs have been read.
+		 * 
+		 * @return <code>true</code> if a job was read, <code>false</code> if
+		 *         the segment is exhausted
+		 * 
+		 * @throws IOException
+		 *             if reading fails
+		 */
+		boolean advance() throws IOException {
+			if(this.remaining == 0) {
+				this.head = null;
+				close();
+				return false;
+			}
+			
+			this.head = JobCodec.readJob(this.in);
+			this.remaining--;
+			return true;
+		}
+		
+		void close() {
+			try {
+				this.in.close();
+			} catch(IOException e) {
+				// eat up
+			}
+			
+			if(!this.file.delete()) {
+				LOGGER.warn("Unable to delete segment file: {}", this.file.getAbsolutePath());
+			}
+		}
+		
+	}
+
+}
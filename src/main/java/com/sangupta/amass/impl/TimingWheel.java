@@ -0,0 +1,286 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel that holds entries till their deadline, and
+ * hands them out in O(1) per tick.
+ * 
+ * Time is cut into ticks of a fixed number of millis. The wheel has four
+ * levels of 256 slots each: level zero has one slot per tick, and each slot
+ * of a level spans all of the slots of the level below it. An entry goes into
+ * the lowest level that can hold its deadline, so that adding it takes
+ * constant time. When the slots of a level wrap around, the entries of the
+ * next slot of the level above are moved down, closer to their deadline. The
+ * four levels cover 2<sup>32</sup> ticks, more than thirteen years at a tick
+ * of 100 millis; entries due later are parked in the last slot and placed
+ * again when it comes around.
+ * 
+ * Entries are chained through a field of their own, so that the wheel does
+ * not allocate anything per entry. This class is not thread-safe.
+ * 
+ * @author sangupta
+ *
+ */
+public class TimingWheel<E extends TimingWheel.Entry> {
+	
+	private static final int SLOT_BITS = 8;
+	
+	private static final int SLOTS = 1 << SLOT_BITS;
+	
+	private static final int SLOT_MASK = SLOTS - 1;
+	
+	private static final int LEVELS = 4;
+	
+	/**
+	 * The farthest an entry can be placed from the current tick
+	 */
+	private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+	
+	/**
+	 * The millis in one tick
+	 */
+	private final long tickMillis;
+	
+	/**
+	 * The time in millis at which tick zero started
+	 */
+	private final long startMillis;
+	
+	/**
+	 * The heads of the lists of entries, {@link #SLOTS} per level
+	 */
+	private final Entry[] slots = new Entry[LEVELS * SLOTS];
+	
+	/**
+	 * The last tick that has been handed out
+	 */
+	private long currentTick;
+	
+	/**
+	 * The number of entries in the wheel
+	 */
+	private int size;
+	
+	/**
+	 * Create a new wheel.
+	 * 
+	 * @param tickMillis
+	 *            the millis in one tick
+	 * 
+	 * @param startMillis
+	 *            the time in millis from which the ticks are counted
+	 */
+	public TimingWheel(long tickMillis, long startMillis) {
+		if(tickMillis <= 0) {
+			throw new IllegalArgumentException("Tick of the timing wheel must be positive.");
+		}
+		
+		this.tickMillis = tickMillis;
+		this.startMillis = startMillis;
+	}
+	
+	/**
+	 * Add an entry to the wheel. An entry whose deadline has passed is handed
+	 * out on the next tick.
+	 * 
+	 * @param entry
+	 *            the entry to add, which must not be in any wheel
+	 */
+	public void add(E entry) {
+		if(entry == null) {
+			throw new IllegalArgumentException("Entry cannot be null");
+		}
+		
+		place(entry, Math.max(tickOf(entry.deadline), this.currentTick + 1));
+		this.size++;
+	}
+	
+	/**
+	 * Move the wheel to the given time, and collect the entries whose
+	 * deadline has been reached.
+	 * 
+	 * @param nowMillis
+	 *            the current time in millis
+	 * 
+	 * @param due
+	 *            the list to add the due entries to
+	 */
+	@SuppressWarnings("unchecked")
+	public void advance(long nowMillis, List<E> due) {
+		final long target = (nowMillis - this.startMillis) / this.tickMillis;
+		
+		while(this.currentTick < target) {
+			if(this.size == 0) {
+				this.currentTick = target;
+				return;
+			}
+			
+			this.currentTick++;
+			
+			// move entries down from the levels above whose lower level has wrapped
+			for(int level = 1; level < LEVELS; level++) {
+				if(((this.currentTick >>> (SLOT_BITS * (level - 1))) & SLOT_MASK) != 0) {
+					break;
+				}
+				
+				cascade(level, (List<Entry>) due);
+			}
+			
+			final int index = (int) (this.currentTick & SLOT_MASK);
+			Entry entry = this.slots[index];
+			this.slots[index] = null;
+			while(entry != null) {
+				final Entry next = entry.next;
+				entry.next = null;
+				due.add((E) entry);
+				this.size--;
+				entry = next;
+			}
+		}
+	}
+	
+	/**
+	 * Remove all entries from the wheel, and collect them whatever their
+	 * deadline.
+	 * 
+	 * @param entries
+	 *            the list to add the removed entries to
+	 */
+	@SuppressWarnings("unchecked")
+	public void drainTo(List<E> entries) {
+		for(int index = 0; index < this.slots.length; index++) {
+			Entry entry = this.slots[index];
+			this.slots[index] = null;
+			while(entry != null) {
+				final Entry next = entry.next;
+				entry.next = null;
+				entries.add((E) entry);
+				entry = next;
+			}
+		}
+		
+		this.size = 0;
+	}
+	
+	/**
+	 * Remove all entries from the wheel.
+	 */
+	public void clear() {
+		Arrays.fill(this.slots, null);
+		this.size = 0;
+	}
+	
+	/**
+	 * Return the number of entries in the wheel.
+	 * 
+	 * @return the number of entries
+	 */
+	public int size() {
+		return this.size;
+	}
+	
+	/**
+	 * Place the entries of the current slot of the given level into the
+	 * lower levels, or into the due list if their tick has come.
+	 */
+	private void cascade(int level, List<Entry> due) {
+		final int index = level * SLOTS + (int) ((this.currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+		Entry entry = this.slots[index];
+		this.slots[index] = null;
+		while(entry != null) {
+			final Entry next = entry.next;
+			entry.next = null;
+			
+			final long tick = tickOf(entry.deadline);
+			if(tick <= this.currentTick) {
+				due.add(entry);
+				this.size--;
+			} else {
+				place(entry, tick);
+			}
+			
+			entry = next;
+		}
+	}
+	
+	/**
+	 * Put the entry into the slot for the given tick, which is after the
+	 * current one.
+	 */
+	private void place(Entry entry, long tick) {
+		long delta = tick - this.currentTick;
+		if(delta > MAX_DELTA) {
+			delta = MAX_DELTA;
+			tick = this.currentTick + MAX_DELTA;
+		}
+		
+		int level = 0;
+		while(delta >= (1L << (SLOT_BITS * (level + 1)))) {
+			level++;
+		}
+		
+		final int index = level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+		entry.next = this.slots[index];
+		this.slots[index] = entry;
+	}
+	
+	/**
+	 * Return the first tick at or after the given time.
+	 */
+	private long tickOf(long millis) {
+		final long elapsed = millis - this.startMillis;
+		if(elapsed <= 0) {
+			return 0;
+		}
+		
+		return elapsed / this.tickMillis + (elapsed % this.tickMillis == 0 ? 0 : 1);
+	}
+	
+	/**
+	 * An entry of a {@link TimingWheel}.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	public static abstract class Entry {
+		
+		/**
+		 * The time in millis at which this entry is due
+		 */
+		long deadline;
+		
+		/**
+		 * The next entry in the same slot
+		 */
+		Entry next;
+		
+		protected Entry(long deadline) {
+			this.deadline = deadline;
+		}
+		
+	}
+
+}
@@ -0,0 +1,474 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.sangupta.amass.domain.Validators;
+
+/**
+ * Remembers the {@link Validators} of each URL crawled, so that a crawl
+ * again can ask the server to send the body only if it has changed, using
+ * <code>If-None-Match</code> and <code>If-Modified-Since</code>. Servers that
+ * send neither <code>ETag</code> nor <code>Last-Modified</code> still have
+ * the hash of the body kept, to tell an unchanged page once it has been
+ * downloaded again.
+ * 
+ * Only the URLs that have something to revalidate with are kept. As with the
+ * {@link SeenFilter}, a URL is keyed by a 64-bit hash rather than by itself,
+ * and its validators are packed into a single byte array, so that millions
+ * of URLs can be remembered cheaply. Once the store holds the maximum number
+ * of URLs, arbitrary ones are forgotten till it is three-quarters full; such
+ * URLs are simply crawled in full the next time.
+ * 
+ * The store can be saved to a file and loaded back, so that it lasts across
+ * runs.
+ * 
+ * @author sangupta
+ *
+ */
+public class ValidatorStore {
+	
+	/**
+	 * The status code of a response to a conditional request whose body has
+	 * not changed
+	 */
+	public static final int HTTP_NOT_MODIFIED = 304;
+	
+	/**
+	 * Default maximum number of URLs remembered
+	 */
+	public static final int DEFAULT_MAX_URLS = 10000000;
+	
+	/**
+	 * The magic of validator store files
+	 */
+	private static final int MAGIC = 0x414d5648;
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Flag of a packed entry that has an <code>ETag</code>
+	 */
+	private static final int HAS_ETAG = 1;
+	
+	/**
+	 * Flag of a packed entry that has a <code>Last-Modified</code>
+	 */
+	private static final int HAS_LAST_MODIFIED = 2;
+	
+	/**
+	 * The longest header value kept, beyond which a header is ignored
+	 */
+	private static final int MAX_HEADER_LENGTH = 0xffff;
+	
+	/**
+	 * The maximum number of URLs remembered
+	 */
+	private final int maxURLs;
+	
+	/**
+	 * The packed validators by the hash of the URL
+	 */
+	private final ConcurrentMap<Long, byte[]> validators = new ConcurrentHashMap<Long, byte[]>();
+	
+	/**
+	 * Whether a purge of the {@link #validators} is in progress
+	 */
+	private final AtomicBoolean purging = new AtomicBoolean(false);
+	
+	/**
+	 * Create a new store that remembers up to {@link #DEFAULT_MAX_URLS}.
+	 */
+	public ValidatorStore() {
+		this(DEFAULT_MAX_URLS);
+	}
+	
+	/**
+	 * Create a new store.
+	 * 
+	 * @param maxURLs
+	 *            the maximum number of URLs remembered
+	 */
+	public ValidatorStore(int maxURLs) {
+		if(maxURLs < 1) {
+			throw new IllegalArgumentException("Maximum number of URLs cannot be less than one.");
+		}
+		
+		this.maxURLs = maxURLs;
+	}
+	
+	/**
+	 * Return the validators of the given URL.
+	 * 
+	 * @param url
+	 *            the URL to look up
+	 * 
+	 * @return the validators, or <code>null</code> if none are known
+	 */
+	public Validators get(String url) {
+		return unpack(this.validators.get(keyOf(url)));
+	}
+	
+	/**
+	 * Record the response to a crawl of the given URL, and tell if its body
+	 * is the same as when last crawled. A <code>304 Not Modified</code>
+	 * response is unchanged; so is a successful one whose body hashes the
+	 * same as before. The validators of any other response are left alone.
+	 * 
+	 * @param url
+	 *            the URL crawled
+	 * 
+	 * @param responseCode
+	 *            the HTTP status code of the response
+	 * 
+	 * @param headers
+	 *            the headers of the response, if any
+	 * 
+	 * @param contentHash
+	 *            the hash of the body as per {@link #hash(byte[])}, zero if
+	 *            not known
+	 * 
+	 * @return <code>true</code> if the body has not changed since the last
+	 *         crawl, <code>false</code> otherwise
+	 */
+	public boolean record(String url, int responseCode, Map<String, String> headers, long contentHash) {
+		final String eTag = header(headers, "ETag");
+		final String lastModified = header(headers, "Last-Modified");
+		final Long key = keyOf(url);
+		
+		if(responseCode == HTTP_NOT_MODIFIED) {
+			// the server may send newer validators along
+			final Validators previous = unpack(this.validators.get(key));
+			if(previous != null && (eTag != null || lastModified != null)) {
+				this.validators.put(key, pack(eTag != null ? eTag : previous.getETag(), lastModified != null ? lastModified : previous.getLastModified(), previous.getContentHash()));
+			}
+			
+			return true;
+		}
+		
+		if(responseCode < 200 || responseCode >= 300) {
+			return false;
+		}
+		
+		final byte[] previous;
+		if(eTag == null && lastModified == null && contentHash == 0) {
+			previous = this.validators.remove(key);
+		} else {
+			if(this.validators.size() >= this.maxURLs) {
+				purge();
+			}
+			
+			previous = this.validators.put(key, pack(eTag, lastModified, contentHash));
+		}
+		
+		return previous != null && contentHash != 0 && contentHashOf(previous) == contentHash;
+	}
+	
+	/**
+	 * Forget the validators of the given URL, so that it is crawled in full
+	 * the next time.
+	 * 
+	 * @param url
+	 *            the URL to forget
+	 */
+	public void remove(String url) {
+		this.validators.remove(keyOf(url));
+	}
+	
+	/**
+	 * Forget the validators of all URLs.
+	 */
+	public void clear() {
+		this.validators.clear();
+	}
+	
+	/**
+	 * @return the number of URLs with validators
+	 */
+	public int size() {
+		return this.validators.size();
+	}
+	
+	/**
+	 * Compute a 64-bit hash of the given body, never zero.
+	 * 
+	 * @param bytes
+	 *            the body
+	 * 
+	 * @return the hash
+	 */
+	public static long hash(byte[] bytes) {
+		long hash = 0xcbf29ce484222325L;
+		for(int index = 0; index < bytes.length; index++) {
+			hash ^= bytes[index] & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		
+		// zero stands for an unknown hash
+		return hash == 0 ? 1 : hash;
+	}
+	
+	/**
+	 * Save this store to the given file.
+	 * 
+	 * @param file
+	 *            the file to write to
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void save(File file) throws IOException {
+		final File temp = new File(file.getAbsolutePath() + ".tmp");
+		final FileOutputStream fileStream = new FileOutputStream(temp);
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream, 64 * 1024));
+		try {
+			out.writeInt(MAGIC);
+			
+			// entries are marked one by one, as the map may change while
+			// being written
+			for(Entry<Long, byte[]> entry : this.validators.entrySet()) {
+				final byte[] packed = entry.getValue();
+				out.writeBoolean(true);
+				out.writeLong(entry.getKey().longValue());
+				out.writeInt(packed.length);
+				out.write(packed);
+			}
+			
+			out.writeBoolean(false);
+			out.flush();
+			fileStream.getFD().sync();
+		} finally {
+			out.close();
+		}
+		
+		if(file.exists() && !file.delete()) {
+			throw new IOException("Unable to replace validator store: " + file.getAbsolutePath());
+		}
+		
+		if(!temp.renameTo(file)) {
+			throw new IOException("Unable to rename validator store to: " + file.getAbsolutePath());
+		}
+	}
+	
+	/**
+	 * Load the validators saved in the given file into this store, replacing
+	 * the ones held so far.
+	 * 
+	 * @param file
+	 *            the file to read from
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public void load(File file) throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+		try {
+			final int magic = in.readInt();
+			if(magic != MAGIC) {
+				throw new IOException("Not a validator store file: " + file.getAbsolutePath());
+			}
+			
+			this.validators.clear();
+			while(in.readBoolean()) {
+				final Long key = Long.valueOf(in.readLong());
+				final int length = in.readInt();
+				if(length < 9) {
+					throw new IOException("Corrupt validator store file: " + file.getAbsolutePath());
+				}
+				
+				final byte[] packed = new byte[length];
+				in.readFully(packed);
+				
+				if(this.validators.size() >= this.maxURLs) {
+					purge();
+				}
+				
+				this.validators.put(key, packed);
+			}
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Return the key of the given URL.
+	 */
+	private static Long keyOf(String url) {
+		return Long.valueOf(BloomFilter.hash(url));
+	}
+	
+	/**
+	 * Pack the given validators into a byte array: a byte of flags, the hash
+	 * of the body, the length and UTF-8 bytes of the <code>ETag</code> if
+	 * any, and the UTF-8 bytes of the <code>Last-Modified</code> if any.
+	 * Header values too long to be kept are left out.
+	 */
+	static byte[] pack(String eTag, String lastModified, long contentHash) {
+		byte[] eTagBytes = eTag == null ? null : eTag.getBytes(UTF_8);
+		if(eTagBytes != null && eTagBytes.length > MAX_HEADER_LENGTH) {
+			eTagBytes = null;
+		}
+		
+		byte[] lastModifiedBytes = lastModified == null ? null : lastModified.getBytes(UTF_8);
+		if(lastModifiedBytes != null && lastModifiedBytes.length > MAX_HEADER_LENGTH) {
+			lastModifiedBytes = null;
+		}
+		
+		int length = 9;
+		int flags = 0;
+		if(eTagBytes != null) {
+			length += 2 + eTagBytes.length;
+			flags |= HAS_ETAG;
+		}
+		
+		if(lastModifiedBytes != null) {
+			length += lastModifiedBytes.length;
+			flags |= HAS_LAST_MODIFIED;
+		}
+		
+		final byte[] packed = new byte[length];
+		packed[0] = (byte) flags;
+		for(int index = 0; index < 8; index++) {
+			packed[1 + index] = (byte) (contentHash >>> (56 - 8 * index));
+		}
+		
+		int offset = 9;
+		if(eTagBytes != null) {
+			packed[offset++] = (byte) (eTagBytes.length >>> 8);
+			packed[offset++] = (byte) eTagBytes.length;
+			System.arraycopy(eTagBytes, 0, packed, offset, eTagBytes.length);
+			offset += eTagBytes.length;
+		}
+		
+		if(lastModifiedBytes != null) {
+			System.arraycopy(lastModifiedBytes, 0, packed, offset, lastModifiedBytes.length);
+		}
+		
+		return packed;
+	}
+	
+	/**
+	 * Unpack the validators packed by {@link #pack(String, String, long)}.
+	 */
+	static Validators unpack(byte[] packed) {
+		if(packed == null) {
+			return null;
+		}
+		
+		final int flags = packed[0];
+		int offset = 9;
+		String eTag = null;
+		if((flags & HAS_ETAG) != 0) {
+			final int length = ((packed[offset] & 0xff) << 8) | (packed[offset + 1] & 0xff);
+			eTag = new String(packed, offset + 2, length, UTF_8);
+			offset += 2 + length;
+		}
+		
+		String lastModified = null;
+		if((flags & HAS_LAST_MODIFIED) != 0) {
+			lastModified = new String(packed, offset, packed.length - offset, UTF_8);
+		}
+		
+		return new Validators(eTag, lastModified, contentHashOf(packed));
+	}
+	
+	/**
+	 * Return the hash of the body from the given packed validators.
+	 */
+	private static long contentHashOf(byte[] packed) {
+		long contentHash = 0;
+		for(int index = 1; index < 9; index++) {
+			contentHash = (contentHash << 8) | (packed[index] & 0xff);
+		}
+		
+		return contentHash;
+	}
+	
+	/**
+	 * Remove arbitrary URLs till the store is three-quarters full.
+	 */
+	private void purge() {
+		if(!this.purging.compareAndSet(false, true)) {
+			return;
+		}
+		
+		try {
+			final int target = this.maxURLs - this.maxURLs / 4;
+			final Iterator<byte[]> iterator = this.validators.values().iterator();
+			while(this.validators.size() > target && iterator.hasNext()) {
+				iterator.next();
+				iterator.remove();
+			}
+		} finally {
+			this.purging.set(false);
+		}
+	}
+	
+	/**
+	 * Return the value of the given header, matching its name in a
+	 * case-insensitive manner.
+	 */
+	private static String header(Map<String, String> headers, String name) {
+		if(headers == null) {
+			return null;
+		}
+		
+		final String value = headers.get(name);
+		if(value != null) {
+			return value;
+		}
+		
+		for(Entry<String, String> entry : headers.entrySet()) {
+			if(name.equalsIgnoreCase(entry.getKey())) {
+				return entry.getValue();
+			}
+		}
+		
+		return null;
+	}
+	
+	// Usual accessors follow
+
+	/**
+	 * @return the maxURLs
+	 */
+	public int getMaxURLs() {
+		return maxURLs;
+	}
+
+}
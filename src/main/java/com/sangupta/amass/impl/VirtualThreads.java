@@ -0,0 +1,131 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.lang.reflect.Method;
+
+/**
+ * Utility functions to create virtual threads when running on a JVM that
+ * supports them. The library is compiled for older JVMs as well, and thus
+ * the virtual thread API is accessed via reflection. Java 19 and 20 have the
+ * API as a preview only, and are thus not considered to support it.
+ * 
+ * @author sangupta
+ *
+ */
+public class VirtualThreads {
+	
+	/**
+	 * <code>Thread.ofVirtual()</code>, or <code>null</code> if not supported
+	 */
+	private static final Method OF_VIRTUAL;
+	
+	/**
+	 * <code>Thread.Builder.name(String)</code>
+	 */
+	private static final Method BUILDER_NAME;
+	
+	/**
+	 * <code>Thread.Builder.unstarted(Runnable)</code>
+	 */
+	private static final Method BUILDER_UNSTARTED;
+	
+	static {
+		Method ofVirtual = null;
+		Method builderName = null;
+		Method builderUnstarted = null;
+		
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			builderName = builderClass.getMethod("name", String.class);
+			builderUnstarted = builderClass.getMethod("unstarted", Runnable.class);
+			
+			final Object version = Runtime.class.getMethod("version").invoke(null);
+			final int feature = ((Integer) version.getClass().getMethod("feature").invoke(version)).intValue();
+			if(feature < 21) {
+				ofVirtual = null;
+			} else {
+				// make sure one can be created
+				builderUnstarted.invoke(ofVirtual.invoke(null), new Runnable() {
+					
+					@Override
+					public void run() {
+						// nothing to do
+					}
+					
+				});
+			}
+		} catch(Exception e) {
+			// virtual threads are not supported
+			ofVirtual = null;
+		}
+		
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = builderName;
+		BUILDER_UNSTARTED = builderUnstarted;
+	}
+	
+	private VirtualThreads() {
+		// utility class
+	}
+	
+	/**
+	 * Check if the running JVM supports virtual threads.
+	 * 
+	 * @return <code>true</code> if virtual threads can be created,
+	 *         <code>false</code> otherwise
+	 */
+	public static boolean isSupported() {
+		return OF_VIRTUAL != null;
+	}
+	
+	/**
+	 * Create a new virtual thread that is not yet started.
+	 * 
+	 * @param name
+	 *            the name of the thread
+	 * 
+	 * @param runnable
+	 *            the task to run in the thread
+	 * 
+	 * @return the unstarted virtual {@link Thread}
+	 * 
+	 * @throws IllegalStateException
+	 *             if the JVM does not support virtual threads
+	 */
+	public static Thread newThread(String name, Runnable runnable) {
+		if(!isSupported()) {
+			throw new IllegalStateException("Virtual threads are not supported by this JVM, use Java 21 or later.");
+		}
+		
+		try {
+			Object builder = OF_VIRTUAL.invoke(null);
+			builder = BUILDER_NAME.invoke(builder, name);
+			return (Thread) BUILDER_UNSTARTED.invoke(builder, runnable);
+		} catch(Exception e) {
+			throw new IllegalStateException("Unable to create virtual thread", e);
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link BloomFilter}.
+ * 
+ * @author sangupta
+ *
+ */
+public class BloomFilterTest {
+	
+	private final long seed = System.nanoTime();
+	
+	private final Random random = new Random(this.seed);
+	
+	@Test
+	public void testNoFalseNegatives() {
+		final BloomFilter filter = new BloomFilter(100000, 0.01);
+		final long[] hashes = new long[100000];
+		for(int index = 0; index < hashes.length; index++) {
+			hashes[index] = this.random.nextLong();
+			filter.add(hashes[index]);
+		}
+		
+		for(long hash : hashes) {
+			if(!filter.mightContain(hash)) {
+				Assert.fail("False negative for " + hash + ", seed " + this.seed);
+			}
+		}
+		
+		Assert.assertEquals(hashes.length, filter.getCount());
+		Assert.assertTrue(filter.isFull());
+	}
+	
+	@Test
+	public void testFalsePositiveRate() {
+		for(double rate : new double[] { 0.1, 0.01, 0.001 }) {
+			final BloomFilter filter = new BloomFilter(100000, rate);
+			for(int index = 0; index < 100000; index++) {
+				filter.add(BloomFilter.hash("http://host/" + index));
+			}
+			
+			final double measured = falsePositiveRate(filter, 100000);
+			if(measured > rate * 1.5 || measured < rate / 2) {
+				Assert.fail("False positive rate " + measured + " when sized for " + rate + ", seed " + this.seed);
+			}
+		}
+	}
+	
+	@Test
+	public void testIsFull() {
+		final BloomFilter filter = new BloomFilter(10, 0.01);
+		for(int index = 0; index < 9; index++) {
+			filter.add(this.random.nextLong());
+			Assert.assertFalse(filter.isFull());
+		}
+		
+		filter.add(this.random.nextLong());
+		Assert.assertTrue(filter.isFull());
+		Assert.assertEquals(10, filter.getCapacity());
+	}
+	
+	@Test
+	public void testWriteAndRead() throws IOException {
+		final BloomFilter filter = new BloomFilter(1000, 0.01);
+		for(int index = 0; index < 500; index++) {
+			filter.add(BloomFilter.hash("http://host/" + index));
+		}
+		
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		filter.writeTo(out);
+		out.close();
+		
+		final BloomFilter read = BloomFilter.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		Assert.assertEquals(filter.getCapacity(), read.getCapacity());
+		Assert.assertEquals(filter.getCount(), read.getCount());
+		Assert.assertEquals(filter.getSizeInBytes(), read.getSizeInBytes());
+		for(int index = 0; index < 2000; index++) {
+			final long hash = BloomFilter.hash("http://host/" + index);
+			Assert.assertEquals(filter.mightContain(hash), read.mightContain(hash));
+		}
+	}
+	
+	/**
+	 * Measure the false positive rate of the given filter over the given
+	 * number of hashes not added to it.
+	 */
+	private double falsePositiveRate(BloomFilter filter, int samples) {
+		int positives = 0;
+		for(int index = 0; index < samples; index++) {
+			if(filter.mightContain(BloomFilter.hash("http://other/" + this.random.nextLong()))) {
+				positives++;
+			}
+		}
+		
+		return (double) positives / samples;
+	}
+
+}
@@ -0,0 +1,81 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link CachingDnsResolver}.
+ * 
+ * @author sangupta
+ *
+ */
+public class CachingDnsResolverTest {
+	
+	@Test
+	public void testLiterals() {
+		assertLiteral(true, "127.0.0.1");
+		assertLiteral(true, "0.0.0.0");
+		assertLiteral(true, "255.255.255.255");
+		assertLiteral(true, "10.020.3.004");
+		assertLiteral(true, "::1");
+		assertLiteral(true, "[2001:db8::1]");
+		assertLiteral(true, "2001:db8::1");
+	}
+	
+	@Test
+	public void testNames() {
+		assertLiteral(false, null);
+		assertLiteral(false, "");
+		assertLiteral(false, "localhost");
+		assertLiteral(false, "example.com");
+		
+		// names ending in a digit
+		assertLiteral(false, "node42");
+		assertLiteral(false, "web1.example.123");
+		assertLiteral(false, "1.2.3");
+		assertLiteral(false, "1.2.3.4.5");
+		
+		// not quite an address
+		assertLiteral(false, "256.1.1.1");
+		assertLiteral(false, "1.2.3.1000");
+		assertLiteral(false, "1..2.3");
+		assertLiteral(false, ".1.2.3");
+		assertLiteral(false, "1.2.3.4.");
+		assertLiteral(false, "1.2.3.4a");
+		assertLiteral(false, "-1.2.3.4");
+	}
+	
+	@Test
+	public void testHostOf() {
+		Assert.assertEquals("example.com", CachingDnsResolver.hostOf("http://example.com:8080/path"));
+		Assert.assertEquals("10.0.0.1", CachingDnsResolver.hostOf("http://10.0.0.1/"));
+		Assert.assertEquals("node42", CachingDnsResolver.hostOf("https://node42/index.html"));
+	}
+	
+	private static void assertLiteral(boolean expected, String host) {
+		Assert.assertEquals("Literal check of " + host, expected, CachingDnsResolver.isLiteral(host));
+	}
+
+}
@@ -0,0 +1,146 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sangupta.amass.domain.AmassSignal;
+import com.sangupta.amass.domain.CrawlableURL;
+import com.sangupta.amass.domain.DefaultCrawlableURL;
+
+/**
+ * Memory footprint benchmark that fills a {@link CrawlingQueue} with 10
+ * million distinct URLs, and reports the heap taken per queued URL. The
+ * previous job representation, a {@link String} keyed map of jobs each
+ * holding an {@link AtomicInteger} and a {@link DefaultCrawlableURL}, is
+ * measured the same way for comparison.
+ * 
+ * Run using the <code>main</code> method with a large enough heap, say
+ * <code>-Xmx8g</code>. The number of URLs may be passed as the first
+ * argument.
+ * 
+ * @author sangupta
+ *
+ */
+public class CrawlJobMemoryBenchmark {
+	
+	private static final int DEFAULT_URLS = 10000000;
+	
+	public static void main(String[] args) throws Exception {
+		final int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_URLS;
+		
+		System.out.println("Queueing " + count + " URLs");
+		report("    previous jobs ", count, measurePrevious(count));
+		report("    crawling queue", count, measureCrawlingQueue(count));
+	}
+	
+	private static void report(String name, int count, long bytes) {
+		System.out.println(name + ": " + (bytes / count) + " bytes/url, " + (bytes / (1024 * 1024)) + " MB");
+	}
+	
+	/**
+	 * Measure the {@link CrawlingQueue}.
+	 */
+	private static long measureCrawlingQueue(int count) {
+		AmassSignal signal = new AmassSignal();
+		signal.setInitializing();
+		signal.setInitialized();
+		
+		final long before = usedHeap();
+		CrawlingQueue queue = new CrawlingQueue(null, null, signal);
+		for(int index = 0; index < count; index++) {
+			queue.submitURL(urlOf(index), 1 + (index & 7));
+		}
+		
+		final long used = usedHeap() - before;
+		if(!queue.hasJob()) {
+			System.out.println("queue is empty");
+		}
+		
+		return used;
+	}
+	
+	/**
+	 * Measure the previous job representation.
+	 */
+	private static long measurePrevious(int count) {
+		final long before = usedHeap();
+		ConcurrentHashMap<String, PreviousJob> jobs = new ConcurrentHashMap<String, PreviousJob>();
+		List<PreviousJob> queue = new ArrayList<PreviousJob>();
+		for(int index = 0; index < count; index++) {
+			final String url = urlOf(index);
+			final PreviousJob job = new PreviousJob(new DefaultCrawlableURL(url), 1 + (index & 7));
+			jobs.put(url, job);
+			queue.add(job);
+		}
+		
+		final long used = usedHeap() - before;
+		if(jobs.size() != queue.size()) {
+			System.out.println("size mismatch");
+		}
+		
+		return used;
+	}
+	
+	private static String urlOf(int index) {
+		return "http://host" + (index % 10000) + ".example.com/page/" + index;
+	}
+	
+	private static long usedHeap() {
+		final Runtime runtime = Runtime.getRuntime();
+		for(int round = 0; round < 4; round++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch(InterruptedException e) {
+				// eat up
+			}
+		}
+		
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+	
+	/**
+	 * The fields of a job in the previous representation.
+	 */
+	private static class PreviousJob {
+		
+		final CrawlableURL crawlableURL;
+		
+		final AtomicInteger priority;
+		
+		final long millis;
+		
+		int storeIndex = -1;
+		
+		PreviousJob(CrawlableURL crawlableURL, int priority) {
+			this.crawlableURL = crawlableURL;
+			this.priority = new AtomicInteger(priority);
+			this.millis = System.nanoTime();
+		}
+		
+	}
+	
+}
@@ -0,0 +1,218 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sangupta.amass.domain.AmassSignal;
+import com.sangupta.amass.domain.CrawlJob;
+import com.sangupta.amass.domain.DefaultCrawlableURL;
+
+/**
+ * Throughput benchmark that compares the {@link CrawlingQueue} against the
+ * previous frontier which was made of a {@link ConcurrentHashMap} and a
+ * {@link PriorityBlockingQueue} that bumped priorities in place.
+ * 
+ * Concurrent submitters push URLs with repeats, so that a good share of the
+ * submissions are priority bumps, while workers drain the queue.
+ * 
+ * Run using the <code>main</code> method.
+ * 
+ * @author sangupta
+ *
+ */
+public class CrawlingQueueBenchmark {
+	
+	private static final int SUBMITTERS = 4;
+	
+	private static final int WORKERS = 16;
+	
+	private static final int SUBMISSIONS_PER_SUBMITTER = 500000;
+	
+	private static final int DISTINCT_URLS = 200000;
+	
+	private static final int ROUNDS = 5;
+	
+	public static void main(String[] args) throws Exception {
+		for(int round = 1; round <= ROUNDS; round++) {
+			System.out.println("Round " + round);
+			report("    previous queue", runPreviousQueue());
+			report("    crawling queue", runCrawlingQueue());
+		}
+	}
+	
+	private static void report(String name, long nanos) {
+		final long operations = (long) SUBMITTERS * SUBMISSIONS_PER_SUBMITTER;
+		final double seconds = nanos / 1000000000d;
+		System.out.println(name + ": " + (long) (operations / seconds) + " submits/sec, " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms");
+	}
+	
+	/**
+	 * Benchmark the {@link CrawlingQueue}.
+	 */
+	private static long runCrawlingQueue() throws InterruptedException {
+		AmassSignal signal = new AmassSignal();
+		signal.setInitializing();
+		signal.setInitialized();
+		
+		final CrawlingQueue queue = new CrawlingQueue(null, null, signal);
+		
+		final CountDownLatch workersDone = new CountDownLatch(WORKERS);
+		for(int index = 0; index < WORKERS; index++) {
+			new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					while(queue.take() != null) {
+						// keep draining
+					}
+					
+					workersDone.countDown();
+				}
+				
+			}).start();
+		}
+		
+		final long start = System.nanoTime();
+		runSubmitters(new Submitter() {
+			
+			@Override
+			public void submit(String url, int priority) {
+				queue.submitURL(url, priority);
+			}
+			
+		});
+		
+		queue.waitForClosure(false);
+		workersDone.await();
+		return System.nanoTime() - start;
+	}
+	
+	/**
+	 * Benchmark the previous frontier implementation.
+	 */
+	private static long runPreviousQueue() throws InterruptedException {
+		final ConcurrentHashMap<String, CrawlJob> jobs = new ConcurrentHashMap<String, CrawlJob>();
+		final PriorityBlockingQueue<CrawlJob> queue = new PriorityBlockingQueue<CrawlJob>();
+		final AtomicLong taken = new AtomicLong();
+		final CountDownLatch submittersDone = new CountDownLatch(1);
+		
+		final CountDownLatch workersDone = new CountDownLatch(WORKERS);
+		for(int index = 0; index < WORKERS; index++) {
+			new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						do {
+							CrawlJob job = queue.poll(10, TimeUnit.MILLISECONDS);
+							if(job != null) {
+								jobs.remove(job.getCrawlableURL().getURL());
+								taken.incrementAndGet();
+								continue;
+							}
+							
+							if(submittersDone.getCount() == 0 && queue.isEmpty()) {
+								break;
+							}
+						} while(true);
+					} catch(InterruptedException e) {
+						// eat up
+					}
+					
+					workersDone.countDown();
+				}
+				
+			}).start();
+		}
+		
+		final long start = System.nanoTime();
+		runSubmitters(new Submitter() {
+			
+			@Override
+			public void submit(String url, int priority) {
+				CrawlJob job = jobs.get(url);
+				if(job == null) {
+					job = new CrawlJob(new DefaultCrawlableURL(url), priority);
+				}
+				
+				CrawlJob previous = jobs.putIfAbsent(url, job);
+				if(previous == null) {
+					queue.offer(job);
+				} else {
+					previous.incrementPriority(priority);
+				}
+			}
+			
+		});
+		
+		submittersDone.countDown();
+		workersDone.await();
+		return System.nanoTime() - start;
+	}
+	
+	/**
+	 * Run all submitters against the given target and wait for them to finish.
+	 */
+	private static void runSubmitters(final Submitter submitter) throws InterruptedException {
+		final String[] urls = new String[DISTINCT_URLS];
+		for(int index = 0; index < urls.length; index++) {
+			urls[index] = "http://host" + (index % 1000) + ".example.com/page/" + index;
+		}
+		
+		final CountDownLatch done = new CountDownLatch(SUBMITTERS);
+		for(int index = 0; index < SUBMITTERS; index++) {
+			final int seed = index;
+			new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					int random = seed * 7919 + 1;
+					for(int count = 0; count < SUBMISSIONS_PER_SUBMITTER; count++) {
+						// cheap xor-shift to pick urls with repeats
+						random ^= (random << 13);
+						random ^= (random >>> 17);
+						random ^= (random << 5);
+						
+						submitter.submit(urls[(random & Integer.MAX_VALUE) % urls.length], 1 + (count & 3));
+					}
+					
+					done.countDown();
+				}
+				
+			}).start();
+		}
+		
+		done.await();
+	}
+	
+	private static interface Submitter {
+		
+		public void submit(String url, int priority);
+		
+	}
+
+}
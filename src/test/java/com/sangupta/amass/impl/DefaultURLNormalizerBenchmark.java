@@ -0,0 +1,109 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput benchmark for the {@link DefaultURLNormalizer}, run over URLs
+ * that are already canonical and over URLs that need rewriting. The
+ * normalization done by {@link URI#normalize()} is measured alongside as a
+ * reference, though it does much less.
+ * 
+ * Run using the <code>main</code> method.
+ * 
+ * @author sangupta
+ *
+ */
+public class DefaultURLNormalizerBenchmark {
+	
+	private static final int DISTINCT_URLS = 100000;
+	
+	private static final int PASSES = 20;
+	
+	private static final int ROUNDS = 5;
+	
+	public static void main(String[] args) throws Exception {
+		final String[] canonical = new String[DISTINCT_URLS];
+		final String[] messy = new String[DISTINCT_URLS];
+		for(int index = 0; index < DISTINCT_URLS; index++) {
+			canonical[index] = "http://host" + (index % 1000) + ".example.com/page/" + index + "?id=" + index + "&sort=asc";
+			messy[index] = "HTTP://Host" + (index % 1000) + ".Example.com:80/page/%7E" + index + "?sort=asc&utm_source=feed&id=" + index + "#top";
+		}
+		
+		final DefaultURLNormalizer normalizer = new DefaultURLNormalizer();
+		for(int round = 1; round <= ROUNDS; round++) {
+			System.out.println("Round " + round);
+			report("    canonical urls", runNormalizer(normalizer, canonical));
+			report("    messy urls    ", runNormalizer(normalizer, messy));
+			report("    uri normalize ", runURI(messy));
+		}
+	}
+	
+	private static void report(String name, long nanos) {
+		final long operations = (long) DISTINCT_URLS * PASSES;
+		final double seconds = nanos / 1000000000d;
+		System.out.println(name + ": " + (long) (operations / seconds) + " urls/sec, " + (nanos / operations) + " ns/url, " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms");
+	}
+	
+	/**
+	 * Benchmark the {@link DefaultURLNormalizer}.
+	 */
+	private static long runNormalizer(DefaultURLNormalizer normalizer, String[] urls) {
+		int sink = 0;
+		final long start = System.nanoTime();
+		for(int pass = 0; pass < PASSES; pass++) {
+			for(int index = 0; index < urls.length; index++) {
+				sink += normalizer.normalize(urls[index]).length();
+			}
+		}
+		
+		final long nanos = System.nanoTime() - start;
+		if(sink == 42) {
+			System.out.println();
+		}
+		
+		return nanos;
+	}
+	
+	/**
+	 * Benchmark {@link URI#normalize()} as a reference.
+	 */
+	private static long runURI(String[] urls) throws Exception {
+		int sink = 0;
+		final long start = System.nanoTime();
+		for(int pass = 0; pass < PASSES; pass++) {
+			for(int index = 0; index < urls.length; index++) {
+				sink += new URI(urls[index]).normalize().toString().length();
+			}
+		}
+		
+		final long nanos = System.nanoTime() - start;
+		if(sink == 42) {
+			System.out.println();
+		}
+		
+		return nanos;
+	}
+	
+}
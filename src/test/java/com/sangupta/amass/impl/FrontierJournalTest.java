@@ -0,0 +1,342 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sangupta.amass.domain.CrawlJob;
+
+/**
+ * Tests for the {@link FrontierJournal}. A crash is simulated by recovering
+ * from the directory with a new journal, without closing the old one.
+ * 
+ * @author sangupta
+ *
+ */
+public class FrontierJournalTest {
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	private final long seed = System.nanoTime();
+	
+	private final Random random = new Random(this.seed);
+	
+	private long sequence = System.nanoTime();
+	
+	@Test
+	public void testRecoverEmpty() throws IOException {
+		Assert.assertTrue(new FrontierJournal(this.folder.getRoot()).recover().isEmpty());
+	}
+	
+	@Test
+	public void testRecoverSnapshotAndJournal() throws IOException {
+		final File directory = this.folder.getRoot();
+		final FrontierJournal journal = new FrontierJournal(directory);
+		journal.recover();
+		
+		final CrawlJob first = newJob("http://first", 1);
+		final CrawlJob second = newJob("http://second", 2);
+		final CrawlJob third = newJob("http://third", 3);
+		journal.checkpoint(Arrays.asList(first, second, third));
+		
+		final CrawlJob fourth = newJob("http://fourth", 4);
+		journal.submitted(fourth);
+		first.incrementPriority(10);
+		journal.submitted(first);
+		journal.removed(second);
+		journal.flush();
+		
+		final Map<String, CrawlJob> expected = jobsOf(first, third, fourth);
+		assertJobs(expected, new FrontierJournal(directory).recover());
+		
+		// replaying again gives the same
+		final FrontierJournal recovered = new FrontierJournal(directory);
+		assertJobs(expected, recovered.recover());
+		
+		// and so does a checkpoint of the recovered jobs, which drops the
+		// older generations
+		recovered.checkpoint(expected.values());
+		recovered.close();
+		assertJobs(expected, new FrontierJournal(directory).recover());
+		Assert.assertEquals(2, directory.list().length);
+	}
+	
+	@Test
+	public void testUnflushedChangesAreLost() throws IOException {
+		final File directory = this.folder.getRoot();
+		final FrontierJournal journal = new FrontierJournal(directory);
+		final CrawlJob first = newJob("http://first", 1);
+		journal.checkpoint(Arrays.asList(first));
+		journal.submitted(newJob("http://second", 2));
+		
+		assertJobs(jobsOf(first), new FrontierJournal(directory).recover());
+	}
+	
+	@Test
+	public void testTruncatedJournal() throws IOException {
+		final File directory = this.folder.getRoot();
+		final FrontierJournal journal = new FrontierJournal(directory);
+		final CrawlJob first = newJob("http://first", 1);
+		journal.checkpoint(Arrays.asList(first));
+		
+		final CrawlJob second = newJob("http://second", 2);
+		journal.submitted(second);
+		journal.flush();
+		final long complete = journalFile(directory).length();
+		
+		final CrawlJob third = newJob("http://third", 3);
+		journal.submitted(third);
+		journal.removed(first);
+		journal.close();
+		
+		// cut the journal anywhere within the records after the second job
+		final File journalFile = journalFile(directory);
+		final byte[] bytes = new byte[(int) journalFile.length()];
+		final int length = bytes.length;
+		RandomAccessFile file = new RandomAccessFile(journalFile, "r");
+		try {
+			file.readFully(bytes);
+		} finally {
+			file.close();
+		}
+		
+		for(int cut = (int) complete; cut < length; cut++) {
+			file = new RandomAccessFile(journalFile, "rw");
+			try {
+				file.setLength(0);
+				file.write(bytes, 0, cut);
+			} finally {
+				file.close();
+			}
+			
+			// the removal is an op, the length of the URL and its bytes
+			final Map<String, CrawlJob> recovered = new FrontierJournal(directory).recover();
+			if(cut < length - 1 - 4 - "http://first".length()) {
+				// the third job was cut short
+				assertJobs(jobsOf(first, second), recovered);
+			} else {
+				// the removal of the first job was cut short
+				assertJobs(jobsOf(first, second, third), recovered);
+			}
+		}
+		
+		file = new RandomAccessFile(journalFile, "rw");
+		try {
+			file.write(bytes);
+		} finally {
+			file.close();
+		}
+		
+		assertJobs(jobsOf(second, third), new FrontierJournal(directory).recover());
+	}
+	
+	@Test
+	public void testEmptyJournal() throws IOException {
+		final File directory = this.folder.getRoot();
+		
+		// a crash right after a checkpoint, before the magic of the new
+		// journal was flushed
+		final CrawlJob first = newJob("http://first", 1);
+		new FrontierJournal(directory).checkpoint(Arrays.asList(first));
+		Assert.assertEquals(0, journalFile(directory).length());
+		
+		final FrontierJournal journal = new FrontierJournal(directory);
+		assertJobs(jobsOf(first), journal.recover());
+		
+		// and the journal goes on from there
+		journal.checkpoint(Arrays.asList(first));
+		final CrawlJob second = newJob("http://second", 2);
+		journal.submitted(second);
+		journal.flush();
+		assertJobs(jobsOf(first, second), new FrontierJournal(directory).recover());
+	}
+	
+	@Test
+	public void testFailedCheckpoint() throws IOException {
+		final File directory = this.folder.getRoot();
+		final FrontierJournal journal = new FrontierJournal(directory);
+		final CrawlJob first = newJob("http://first", 1);
+		final CrawlJob second = newJob("http://second", 2);
+		journal.checkpoint(Arrays.asList(first, second));
+		journal.removed(first);
+		
+		// the snapshot of the next generation is never completed
+		final Collection<CrawlJob> failing = new AbstractCollection<CrawlJob>() {
+			
+			@Override
+			public Iterator<CrawlJob> iterator() {
+				throw new IllegalStateException("Crash");
+			}
+			
+			@Override
+			public int size() {
+				return 1;
+			}
+			
+		};
+		
+		try {
+			journal.checkpoint(failing);
+			Assert.fail("Checkpoint did not fail");
+		} catch(IllegalStateException e) {
+			// expected
+		}
+		
+		final CrawlJob third = newJob("http://third", 3);
+		journal.submitted(third);
+		journal.flush();
+		
+		assertJobs(jobsOf(second, third), new FrontierJournal(directory).recover());
+	}
+	
+	@Test
+	public void testChangesDuringCheckpoint() throws IOException {
+		final File directory = this.folder.getRoot();
+		final FrontierJournal journal = new FrontierJournal(directory);
+		
+		final Map<String, CrawlJob> live = new ConcurrentHashMap<String, CrawlJob>();
+		for(int index = 0; index < 1000; index++) {
+			final CrawlJob job = newJob("http://host/" + index, this.random.nextInt(10));
+			live.put(job.getURL(), job);
+		}
+		
+		journal.checkpoint(live.values());
+		
+		for(int round = 0; round < 10; round++) {
+			// change the jobs as the queue would while they are written
+			final Collection<CrawlJob> changing = new AbstractCollection<CrawlJob>() {
+				
+				@Override
+				public Iterator<CrawlJob> iterator() {
+					final Iterator<CrawlJob> iterator = live.values().iterator();
+					return new Iterator<CrawlJob>() {
+						
+						@Override
+						public boolean hasNext() {
+							return iterator.hasNext();
+						}
+						
+						@Override
+						public CrawlJob next() {
+							change(journal, live);
+							return iterator.next();
+						}
+						
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+						
+					};
+				}
+				
+				@Override
+				public int size() {
+					return live.size();
+				}
+				
+			};
+			
+			journal.checkpoint(changing);
+			change(journal, live);
+			journal.flush();
+			
+			assertJobs(live, new FrontierJournal(directory).recover());
+		}
+	}
+	
+	/**
+	 * Submit, remove or bump a random job, as the queue would.
+	 */
+	private void change(FrontierJournal journal, Map<String, CrawlJob> live) {
+		final String url = "http://host/" + this.random.nextInt(1500);
+		final CrawlJob job = live.get(url);
+		if(job == null) {
+			final CrawlJob submitted = newJob(url, this.random.nextInt(10));
+			live.put(url, submitted);
+			journal.submitted(submitted);
+		} else if(this.random.nextBoolean()) {
+			live.remove(url);
+			journal.removed(job);
+		} else {
+			job.incrementPriority(1 + this.random.nextInt(5));
+			journal.submitted(job);
+		}
+	}
+	
+	private CrawlJob newJob(String url, int priority) {
+		return new CrawlJob(url, priority, this.sequence++);
+	}
+	
+	private static Map<String, CrawlJob> jobsOf(CrawlJob... jobs) {
+		final Map<String, CrawlJob> map = new LinkedHashMap<String, CrawlJob>();
+		for(CrawlJob job : jobs) {
+			map.put(job.getURL(), job);
+		}
+		
+		return map;
+	}
+	
+	/**
+	 * Return the journal of the latest generation in the given directory.
+	 */
+	private static File journalFile(File directory) {
+		final List<String> names = new ArrayList<String>();
+		for(String name : directory.list()) {
+			if(name.startsWith("journal-")) {
+				names.add(name);
+			}
+		}
+		
+		Assert.assertEquals(1, names.size());
+		return new File(directory, names.get(0));
+	}
+	
+	private void assertJobs(Map<String, CrawlJob> expected, Map<String, CrawlJob> recovered) {
+		Assert.assertEquals("Jobs recovered, seed " + this.seed, expected.keySet(), recovered.keySet());
+		for(CrawlJob job : expected.values()) {
+			final CrawlJob other = recovered.get(job.getURL());
+			Assert.assertEquals("Priority of " + job + ", seed " + this.seed, job.getPriority(), other.getPriority());
+			Assert.assertEquals("Sequence of " + job + ", seed " + this.seed, job.getSequence(), other.getSequence());
+		}
+	}
+
+}
@@ -0,0 +1,346 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sangupta.amass.domain.CrawlJob;
+
+/**
+ * Randomized tests for the ordering of {@link CrawlJob}s, on their own and
+ * as handed out by the {@link JobStore}s that rely on it. Jobs are spread
+ * over a long simulated run, with gaps between them far larger than what
+ * fits an <code>int</code>, and priorities covering the full range.
+ * 
+ * @author sangupta
+ *
+ */
+public class JobOrderingTest {
+	
+	private static final int NUM_JOBS = 2000000;
+	
+	/**
+	 * The largest gap between two consecutive jobs, about ten seconds in
+	 * nano-seconds
+	 */
+	private static final long MAX_GAP = 10000000000L;
+	
+	private static final int[] EDGE_PRIORITIES = { Integer.MIN_VALUE, Integer.MIN_VALUE + 1, -1, 0, 1, Integer.MAX_VALUE - 1, Integer.MAX_VALUE };
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	private final long seed = System.nanoTime();
+	
+	private final Random random = new Random(this.seed);
+	
+	@Test
+	public void testCompareToIsTotalOrder() {
+		final List<CrawlJob> jobs = createJobs(100000, true);
+		for(int round = 0; round < 1000000; round++) {
+			final CrawlJob first = jobs.get(this.random.nextInt(jobs.size()));
+			final CrawlJob second = jobs.get(this.random.nextInt(jobs.size()));
+			final CrawlJob third = jobs.get(this.random.nextInt(jobs.size()));
+			
+			final int forward = Integer.signum(first.compareTo(second));
+			if(forward != -Integer.signum(second.compareTo(first))) {
+				Assert.fail("Comparison not anti-symmetric for " + describe(first) + " and " + describe(second) + ", seed " + this.seed);
+			}
+			
+			if((forward == 0) != (first == second)) {
+				Assert.fail("Distinct jobs compare equal: " + describe(first) + " and " + describe(second) + ", seed " + this.seed);
+			}
+			
+			if(forward < 0 && second.compareTo(third) < 0 && first.compareTo(third) >= 0) {
+				Assert.fail("Comparison not transitive for " + describe(first) + ", " + describe(second) + " and " + describe(third) + ", seed " + this.seed);
+			}
+			
+			final boolean expected = first.getPriority() > second.getPriority() || (first.getPriority() == second.getPriority() && first.getSequence() < second.getSequence());
+			if(first != second && expected != (forward < 0)) {
+				Assert.fail("Wrong order of " + describe(first) + " and " + describe(second) + ", seed " + this.seed);
+			}
+		}
+	}
+	
+	@Test
+	public void testNewJobsFollowRestoredJobs() {
+		final CrawlJob restored = new CrawlJob("http://restored", 1, System.nanoTime() + MAX_GAP);
+		final CrawlJob created = new CrawlJob("http://created", 1);
+		
+		Assert.assertTrue(restored.compareTo(created) < 0);
+		Assert.assertTrue(created.getSequence() > restored.getSequence());
+	}
+	
+	@Test
+	public void testHeapJobStoreOrder() {
+		verifyStoreOrder(new HeapJobStore(), NUM_JOBS);
+	}
+	
+	@Test
+	public void testBucketedJobStoreOrder() {
+		verifyStoreOrder(new BucketedJobStore(), NUM_JOBS);
+	}
+	
+	@Test
+	public void testOffHeapJobStoreOrder() {
+		verifyStoreOrder(new OffHeapJobStore(10000, new ConcurrentHashMap<CrawlJob, CrawlJob>()), NUM_JOBS / 2);
+	}
+	
+	@Test
+	public void testSpillingJobStoreOrder() throws IOException {
+		// few jobs in memory, so that segments are merged time and again
+		verifyStoreOrder(new SpillingJobStore(this.folder.newFolder(), 1000, new ConcurrentHashMap<CrawlJob, CrawlJob>()), NUM_JOBS / 8);
+	}
+	
+	@Test
+	public void testSpillingJobStoreSpills() throws IOException {
+		final ConcurrentHashMap<CrawlJob, CrawlJob> index = new ConcurrentHashMap<CrawlJob, CrawlJob>();
+		final File directory = this.folder.newFolder();
+		final SpillingJobStore store = new SpillingJobStore(directory, 1000, index);
+		
+		final List<CrawlJob> jobs = createJobs(100000, false);
+		Collections.shuffle(jobs, this.random);
+		for(CrawlJob job : jobs) {
+			index.put(job, job);
+			store.offer(job);
+			if(store.getNumSegments() > 65) {
+				Assert.fail("Segments not merged, " + store.getNumSegments() + " of them, seed " + this.seed);
+			}
+		}
+		
+		// only the jobs in memory are left in the index
+		Assert.assertEquals(jobs.size(), store.size());
+		Assert.assertTrue(store.getNumSpilled() >= jobs.size() - 1000);
+		Assert.assertEquals(store.size() - store.getNumSpilled(), index.size());
+		for(CrawlJob job : index.keySet()) {
+			Assert.assertTrue(job.getStoreIndex() >= 0);
+		}
+		
+		CrawlJob previous = null;
+		CrawlJob job;
+		int polled = 0;
+		while((job = store.poll()) != null) {
+			assertOrdered(previous, job);
+			previous = job;
+			polled++;
+		}
+		
+		Assert.assertEquals("Jobs lost or duplicated, seed " + this.seed, jobs.size(), polled);
+		Assert.assertEquals(0, store.getNumSegments());
+		Assert.assertEquals(0, directory.list().length);
+	}
+	
+	@Test
+	public void testHeapJobStoreLowest() {
+		verifyStoreLowest(new HeapJobStore(4), NUM_JOBS / 10);
+	}
+	
+	@Test
+	public void testBucketedJobStoreLowest() {
+		verifyStoreLowest(new BucketedJobStore(), NUM_JOBS / 10);
+	}
+	
+	/**
+	 * Offer, poll, remove and bump jobs at random, checking after each step
+	 * that the store would hand out last the same job as a sorted set.
+	 */
+	private void verifyStoreLowest(final JobStore store, final int numJobs) {
+		final List<CrawlJob> jobs = createJobs(numJobs, false);
+		Collections.shuffle(jobs, this.random);
+		
+		final TreeSet<CrawlJob> expected = new TreeSet<CrawlJob>();
+		final List<CrawlJob> queued = new ArrayList<CrawlJob>();
+		int next = 0;
+		while(next < jobs.size() || !expected.isEmpty()) {
+			final int operation = this.random.nextInt(10);
+			if(next < jobs.size() && (operation < 5 || expected.isEmpty())) {
+				final CrawlJob job = jobs.get(next++);
+				store.offer(job);
+				expected.add(job);
+				queued.add(job);
+			} else if(operation < 7) {
+				final CrawlJob job = store.poll();
+				if(job != expected.pollFirst()) {
+					Assert.fail("Job " + describe(job) + " handed out out of order, seed " + this.seed);
+				}
+			} else {
+				// pick a job still in the store
+				final CrawlJob job = pickQueued(queued);
+				if(job == null) {
+					continue;
+				}
+				
+				expected.remove(job);
+				if(operation < 8 || job.getPriority() >= 32) {
+					Assert.assertTrue(store.remove(job));
+				} else {
+					job.incrementPriority(1 + this.random.nextInt(4));
+					store.priorityChanged(job);
+					expected.add(job);
+				}
+			}
+			
+			final CrawlJob lowest = store.peekLowest();
+			if(lowest != (expected.isEmpty() ? null : expected.last())) {
+				Assert.fail("Job " + describe(lowest) + " reported as the lowest instead of " + describe(expected.last()) + ", seed " + this.seed);
+			}
+		}
+		
+		Assert.assertTrue(store.isEmpty());
+	}
+	
+	/**
+	 * Return a random job from the given list that is still in its store,
+	 * dropping those that are not along the way.
+	 */
+	private CrawlJob pickQueued(final List<CrawlJob> queued) {
+		while(!queued.isEmpty()) {
+			final int index = this.random.nextInt(queued.size());
+			final CrawlJob job = queued.get(index);
+			
+			// swap with the last one, to remove in O(1) time
+			queued.set(index, queued.get(queued.size() - 1));
+			queued.remove(queued.size() - 1);
+			if(job.getStoreIndex() >= 0) {
+				return job;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Offer jobs to the given store in random order, bumping the priority of
+	 * some of them while queued, and interleave polls, checking that every
+	 * job polled is ordered after the one polled before it.
+	 */
+	private void verifyStoreOrder(final JobStore store, final int numJobs) {
+		final List<CrawlJob> jobs = createJobs(numJobs, false);
+		Collections.shuffle(jobs, this.random);
+		
+		final List<CrawlJob> polled = new ArrayList<CrawlJob>(numJobs);
+		final List<CrawlJob> batch = new ArrayList<CrawlJob>();
+		int next = 0;
+		while(next < jobs.size()) {
+			// add a bunch, sometimes as a batch
+			final int count = Math.min(1 + this.random.nextInt(10000), jobs.size() - next);
+			if(this.random.nextBoolean()) {
+				batch.clear();
+				batch.addAll(jobs.subList(next, next + count));
+				store.offerAll(batch);
+			} else {
+				for(int index = next; index < next + count; index++) {
+					store.offer(jobs.get(index));
+				}
+			}
+			
+			// bump a few of those still on the heap
+			for(int index = next; index < next + count; index += 1 + this.random.nextInt(100)) {
+				final CrawlJob job = jobs.get(index);
+				if(job.getStoreIndex() >= 0) {
+					job.incrementPriority(1);
+					store.priorityChanged(job);
+				}
+			}
+			
+			next += count;
+			
+			// drain a run and check its order
+			final int drain = this.random.nextInt(count + 1);
+			CrawlJob previous = null;
+			for(int index = 0; index < drain; index++) {
+				final CrawlJob job = store.poll();
+				if(job == null) {
+					break;
+				}
+				
+				assertOrdered(previous, job);
+				polled.add(job);
+				previous = job;
+			}
+		}
+		
+		CrawlJob previous = null;
+		CrawlJob job;
+		while((job = store.poll()) != null) {
+			assertOrdered(previous, job);
+			polled.add(job);
+			previous = job;
+		}
+		
+		Assert.assertTrue(store.isEmpty());
+		Assert.assertEquals("Jobs lost or duplicated, seed " + this.seed, jobs.size(), polled.size());
+	}
+	
+	private void assertOrdered(CrawlJob previous, CrawlJob job) {
+		if(previous == null) {
+			return;
+		}
+		
+		if(previous.getPriority() < job.getPriority() || (previous.getPriority() == job.getPriority() && previous.getSequence() > job.getSequence())) {
+			Assert.fail("Job " + describe(job) + " handed out after " + describe(previous) + ", seed " + this.seed);
+		}
+	}
+	
+	/**
+	 * Create jobs with increasing sequence numbers, separated by random gaps
+	 * of up to {@link #MAX_GAP}.
+	 */
+	private List<CrawlJob> createJobs(final int count, final boolean edgePriorities) {
+		final List<CrawlJob> jobs = new ArrayList<CrawlJob>(count);
+		long sequence = System.nanoTime();
+		for(int index = 0; index < count; index++) {
+			sequence += 1 + (long) (this.random.nextDouble() * MAX_GAP);
+			
+			final int priority;
+			if(edgePriorities && this.random.nextInt(4) == 0) {
+				priority = EDGE_PRIORITIES[this.random.nextInt(EDGE_PRIORITIES.length)];
+			} else if(edgePriorities) {
+				priority = this.random.nextInt();
+			} else {
+				// few distinct priorities, so that most comparisons tie
+				priority = this.random.nextInt(8);
+			}
+			
+			jobs.add(new CrawlJob("u" + index, priority, sequence));
+		}
+		
+		return jobs;
+	}
+	
+	private static String describe(CrawlJob job) {
+		return job + " (priority " + job.getPriority() + ", sequence " + job.getSequence() + ")";
+	}
+	
+}
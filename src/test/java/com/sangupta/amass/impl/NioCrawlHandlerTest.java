@@ -0,0 +1,269 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sangupta.amass.core.AsyncCrawlCallback;
+import com.sangupta.amass.core.CrawlSkippedException;
+import com.sangupta.amass.core.FetchPolicy;
+import com.sangupta.amass.domain.CrawlableURL;
+import com.sangupta.amass.domain.DefaultCrawlableURL;
+import com.sangupta.jerry.http.WebResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests for the {@link NioCrawlHandler} against a server on the loopback
+ * interface.
+ * 
+ * @author sangupta
+ *
+ */
+public class NioCrawlHandlerTest {
+	
+	private static final String ETAG = "\"abc-123\"";
+	
+	private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+	
+	private static final int VIDEO_CHUNKS = 4000;
+	
+	private static final int CHUNK_SIZE = 64 * 1024;
+	
+	private HttpServer server;
+	
+	private String baseURL;
+	
+	private final Map<String, String> requestHeaders = new HashMap<String, String>();
+	
+	private final CountDownLatch videoDone = new CountDownLatch(1);
+	
+	private volatile boolean videoAborted = false;
+	
+	private NioCrawlHandler handler;
+	
+	@Before
+	public void startServer() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.createContext("/", new HttpHandler() {
+			
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					serve(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+			
+		});
+		this.server.setExecutor(Executors.newCachedThreadPool());
+		this.server.start();
+		
+		this.baseURL = "http://127.0.0.1:" + this.server.getAddress().getPort();
+	}
+	
+	@After
+	public void stopServer() throws IOException {
+		if(this.handler != null) {
+			this.handler.close();
+		}
+		
+		this.server.stop(0);
+	}
+	
+	@Test
+	public void testConditionalRequest() throws Exception {
+		final ValidatorStore validatorStore = new ValidatorStore();
+		final Map<String, String> headers = new HashMap<String, String>();
+		headers.put("ETag", ETAG);
+		headers.put("Last-Modified", LAST_MODIFIED);
+		validatorStore.record(this.baseURL + "/page", 200, headers, 1);
+		
+		this.handler = new NioCrawlHandler(1, 4, 4, 5000, 1, null, validatorStore);
+		
+		final Outcome outcome = crawl("/page");
+		Assert.assertNull(outcome.throwable);
+		Assert.assertEquals(ValidatorStore.HTTP_NOT_MODIFIED, outcome.response.getResponseCode());
+		synchronized(this.requestHeaders) {
+			Assert.assertEquals(ETAG, this.requestHeaders.get("If-None-Match"));
+			Assert.assertEquals(LAST_MODIFIED, this.requestHeaders.get("If-Modified-Since"));
+		}
+		
+		// no validators known, no conditional request
+		final Outcome other = crawl("/other");
+		Assert.assertNull(other.throwable);
+		Assert.assertEquals(200, other.response.getResponseCode());
+		synchronized(this.requestHeaders) {
+			Assert.assertNull(this.requestHeaders.get("If-None-Match"));
+			Assert.assertNull(this.requestHeaders.get("If-Modified-Since"));
+		}
+	}
+	
+	@Test
+	public void testSkipUnwantedBody() throws Exception {
+		this.handler = new NioCrawlHandler(1, 4, 4, 5000, 1, new FetchPolicy() {
+			
+			@Override
+			public boolean shouldFetch(CrawlableURL crawlableURL, int responseCode, String contentType, long contentLength) {
+				return contentType == null || !contentType.startsWith("video/");
+			}
+			
+		}, null);
+		
+		final Outcome video = crawl("/video");
+		Assert.assertNull(video.response);
+		Assert.assertTrue("Skip not reported: " + video.throwable, video.throwable instanceof CrawlSkippedException);
+		
+		final CrawlSkippedException skipped = (CrawlSkippedException) video.throwable;
+		Assert.assertEquals(200, skipped.getResponseCode());
+		Assert.assertEquals("video/mp4", skipped.getContentType());
+		
+		// the connection is closed rather than the body read
+		Assert.assertTrue(this.videoDone.await(30, TimeUnit.SECONDS));
+		Assert.assertTrue(this.videoAborted);
+		
+		// wanted bodies are still read
+		final Outcome page = crawl("/page");
+		Assert.assertNull(page.throwable);
+		Assert.assertEquals(200, page.response.getResponseCode());
+	}
+	
+	/**
+	 * Crawl the given path and wait for the outcome.
+	 * 
+	 * @param path
+	 *            the path to crawl on the server
+	 * 
+	 * @return the outcome of the crawl
+	 * 
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	private Outcome crawl(String path) throws InterruptedException {
+		final Outcome outcome = new Outcome();
+		this.handler.crawl(new DefaultCrawlableURL(this.baseURL + path), outcome);
+		
+		Assert.assertTrue("Crawl of " + path + " did not complete", outcome.done.await(30, TimeUnit.SECONDS));
+		
+		// never on a selector thread
+		Assert.assertTrue(outcome.threadName, outcome.threadName.startsWith("Amass-Nio-Completion-"));
+		return outcome;
+	}
+	
+	/**
+	 * Answer a request: a never-ending video, a page not modified if its
+	 * validators match, or a short page.
+	 * 
+	 * @param exchange
+	 *            the exchange to answer
+	 * 
+	 * @throws IOException
+	 *             if writing the response fails
+	 */
+	private void serve(HttpExchange exchange) throws IOException {
+		final String path = exchange.getRequestURI().getPath();
+		synchronized(this.requestHeaders) {
+			this.requestHeaders.clear();
+			this.requestHeaders.put("If-None-Match", exchange.getRequestHeaders().getFirst("If-None-Match"));
+			this.requestHeaders.put("If-Modified-Since", exchange.getRequestHeaders().getFirst("If-Modified-Since"));
+		}
+		
+		if("/video".equals(path)) {
+			exchange.getResponseHeaders().add("Content-Type", "video/mp4");
+			exchange.sendResponseHeaders(200, 0);
+			
+			final OutputStream body = exchange.getResponseBody();
+			final byte[] chunk = new byte[CHUNK_SIZE];
+			try {
+				for(int index = 0; index < VIDEO_CHUNKS; index++) {
+					body.write(chunk);
+					body.flush();
+				}
+			} catch(IOException e) {
+				this.videoAborted = true;
+			} finally {
+				this.videoDone.countDown();
+			}
+			
+			return;
+		}
+		
+		exchange.getResponseHeaders().add("ETag", ETAG);
+		if(ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			exchange.sendResponseHeaders(ValidatorStore.HTTP_NOT_MODIFIED, -1);
+			return;
+		}
+		
+		final byte[] page = "<html></html>".getBytes("UTF-8");
+		exchange.getResponseHeaders().add("Content-Type", "text/html");
+		exchange.sendResponseHeaders(200, page.length);
+		exchange.getResponseBody().write(page);
+	}
+	
+	/**
+	 * The outcome of a single crawl.
+	 * 
+	 * @author sangupta
+	 *
+	 */
+	private static class Outcome implements AsyncCrawlCallback {
+		
+		private final CountDownLatch done = new CountDownLatch(1);
+		
+		private volatile WebResponse response;
+		
+		private volatile Throwable throwable;
+		
+		private volatile String threadName;
+
+		@Override
+		public void completed(WebResponse response) {
+			this.response = response;
+			this.threadName = Thread.currentThread().getName();
+			this.done.countDown();
+		}
+
+		@Override
+		public void failed(Throwable throwable) {
+			this.throwable = throwable;
+			this.threadName = Thread.currentThread().getName();
+			this.done.countDown();
+		}
+		
+	}
+
+}
@@ -0,0 +1,204 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.impl;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the {@link SeenFilter}.
+ * 
+ * @author sangupta
+ *
+ */
+public class SeenFilterTest {
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	private final long seed = System.nanoTime();
+	
+	private final Random random = new Random(this.seed);
+	
+	@Test
+	public void testScaling() {
+		final double rate = 0.01;
+		final SeenFilter filter = new SeenFilter(1000, rate, 0);
+		final long initialSize = filter.getSizeInBytes();
+		
+		// far more URLs than the filter was sized for
+		final int count = 200000;
+		for(int index = 0; index < count; index++) {
+			filter.add("http://host/" + index);
+		}
+		
+		// URLs taken for ones already added are not counted
+		Assert.assertTrue(filter.getCount() <= count);
+		Assert.assertTrue(filter.getCount() >= count * (1 - 4 * rate));
+		Assert.assertTrue(filter.getSizeInBytes() > 100 * initialSize);
+		
+		for(int index = 0; index < count; index++) {
+			if(!filter.mightContain("http://host/" + index)) {
+				Assert.fail("False negative for URL " + index + ", seed " + this.seed);
+			}
+		}
+		
+		// the rate stays below twice the one configured, which the filters
+		// added approach as they fill up, give or take the sampling error
+		int positives = 0;
+		final int samples = 200000;
+		for(int index = 0; index < samples; index++) {
+			if(filter.mightContain("http://other/" + this.random.nextLong())) {
+				positives++;
+			}
+		}
+		
+		final double measured = (double) positives / samples;
+		if(measured > 2.2 * rate || measured < rate / 2) {
+			Assert.fail("False positive rate " + measured + " when configured for " + rate + ", seed " + this.seed);
+		}
+	}
+	
+	@Test
+	public void testAddTwice() {
+		final SeenFilter filter = new SeenFilter(1000, 0.01, 0);
+		filter.add("http://host/");
+		filter.add("http://host/");
+		Assert.assertEquals(1, filter.getCount());
+	}
+	
+	@Test
+	public void testExpiry() throws InterruptedException {
+		final long expiry = 500;
+		final SeenFilter filter = new SeenFilter(1000, 0.001, expiry);
+		filter.add("http://first");
+		Assert.assertTrue(filter.mightContain("http://first"));
+		
+		// one expiry later, the first URL is in the previous window
+		Thread.sleep(expiry * 3 / 2);
+		Assert.assertTrue(filter.mightContain("http://first"));
+		filter.add("http://second");
+		
+		// and one more later, it is forgotten
+		Thread.sleep(expiry * 3 / 2);
+		Assert.assertFalse(filter.mightContain("http://first"));
+		Assert.assertTrue(filter.mightContain("http://second"));
+		Assert.assertEquals(1, filter.getCount());
+		
+		// two expiries without a look drop both windows
+		Thread.sleep(expiry * 2 + expiry / 2);
+		Assert.assertFalse(filter.mightContain("http://second"));
+		Assert.assertEquals(0, filter.getCount());
+	}
+	
+	@Test
+	public void testNoExpiry() throws InterruptedException {
+		final SeenFilter filter = new SeenFilter(1000, 0.01, 0);
+		filter.add("http://first");
+		Thread.sleep(100);
+		Assert.assertTrue(filter.mightContain("http://first"));
+	}
+	
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		final SeenFilter filter = new SeenFilter(1000, 0.01, 0);
+		for(int index = 0; index < 5000; index++) {
+			filter.add("http://host/" + index);
+		}
+		
+		final File file = new File(this.folder.getRoot(), "seen");
+		filter.save(file);
+		Assert.assertFalse(new File(file.getAbsolutePath() + ".tmp").exists());
+		
+		// saving again replaces the file
+		filter.save(file);
+		
+		final SeenFilter loaded = new SeenFilter(10, 0.1, 0);
+		loaded.add("http://other");
+		loaded.load(file);
+		
+		Assert.assertEquals(filter.getCount(), loaded.getCount());
+		Assert.assertEquals(filter.getSizeInBytes(), loaded.getSizeInBytes());
+		for(int index = 0; index < 5000; index++) {
+			Assert.assertTrue(loaded.mightContain("http://host/" + index));
+		}
+		
+		for(int index = 0; index < 10000; index++) {
+			final String url = "http://other/" + index;
+			Assert.assertEquals(filter.mightContain(url), loaded.mightContain(url));
+		}
+		
+		// the loaded filter scales on
+		for(int index = 5000; index < 20000; index++) {
+			loaded.add("http://host/" + index);
+		}
+		
+		for(int index = 0; index < 20000; index++) {
+			Assert.assertTrue(loaded.mightContain("http://host/" + index));
+		}
+	}
+	
+	@Test
+	public void testSaveAndLoadWindows() throws IOException, InterruptedException {
+		final long expiry = 500;
+		final SeenFilter filter = new SeenFilter(1000, 0.001, expiry);
+		filter.add("http://first");
+		Thread.sleep(expiry * 3 / 2);
+		filter.add("http://second");
+		
+		final File file = new File(this.folder.getRoot(), "seen");
+		filter.save(file);
+		
+		// both windows are kept, along with the start of the current one
+		final SeenFilter loaded = new SeenFilter(1000, 0.001, expiry);
+		loaded.load(file);
+		Assert.assertTrue(loaded.mightContain("http://first"));
+		Assert.assertTrue(loaded.mightContain("http://second"));
+		
+		Thread.sleep(expiry * 3 / 2);
+		Assert.assertFalse(loaded.mightContain("http://first"));
+		Assert.assertTrue(loaded.mightContain("http://second"));
+	}
+	
+	@Test(expected = IOException.class)
+	public void testLoadOtherFile() throws IOException {
+		final File file = this.folder.newFile();
+		final DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			out.writeInt(0x12345678);
+		} finally {
+			out.close();
+		}
+		
+		new SeenFilter(1000, 0.01, 0).load(file);
+	}
+
+}
@@ -0,0 +1,101 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.amass.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark of the {@link TimingWheel} behind scheduled crawls. It schedules
+ * 10 million crawls spread over the next day, reports the heap taken per
+ * crawl and the time to add them, and then moves the wheel across the whole
+ * day reporting the time taken to hand the crawls out.
+ * 
+ * Run using the <code>main</code> method with a large enough heap, say
+ * <code>-Xmx4g</code>. The number of crawls may be passed as the first
+ * argument.
+ * 
+ * @author sangupta
+ *
+ */
+public class TimingWheelBenchmark {
+	
+	private static final int DEFAULT_CRAWLS = 10000000;
+	
+	private static final long TICK_MILLIS = 100;
+	
+	private static final long ONE_DAY = 24L * 60 * 60 * 1000;
+	
+	public static void main(String[] args) throws Exception {
+		final int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CRAWLS;
+		final long start = System.currentTimeMillis();
+		final Random random = new Random(42);
+		
+		System.out.println("Scheduling " + count + " crawls over one day");
+		
+		final long before = usedHeap();
+		long time = System.nanoTime();
+		TimingWheel<ScheduledCrawl> wheel = new TimingWheel<ScheduledCrawl>(TICK_MILLIS, start);
+		for(int index = 0; index < count; index++) {
+			final long notBefore = start + (long) (random.nextDouble() * ONE_DAY);
+			wheel.add(new ScheduledCrawl(urlOf(index), 1, notBefore, 0));
+		}
+		
+		time = System.nanoTime() - time;
+		final long used = usedHeap() - before;
+		System.out.println("    heap : " + (used / count) + " bytes/crawl, " + (used / (1024 * 1024)) + " MB");
+		System.out.println("    add  : " + (time / count) + " ns/crawl");
+		
+		// move one second at a time, as a timer running behind would
+		final List<ScheduledCrawl> due = new ArrayList<ScheduledCrawl>();
+		long handedOut = 0;
+		time = System.nanoTime();
+		for(long now = start; now <= start + ONE_DAY + 1000; now += 1000) {
+			due.clear();
+			wheel.advance(now, due);
+			handedOut += due.size();
+		}
+		
+		time = System.nanoTime() - time;
+		System.out.println("    due  : " + (time / Math.max(handedOut, 1)) + " ns/crawl, " + handedOut + " crawls handed out, " + wheel.size() + " left");
+	}
+	
+	private static String urlOf(int index) {
+		return "http://host" + (index % 10000) + ".example.com/page/" + index;
+	}
+	
+	private static long usedHeap() {
+		final Runtime runtime = Runtime.getRuntime();
+		for(int round = 0; round < 4; round++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch(InterruptedException e) {
+				// eat up
+			}
+		}
+		
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+	
+}
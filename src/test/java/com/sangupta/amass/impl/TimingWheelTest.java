@@ -0,0 +1,201 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Randomized tests for the {@link TimingWheel}. Entries are spread over all
+ * four levels of the wheel, and beyond the farthest it can hold in one go,
+ * and must each come out at the tick they are due, never earlier nor later.
+ * 
+ * @author sangupta
+ *
+ */
+public class TimingWheelTest {
+	
+	/**
+	 * The farthest an entry can be placed from the current tick, as per the
+	 * {@link TimingWheel}
+	 */
+	private static final long MAX_DELTA = (1L << 32) - 1;
+	
+	private static final Comparator<TestEntry> DEADLINE_ORDER = new Comparator<TestEntry>() {
+		
+		@Override
+		public int compare(TestEntry first, TestEntry second) {
+			if(first.deadline != second.deadline) {
+				return first.deadline < second.deadline ? -1 : 1;
+			}
+			
+			return first.id - second.id;
+		}
+		
+	};
+	
+	private final long seed = System.nanoTime();
+	
+	private final Random random = new Random(this.seed);
+	
+	private int nextId;
+	
+	@Test
+	public void testEntriesComeOutAtTheirTick() {
+		final TimingWheel<TestEntry> wheel = new TimingWheel<TestEntry>(1, 0);
+		final PriorityQueue<TestEntry> pending = new PriorityQueue<TestEntry>(11, DEADLINE_ORDER);
+		addEntries(wheel, pending, 0, 5000);
+		
+		final List<TestEntry> due = new ArrayList<TestEntry>();
+		final List<TestEntry> expected = new ArrayList<TestEntry>();
+		long now = 0;
+		while(!pending.isEmpty()) {
+			final long deadline = pending.peek().deadline;
+			
+			// nothing may come out just before the next deadline
+			if(deadline - 1 > now) {
+				now = deadline - 1;
+				wheel.advance(now, due);
+				if(!due.isEmpty()) {
+					Assert.fail("Entry due at " + due.get(0).deadline + " handed out at " + now + ", seed " + this.seed);
+				}
+			}
+			
+			// and all of the entries due must come out on it
+			now = deadline;
+			wheel.advance(now, due);
+			
+			expected.clear();
+			while(!pending.isEmpty() && pending.peek().deadline <= now) {
+				expected.add(pending.poll());
+			}
+			
+			Collections.sort(due, DEADLINE_ORDER);
+			Assert.assertEquals("Wrong entries handed out at " + now + ", seed " + this.seed, expected, due);
+			due.clear();
+			
+			// add some more from a tick that is not aligned to any level
+			if(now < (1L << 24) && this.random.nextInt(100) == 0) {
+				addEntries(wheel, pending, now, 100);
+			}
+		}
+		
+		Assert.assertEquals(0, wheel.size());
+	}
+	
+	@Test
+	public void testDeadlinesRoundUpToTicks() {
+		final long tickMillis = 100;
+		final long startMillis = 12345;
+		final TimingWheel<TestEntry> wheel = new TimingWheel<TestEntry>(tickMillis, startMillis);
+		
+		final List<TestEntry> entries = new ArrayList<TestEntry>();
+		for(int index = 0; index < 10000; index++) {
+			// some are overdue already
+			final TestEntry entry = new TestEntry(this.nextId++, startMillis - 1000 + this.random.nextInt(1000000));
+			wheel.add(entry);
+			entries.add(entry);
+		}
+		
+		final List<TestEntry> due = new ArrayList<TestEntry>();
+		long previous = startMillis;
+		long now = startMillis;
+		int handedOut = 0;
+		while(handedOut < entries.size()) {
+			now += 1 + this.random.nextInt(250);
+			wheel.advance(now, due);
+			
+			for(TestEntry entry : due) {
+				final long releaseMillis = releaseMillis(entry.deadline, startMillis, tickMillis);
+				if(releaseMillis > now || releaseMillis <= previous) {
+					Assert.fail("Entry due at " + entry.deadline + " handed out at " + now + " rather than at " + releaseMillis + ", seed " + this.seed);
+				}
+			}
+			
+			handedOut += due.size();
+			due.clear();
+			previous = now;
+		}
+		
+		Assert.assertEquals(0, wheel.size());
+	}
+	
+	/**
+	 * Add entries due after the given time, spread over all levels of the
+	 * wheel and beyond.
+	 */
+	private void addEntries(TimingWheel<TestEntry> wheel, PriorityQueue<TestEntry> pending, long now, int count) {
+		for(int index = 0; index < count; index++) {
+			final int level = this.random.nextInt(5);
+			final long delta;
+			if(level == 4) {
+				delta = MAX_DELTA + 1 + this.random.nextInt(1 << 20);
+			} else {
+				final long low = level == 0 ? 1 : 1L << (8 * level);
+				final long high = 1L << (8 * (level + 1));
+				delta = low + (long) (this.random.nextDouble() * (high - low));
+			}
+			
+			final TestEntry entry = new TestEntry(this.nextId++, now + delta);
+			wheel.add(entry);
+			pending.add(entry);
+		}
+	}
+	
+	/**
+	 * Return the time at which an entry with the given deadline is handed
+	 * out: the end of the first tick at or after its deadline, and not before
+	 * the first tick.
+	 */
+	private static long releaseMillis(long deadline, long startMillis, long tickMillis) {
+		final long elapsed = deadline - startMillis;
+		long tick = elapsed <= 0 ? 0 : (elapsed + tickMillis - 1) / tickMillis;
+		tick = Math.max(tick, 1);
+		return startMillis + tick * tickMillis;
+	}
+	
+	private static class TestEntry extends TimingWheel.Entry {
+		
+		final int id;
+		
+		TestEntry(int id, long deadline) {
+			super(deadline);
+			
+			this.id = id;
+		}
+		
+		@Override
+		public String toString() {
+			return "[" + this.id + " due " + this.deadline + "]";
+		}
+		
+	}
+
+}
@@ -0,0 +1,251 @@
+/**
+ *
+ * amass - web crawling made easy
+ * Copyright (c) 2011-2013, Sandeep Gupta
+ * 
+ * http://www.sangupta/projects/amass
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.amass.impl;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sangupta.amass.domain.Validators;
+
+/**
+ * Tests for the {@link ValidatorStore}.
+ * 
+ * @author sangupta
+ *
+ */
+public class ValidatorStoreTest {
+	
+	private static final String ETAG = "\"abc-123\"";
+	
+	private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testPackAndUnpack() {
+		assertUnpacked(ETAG, LAST_MODIFIED, 42, ValidatorStore.pack(ETAG, LAST_MODIFIED, 42));
+		assertUnpacked(ETAG, null, -1, ValidatorStore.pack(ETAG, null, -1));
+		assertUnpacked(null, LAST_MODIFIED, Long.MIN_VALUE, ValidatorStore.pack(null, LAST_MODIFIED, Long.MIN_VALUE));
+		assertUnpacked(null, null, Long.MAX_VALUE, ValidatorStore.pack(null, null, Long.MAX_VALUE));
+		assertUnpacked("", "", 0, ValidatorStore.pack("", "", 0));
+		assertUnpacked("W/\"\u00e9t\u00e9\"", "\u65e5\u66dc\u65e5", 7, ValidatorStore.pack("W/\"\u00e9t\u00e9\"", "\u65e5\u66dc\u65e5", 7));
+		
+		Assert.assertNull(ValidatorStore.unpack(null));
+	}
+	
+	@Test
+	public void testPackLongHeaders() {
+		final String longest = repeat('e', 0xffff);
+		final String tooLong = repeat('e', 0x10000);
+		
+		assertUnpacked(longest, longest, 1, ValidatorStore.pack(longest, longest, 1));
+		
+		// headers too long to be kept are left out, the rest is not
+		assertUnpacked(null, LAST_MODIFIED, 1, ValidatorStore.pack(tooLong, LAST_MODIFIED, 1));
+		assertUnpacked(ETAG, null, 1, ValidatorStore.pack(ETAG, tooLong, 1));
+		assertUnpacked(null, null, 1, ValidatorStore.pack(tooLong, tooLong, 1));
+		
+		// the limit is on the encoded length
+		final String multiByte = repeat('\u00e9', 0x8000);
+		assertUnpacked(null, LAST_MODIFIED, 1, ValidatorStore.pack(multiByte, LAST_MODIFIED, 1));
+	}
+	
+	@Test
+	public void testRecordNotModified() {
+		final ValidatorStore store = new ValidatorStore();
+		
+		// nothing known yet, and nothing to remember
+		Assert.assertTrue(store.record("http://a", ValidatorStore.HTTP_NOT_MODIFIED, headers(ETAG, null), 0));
+		Assert.assertNull(store.get("http://a"));
+		
+		store.record("http://a", 200, headers(ETAG, LAST_MODIFIED), 42);
+		
+		// newer validators sent along are kept, and the hash is left alone
+		Assert.assertTrue(store.record("http://a", ValidatorStore.HTTP_NOT_MODIFIED, headers("\"v2\"", null), 0));
+		assertValidators("\"v2\"", LAST_MODIFIED, 42, store.get("http://a"));
+		
+		Assert.assertTrue(store.record("http://a", ValidatorStore.HTTP_NOT_MODIFIED, null, 0));
+		assertValidators("\"v2\"", LAST_MODIFIED, 42, store.get("http://a"));
+	}
+	
+	@Test
+	public void testRecordSuccess() {
+		final ValidatorStore store = new ValidatorStore();
+		
+		Assert.assertFalse(store.record("http://a", 200, headers(ETAG, LAST_MODIFIED), 42));
+		assertValidators(ETAG, LAST_MODIFIED, 42, store.get("http://a"));
+		
+		// same body
+		Assert.assertTrue(store.record("http://a", 200, headers(ETAG, LAST_MODIFIED), 42));
+		Assert.assertTrue(store.record("http://a", 203, null, 42));
+		assertValidators(null, null, 42, store.get("http://a"));
+		
+		// changed body, or one not hashed
+		Assert.assertFalse(store.record("http://a", 200, headers(ETAG, null), 43));
+		assertValidators(ETAG, null, 43, store.get("http://a"));
+		Assert.assertFalse(store.record("http://a", 200, headers(ETAG, null), 0));
+		assertValidators(ETAG, null, 0, store.get("http://a"));
+		
+		// nothing to revalidate with
+		Assert.assertFalse(store.record("http://a", 200, null, 0));
+		Assert.assertNull(store.get("http://a"));
+		Assert.assertEquals(0, store.size());
+		
+		// header names are matched ignoring case
+		final Map<String, String> headers = new HashMap<String, String>();
+		headers.put("etag", ETAG);
+		headers.put("LAST-MODIFIED", LAST_MODIFIED);
+		store.record("http://b", 200, headers, 0);
+		assertValidators(ETAG, LAST_MODIFIED, 0, store.get("http://b"));
+	}
+	
+	@Test
+	public void testRecordFailure() {
+		final ValidatorStore store = new ValidatorStore();
+		store.record("http://a", 200, headers(ETAG, LAST_MODIFIED), 42);
+		
+		// validators are left alone, even when the body hashes the same
+		for(int responseCode : new int[] { 100, 301, 404, 500, 503 }) {
+			Assert.assertFalse(store.record("http://a", responseCode, headers("\"other\"", null), 42));
+			assertValidators(ETAG, LAST_MODIFIED, 42, store.get("http://a"));
+		}
+		
+		Assert.assertFalse(store.record("http://b", 404, headers(ETAG, null), 42));
+		Assert.assertNull(store.get("http://b"));
+	}
+	
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		final ValidatorStore store = new ValidatorStore();
+		store.record("http://both", 200, headers(ETAG, LAST_MODIFIED), 42);
+		store.record("http://etag", 200, headers(ETAG, null), 0);
+		store.record("http://modified", 200, headers(null, LAST_MODIFIED), 0);
+		store.record("http://hash", 200, null, ValidatorStore.hash(new byte[] { 1, 2, 3 }));
+		
+		final File file = new File(this.folder.getRoot(), "validators");
+		store.save(file);
+		Assert.assertFalse(new File(file.getAbsolutePath() + ".tmp").exists());
+		
+		// saving again replaces the file
+		store.save(file);
+		
+		final ValidatorStore loaded = new ValidatorStore();
+		loaded.record("http://other", 200, headers(ETAG, null), 0);
+		loaded.load(file);
+		
+		Assert.assertEquals(4, loaded.size());
+		Assert.assertNull(loaded.get("http://other"));
+		assertValidators(ETAG, LAST_MODIFIED, 42, loaded.get("http://both"));
+		assertValidators(ETAG, null, 0, loaded.get("http://etag"));
+		assertValidators(null, LAST_MODIFIED, 0, loaded.get("http://modified"));
+		assertValidators(null, null, ValidatorStore.hash(new byte[] { 1, 2, 3 }), loaded.get("http://hash"));
+		
+		// an empty store too
+		new ValidatorStore().save(file);
+		loaded.load(file);
+		Assert.assertEquals(0, loaded.size());
+	}
+	
+	@Test(expected = IOException.class)
+	public void testLoadOtherFile() throws IOException {
+		final File file = this.folder.newFile();
+		final DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			out.writeInt(0x12345678);
+			out.writeBoolean(false);
+		} finally {
+			out.close();
+		}
+		
+		new ValidatorStore().load(file);
+	}
+	
+	@Test
+	public void testPurge() throws IOException {
+		final int maxURLs = 1000;
+		final ValidatorStore store = new ValidatorStore(maxURLs);
+		for(int index = 0; index < 10 * maxURLs; index++) {
+			store.record("http://host/" + index, 200, headers(ETAG, null), 0);
+			if(store.size() > maxURLs) {
+				Assert.fail("Store holds " + store.size() + " URLs, more than " + maxURLs);
+			}
+		}
+		
+		// purged down to three-quarters, and filled up again since
+		Assert.assertTrue(store.size() > maxURLs * 3 / 4);
+		
+		// the latest URL is always kept
+		Assert.assertNotNull(store.get("http://host/" + (10 * maxURLs - 1)));
+		
+		// loading into a smaller store keeps to its bound as well
+		final File file = new File(this.folder.getRoot(), "validators");
+		store.save(file);
+		
+		final ValidatorStore smaller = new ValidatorStore(100);
+		smaller.load(file);
+		Assert.assertTrue(smaller.size() <= 100);
+		Assert.assertTrue(smaller.size() > 75);
+	}
+	
+	private static Map<String, String> headers(String eTag, String lastModified) {
+		final Map<String, String> headers = new HashMap<String, String>();
+		if(eTag != null) {
+			headers.put("ETag", eTag);
+		}
+		
+		if(lastModified != null) {
+			headers.put("Last-Modified", lastModified);
+		}
+		
+		return headers;
+	}
+	
+	private static void assertUnpacked(String eTag, String lastModified, long contentHash, byte[] packed) {
+		assertValidators(eTag, lastModified, contentHash, ValidatorStore.unpack(packed));
+	}
+	
+	private static void assertValidators(String eTag, String lastModified, long contentHash, Validators validators) {
+		Assert.assertNotNull(validators);
+		Assert.assertEquals(eTag, validators.getETag());
+		Assert.assertEquals(lastModified, validators.getLastModified());
+		Assert.assertEquals(contentHash, validators.getContentHash());
+	}
+	
+	private static String repeat(char ch, int count) {
+		final char[] chars = new char[count];
+		Arrays.fill(chars, ch);
+		return new String(chars);
+	}
+
+}